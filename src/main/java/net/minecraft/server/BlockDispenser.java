@@ -6,7 +6,14 @@ public class BlockDispenser extends BlockContainer {
 
     public static final IRegistry a = new RegistryDefault(new DispenseBehaviorItem());
     protected Random b = new Random();
-    public static boolean eventFired = false; // CraftBukkit
+    // CraftBukkit start - per thread, worlds may tick in parallel
+    public static final ThreadLocal<Boolean> eventFired = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+    // CraftBukkit end
 
     protected BlockDispenser() {
         super(Material.STONE);
@@ -80,7 +87,7 @@ public class BlockDispenser extends BlockContainer {
 
                 if (idispensebehavior != IDispenseBehavior.a) {
                     ItemStack itemstack1 = idispensebehavior.a(sourceblock, itemstack);
-                    eventFired = false; // CraftBukkit - reset event status
+                    eventFired.set(false); // CraftBukkit - reset event status
 
                     tileentitydispenser.setItem(l, itemstack1.count == 0 ? null : itemstack1);
                 }
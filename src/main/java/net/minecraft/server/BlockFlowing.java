@@ -9,9 +9,20 @@ import org.bukkit.event.block.BlockFromToEvent;
 
 public class BlockFlowing extends BlockFluids {
 
-    int a;
-    boolean[] b = new boolean[4];
-    int[] M = new int[4];
+    // CraftBukkit start - Scratch state per thread, worlds may tick in parallel
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
+    private static class State {
+        int a;
+        boolean[] b = new boolean[4];
+        int[] M = new int[4];
+    }
+    // CraftBukkit end
 
     protected BlockFlowing(Material material) {
         super(material);
@@ -25,6 +36,7 @@ public class BlockFlowing extends BlockFluids {
 
     public void a(World world, int i, int j, int k, Random random) {
         // CraftBukkit start
+        State state = this.state.get();
         org.bukkit.World bworld = world.getWorld();
         org.bukkit.Server server = world.getServer();
         org.bukkit.block.Block source = bworld == null ? null : bworld.getBlockAt(i, j, k);
@@ -44,7 +56,7 @@ public class BlockFlowing extends BlockFluids {
         if (l > 0) {
             byte b1 = -100;
 
-            this.a = 0;
+            state.a = 0; // CraftBukkit
             int k1 = this.a(world, i - 1, j, k, b1);
 
             k1 = this.a(world, i + 1, j, k, k1);
@@ -65,7 +77,7 @@ public class BlockFlowing extends BlockFluids {
                 }
             }
 
-            if (this.a >= 2 && this.material == Material.WATER) {
+            if (state.a >= 2 && this.material == Material.WATER) { // CraftBukkit
                 if (world.getType(i, j - 1, k).getMaterial().isBuildable()) {
                     j1 = 0;
                 } else if (world.getType(i, j - 1, k).getMaterial() == this.material && world.getData(i, j - 1, k) == 0) {
@@ -208,11 +220,12 @@ public class BlockFlowing extends BlockFluids {
     }
 
     private boolean[] o(World world, int i, int j, int k) {
+        State state = this.state.get(); // CraftBukkit
         int l;
         int i1;
 
         for (l = 0; l < 4; ++l) {
-            this.M[l] = 1000;
+            state.M[l] = 1000;
             i1 = i;
             int j1 = k;
 
@@ -234,26 +247,26 @@ public class BlockFlowing extends BlockFluids {
 
             if (!this.p(world, i1, j, j1) && (world.getType(i1, j, j1).getMaterial() != this.material || world.getData(i1, j, j1) != 0)) {
                 if (this.p(world, i1, j - 1, j1)) {
-                    this.M[l] = this.c(world, i1, j, j1, 1, l);
+                    state.M[l] = this.c(world, i1, j, j1, 1, l);
                 } else {
-                    this.M[l] = 0;
+                    state.M[l] = 0;
                 }
             }
         }
 
-        l = this.M[0];
+        l = state.M[0];
 
         for (i1 = 1; i1 < 4; ++i1) {
-            if (this.M[i1] < l) {
-                l = this.M[i1];
+            if (state.M[i1] < l) {
+                l = state.M[i1];
             }
         }
 
         for (i1 = 0; i1 < 4; ++i1) {
-            this.b[i1] = this.M[i1] == l;
+            state.b[i1] = state.M[i1] == l;
         }
 
-        return this.b;
+        return state.b; // CraftBukkit
     }
 
     private boolean p(World world, int i, int j, int k) {
@@ -269,7 +282,7 @@ public class BlockFlowing extends BlockFluids {
             return l;
         } else {
             if (i1 == 0) {
-                ++this.a;
+                ++this.state.get().a; // CraftBukkit
             }
 
             if (i1 >= 8) {
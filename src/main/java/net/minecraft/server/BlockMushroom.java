@@ -97,10 +97,10 @@ public class BlockMushroom extends BlockPlant implements IBlockFragilePlantEleme
         WorldGenHugeMushroom worldgenhugemushroom = null;
 
         if (this == Blocks.BROWN_MUSHROOM) {
-            BlockSapling.treeType = TreeType.BROWN_MUSHROOM; // CraftBukkit
+            BlockSapling.treeType.set(TreeType.BROWN_MUSHROOM); // CraftBukkit
             worldgenhugemushroom = new WorldGenHugeMushroom(0);
         } else if (this == Blocks.RED_MUSHROOM) {
-            BlockSapling.treeType = TreeType.RED_MUSHROOM; // CraftBukkit
+            BlockSapling.treeType.set(TreeType.RED_MUSHROOM); // CraftBukkit
             worldgenhugemushroom = new WorldGenHugeMushroom(1);
         }
 
@@ -9,8 +9,19 @@ import org.bukkit.event.block.BlockRedstoneEvent; // CraftBukkit
 
 public class BlockRedstoneWire extends Block {
 
-    private boolean a = true;
-    private Set b = new HashSet();
+    // CraftBukkit start - Scratch state per thread, worlds may tick in parallel
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
+    private static class State {
+        boolean a = true;
+        Set b = new HashSet();
+    }
+    // CraftBukkit end
 
     public BlockRedstoneWire() {
         super(Material.ORIENTABLE);
@@ -39,9 +50,10 @@ public class BlockRedstoneWire extends Block {
 
     private void e(World world, int i, int j, int k) {
         this.a(world, i, j, k, i, j, k);
-        ArrayList arraylist = new ArrayList(this.b);
+        Set set = this.state.get().b; // CraftBukkit
+        ArrayList arraylist = new ArrayList(set);
 
-        this.b.clear();
+        set.clear();
 
         for (int l = 0; l < arraylist.size(); ++l) {
             ChunkPosition chunkposition = (ChunkPosition) arraylist.get(l);
@@ -54,11 +66,12 @@ public class BlockRedstoneWire extends Block {
         int k1 = world.getData(i, j, k);
         byte b0 = 0;
         int l1 = this.getPower(world, l, i1, j1, b0);
+        State state = this.state.get(); // CraftBukkit
 
-        this.a = false;
+        state.a = false;
         int i2 = world.getHighestNeighborSignal(i, j, k);
 
-        this.a = true;
+        state.a = true;
         if (i2 > 0 && i2 > l1 - 1) {
             l1 = i2;
         }
@@ -120,13 +133,13 @@ public class BlockRedstoneWire extends Block {
         // CraftBukkit end
         if (k1 != l1) {
             world.setData(i, j, k, l1, 2);
-            this.b.add(new ChunkPosition(i, j, k));
-            this.b.add(new ChunkPosition(i - 1, j, k));
-            this.b.add(new ChunkPosition(i + 1, j, k));
-            this.b.add(new ChunkPosition(i, j - 1, k));
-            this.b.add(new ChunkPosition(i, j + 1, k));
-            this.b.add(new ChunkPosition(i, j, k - 1));
-            this.b.add(new ChunkPosition(i, j, k + 1));
+            state.b.add(new ChunkPosition(i, j, k));
+            state.b.add(new ChunkPosition(i - 1, j, k));
+            state.b.add(new ChunkPosition(i + 1, j, k));
+            state.b.add(new ChunkPosition(i, j - 1, k));
+            state.b.add(new ChunkPosition(i, j + 1, k));
+            state.b.add(new ChunkPosition(i, j, k - 1));
+            state.b.add(new ChunkPosition(i, j, k + 1));
         }
     }
 
@@ -249,11 +262,11 @@ public class BlockRedstoneWire extends Block {
     }
 
     public int c(IBlockAccess iblockaccess, int i, int j, int k, int l) {
-        return !this.a ? 0 : this.b(iblockaccess, i, j, k, l);
+        return !this.state.get().a ? 0 : this.b(iblockaccess, i, j, k, l); // CraftBukkit
     }
 
     public int b(IBlockAccess iblockaccess, int i, int j, int k, int l) {
-        if (!this.a) {
+        if (!this.state.get().a) { // CraftBukkit
             return 0;
         } else {
             int i1 = iblockaccess.getData(i, j, k);
@@ -292,7 +305,7 @@ public class BlockRedstoneWire extends Block {
     }
 
     public boolean isPowerSource() {
-        return this.a;
+        return this.state.get().a; // CraftBukkit
     }
 
     public static boolean f(IBlockAccess iblockaccess, int i, int j, int k, int l) {
@@ -15,7 +15,7 @@ public class BlockSapling extends BlockPlant implements IBlockFragilePlantElemen
 
     public static final String[] a = new String[] { "oak", "spruce", "birch", "jungle", "acacia", "roofed_oak"};
     private static final IIcon[] b = new IIcon[a.length];
-    public static TreeType treeType; // CraftBukkit
+    public static final ThreadLocal<TreeType> treeType = new ThreadLocal<TreeType>(); // CraftBukkit - per thread, worlds may tick in parallel
 
     protected BlockSapling() {
         float f = 0.4F;
@@ -35,8 +35,8 @@ public class BlockSapling extends BlockPlant implements IBlockFragilePlantElemen
                 // CraftBukkit start
                 world.captureTreeGeneration = false;
                 if (world.capturedBlockStates.size() > 0) {
-                    TreeType treeType = BlockSapling.treeType;
-                    BlockSapling.treeType = null;
+                    TreeType treeType = BlockSapling.treeType.get();
+                    BlockSapling.treeType.set(null);
                     Location location = new Location(world.getWorld(), i, j, k);
                     List<BlockState> blocks = (List<BlockState>) world.capturedBlockStates.clone();
                     world.capturedBlockStates.clear();
@@ -72,10 +72,10 @@ public class BlockSapling extends BlockPlant implements IBlockFragilePlantElemen
         // Object object = random.nextInt(10) == 0 ? new WorldGenBigTree(true) : new WorldGenTrees(true);
         Object object;
         if (random.nextInt(10) == 0) {
-            treeType = TreeType.BIG_TREE;
+            treeType.set(TreeType.BIG_TREE);
             object = new WorldGenBigTree(true);
         } else {
-            treeType = TreeType.TREE;
+            treeType.set(TreeType.TREE);
             object = new WorldGenTrees(true);
         }
         // CraftBukkit end
@@ -93,7 +93,7 @@ public class BlockSapling extends BlockPlant implements IBlockFragilePlantElemen
             for (i1 = 0; i1 >= -1; --i1) {
                 for (j1 = 0; j1 >= -1; --j1) {
                     if (this.a(world, i + i1, j, k + j1, 1) && this.a(world, i + i1 + 1, j, k + j1, 1) && this.a(world, i + i1, j, k + j1 + 1, 1) && this.a(world, i + i1 + 1, j, k + j1 + 1, 1)) {
-                        treeType = TreeType.MEGA_REDWOOD; // CraftBukkit
+                        treeType.set(TreeType.MEGA_REDWOOD); // CraftBukkit
                         object = new WorldGenMegaTree(false, random.nextBoolean());
                         flag = true;
                         break label78;
@@ -104,13 +104,13 @@ public class BlockSapling extends BlockPlant implements IBlockFragilePlantElemen
             if (!flag) {
                 j1 = 0;
                 i1 = 0;
-                treeType = TreeType.REDWOOD; // CraftBukkit
+                treeType.set(TreeType.REDWOOD); // CraftBukkit
                 object = new WorldGenTaiga2(true);
             }
             break;
 
         case 2:
-            treeType = TreeType.BIRCH; // CraftBukkit
+            treeType.set(TreeType.BIRCH); // CraftBukkit
             object = new WorldGenForest(true, false);
             break;
 
@@ -119,7 +119,7 @@ public class BlockSapling extends BlockPlant implements IBlockFragilePlantElemen
             for (i1 = 0; i1 >= -1; --i1) {
                 for (j1 = 0; j1 >= -1; --j1) {
                     if (this.a(world, i + i1, j, k + j1, 3) && this.a(world, i + i1 + 1, j, k + j1, 3) && this.a(world, i + i1, j, k + j1 + 1, 3) && this.a(world, i + i1 + 1, j, k + j1 + 1, 3)) {
-                        treeType = TreeType.JUNGLE; // CraftBukkit
+                        treeType.set(TreeType.JUNGLE); // CraftBukkit
                         object = new WorldGenJungleTree(true, 10, 20, 3, 3);
                         flag = true;
                         break label93;
@@ -130,13 +130,13 @@ public class BlockSapling extends BlockPlant implements IBlockFragilePlantElemen
             if (!flag) {
                 j1 = 0;
                 i1 = 0;
-                treeType = TreeType.SMALL_JUNGLE; // CraftBukkit
+                treeType.set(TreeType.SMALL_JUNGLE); // CraftBukkit
                 object = new WorldGenTrees(true, 4 + random.nextInt(7), 3, 3, false);
             }
             break;
 
         case 4:
-            treeType = TreeType.ACACIA; // CraftBukkit
+            treeType.set(TreeType.ACACIA); // CraftBukkit
             object = new WorldGenAcaciaTree(true);
             break;
 
@@ -146,7 +146,7 @@ public class BlockSapling extends BlockPlant implements IBlockFragilePlantElemen
                 for (j1 = 0; j1 >= -1; --j1) {
                     if (this.a(world, i + i1, j, k + j1, 5) && this.a(world, i + i1 + 1, j, k + j1, 5) && this.a(world, i + i1, j, k + j1 + 1, 5) && this.a(world, i + i1 + 1, j, k + j1 + 1, 5)) {
                         object = new WorldGenForestTree(true);
-                        treeType = TreeType.DARK_OAK; // CraftBukkit
+                        treeType.set(TreeType.DARK_OAK); // CraftBukkit
                         flag = true;
                         break label108;
                     }
@@ -13,6 +13,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import org.bukkit.Bukkit; // CraftBukkit
+import org.bukkit.craftbukkit.chunkio.ChunkPayloadCache; // CraftBukkit
 
 public class Chunk {
 
@@ -97,6 +98,18 @@ public class Chunk {
 
     public org.bukkit.Chunk bukkitChunk;
     public boolean mustSave;
+    // Compressed map chunk payload shared by bulk packets, payloadVersion changes with every modification
+    private volatile ChunkPayloadCache.Payload payload;
+    private volatile int payloadVersion;
+    // Lets hoppers keep what they found next to them until a block or tile entity in the chunk changes
+    private int blockVersion;
+    // Entities hoppers and chests search for, counted per slice so searches that cannot find any are skipped
+    public static final int ITEM_ENTITIES = 0;
+    public static final int INVENTORY_ENTITIES = 1;
+    public static final int OCELOT_ENTITIES = 2;
+    private final int[][] entityCounts = new int[3][16];
+    // Columns of p() already lit before the chunk was published, see ChunkLightInitializer
+    public java.util.BitSet litColumns;
     // CraftBukkit end
 
     public Chunk(World world, Block[] ablock, int i, int j) {
@@ -227,7 +240,7 @@ public class Chunk {
             }
         }
 
-        this.n = true;
+        this.e(); // CraftBukkit
     }
 
     private void e(int i, int j) {
@@ -297,7 +310,7 @@ public class Chunk {
                 this.world.c(EnumSkyBlock.SKY, i, i1, j);
             }
 
-            this.n = true;
+            this.e(); // CraftBukkit
         }
     }
 
@@ -385,7 +398,7 @@ public class Chunk {
                 this.c(j1, k1, i2, j2);
             }
 
-            this.n = true;
+            this.e(); // CraftBukkit
         }
     }
 
@@ -439,6 +452,12 @@ public class Chunk {
         if (block1 == block && k1 == l) {
             return false;
         } else {
+            // CraftBukkit start
+            ++this.blockVersion;
+            if (this.litColumns != null && org.bukkit.craftbukkit.util.ChunkLighter.changesLight(block1.k(), block1.m(), block.k(), block.m())) {
+                this.litColumns = null; // Lit for the old blocks, p() lights every column again
+            }
+            // CraftBukkit end
             ChunkSection chunksection = this.sections[j >> 4];
             boolean flag = false;
 
@@ -482,6 +501,7 @@ public class Chunk {
                 chunksection.setData(i, j & 15, k, l);
                 if (flag) {
                     this.initLighting();
+                    this.litColumns = null; // CraftBukkit - The sky light was reset
                 } else {
                     int j2 = block.k();
                     int k2 = block1.k();
@@ -526,7 +546,7 @@ public class Chunk {
                     }
                 }
 
-                this.n = true;
+                this.e(); // CraftBukkit
                 return true;
             }
         }
@@ -543,7 +563,8 @@ public class Chunk {
             if (i1 == l) {
                 return false;
             } else {
-                this.n = true;
+                this.e(); // CraftBukkit
+                ++this.blockVersion; // CraftBukkit
                 chunksection.setData(i, j & 15, k, l);
                 if (chunksection.getTypeId(i, j & 15, k) instanceof IContainer) {
                     TileEntity tileentity = this.e(i, j, k);
@@ -573,7 +594,7 @@ public class Chunk {
             this.initLighting();
         }
 
-        this.n = true;
+        this.e(); // CraftBukkit
         if (enumskyblock == EnumSkyBlock.SKY) {
             if (!this.world.worldProvider.g) {
                 chunksection.setSkyLight(i, j & 15, k, l);
@@ -607,7 +628,12 @@ public class Chunk {
     }
 
     public void a(Entity entity) {
-        this.o = true;
+        // CraftBukkit start
+        if (!this.o) {
+            this.o = true;
+            this.queueSave();
+        }
+        // CraftBukkit end
         int i = MathHelper.floor(entity.locX / 16.0D);
         int j = MathHelper.floor(entity.locZ / 16.0D);
 
@@ -635,6 +661,7 @@ public class Chunk {
         entity.ai = k;
         entity.aj = this.locZ;
         this.entitySlices[k].add(entity);
+        this.countEntity(entity, k, 1); // CraftBukkit
     }
 
     public void b(Entity entity) {
@@ -650,7 +677,11 @@ public class Chunk {
             i = this.entitySlices.length - 1;
         }
 
-        this.entitySlices[i].remove(entity);
+        // CraftBukkit start
+        if (this.entitySlices[i].remove(entity)) {
+            this.countEntity(entity, i, -1);
+        }
+        // CraftBukkit end
     }
 
     public boolean d(int i, int j, int k) {
@@ -693,6 +724,7 @@ public class Chunk {
 
     public void a(int i, int j, int k, TileEntity tileentity) {
         ChunkPosition chunkposition = new ChunkPosition(i, j, k);
+        ++this.blockVersion; // CraftBukkit
 
         tileentity.a(this.world);
         tileentity.x = this.locX * 16 + i;
@@ -717,6 +749,7 @@ public class Chunk {
 
     public void f(int i, int j, int k) {
         ChunkPosition chunkposition = new ChunkPosition(i, j, k);
+        ++this.blockVersion; // CraftBukkit
 
         if (this.d) {
             TileEntity tileentity = (TileEntity) this.tileEntities.remove(chunkposition);
@@ -729,6 +762,11 @@ public class Chunk {
 
     public void addEntities() {
         this.d = true;
+        // CraftBukkit start
+        if (this.n || this.o) {
+            this.queueSave();
+        }
+        // CraftBukkit end
         this.world.a(this.tileEntities.values());
 
         for (int i = 0; i < this.entitySlices.length; ++i) {
@@ -746,6 +784,7 @@ public class Chunk {
 
     public void removeEntities() {
         this.d = false;
+        this.clearPayload(); // CraftBukkit
         Iterator iterator = this.tileEntities.values().iterator();
 
         while (iterator.hasNext()) {
@@ -773,9 +812,87 @@ public class Chunk {
     }
 
     public void e() {
-        this.n = true;
+        // CraftBukkit start - Let the chunk provider track dirty chunks for incremental autosave
+        this.invalidatePayload();
+        if (!this.n) {
+            this.n = true;
+            this.queueSave();
+        }
+        // CraftBukkit end
     }
 
+    // CraftBukkit start
+    private void queueSave() {
+        // Chunks are only tracked once loaded, addEntities picks up anything marked before that
+        if (this.d && this.world instanceof WorldServer) {
+            ((WorldServer) this.world).chunkProviderServer.markDirty(this);
+        }
+    }
+
+    public int getBlockVersion() {
+        return this.blockVersion;
+    }
+
+    private void countEntity(Entity entity, int slice, int delta) {
+        if (entity instanceof EntityItem) {
+            this.entityCounts[ITEM_ENTITIES][slice] += delta;
+        } else if (entity instanceof IInventory) {
+            this.entityCounts[INVENTORY_ENTITIES][slice] += delta;
+        } else if (entity instanceof EntityOcelot) {
+            this.entityCounts[OCELOT_ENTITIES][slice] += delta;
+        }
+    }
+
+    public boolean hasEntities(int kind, int minSlice, int maxSlice) {
+        int[] counts = this.entityCounts[kind];
+
+        minSlice = MathHelper.a(minSlice, 0, counts.length - 1);
+        maxSlice = MathHelper.a(maxSlice, 0, counts.length - 1);
+        for (int i = minSlice; i <= maxSlice; ++i) {
+            if (counts[i] > 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public int getPayloadVersion() {
+        return this.payloadVersion;
+    }
+
+    public ChunkPayloadCache.Payload getPayload() {
+        ChunkPayloadCache.Payload payload = this.payload;
+        return payload != null && payload.version == this.payloadVersion ? payload : null;
+    }
+
+    // Called by the thread that compressed the payload, it is dropped if the chunk changed or unloaded meanwhile
+    public synchronized void setPayload(ChunkPayloadCache.Payload payload) {
+        if (!this.d || payload.version != this.payloadVersion || !ChunkPayloadCache.reserve(payload)) {
+            return;
+        }
+
+        if (this.payload != null) {
+            ChunkPayloadCache.release(this.payload);
+        }
+        this.payload = payload;
+    }
+
+    public void invalidatePayload() {
+        ++this.payloadVersion;
+        if (this.payload != null) {
+            this.clearPayload();
+        }
+    }
+
+    private synchronized void clearPayload() {
+        if (this.payload != null) {
+            ChunkPayloadCache.release(this.payload);
+            this.payload = null;
+        }
+    }
+    // CraftBukkit end
+
     public void a(Entity entity, AxisAlignedBB axisalignedbb, List list, IEntitySelector ientityselector) {
         int i = MathHelper.floor((axisalignedbb.b - 2.0D) / 16.0D);
         int j = MathHelper.floor((axisalignedbb.e + 2.0D) / 16.0D);
@@ -931,6 +1048,7 @@ public class Chunk {
 
     public void a(ChunkSection[] achunksection) {
         this.sections = achunksection;
+        this.invalidatePayload(); // CraftBukkit
     }
 
     public BiomeBase getBiome(int i, int j, WorldChunkManager worldchunkmanager) {
@@ -941,6 +1059,7 @@ public class Chunk {
 
             k = biomebase.id;
             this.v[j << 4 | i] = (byte) (k & 255);
+            this.invalidatePayload(); // CraftBukkit
         }
 
         return BiomeBase.getBiome(k) == null ? BiomeBase.PLAINS : BiomeBase.getBiome(k);
@@ -952,6 +1071,7 @@ public class Chunk {
 
     public void a(byte[] abyte) {
         this.v = abyte;
+        this.invalidatePayload(); // CraftBukkit
     }
 
     public void n() {
@@ -1011,8 +1131,19 @@ public class Chunk {
         this.lit = true;
         if (!this.world.worldProvider.g) {
             if (this.world.b(this.locX * 16 - 1, 0, this.locZ * 16 - 1, this.locX * 16 + 1, 63, this.locZ * 16 + 1)) {
+                // CraftBukkit start - Some columns were lit on the chunk I/O thread
+                java.util.BitSet litColumns = this.litColumns;
+                this.litColumns = null;
+                // CraftBukkit end
+
                 for (int i = 0; i < 16; ++i) {
                     for (int j = 0; j < 16; ++j) {
+                        // CraftBukkit start
+                        if (litColumns != null && litColumns.get(i << 4 | j)) {
+                            continue;
+                        }
+                        // CraftBukkit end
+
                         if (!this.f(i, j)) {
                             this.lit = false;
                             break;
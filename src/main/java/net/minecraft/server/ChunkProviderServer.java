@@ -17,6 +17,7 @@ import java.util.Random;
 
 import org.bukkit.Server;
 import org.bukkit.craftbukkit.chunkio.ChunkIOExecutor;
+import org.bukkit.craftbukkit.generator.NormalChunkGenerator;
 import org.bukkit.craftbukkit.util.LongHash;
 import org.bukkit.craftbukkit.util.LongHashSet;
 import org.bukkit.craftbukkit.util.LongObjectHashMap;
@@ -35,6 +36,21 @@ public class ChunkProviderServer implements IChunkProvider {
     public LongObjectHashMap<Chunk> chunks = new LongObjectHashMap<Chunk>();
     public WorldServer world;
     // CraftBukkit end
+    // CraftBukkit start - The vanilla generators are not thread safe. The chunk I/O threads create terrain with a generator of
+    // their own that leaves out the structures, the world's generator stays with the main thread. Some biomes keep generation
+    // state of their own, so only one vanilla terrain is created at a time across all worlds. The biome layers lock
+    // themselves, see SynchronizedWorldChunkManager
+    private static final Object terrainLock = new Object();
+    private IChunkProvider terrainGenerator;
+    // CraftBukkit end
+    // CraftBukkit start - Incremental autosave, chunks are queued here when they become dirty so autosave never walks every loaded chunk
+    private final LongHashSet dirtyChunks = new LongHashSet();
+    private final LongHashSet autosaveQueue = new LongHashSet();
+    private int autosaveTotal;
+    private int autosaveSaved;
+    private int autosaveTick;
+    private int autosavePeriod = 1;
+    // CraftBukkit end
 
     public ChunkProviderServer(WorldServer worldserver, IChunkLoader ichunkloader, IChunkProvider ichunkprovider) {
         this.emptyChunk = new EmptyChunk(worldserver, 0, 0);
@@ -111,8 +127,8 @@ public class ChunkProviderServer implements IChunkProvider {
             loader = (ChunkRegionLoader) this.f;
         }
 
-        // We can only use the queue for already generated chunks
-        if (chunk == null && loader != null && loader.chunkExists(this.world, i, j)) {
+        // We can only use the queue for already generated chunks, or for new ones when the generator may run off the main thread
+        if (chunk == null && loader != null && (loader.chunkExists(this.world, i, j) || this.canGenerateAsync())) {
             if (runnable != null) {
                 ChunkIOExecutor.queueChunkLoad(this.world, loader, this, i, j, runnable);
                 return null;
@@ -142,17 +158,7 @@ public class ChunkProviderServer implements IChunkProvider {
                 if (this.chunkProvider == null) {
                     chunk = this.emptyChunk;
                 } else {
-                    try {
-                        chunk = this.chunkProvider.getOrCreateChunk(i, j);
-                    } catch (Throwable throwable) {
-                        CrashReport crashreport = CrashReport.a(throwable, "Exception generating new chunk");
-                        CrashReportSystemDetails crashreportsystemdetails = crashreport.a("Chunk to be generated");
-
-                        crashreportsystemdetails.a("Location", String.format("%d,%d", new Object[] { Integer.valueOf(i), Integer.valueOf(j)}));
-                        crashreportsystemdetails.a("Position hash", Long.valueOf(LongHash.toLong(i, j))); // CraftBukkit - Use LongHash
-                        crashreportsystemdetails.a("Generator", this.chunkProvider.getName());
-                        throw new ReportedException(crashreport);
-                    }
+                    chunk = this.generateChunk(i, j); // CraftBukkit - moved to generateChunk
                 }
                 newChunk = true; // CraftBukkit
             }
@@ -192,6 +198,50 @@ public class ChunkProviderServer implements IChunkProvider {
         return chunk;
     }
 
+    // CraftBukkit start
+    public boolean canGenerateAsync() {
+        // Plugin generators make no promise about thread safety
+        return ChunkIOExecutor.isAsyncGenerationEnabled() && this.chunkProvider instanceof NormalChunkGenerator && ((NormalChunkGenerator) this.chunkProvider).canCreateTerrainGenerator();
+    }
+
+    // Only creates the terrain, the chunk is not added to the world. Called from the chunk I/O threads, the structures are
+    // recreated by the world's generator once the chunk is added
+    public Chunk generateTerrain(int i, int j) {
+        synchronized (terrainLock) {
+            if (this.terrainGenerator == null) {
+                this.terrainGenerator = ((NormalChunkGenerator) this.chunkProvider).createTerrainGenerator();
+            }
+
+            return this.generateChunk(this.terrainGenerator, i, j);
+        }
+    }
+
+    // Creates the terrain with the world's generator, on the main thread
+    public Chunk generateChunk(int i, int j) {
+        if (this.chunkProvider instanceof NormalChunkGenerator) {
+            synchronized (terrainLock) {
+                return this.generateChunk(this.chunkProvider, i, j);
+            }
+        }
+
+        return this.generateChunk(this.chunkProvider, i, j);
+    }
+
+    private Chunk generateChunk(IChunkProvider ichunkprovider, int i, int j) {
+        try {
+            return ichunkprovider.getOrCreateChunk(i, j);
+        } catch (Throwable throwable) {
+            CrashReport crashreport = CrashReport.a(throwable, "Exception generating new chunk");
+            CrashReportSystemDetails crashreportsystemdetails = crashreport.a("Chunk to be generated");
+
+            crashreportsystemdetails.a("Location", String.format("%d,%d", new Object[] { Integer.valueOf(i), Integer.valueOf(j)}));
+            crashreportsystemdetails.a("Position hash", Long.valueOf(LongHash.toLong(i, j))); // CraftBukkit - Use LongHash
+            crashreportsystemdetails.a("Generator", ichunkprovider.getName());
+            throw new ReportedException(crashreport);
+        }
+    }
+    // CraftBukkit end
+
     public Chunk getOrCreateChunk(int i, int j) {
         // CraftBukkit start
         Chunk chunk = (Chunk) this.chunks.get(LongHash.toLong(i, j));
@@ -314,17 +364,106 @@ public class ChunkProviderServer implements IChunkProvider {
                     return false;
                 }
             }
+
+            // CraftBukkit start - Keep the dirty set in step, chunks with entities are saved every period
+            if (flag) {
+                long key = LongHash.toLong(chunk.locX, chunk.locZ);
+                this.autosaveQueue.remove(key);
+                if (chunk.o) {
+                    this.dirtyChunks.add(key);
+                } else {
+                    this.dirtyChunks.remove(key);
+                }
+            }
+            // CraftBukkit end
         }
 
         return true;
     }
 
+    // CraftBukkit start
+    public void markDirty(Chunk chunk) {
+        this.dirtyChunks.add(chunk.locX, chunk.locZ);
+    }
+
+    /**
+     * Starts a new autosave period. Every chunk that became dirty since the
+     * last period is queued and saved in even steps by saveIncremental, anything
+     * still left from the last period stays queued.
+     */
+    public void startIncrementalSave(int period) {
+        for (long key : this.dirtyChunks.popAll()) {
+            this.autosaveQueue.add(key);
+        }
+
+        this.autosavePeriod = Math.max(1, period);
+        this.autosaveTick = 0;
+        this.autosaveSaved = 0;
+        this.autosaveTotal = this.autosaveQueue.size();
+    }
+
+    /**
+     * Saves queued chunks until this tick's share of the period is done or
+     * the deadline passes.
+     *
+     * @param deadline System.nanoTime() value to stop at
+     */
+    public void saveIncremental(long deadline) {
+        if (this.autosaveTick < this.autosavePeriod) {
+            ++this.autosaveTick;
+        }
+
+        while (!this.autosaveQueue.isEmpty() && this.autosaveSaved < this.getAutosaveTarget() && System.nanoTime() < deadline) {
+            long key = this.autosaveQueue.popFirst();
+            Chunk chunk = this.chunks.get(key);
+            ++this.autosaveSaved;
+
+            // Unloaded chunks were saved when they were unloaded
+            if (chunk == null) {
+                continue;
+            }
+
+            if (chunk.a(true)) {
+                this.saveChunkNOP(chunk);
+                this.saveChunk(chunk);
+                chunk.n = false;
+            }
+
+            if (chunk.o) {
+                this.dirtyChunks.add(key);
+            }
+        }
+    }
+
+    // Chunks that should have been saved by now to finish on time
+    private int getAutosaveTarget() {
+        return (int) (((long) this.autosaveTotal * this.autosaveTick + this.autosavePeriod - 1) / this.autosavePeriod);
+    }
+
+    public int getAutosaveQueued() {
+        return this.autosaveQueue.size();
+    }
+
+    /**
+     * @return how many chunks the incremental autosave is behind its even schedule
+     */
+    public int getAutosaveBacklog() {
+        return Math.max(0, Math.min(this.getAutosaveTarget() - this.autosaveSaved, this.autosaveQueue.size()));
+    }
+    // CraftBukkit end
+
     public void c() {
         if (this.f != null) {
             this.f.b();
         }
     }
 
+    // CraftBukkit start
+    public IChunkLoader getChunkLoader() {
+        return this.f;
+    }
+    // CraftBukkit end
+
     public boolean unloadChunks() {
         if (!this.world.savingDisabled) {
             // CraftBukkit start
@@ -342,6 +481,7 @@ public class ChunkProviderServer implements IChunkProvider {
                         this.saveChunk(chunk);
                         this.saveChunkNOP(chunk);
                         this.chunks.remove(chunkcoordinates); // CraftBukkit
+                        this.dirtyChunks.remove(chunkcoordinates); // CraftBukkit
                     }
 
                     // this.unloadQueue.remove(olong);
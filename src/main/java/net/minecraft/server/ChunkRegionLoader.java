@@ -4,22 +4,66 @@ import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+// CraftBukkit start
+import org.bukkit.craftbukkit.chunkio.ChunkIOExecutor;
+import org.bukkit.craftbukkit.chunkio.ChunkSaveStats;
+import org.bukkit.craftbukkit.util.LongHash;
+// CraftBukkit end
 
 public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
 
     private static final Logger a = LogManager.getLogger();
-    private List b = new ArrayList();
-    private Set c = new HashSet();
-    private Object d = new Object();
+    // CraftBukkit start - Pending saves grouped by region file and keyed by coordinate so repeated saves replace each other in constant time
+    private final LinkedHashMap<Long, PendingRegion> b = new LinkedHashMap<Long, PendingRegion>();
+    private final Map<ChunkCoordIntPair, PendingChunk> c = new HashMap<ChunkCoordIntPair, PendingChunk>(); // Chunks handed to a writer but not on disk yet
+    private final Object d = new Object();
     private final File e;
+    private final Set<Long> writing = new HashSet<Long>();
+    private int pending;
+    private final ChunkSaveStats stats = new ChunkSaveStats();
+
+    private static class PendingRegion {
+        final long region;
+        final long queued = System.nanoTime();
+        final LinkedHashMap<ChunkCoordIntPair, PendingChunk> chunks = new LinkedHashMap<ChunkCoordIntPair, PendingChunk>();
+
+        PendingRegion(long region) {
+            this.region = region;
+        }
+    }
+
+    // The sections are copy-on-write snapshots that are only turned into NBT by whichever thread needs the compound first
+    private static class PendingChunk {
+        private final NBTTagCompound compound;
+        private ChunkSection[] sections;
+        private final boolean sky;
+
+        PendingChunk(NBTTagCompound compound, ChunkSection[] sections, boolean sky) {
+            this.compound = compound;
+            this.sections = sections;
+            this.sky = sky;
+        }
+
+        synchronized NBTTagCompound getCompound() {
+            if (this.sections != null) {
+                this.compound.getCompound("Level").set("Sections", ChunkRegionLoader.a(this.sections, this.sky));
+                this.sections = null;
+            }
+
+            return this.compound;
+        }
+    }
+    // CraftBukkit end
 
     public ChunkRegionLoader(File file1) {
         this.e = file1;
@@ -27,19 +71,43 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
 
     // CraftBukkit start
     public boolean chunkExists(World world, int i, int j) {
-        ChunkCoordIntPair chunkcoordintpair = new ChunkCoordIntPair(i, j);
+        if (this.getPending(new ChunkCoordIntPair(i, j)) != null) {
+            return true;
+        }
 
+        return RegionFileCache.a(this.e, i, j).chunkExists(i & 31, j & 31);
+    }
+
+    private PendingChunk getPending(ChunkCoordIntPair chunkcoordintpair) {
         synchronized (this.d) {
-            if (this.c.contains(chunkcoordintpair)) {
-                for (int k = 0; k < this.b.size(); ++k) {
-                    if (((PendingChunkToSave) this.b.get(k)).a.equals(chunkcoordintpair)) {
-                        return true;
-                    }
-                }
-            }
+            PendingRegion region = this.b.get(LongHash.toLong(chunkcoordintpair.x >> 5, chunkcoordintpair.z >> 5));
+            PendingChunk pendingchunk = region == null ? null : region.chunks.get(chunkcoordintpair);
+
+            return pendingchunk != null ? pendingchunk : this.c.get(chunkcoordintpair);
         }
+    }
 
-        return RegionFileCache.a(this.e, i, j).chunkExists(i & 31, j & 31);
+    public ChunkSaveStats getSaveStats() {
+        return this.stats;
+    }
+
+    public int getPendingSaves() {
+        synchronized (this.d) {
+            return this.pending;
+        }
+    }
+
+    /**
+     * @return milliseconds since the oldest save still waiting for a writer was queued
+     */
+    public long getOldestPendingAge() {
+        synchronized (this.d) {
+            if (this.b.isEmpty()) {
+                return 0L;
+            }
+
+            return (System.nanoTime() - this.b.values().iterator().next().queued) / 1000000L;
+        }
     }
     // CraftBukkit end
 
@@ -58,20 +126,10 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
 
     public Object[] loadChunk(World world, int i, int j) {
         // CraftBukkit end
-        NBTTagCompound nbttagcompound = null;
-        ChunkCoordIntPair chunkcoordintpair = new ChunkCoordIntPair(i, j);
-        Object object = this.d;
-
-        synchronized (this.d) {
-            if (this.c.contains(chunkcoordintpair)) {
-                for (int k = 0; k < this.b.size(); ++k) {
-                    if (((PendingChunkToSave) this.b.get(k)).a.equals(chunkcoordintpair)) {
-                        nbttagcompound = ((PendingChunkToSave) this.b.get(k)).b;
-                        break;
-                    }
-                }
-            }
-        }
+        // CraftBukkit start
+        PendingChunk pendingchunk = this.getPending(new ChunkCoordIntPair(i, j));
+        NBTTagCompound nbttagcompound = pendingchunk == null ? null : pendingchunk.getCompound();
+        // CraftBukkit end
 
         if (nbttagcompound == null) {
             DataInputStream datainputstream = RegionFileCache.c(this.e, i, j);
@@ -83,10 +141,10 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
             nbttagcompound = NBTCompressedStreamTools.a(datainputstream);
         }
 
-        return this.a(world, i, j, nbttagcompound);
+        return this.a(world, i, j, nbttagcompound, pendingchunk != null); // CraftBukkit
     }
 
-    protected Object[] a(World world, int i, int j, NBTTagCompound nbttagcompound) { // CraftBukkit - return Chunk -> Object[]
+    protected Object[] a(World world, int i, int j, NBTTagCompound nbttagcompound, boolean pending) { // CraftBukkit - return Chunk -> Object[], add pending
         if (!nbttagcompound.hasKeyOfType("Level", 10)) {
             a.error("Chunk file at " + i + "," + j + " is missing level data, skipping");
             return null;
@@ -94,7 +152,7 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
             a.error("Chunk file at " + i + "," + j + " is missing block data, skipping");
             return null;
         } else {
-            Chunk chunk = this.a(world, nbttagcompound.getCompound("Level"));
+            Chunk chunk = this.a(world, nbttagcompound.getCompound("Level"), pending); // CraftBukkit - add pending
 
             if (!chunk.a(i, j)) {
                 a.error("Chunk file at " + i + "," + j + " is in the wrong location; relocating. (Expected " + i + ", " + j + ", got " + chunk.locX + ", " + chunk.locZ + ")");
@@ -113,7 +171,7 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
                     }
                 }
                 // CraftBukkit end
-                chunk = this.a(world, nbttagcompound.getCompound("Level"));
+                chunk = this.a(world, nbttagcompound.getCompound("Level"), pending); // CraftBukkit - add pending
             }
 
             // CraftBukkit start
@@ -139,95 +197,145 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
             NBTTagCompound nbttagcompound1 = new NBTTagCompound();
 
             nbttagcompound.set("Level", nbttagcompound1);
-            this.a(chunk, world, nbttagcompound1);
-            this.a(chunk.l(), nbttagcompound);
+            // CraftBukkit start - Only snapshot the sections here, the save threads turn them into NBT
+            ChunkSection[] achunksection = this.a(chunk, world, nbttagcompound1);
+            this.a(chunk.l(), new PendingChunk(nbttagcompound, achunksection, !world.worldProvider.g));
+            // CraftBukkit end
         } catch (Exception exception) {
             exception.printStackTrace();
         }
     }
 
     protected void a(ChunkCoordIntPair chunkcoordintpair, NBTTagCompound nbttagcompound) {
-        Object object = this.d;
+        this.a(chunkcoordintpair, new PendingChunk(nbttagcompound, null, false)); // CraftBukkit
+    }
+
+    // CraftBukkit start
+    private void a(ChunkCoordIntPair chunkcoordintpair, PendingChunk pendingchunk) {
+        boolean full;
 
         synchronized (this.d) {
-            if (this.c.contains(chunkcoordintpair)) {
-                for (int i = 0; i < this.b.size(); ++i) {
-                    if (((PendingChunkToSave) this.b.get(i)).a.equals(chunkcoordintpair)) {
-                        this.b.set(i, new PendingChunkToSave(chunkcoordintpair, nbttagcompound));
-                        return;
-                    }
-                }
+            long key = LongHash.toLong(chunkcoordintpair.x >> 5, chunkcoordintpair.z >> 5);
+            PendingRegion region = this.b.get(key);
+
+            if (region == null) {
+                region = new PendingRegion(key);
+                this.b.put(key, region);
+                ChunkIOExecutor.queueChunkSave(this);
             }
 
-            this.b.add(new PendingChunkToSave(chunkcoordintpair, nbttagcompound));
-            this.c.add(chunkcoordintpair);
-            FileIOThread.a.a(this);
+            if (region.chunks.put(chunkcoordintpair, pendingchunk) == null) {
+                ++this.pending;
+            }
+
+            full = this.pending > ChunkIOExecutor.getSaveQueueLimit();
+        }
+
+        // Back-pressure, once the writers fall too far behind the caller writes a region itself
+        if (full) {
+            this.c();
         }
+        // CraftBukkit end
     }
 
+    // CraftBukkit start - Write every pending chunk of one region file, regions already being written by another thread are skipped
     public boolean c() {
-        PendingChunkToSave pendingchunktosave = null;
-        Object object = this.d;
+        PendingRegion region = null;
 
         synchronized (this.d) {
-            if (this.b.isEmpty()) {
-                return false;
+            Iterator<PendingRegion> iterator = this.b.values().iterator();
+
+            while (iterator.hasNext()) {
+                PendingRegion candidate = iterator.next();
+
+                if (!this.writing.contains(candidate.region)) {
+                    region = candidate;
+                    iterator.remove();
+                    this.writing.add(region.region);
+                    this.pending -= region.chunks.size();
+                    this.c.putAll(region.chunks);
+                    break;
+                }
             }
+        }
 
-            pendingchunktosave = (PendingChunkToSave) this.b.remove(0);
-            this.c.remove(pendingchunktosave.a);
+        if (region == null) {
+            return false;
         }
 
-        if (pendingchunktosave != null) {
-            try {
-                this.a(pendingchunktosave);
-            } catch (Exception exception) {
-                exception.printStackTrace();
+        try {
+            for (Map.Entry<ChunkCoordIntPair, PendingChunk> entry : region.chunks.entrySet()) {
+                try {
+                    this.stats.record(this.a(entry.getKey(), entry.getValue().getCompound()));
+                } catch (Exception exception) {
+                    exception.printStackTrace();
+                }
+            }
+        } finally {
+            synchronized (this.d) {
+                this.c.keySet().removeAll(region.chunks.keySet());
+
+                this.writing.remove(region.region);
+                // Saves queued for this region while it was written were skipped by the other writers, which may have stopped since
+                if (this.b.containsKey(region.region)) {
+                    ChunkIOExecutor.queueChunkSave(this);
+                }
+                this.d.notifyAll();
             }
         }
 
         return true;
     }
 
-    public void a(PendingChunkToSave pendingchunktosave) throws java.io.IOException { // CraftBukkit - public -> private, added throws
-        DataOutputStream dataoutputstream = RegionFileCache.d(this.e, pendingchunktosave.a.x, pendingchunktosave.a.z);
+    private int a(ChunkCoordIntPair chunkcoordintpair, NBTTagCompound nbttagcompound) throws java.io.IOException {
+        DataOutputStream dataoutputstream = RegionFileCache.d(this.e, chunkcoordintpair.x, chunkcoordintpair.z);
 
-        NBTCompressedStreamTools.a(pendingchunktosave.b, (DataOutput) dataoutputstream);
+        NBTCompressedStreamTools.a(nbttagcompound, (DataOutput) dataoutputstream);
         dataoutputstream.close();
+        return dataoutputstream.size();
     }
 
+    public void a(PendingChunkToSave pendingchunktosave) throws java.io.IOException { // CraftBukkit - public -> private, added throws
+        this.a(pendingchunktosave.a, pendingchunktosave.b);
+    }
+    // CraftBukkit end
+
     public void b(World world, Chunk chunk) {}
 
     public void a() {}
 
     public void b() {
-        while (this.c()) {
-            ;
+        // CraftBukkit start - Drain on this thread, then wait for regions that are still being written by the save threads
+        while (true) {
+            while (this.c()) {
+                ;
+            }
+
+            synchronized (this.d) {
+                if (this.b.isEmpty() && this.writing.isEmpty()) {
+                    return;
+                }
+
+                try {
+                    this.d.wait(100L);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
         }
+        // CraftBukkit end
     }
 
-    private void a(Chunk chunk, World world, NBTTagCompound nbttagcompound) {
-        nbttagcompound.setByte("V", (byte) 1);
-        nbttagcompound.setInt("xPos", chunk.locX);
-        nbttagcompound.setInt("zPos", chunk.locZ);
-        nbttagcompound.setLong("LastUpdate", world.getTime());
-        nbttagcompound.setIntArray("HeightMap", chunk.heightMap);
-        nbttagcompound.setBoolean("TerrainPopulated", chunk.done);
-        nbttagcompound.setBoolean("LightPopulated", chunk.lit);
-        nbttagcompound.setLong("InhabitedTime", chunk.s);
-        ChunkSection[] achunksection = chunk.getSections();
+    // CraftBukkit start - Build the section list from snapshots, usually on a save thread
+    private static NBTTagList a(ChunkSection[] achunksection, boolean flag) {
         NBTTagList nbttaglist = new NBTTagList();
-        boolean flag = !world.worldProvider.g;
-        ChunkSection[] achunksection1 = achunksection;
-        int i = achunksection.length;
-
-        NBTTagCompound nbttagcompound1;
 
-        for (int j = 0; j < i; ++j) {
-            ChunkSection chunksection = achunksection1[j];
+        for (int j = 0; j < achunksection.length; ++j) {
+            ChunkSection chunksection = achunksection[j];
 
             if (chunksection != null) {
-                nbttagcompound1 = new NBTTagCompound();
+                NBTTagCompound nbttagcompound1 = new NBTTagCompound();
                 nbttagcompound1.setByte("Y", (byte) (chunksection.getYPosition() >> 4 & 255));
                 nbttagcompound1.setByteArray("Blocks", chunksection.getIdArray());
                 if (chunksection.getExtendedIdArray() != null) {
@@ -246,8 +354,34 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
             }
         }
 
-        nbttagcompound.set("Sections", nbttaglist);
-        nbttagcompound.setByteArray("Biomes", chunk.m());
+        return nbttaglist;
+    }
+    // CraftBukkit end
+
+    private ChunkSection[] a(Chunk chunk, World world, NBTTagCompound nbttagcompound) { // CraftBukkit - return the section snapshots
+        nbttagcompound.setByte("V", (byte) 1);
+        nbttagcompound.setInt("xPos", chunk.locX);
+        nbttagcompound.setInt("zPos", chunk.locZ);
+        nbttagcompound.setLong("LastUpdate", world.getTime());
+        nbttagcompound.setIntArray("HeightMap", chunk.heightMap.clone()); // CraftBukkit - clone
+        nbttagcompound.setBoolean("TerrainPopulated", chunk.done);
+        nbttagcompound.setBoolean("LightPopulated", chunk.lit);
+        nbttagcompound.setLong("InhabitedTime", chunk.s);
+        // CraftBukkit start - Copy-on-write snapshots, see a(ChunkSection[], boolean)
+        ChunkSection[] achunksection = chunk.getSections();
+        ChunkSection[] snapshots = new ChunkSection[achunksection.length];
+        int i;
+
+        for (i = 0; i < achunksection.length; ++i) {
+            if (achunksection[i] != null) {
+                snapshots[i] = achunksection[i].snapshot();
+            }
+        }
+
+        nbttagcompound.setByteArray("Biomes", chunk.m().clone());
+        // CraftBukkit end
+        NBTTagCompound nbttagcompound1;
+
         chunk.o = false;
         NBTTagList nbttaglist1 = new NBTTagList();
 
@@ -303,9 +437,11 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
 
             nbttagcompound.set("TileTicks", nbttaglist3);
         }
+
+        return snapshots; // CraftBukkit
     }
 
-    private Chunk a(World world, NBTTagCompound nbttagcompound) {
+    private Chunk a(World world, NBTTagCompound nbttagcompound, boolean pending) { // CraftBukkit - add pending
         int i = nbttagcompound.getInt("xPos");
         int j = nbttagcompound.getInt("zPos");
         Chunk chunk = new Chunk(world, i, j);
@@ -335,6 +471,11 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
                 chunksection.setSkyLightArray(new NibbleArray(nbttagcompound1.getByteArray("SkyLight"), 4));
             }
 
+            // CraftBukkit start - The arrays of a pending save may still be written out, copy them before the first write
+            if (pending) {
+                chunksection.markShared();
+            }
+            // CraftBukkit end
             chunksection.recalcBlockCounts();
             achunksection[b1] = chunksection;
         }
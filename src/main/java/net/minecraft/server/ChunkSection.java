@@ -33,6 +33,84 @@ public class ChunkSection {
         return new NibbleArray(data, 4);
     }
 
+    // Arrays still shared with a save snapshot, they are copied before the first write
+    private static final int SHARED_IDS = 1;
+    private static final int SHARED_EXT = 2;
+    private static final int SHARED_DATA = 4;
+    private static final int SHARED_EMITTED = 8;
+    private static final int SHARED_SKY = 16;
+    private int shared;
+
+    // One bit per block that takes random ticks, indexed like blockIds, null when there are none
+    private long[] tickingBlocks;
+
+    private static long[] markTicking(long[] bits, int index) {
+        if (bits == null) {
+            bits = new long[64];
+        }
+        bits[index >> 6] |= 1L << index;
+        return bits;
+    }
+
+    /**
+     * Copy-on-write copy of this section for saving off the main thread. Both
+     * sections share the arrays until one of them writes to them.
+     */
+    public ChunkSection snapshot() {
+        ChunkSection copy = new ChunkSection(this.yPos, true);
+        copy.nonEmptyBlockCount = this.nonEmptyBlockCount;
+        copy.tickingBlockCount = this.tickingBlockCount;
+        copy.blockIds = this.blockIds;
+        copy.extBlockIds = this.extBlockIds;
+        copy.blockData = this.blockData;
+        copy.emittedLight = this.emittedLight;
+        copy.skyLight = this.skyLight;
+        copy.compactId = this.compactId;
+        copy.compactExtId = this.compactExtId;
+        copy.compactData = this.compactData;
+        copy.compactEmitted = this.compactEmitted;
+        copy.compactSky = this.compactSky;
+        copy.tickingBlocks = this.tickingBlocks;
+        copy.shared = this.shared = SHARED_IDS | SHARED_EXT | SHARED_DATA | SHARED_EMITTED | SHARED_SKY;
+        return copy;
+    }
+
+    /**
+     * Marks the arrays as shared with another owner, such as the compound of a
+     * save that is still pending, so they are copied before the first write.
+     */
+    public void markShared() {
+        this.shared = SHARED_IDS | SHARED_EXT | SHARED_DATA | SHARED_EMITTED | SHARED_SKY;
+    }
+
+    private void unshare(int mask) {
+        int copy = this.shared & mask;
+        if (copy == 0) {
+            return;
+        }
+
+        if ((copy & SHARED_IDS) != 0 && this.blockIds != null) {
+            this.blockIds = this.blockIds.clone();
+        }
+        if ((copy & SHARED_IDS) != 0 && this.tickingBlocks != null) {
+            this.tickingBlocks = this.tickingBlocks.clone();
+        }
+        if ((copy & SHARED_EXT) != 0 && this.extBlockIds != null) {
+            this.extBlockIds = new NibbleArray(this.extBlockIds.a.clone(), 4);
+        }
+        if ((copy & SHARED_DATA) != 0 && this.blockData != null) {
+            this.blockData = new NibbleArray(this.blockData.a.clone(), 4);
+        }
+        if ((copy & SHARED_EMITTED) != 0 && this.emittedLight != null) {
+            this.emittedLight = new NibbleArray(this.emittedLight.a.clone(), 4);
+        }
+        if ((copy & SHARED_SKY) != 0 && this.skyLight != null) {
+            this.skyLight = new NibbleArray(this.skyLight.a.clone(), 4);
+        }
+
+        this.shared &= ~mask;
+    }
+
     private boolean canBeCompact(byte[] array) {
         byte value = array[0];
         for (int i = 1; i < array.length; i++) {
@@ -104,6 +182,7 @@ public class ChunkSection {
         if (block == block1) {
             return;
         }
+        this.unshare(SHARED_IDS | SHARED_EXT);
         // CraftBukkit end
 
         if (block1 != Blocks.AIR) {
@@ -122,6 +201,18 @@ public class ChunkSection {
 
         int i1 = Block.getId(block);
 
+        // CraftBukkit start - Keep the ticking blocks index
+        int index = j << 8 | k << 4 | i;
+        if (block.isTicking()) {
+            this.tickingBlocks = markTicking(this.tickingBlocks, index);
+        } else if (this.tickingBlocks != null) {
+            this.tickingBlocks[index >> 6] &= ~(1L << index);
+            if (this.tickingBlockCount == 0) {
+                this.tickingBlocks = null;
+            }
+        }
+        // CraftBukkit end
+
         // CraftBukkit start - Compact storage
         if (this.blockIds == null) {
             this.blockIds = new byte[4096];
@@ -152,6 +243,7 @@ public class ChunkSection {
 
     public void setData(int i, int j, int k, int l) {
         // CraftBukkit start - Compact storage
+        this.unshare(SHARED_DATA);
         if (this.blockData == null) {
             if (this.compactData == l) {
                 return;
@@ -170,12 +262,26 @@ public class ChunkSection {
         return this.tickingBlockCount > 0;
     }
 
+    // CraftBukkit start
+    /**
+     * Whether the block at the position takes random ticks, without looking
+     * the block up.
+     */
+    public boolean isTicking(int i, int j, int k) {
+        long[] bits = this.tickingBlocks;
+        int index = j << 8 | k << 4 | i;
+
+        return bits != null && (bits[index >> 6] & 1L << index) != 0L;
+    }
+    // CraftBukkit end
+
     public int getYPosition() {
         return this.yPos;
     }
 
     public void setSkyLight(int i, int j, int k, int l) {
         // CraftBukkit start - Compact storage
+        this.unshare(SHARED_SKY);
         if (this.skyLight == null) {
             if (this.compactSky == l) {
                 return;
@@ -197,6 +303,7 @@ public class ChunkSection {
 
     public void setEmittedLight(int i, int j, int k, int l) {
         // CraftBukkit start - Compact storage
+        this.unshare(SHARED_EMITTED);
         if (this.emittedLight == null) {
             if (this.compactEmitted == l) {
                 return;
@@ -218,8 +325,10 @@ public class ChunkSection {
 
     public void recalcBlockCounts() {
         // CraftBukkit start - Optimize for speed
+        this.unshare(SHARED_IDS | SHARED_EXT); // Invalid ids are cleared in place
         int cntNonEmpty = 0;
         int cntTicking = 0;
+        long[] ticking = null;
 
         if (this.blockIds == null) {
             int id = this.compactId;
@@ -234,6 +343,8 @@ public class ChunkSection {
                         cntNonEmpty = 4096;
                         if (block.isTicking()) {
                             cntTicking = 4096;
+                            ticking = new long[64];
+                            Arrays.fill(ticking, -1L);
                         }
                     }
                 }
@@ -251,6 +362,7 @@ public class ChunkSection {
                             ++cntNonEmpty;
                             if (block.isTicking()) {
                                 ++cntTicking;
+                                ticking = markTicking(ticking, off);
                             }
                         }
                     }
@@ -265,6 +377,7 @@ public class ChunkSection {
                             ++cntNonEmpty;
                             if (block.isTicking()) {
                                 ++cntTicking;
+                                ticking = markTicking(ticking, off);
                             }
                         }
                     }
@@ -284,6 +397,7 @@ public class ChunkSection {
                             ++cntNonEmpty;
                             if (Block.getById(l).isTicking()) {
                                 ++cntTicking;
+                                ticking = markTicking(ticking, off);
                             }
                         }
                     }
@@ -301,6 +415,7 @@ public class ChunkSection {
                             ++cntNonEmpty;
                             if (Block.getById(l).isTicking()) {
                                 ++cntTicking;
+                                ticking = markTicking(ticking, off);
                             }
                         }
                     }
@@ -314,6 +429,7 @@ public class ChunkSection {
                             ++cntNonEmpty;
                             if (Block.getById(l).isTicking()) {
                                 ++cntTicking;
+                                ticking = markTicking(ticking, off);
                             }
                         }
                     }
@@ -324,12 +440,14 @@ public class ChunkSection {
         }
         this.nonEmptyBlockCount = cntNonEmpty;
         this.tickingBlockCount = cntTicking;
+        this.tickingBlocks = ticking;
     }
 
     public void old_recalcBlockCounts() {
         // CraftBukkit end
         this.nonEmptyBlockCount = 0;
         this.tickingBlockCount = 0;
+        this.tickingBlocks = null; // CraftBukkit
 
         for (int i = 0; i < 16; ++i) {
             for (int j = 0; j < 16; ++j) {
@@ -340,6 +458,7 @@ public class ChunkSection {
                         ++this.nonEmptyBlockCount;
                         if (block.isTicking()) {
                             ++this.tickingBlockCount;
+                            this.tickingBlocks = markTicking(this.tickingBlocks, j << 8 | k << 4 | i); // CraftBukkit
                         }
                     }
                 }
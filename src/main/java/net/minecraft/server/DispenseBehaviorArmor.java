@@ -31,7 +31,7 @@ final class DispenseBehaviorArmor extends DispenseBehaviorItem {
             CraftItemStack craftItem = CraftItemStack.asCraftMirror(itemstack1);
 
             BlockDispenseEvent event = new BlockDispenseEvent(block, craftItem.clone(), new org.bukkit.util.Vector(0, 0, 0));
-            if (!BlockDispenser.eventFired) {
+            if (!BlockDispenser.eventFired.get()) {
                 world.getServer().getPluginManager().callEvent(event);
             }
 
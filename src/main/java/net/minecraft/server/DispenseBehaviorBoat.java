@@ -39,7 +39,7 @@ final class DispenseBehaviorBoat extends DispenseBehaviorItem {
         CraftItemStack craftItem = CraftItemStack.asCraftMirror(itemstack1);
 
         BlockDispenseEvent event = new BlockDispenseEvent(block, craftItem.clone(), new org.bukkit.util.Vector(d0, d1 + d3, d2));
-        if (!BlockDispenser.eventFired) {
+        if (!BlockDispenser.eventFired.get()) {
             world.getServer().getPluginManager().callEvent(event);
         }
 
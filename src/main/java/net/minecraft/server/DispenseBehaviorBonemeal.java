@@ -24,7 +24,7 @@ final class DispenseBehaviorBonemeal extends DispenseBehaviorItem {
             CraftItemStack craftItem = CraftItemStack.asNewCraftStack(itemstack.getItem());
 
             BlockDispenseEvent event = new BlockDispenseEvent(block, craftItem.clone(), new org.bukkit.util.Vector(0, 0, 0));
-            if (!BlockDispenser.eventFired) {
+            if (!BlockDispenser.eventFired.get()) {
                 world.getServer().getPluginManager().callEvent(event);
             }
 
@@ -36,7 +36,7 @@ final class DispenseBehaviorEmptyBucket extends DispenseBehaviorItem {
         CraftItemStack craftItem = CraftItemStack.asCraftMirror(itemstack);
 
         BlockDispenseEvent event = new BlockDispenseEvent(block, craftItem.clone(), new org.bukkit.util.Vector(i, j, k));
-        if (!BlockDispenser.eventFired) {
+        if (!BlockDispenser.eventFired.get()) {
             world.getServer().getPluginManager().callEvent(event);
         }
 
@@ -28,7 +28,7 @@ final class DispenseBehaviorFilledBucket extends DispenseBehaviorItem {
             CraftItemStack craftItem = CraftItemStack.asCraftMirror(itemstack);
 
             BlockDispenseEvent event = new BlockDispenseEvent(block, craftItem.clone(), new org.bukkit.util.Vector(x, y, z));
-            if (!BlockDispenser.eventFired) {
+            if (!BlockDispenser.eventFired.get()) {
                 world.getServer().getPluginManager().callEvent(event);
             }
 
@@ -29,7 +29,7 @@ final class DispenseBehaviorFireball extends DispenseBehaviorItem {
         CraftItemStack craftItem = CraftItemStack.asCraftMirror(itemstack1);
 
         BlockDispenseEvent event = new BlockDispenseEvent(block, craftItem.clone(), new org.bukkit.util.Vector(d3, d4, d5));
-        if (!BlockDispenser.eventFired) {
+        if (!BlockDispenser.eventFired.get()) {
             world.getServer().getPluginManager().callEvent(event);
         }
 
@@ -22,7 +22,7 @@ final class DispenseBehaviorFireworks extends DispenseBehaviorItem {
         CraftItemStack craftItem = CraftItemStack.asCraftMirror(itemstack1);
 
         BlockDispenseEvent event = new BlockDispenseEvent(block, craftItem.clone(), new org.bukkit.util.Vector(d0, d1, d2));
-        if (!BlockDispenser.eventFired) {
+        if (!BlockDispenser.eventFired.get()) {
             world.getServer().getPluginManager().callEvent(event);
         }
 
@@ -23,7 +23,7 @@ final class DispenseBehaviorFlintAndSteel extends DispenseBehaviorItem {
         CraftItemStack craftItem = CraftItemStack.asCraftMirror(itemstack);
 
         BlockDispenseEvent event = new BlockDispenseEvent(block, craftItem.clone(), new org.bukkit.util.Vector(0, 0, 0));
-        if (!BlockDispenser.eventFired) {
+        if (!BlockDispenser.eventFired.get()) {
             world.getServer().getPluginManager().callEvent(event);
         }
 
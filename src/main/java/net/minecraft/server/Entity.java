@@ -39,7 +39,7 @@ public abstract class Entity {
     }
     // CraftBukkit end
 
-    private static int entityCount;
+    private static final java.util.concurrent.atomic.AtomicInteger entityCount = new java.util.concurrent.atomic.AtomicInteger(); // CraftBukkit - Worlds may tick in parallel
     private int id;
     public double j;
     public boolean k;
@@ -122,7 +122,7 @@ public abstract class Entity {
     }
 
     public Entity(World world) {
-        this.id = entityCount++;
+        this.id = entityCount.getAndIncrement(); // CraftBukkit
         this.j = 1.0D;
         this.boundingBox = AxisAlignedBB.a(0.0D, 0.0D, 0.0D, 0.0D, 0.0D, 0.0D);
         this.J = true;
@@ -1,6 +1,6 @@
 package net.minecraft.server;
 
-import java.util.Iterator;
+import java.util.List; // CraftBukkit - Iterator -> List
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -117,13 +117,18 @@ public class EntityItem extends Entity {
     }
 
     private void k() {
-        Iterator iterator = this.world.a(EntityItem.class, this.boundingBox.grow(0.5D, 0.0D, 0.5D)).iterator();
+        // CraftBukkit start - Reuse the entity list
+        List list = this.world.borrowEntityList();
+        this.world.a(EntityItem.class, this.boundingBox.grow(0.5D, 0.0D, 0.5D), (IEntitySelector) null, list);
 
-        while (iterator.hasNext()) {
-            EntityItem entityitem = (EntityItem) iterator.next();
+        for (int i = 0; i < list.size(); ++i) {
+            EntityItem entityitem = (EntityItem) list.get(i);
 
             this.a(entityitem);
         }
+
+        this.world.releaseEntityList(list);
+        // CraftBukkit end
     }
 
     public boolean a(EntityItem entityitem) {
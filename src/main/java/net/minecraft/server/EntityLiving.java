@@ -1575,7 +1575,10 @@ public abstract class EntityLiving extends Entity {
     protected void bn() {}
 
     protected void bo() {
-        List list = this.world.getEntities(this, this.boundingBox.grow(0.20000000298023224D, 0.0D, 0.20000000298023224D));
+        // CraftBukkit start - Reuse the entity list
+        List list = this.world.borrowEntityList();
+        this.world.getEntities(this, this.boundingBox.grow(0.20000000298023224D, 0.0D, 0.20000000298023224D), (IEntitySelector) null, list);
+        // CraftBukkit end
 
         if (list != null && !list.isEmpty()) {
             for (int i = 0; i < list.size(); ++i) {
@@ -1593,6 +1596,8 @@ public abstract class EntityLiving extends Entity {
                 }
             }
         }
+
+        this.world.releaseEntityList(list); // CraftBukkit
     }
 
     protected void o(Entity entity) {
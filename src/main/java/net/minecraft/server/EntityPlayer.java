@@ -6,12 +6,15 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet; // CraftBukkit
 import java.util.LinkedList;
 import java.util.List;
 
 import net.minecraft.util.com.google.common.collect.Sets;
 import net.minecraft.util.com.mojang.authlib.GameProfile;
 import net.minecraft.util.io.netty.buffer.Unpooled;
+import net.minecraft.util.io.netty.util.concurrent.Future; // CraftBukkit
+import net.minecraft.util.io.netty.util.concurrent.GenericFutureListener; // CraftBukkit
 import net.minecraft.util.org.apache.commons.io.Charsets;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -23,6 +26,7 @@ import org.bukkit.craftbukkit.CraftWorld;
 import org.bukkit.craftbukkit.entity.CraftPlayer;
 import org.bukkit.craftbukkit.event.CraftEventFactory;
 import org.bukkit.craftbukkit.inventory.CraftItemStack;
+import org.bukkit.craftbukkit.util.ChunkSendController;
 import org.bukkit.event.inventory.InventoryType;
 import org.bukkit.event.player.PlayerTeleportEvent.TeleportCause;
 // CraftBukkit end
@@ -36,7 +40,8 @@ public class EntityPlayer extends EntityHuman implements ICrafting {
     public final PlayerInteractManager playerInteractManager;
     public double d;
     public double e;
-    public final List chunkCoordIntPairQueue = new LinkedList();
+    public final LinkedHashSet chunkCoordIntPairQueue = new LinkedHashSet(); // CraftBukkit - LinkedList -> LinkedHashSet, PlayerChunk checks it on every block change
+    public final ChunkSendController chunkSendController = new ChunkSendController(); // CraftBukkit
     public final List removeQueue = new LinkedList(); // CraftBukkit - private -> public
     private final ServerStatisticManager bO;
     private float bP = Float.MIN_VALUE;
@@ -193,13 +198,14 @@ public class EntityPlayer extends EntityHuman implements ICrafting {
         }
 
         if (!this.chunkCoordIntPairQueue.isEmpty()) {
+            int limit = this.chunkSendController.getChunksToSend(this.playerConnection.networkManager.isWritable(), this.server.getTickTimeLeft()); // CraftBukkit
             ArrayList arraylist = new ArrayList();
             Iterator iterator1 = this.chunkCoordIntPairQueue.iterator();
             ArrayList arraylist1 = new ArrayList();
 
             Chunk chunk;
 
-            while (iterator1.hasNext() && arraylist.size() < PacketPlayOutMapChunkBulk.c()) {
+            while (iterator1.hasNext() && arraylist.size() < limit) { // CraftBukkit - PacketPlayOutMapChunkBulk.c() -> limit
                 ChunkCoordIntPair chunkcoordintpair = (ChunkCoordIntPair) iterator1.next();
 
                 if (chunkcoordintpair != null) {
@@ -217,7 +223,12 @@ public class EntityPlayer extends EntityHuman implements ICrafting {
             }
 
             if (!arraylist.isEmpty()) {
-                this.playerConnection.sendPacket(new PacketPlayOutMapChunkBulk(arraylist));
+                // CraftBukkit start - Split into bulk packets and count the chunks until they are written
+                int perPacket = ChunkSendController.getChunksPerPacket();
+                for (int k = 0; k < arraylist.size(); k += perPacket) {
+                    this.sendChunks(new ArrayList(arraylist.subList(k, Math.min(arraylist.size(), k + perPacket))));
+                }
+                // CraftBukkit end
                 Iterator iterator2 = arraylist1.iterator();
 
                 while (iterator2.hasNext()) {
@@ -236,6 +247,20 @@ public class EntityPlayer extends EntityHuman implements ICrafting {
         }
     }
 
+    // CraftBukkit start
+    private void sendChunks(List list) {
+        final PacketPlayOutMapChunkBulk packet = new PacketPlayOutMapChunkBulk(list);
+        final int count = list.size();
+
+        this.chunkSendController.sent(count);
+        this.playerConnection.networkManager.handle(packet, new GenericFutureListener[] { new GenericFutureListener() {
+            public void operationComplete(Future future) {
+                EntityPlayer.this.chunkSendController.written(count, packet.getCompressedSize());
+            }
+        }});
+    }
+    // CraftBukkit end
+
     public void i() {
         try {
             super.h();
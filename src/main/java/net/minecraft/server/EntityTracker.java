@@ -1,13 +1,17 @@
 package net.minecraft.server;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.bukkit.craftbukkit.util.ChunkGrid; // CraftBukkit
 
 public class EntityTracker {
 
@@ -16,6 +20,11 @@ public class EntityTracker {
     private Set c = new HashSet();
     public IntHashMap trackedEntities = new IntHashMap(); // CraftBukkit - private -> public
     private int e;
+    // CraftBukkit start - Entries and players bucketed by chunk so visibility updates only look at nearby cells
+    private final ChunkGrid<EntityTrackerEntry> entryGrid = new ChunkGrid<EntityTrackerEntry>();
+    private final ChunkGrid<EntityPlayer> playerGrid = new ChunkGrid<EntityPlayer>();
+    private final Map<EntityPlayer, int[]> playerCells = new HashMap<EntityPlayer, int[]>();
+    // CraftBukkit end
 
     public EntityTracker(WorldServer worldserver) {
         this.world = worldserver;
@@ -26,7 +35,12 @@ public class EntityTracker {
         if (entity instanceof EntityPlayer) {
             this.addEntity(entity, 512, 2);
             EntityPlayer entityplayer = (EntityPlayer) entity;
-            Iterator iterator = this.c.iterator();
+            // CraftBukkit start
+            this.updatePlayerCell(entityplayer);
+            int cellX = MathHelper.floor(entityplayer.locX) >> 4;
+            int cellZ = MathHelper.floor(entityplayer.locZ) >> 4;
+            Iterator iterator = this.getNearbyEntries(cellX, cellZ, cellX, cellZ).iterator();
+            // CraftBukkit end
 
             while (iterator.hasNext()) {
                 EntityTrackerEntry entitytrackerentry = (EntityTrackerEntry) iterator.next();
@@ -103,8 +117,9 @@ public class EntityTracker {
             EntityTrackerEntry entitytrackerentry = new EntityTrackerEntry(entity, i, j, flag);
 
             this.c.add(entitytrackerentry);
+            this.entryGrid.add(entitytrackerentry.gridX, entitytrackerentry.gridZ, entitytrackerentry); // CraftBukkit
             this.trackedEntities.a(entity.getId(), entitytrackerentry);
-            entitytrackerentry.scanPlayers(this.world.players);
+            entitytrackerentry.scanPlayers(this.getNearbyPlayers(entitytrackerentry)); // CraftBukkit
         } catch (Throwable throwable) {
             CrashReport crashreport = CrashReport.a(throwable, "Adding entity to track");
             CrashReportSystemDetails crashreportsystemdetails = crashreport.a("Entity To Track");
@@ -134,32 +149,63 @@ public class EntityTracker {
 
                 entitytrackerentry.a(entityplayer);
             }
+
+            // CraftBukkit start
+            int[] cell = this.playerCells.remove(entityplayer);
+            if (cell != null) {
+                this.playerGrid.remove(cell[0], cell[1], entityplayer);
+            }
+            // CraftBukkit end
         }
 
         EntityTrackerEntry entitytrackerentry1 = (EntityTrackerEntry) this.trackedEntities.d(entity.getId());
 
         if (entitytrackerentry1 != null) {
             this.c.remove(entitytrackerentry1);
+            this.entryGrid.remove(entitytrackerentry1.gridX, entitytrackerentry1.gridZ, entitytrackerentry1); // CraftBukkit
             entitytrackerentry1.a();
         }
     }
 
     public void updatePlayers() {
         ArrayList arraylist = new ArrayList();
+        ArrayList<int[]> scans = new ArrayList<int[]>(); // CraftBukkit - where each moved player was scanned from before
         Iterator iterator = this.c.iterator();
 
+        // CraftBukkit start
+        for (int i = 0; i < this.world.players.size(); ++i) {
+            this.updatePlayerCell((EntityPlayer) this.world.players.get(i));
+        }
+        // CraftBukkit end
+
         while (iterator.hasNext()) {
             EntityTrackerEntry entitytrackerentry = (EntityTrackerEntry) iterator.next();
+            // CraftBukkit start
+            int scanX = entitytrackerentry.scanX;
+            int scanZ = entitytrackerentry.scanZ;
+
+            entitytrackerentry.track(this.world.players, this);
+            int gridX = entitytrackerentry.xLoc >> 9;
+            int gridZ = entitytrackerentry.zLoc >> 9;
+            if (gridX != entitytrackerentry.gridX || gridZ != entitytrackerentry.gridZ) {
+                this.entryGrid.move(entitytrackerentry.gridX, entitytrackerentry.gridZ, gridX, gridZ, entitytrackerentry);
+                entitytrackerentry.gridX = gridX;
+                entitytrackerentry.gridZ = gridZ;
+            }
 
-            entitytrackerentry.track(this.world.players);
             if (entitytrackerentry.n && entitytrackerentry.tracker instanceof EntityPlayer) {
                 arraylist.add((EntityPlayer) entitytrackerentry.tracker);
+                scans.add(new int[] { scanX, scanZ, entitytrackerentry.scanX, entitytrackerentry.scanZ });
             }
+            // CraftBukkit end
         }
 
         for (int i = 0; i < arraylist.size(); ++i) {
             EntityPlayer entityplayer = (EntityPlayer) arraylist.get(i);
-            Iterator iterator1 = this.c.iterator();
+            // CraftBukkit start - Entries that may see the player now or saw it from where it was last scanned
+            int[] scan = scans.get(i);
+            Iterator iterator1 = this.getNearbyEntries(scan[0], scan[1], scan[2], scan[3]).iterator();
+            // CraftBukkit end
 
             while (iterator1.hasNext()) {
                 EntityTrackerEntry entitytrackerentry1 = (EntityTrackerEntry) iterator1.next();
@@ -198,14 +244,73 @@ public class EntityTracker {
     }
 
     public void a(EntityPlayer entityplayer, Chunk chunk) {
-        Iterator iterator = this.c.iterator();
+        // CraftBukkit start - The chunk's entity slices already index the entities in it, look their entries up by id
+        for (int i = 0; i < chunk.entitySlices.length; ++i) {
+            List slice = chunk.entitySlices[i];
 
-        while (iterator.hasNext()) {
-            EntityTrackerEntry entitytrackerentry = (EntityTrackerEntry) iterator.next();
+            for (int j = 0; j < slice.size(); ++j) {
+                Entity entity = (Entity) slice.get(j);
+                EntityTrackerEntry entitytrackerentry = (EntityTrackerEntry) this.trackedEntities.get(entity.getId());
 
-            if (entitytrackerentry.tracker != entityplayer && entitytrackerentry.tracker.ah == chunk.locX && entitytrackerentry.tracker.aj == chunk.locZ) {
-                entitytrackerentry.updatePlayer(entityplayer);
+                if (entitytrackerentry != null && entitytrackerentry.tracker != entityplayer && entitytrackerentry.tracker.ah == chunk.locX && entitytrackerentry.tracker.aj == chunk.locZ) {
+                    entitytrackerentry.updatePlayer(entityplayer);
+                }
             }
         }
+        // CraftBukkit end
+    }
+
+    // CraftBukkit start
+    private void updatePlayerCell(EntityPlayer entityplayer) {
+        int x = MathHelper.floor(entityplayer.locX) >> 4;
+        int z = MathHelper.floor(entityplayer.locZ) >> 4;
+        int[] cell = this.playerCells.get(entityplayer);
+
+        if (cell == null) {
+            this.playerCells.put(entityplayer, new int[] { x, z });
+            this.playerGrid.add(x, z, entityplayer);
+        } else if (cell[0] != x || cell[1] != z) {
+            this.playerGrid.move(cell[0], cell[1], x, z, entityplayer);
+            cell[0] = x;
+            cell[1] = z;
+        }
+    }
+
+    /**
+     * Players an entry has to check when it scans, those close enough to
+     * start tracking it and those already tracking it. The grid is updated
+     * once per tick, so two extra cells cover players that moved since.
+     */
+    List getNearbyPlayers(EntityTrackerEntry entitytrackerentry) {
+        int radius = (entitytrackerentry.b >> 4) + 2;
+        int x = entitytrackerentry.xLoc >> 9;
+        int z = entitytrackerentry.zLoc >> 9;
+
+        if (entitytrackerentry.trackedPlayers.isEmpty()) {
+            List<EntityPlayer> list = new ArrayList<EntityPlayer>();
+            this.playerGrid.collect(x - radius, z - radius, x + radius, z + radius, list);
+            return list;
+        }
+
+        Set<EntityPlayer> set = new HashSet<EntityPlayer>(entitytrackerentry.trackedPlayers);
+        this.playerGrid.collect(x - radius, z - radius, x + radius, z + radius, set);
+        return new ArrayList<EntityPlayer>(set);
+    }
+
+    /**
+     * Entries a player has to check after moving from one chunk to another,
+     * every entry within the largest tracking range of either chunk.
+     */
+    private List<EntityTrackerEntry> getNearbyEntries(int fromX, int fromZ, int toX, int toZ) {
+        int radius = (this.e >> 4) + 2;
+        List<EntityTrackerEntry> list = new ArrayList<EntityTrackerEntry>();
+
+        this.entryGrid.collect(toX - radius, toZ - radius, toX + radius, toZ + radius, list);
+        if (fromX != toX || fromZ != toZ) {
+            this.entryGrid.collect(fromX - radius, fromZ - radius, fromX + radius, fromZ + radius, list, toX - radius, toZ - radius, toX + radius, toZ + radius);
+        }
+
+        return list;
     }
+    // CraftBukkit end
 }
@@ -40,6 +40,12 @@ public class EntityTrackerEntry {
     private boolean x;
     public boolean n;
     public Set trackedPlayers = new HashSet();
+    // CraftBukkit start - Cell in the tracker's grid, and the chunk the last player scan was done from
+    public int gridX;
+    public int gridZ;
+    public int scanX;
+    public int scanZ;
+    // CraftBukkit end
 
     public EntityTrackerEntry(Entity entity, int i, int j, boolean flag) {
         this.tracker = entity;
@@ -52,6 +58,10 @@ public class EntityTrackerEntry {
         this.yRot = MathHelper.d(entity.yaw * 256.0F / 360.0F);
         this.xRot = MathHelper.d(entity.pitch * 256.0F / 360.0F);
         this.i = MathHelper.d(entity.getHeadRotation() * 256.0F / 360.0F);
+        // CraftBukkit start
+        this.gridX = this.scanX = this.xLoc >> 9;
+        this.gridZ = this.scanZ = this.zLoc >> 9;
+        // CraftBukkit end
     }
 
     public boolean equals(Object object) {
@@ -63,6 +73,13 @@ public class EntityTrackerEntry {
     }
 
     public void track(List list) {
+        // CraftBukkit start
+        this.track(list, null);
+    }
+
+    // Only asks the tracker for the nearby players when a scan is actually needed
+    public void track(List list, EntityTracker entitytracker) {
+        // CraftBukkit end
         this.n = false;
         if (!this.isMoving || this.tracker.e(this.q, this.r, this.s) > 16.0D) {
             this.q = this.tracker.locX;
@@ -70,7 +87,11 @@ public class EntityTrackerEntry {
             this.s = this.tracker.locZ;
             this.isMoving = true;
             this.n = true;
-            this.scanPlayers(list);
+            // CraftBukkit start
+            this.scanX = MathHelper.floor(this.q) >> 4;
+            this.scanZ = MathHelper.floor(this.s) >> 4;
+            this.scanPlayers(entitytracker == null ? list : entitytracker.getNearbyPlayers(this));
+            // CraftBukkit end
         }
 
         if (this.w != this.tracker.vehicle || this.tracker.vehicle != null && this.m % 60 == 0) {
@@ -10,6 +10,7 @@ import java.util.Random;
 
 // CraftBukkit start
 import org.bukkit.craftbukkit.event.CraftEventFactory;
+import org.bukkit.craftbukkit.util.ExplosionRayCaster;
 import org.bukkit.event.entity.EntityExplodeEvent;
 import org.bukkit.Location;
 // CraftBukkit end
@@ -47,59 +48,27 @@ public class Explosion {
         // CraftBukkit end
 
         float f = this.size;
+        // CraftBukkit start - Cast the rays over cached blocks into a primitive set, see ExplosionRayCaster
+        long[] positions = this.world.explosionCache.castRays(this);
+        // Added in the order the rays first reached them, so the blocks break and drop in the same order as before
         HashSet hashset = new HashSet();
 
+        for (int n = 0; n < positions.length; ++n) {
+            long position = positions[n];
+
+            hashset.add(new ChunkPosition(ExplosionRayCaster.unpackX(position), ExplosionRayCaster.unpackY(position), ExplosionRayCaster.unpackZ(position)));
+        }
+
+        this.blocks.addAll(hashset);
+
         int i;
         int j;
         int k;
         double d0;
         double d1;
         double d2;
+        // CraftBukkit end
 
-        for (i = 0; i < this.i; ++i) {
-            for (j = 0; j < this.i; ++j) {
-                for (k = 0; k < this.i; ++k) {
-                    if (i == 0 || i == this.i - 1 || j == 0 || j == this.i - 1 || k == 0 || k == this.i - 1) {
-                        double d3 = (double) ((float) i / ((float) this.i - 1.0F) * 2.0F - 1.0F);
-                        double d4 = (double) ((float) j / ((float) this.i - 1.0F) * 2.0F - 1.0F);
-                        double d5 = (double) ((float) k / ((float) this.i - 1.0F) * 2.0F - 1.0F);
-                        double d6 = Math.sqrt(d3 * d3 + d4 * d4 + d5 * d5);
-
-                        d3 /= d6;
-                        d4 /= d6;
-                        d5 /= d6;
-                        float f1 = this.size * (0.7F + this.world.random.nextFloat() * 0.6F);
-
-                        d0 = this.posX;
-                        d1 = this.posY;
-                        d2 = this.posZ;
-
-                        for (float f2 = 0.3F; f1 > 0.0F; f1 -= f2 * 0.75F) {
-                            int l = MathHelper.floor(d0);
-                            int i1 = MathHelper.floor(d1);
-                            int j1 = MathHelper.floor(d2);
-                            Block block = this.world.getType(l, i1, j1);
-
-                            if (block.getMaterial() != Material.AIR) {
-                                float f3 = this.source != null ? this.source.a(this, this.world, l, i1, j1, block) : block.a(this.source);
-
-                                f1 -= (f3 + 0.3F) * f2;
-                            }
-
-                            if (f1 > 0.0F && (this.source == null || this.source.a(this, this.world, l, i1, j1, block, f1)) && i1 < 256 && i1 >= 0) { // CraftBukkit - don't wrap explosions
-                                hashset.add(new ChunkPosition(l, i1, j1));
-                            }
-
-                            d0 += d3 * (double) f2;
-                            d1 += d4 * (double) f2;
-                            d2 += d5 * (double) f2;
-                        }
-                    }
-                }
-            }
-        }
-
-        this.blocks.addAll(hashset);
         this.size *= 2.0F;
         i = MathHelper.floor(this.posX - (double) this.size - 1.0D);
         j = MathHelper.floor(this.posX + (double) this.size + 1.0D);
@@ -107,7 +76,10 @@ public class Explosion {
         int k1 = MathHelper.floor(this.posY + (double) this.size + 1.0D);
         int l1 = MathHelper.floor(this.posZ - (double) this.size - 1.0D);
         int i2 = MathHelper.floor(this.posZ + (double) this.size + 1.0D);
-        List list = this.world.getEntities(this.source, AxisAlignedBB.a((double) i, (double) k, (double) l1, (double) j, (double) k1, (double) i2));
+        // CraftBukkit start - Reuse the entity list, nested explosions borrow their own
+        List list = this.world.borrowEntityList();
+        this.world.getEntities(this.source, AxisAlignedBB.a((double) i, (double) k, (double) l1, (double) j, (double) k1, (double) i2), (IEntitySelector) null, list);
+        // CraftBukkit end
         Vec3D vec3d = Vec3D.a(this.posX, this.posY, this.posZ);
 
         for (int j2 = 0; j2 < list.size(); ++j2) {
@@ -124,7 +96,7 @@ public class Explosion {
                     d0 /= d8;
                     d1 /= d8;
                     d2 /= d8;
-                    double d9 = (double) this.world.a(vec3d, entity.boundingBox);
+                    double d9 = (double) this.world.explosionCache.getExposure(this, vec3d, entity.boundingBox); // CraftBukkit - shared by explosions at the same position
                     double d10 = (1.0D - d7) * d9;
 
                     // CraftBukkit start
@@ -146,6 +118,7 @@ public class Explosion {
             }
         }
 
+        this.world.releaseEntityList(list); // CraftBukkit
         this.size = f;
     }
 
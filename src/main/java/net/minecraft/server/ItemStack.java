@@ -108,8 +108,8 @@ public final class ItemStack {
         if (flag && world.captureTreeGeneration && world.capturedBlockStates.size() > 0) {
             world.captureTreeGeneration = false;
             Location location = new Location(world.getWorld(), i, j, k);
-            TreeType treeType = BlockSapling.treeType;
-            BlockSapling.treeType = null;
+            TreeType treeType = BlockSapling.treeType.get();
+            BlockSapling.treeType.set(null);
             List<BlockState> blocks = (List<BlockState>) world.capturedBlockStates.clone();
             world.capturedBlockStates.clear();
             StructureGrowEvent event = null;
@@ -1,24 +1,247 @@
 package net.minecraft.server;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
-// CraftBukkit start - Strip down to empty methods, performance cost
+// CraftBukkit start - Replace the vanilla profiler with a low overhead tick profiler that is off by default
 public class MethodProfiler {
     public boolean a = false;
 
+    public static final int MAX_SECTIONS = 512;
+    public static final int HISTORY_TICKS = 1200;
+    private static final int MAX_DEPTH = 64;
+    private static final int ROOT = 0;
+    private static final int OVERFLOW = 1;
+
+    private boolean enabled;
+    private boolean enableRequested;
+
+    // Sections form a tree, a section is identified by its parent and its name
+    private final String[] names = new String[MAX_SECTIONS];
+    private final int[] parents = new int[MAX_SECTIONS];
+    private final int[] table = new int[MAX_SECTIONS * 2];
+    private int sectionCount;
+
+    private final int[] stack = new int[MAX_DEPTH];
+    private final long[] started = new long[MAX_DEPTH];
+    private int depth;
+    private int skippedDepth;
+    // Worlds ticking in parallel share this profiler, only the thread that started the tick records
+    private Thread owner;
+
+    // Allocated once on the first enable, never on the hot path
+    private long[] current;
+    private long[] history;
+    private long[] tickTimes;
+    private int historyIndex;
+    private int recordedTicks;
+    private long tickStart;
+
+    public MethodProfiler() {
+        this.reset();
+    }
+
     public final void a() { }
-    public final void a(String s) { }
-    public final void b() { }
+
+    public final void a(String s) {
+        if (!this.enabled || this.depth == 0 || Thread.currentThread() != this.owner) {
+            return;
+        }
+
+        if (this.depth == MAX_DEPTH) {
+            ++this.skippedDepth;
+            return;
+        }
+
+        this.stack[this.depth] = this.section(this.stack[this.depth - 1], s);
+        this.started[this.depth] = System.nanoTime();
+        ++this.depth;
+    }
+
+    public final void b() {
+        if (!this.enabled || this.depth <= 1 || Thread.currentThread() != this.owner) {
+            return;
+        }
+
+        if (this.skippedDepth > 0) {
+            --this.skippedDepth;
+            return;
+        }
+
+        --this.depth;
+        this.current[this.stack[this.depth]] += System.nanoTime() - this.started[this.depth];
+    }
+
     public final List b(String s) { return null; }
-    public final void c(String s) { }
-    public final String c() { return null; }
+
+    public final void c(String s) {
+        if (!this.enabled) {
+            return;
+        }
+
+        this.b();
+        this.a(s);
+    }
+
+    public final String c() {
+        return this.enabled && this.depth > 0 && Thread.currentThread() == this.owner ? this.names[this.stack[this.depth - 1]] : null;
+    }
+
+    /**
+     * Starts a new tick. Switching the profiler on or off only takes effect
+     * here so the section stack is never left unbalanced.
+     */
+    public void startTick() {
+        if (this.enableRequested != this.enabled) {
+            if (this.enableRequested && this.history == null) {
+                this.current = new long[MAX_SECTIONS];
+                this.history = new long[HISTORY_TICKS * MAX_SECTIONS];
+                this.tickTimes = new long[HISTORY_TICKS];
+            }
+
+            this.enabled = this.enableRequested;
+            this.historyIndex = 0;
+            this.recordedTicks = 0;
+        }
+
+        if (!this.enabled) {
+            return;
+        }
+
+        this.owner = Thread.currentThread();
+        this.tickStart = System.nanoTime();
+        this.stack[0] = ROOT;
+        this.started[0] = this.tickStart;
+        this.depth = 1;
+        this.skippedDepth = 0;
+    }
+
+    /**
+     * Closes the current tick and copies its section timings into the ring
+     * buffer.
+     */
+    public void endTick() {
+        if (!this.enabled) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        this.current[ROOT] = now - this.tickStart;
+        this.tickTimes[this.historyIndex] = this.current[ROOT];
+        System.arraycopy(this.current, 0, this.history, this.historyIndex * MAX_SECTIONS, MAX_SECTIONS);
+        Arrays.fill(this.current, 0L);
+
+        this.historyIndex = (this.historyIndex + 1) % HISTORY_TICKS;
+        if (this.recordedTicks < HISTORY_TICKS) {
+            ++this.recordedTicks;
+        }
+
+        this.depth = 0;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enableRequested = enabled;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public int getRecordedTicks() {
+        return this.recordedTicks;
+    }
+
+    public int getSectionCount() {
+        return this.sectionCount;
+    }
+
+    /**
+     * Sums the last <code>ticks</code> recorded ticks per section.
+     *
+     * @param ticks the number of ticks to look back
+     * @return total nanoseconds per section id, index 0 holds the total tick time
+     */
+    public long[] getTotals(int ticks) {
+        long[] totals = new long[MAX_SECTIONS];
+        if (this.history == null) {
+            return totals;
+        }
+
+        ticks = Math.min(ticks, this.recordedTicks);
+        for (int i = 1; i <= ticks; ++i) {
+            int offset = ((this.historyIndex - i + HISTORY_TICKS) % HISTORY_TICKS) * MAX_SECTIONS;
+            for (int j = 0; j < this.sectionCount; ++j) {
+                totals[j] += this.history[offset + j];
+            }
+        }
+
+        return totals;
+    }
+
+    /**
+     * Gets the slowest recorded tick out of the last <code>ticks</code>.
+     *
+     * @param ticks the number of ticks to look back
+     * @return the longest tick in nanoseconds
+     */
+    public long getMaxTickTime(int ticks) {
+        long max = 0L;
+        if (this.tickTimes == null) {
+            return max;
+        }
+
+        ticks = Math.min(ticks, this.recordedTicks);
+        for (int i = 1; i <= ticks; ++i) {
+            max = Math.max(max, this.tickTimes[(this.historyIndex - i + HISTORY_TICKS) % HISTORY_TICKS]);
+        }
+
+        return max;
+    }
+
+    public String getSectionPath(int id) {
+        if (id == ROOT) {
+            return this.names[ROOT];
+        }
+
+        StringBuilder builder = new StringBuilder(this.names[id]);
+        for (int parent = this.parents[id]; parent != ROOT; parent = this.parents[parent]) {
+            builder.insert(0, '.').insert(0, this.names[parent]);
+        }
+
+        return builder.toString();
+    }
+
+    private void reset() {
+        Arrays.fill(this.table, -1);
+        this.sectionCount = 0;
+        this.addSection(ROOT, "tick");
+        this.addSection(ROOT, "<overflow>");
+    }
+
+    private int section(int parent, String name) {
+        int mask = this.table.length - 1;
+        int slot = (parent * 31 + name.hashCode()) & mask;
+
+        for (int id = this.table[slot]; id != -1; id = this.table[slot = (slot + 1) & mask]) {
+            if (this.parents[id] == parent && (this.names[id] == name || this.names[id].equals(name))) {
+                return id;
+            }
+        }
+
+        if (this.sectionCount == MAX_SECTIONS) {
+            return OVERFLOW;
+        }
+
+        int id = this.addSection(parent, name);
+        this.table[slot] = id;
+        return id;
+    }
+
+    private int addSection(int parent, String name) {
+        int id = this.sectionCount++;
+        this.names[id] = name;
+        this.parents[id] = parent;
+        return id;
+    }
 }
 // CraftBukkit end
@@ -15,6 +15,7 @@ import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.locks.LockSupport;
 import javax.imageio.ImageIO;
 
 import net.minecraft.util.com.google.common.base.Charsets;
@@ -103,8 +104,17 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IMo
     public ConsoleReader reader;
     public static int currentTick = (int) (System.currentTimeMillis() / 50);
     public final Thread primaryThread;
-    public java.util.Queue<Runnable> processQueue = new java.util.concurrent.ConcurrentLinkedQueue<Runnable>();
+    public org.bukkit.craftbukkit.util.ProcessQueue processQueue = new org.bukkit.craftbukkit.util.ProcessQueue();
+    public int processQueueBudget = 10; // Milliseconds per tick
     public int autosavePeriod;
+    public boolean incrementalAutosave; // CraftBukkit
+    public int autosaveTickBudget; // CraftBukkit - milliseconds
+    private long tickStart;
+    public org.bukkit.craftbukkit.util.WorldTickExecutor worldTickExecutor; // CraftBukkit - null unless worlds tick in parallel
+    public final long[] worldsTickTimes = new long[100]; // CraftBukkit - wall time of ticking all worlds
+    public static final long TICK_TIME = 50000000L;
+    public int maxCatchUpTicks = 40; // Vanilla runs at most 2000 ms of missed ticks back to back
+    public final org.bukkit.craftbukkit.util.TickStatistics tickStatistics = new org.bukkit.craftbukkit.util.TickStatistics();
     // CraftBukkit end
 
     public MinecraftServer(OptionSet options, Proxy proxy) { // CraftBukkit - signature file -> OptionSet
@@ -377,6 +387,22 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IMo
         }
     }
 
+    // CraftBukkit start
+    protected void startIncrementalSave() throws ExceptionWorldConflict {
+        if (!this.M) {
+            for (int j = 0; j < this.worlds.size(); ++j) {
+                WorldServer worldserver = this.worlds.get(j);
+
+                worldserver.startIncrementalSave(this.autosavePeriod);
+                worldserver.saveLevel();
+
+                WorldSaveEvent event = new WorldSaveEvent(worldserver.getWorld());
+                this.server.getPluginManager().callEvent(event);
+            }
+        }
+    }
+    // CraftBukkit end
+
     public void stop() throws ExceptionWorldConflict { // CraftBukkit - added throws
         if (!this.M) {
             i.info("Stopping server");
@@ -384,6 +410,8 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IMo
             if (this.server != null) {
                 this.server.disablePlugins();
             }
+
+            this.setWorldTickThreads(0);
             // CraftBukkit end
 
             if (this.ai() != null) {
@@ -399,6 +427,12 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IMo
             if (this.worldServer != null) {
                 i.info("Saving worlds");
                 this.saveChunks(false);
+
+                // CraftBukkit start - Wait for the chunk save threads to finish writing
+                for (int j = 0; j < this.worlds.size(); ++j) {
+                    this.worlds.get(j).flushSave();
+                }
+                // CraftBukkit end
             
                 /* CraftBukkit start - Handled in saveChunks
                 for (int i = 0; i < this.worldServer.length; ++i) {
@@ -434,45 +468,48 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IMo
     public void run() {
         try {
             if (this.init()) {
-                long i = ar();
-                long j = 0L;
+                // CraftBukkit start - Schedule ticks against nanoTime deadlines instead of sleeping for the remaining milliseconds
+                long nextTick = System.nanoTime();
 
                 this.q.setMOTD(new ChatComponentText(this.motd));
                 this.q.setServerInfo(new ServerPingServerData("1.7.10", 5));
                 this.a(this.q);
 
                 while (this.isRunning) {
-                    long k = ar();
-                    long l = k - i;
-
-                    if (l > 2000L && i - this.P >= 15000L) {
-                        if (this.server.getWarnOnOverload()) // CraftBukkit - Added option to suppress warning messages
-                        MinecraftServer.i.warn("Can\'t keep up! Did the system time change, or is the server overloaded? Running {}ms behind, skipping {} tick(s)", new Object[] { Long.valueOf(l), Long.valueOf(l / 50L)});
-                        l = 2000L;
-                        this.P = i;
-                    }
+                    long behind = System.nanoTime() - nextTick;
+                    long maxBehind = this.maxCatchUpTicks * TICK_TIME;
+
+                    if (behind > maxBehind) {
+                        long k = ar();
+
+                        if (k - this.P >= 15000L) {
+                            if (this.server.getWarnOnOverload()) // CraftBukkit - Added option to suppress warning messages
+                            MinecraftServer.i.warn("Can\'t keep up! Did the system time change, or is the server overloaded? Running {}ms behind, skipping {} tick(s)", new Object[] { Long.valueOf(behind / 1000000L), Long.valueOf((behind - maxBehind) / TICK_TIME)});
+                            this.P = k;
+                        }
 
-                    if (l < 0L) {
-                        MinecraftServer.i.warn("Time ran backwards! Did the system time change?");
-                        l = 0L;
+                        // Ticks further behind than the catch-up limit are dropped
+                        nextTick += behind - maxBehind;
                     }
 
-                    j += l;
-                    i = k;
-                    if (this.worlds.get(0).everyoneDeeplySleeping()) { // CraftBukkit
+                    if (this.worlds.get(0).everyoneDeeplySleeping()) {
                         this.u();
-                        j = 0L;
+                        nextTick = System.nanoTime() + TICK_TIME;
                     } else {
-                        while (j > 50L) {
-                            MinecraftServer.currentTick = (int) (System.currentTimeMillis() / 50); // CraftBukkit
-                            j -= 50L;
+                        while (System.nanoTime() - nextTick >= 0L) {
+                            MinecraftServer.currentTick = (int) (System.currentTimeMillis() / 50);
+                            nextTick += TICK_TIME;
                             this.u();
                         }
                     }
 
-                    Thread.sleep(Math.max(1L,  50L - j));
+                    long wait;
+                    while ((wait = nextTick - System.nanoTime()) > 0L) {
+                        LockSupport.parkNanos(this, wait);
+                    }
                     this.O = true;
                 }
+                // CraftBukkit end
             } else {
                 this.a((CrashReport) null);
             }
@@ -544,8 +581,15 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IMo
 
     protected void t() {}
 
+    // CraftBukkit start - Nanoseconds left of the 50 ms the current tick should take, negative once it overruns
+    public long getTickTimeLeft() {
+        return this.tickStart + TICK_TIME - System.nanoTime();
+    }
+    // CraftBukkit end
+
     protected void u() throws ExceptionWorldConflict { // CraftBukkit - added throws
         long i = System.nanoTime();
+        this.tickStart = i; // CraftBukkit
 
         ++this.ticks;
         if (this.R) {
@@ -554,6 +598,7 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IMo
             this.methodProfiler.a();
         }
 
+        this.methodProfiler.startTick(); // CraftBukkit
         this.methodProfiler.a("root");
         this.v();
         if (i - this.V >= 5000000000L) {
@@ -573,12 +618,36 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IMo
         if ((this.autosavePeriod > 0) && ((this.ticks % this.autosavePeriod) == 0)) { // CraftBukkit
             this.methodProfiler.a("save");
             this.u.savePlayers();
-            this.saveChunks(true);
+            // CraftBukkit start
+            if (this.incrementalAutosave) {
+                this.startIncrementalSave();
+            } else {
+                this.saveChunks(true);
+            }
+            // CraftBukkit end
             this.methodProfiler.b();
         }
 
+        // CraftBukkit start - Spread the chunk saves over the autosave period
+        if (this.incrementalAutosave && this.autosavePeriod > 0 && !this.worlds.isEmpty()) {
+            this.methodProfiler.a("incrementalSave");
+            long budget = this.autosaveTickBudget * 1000000L / this.worlds.size();
+
+            for (int j = 0; j < this.worlds.size(); ++j) {
+                WorldServer worldserver = this.worlds.get(j);
+
+                if (!worldserver.savingDisabled) {
+                    worldserver.chunkProviderServer.saveIncremental(System.nanoTime() + budget);
+                }
+            }
+
+            this.methodProfiler.b();
+        }
+        // CraftBukkit end
+
         this.methodProfiler.a("tallying");
         this.g[this.ticks % 100] = System.nanoTime() - i;
+        this.tickStatistics.record(i, this.g[this.ticks % 100]); // CraftBukkit
         this.methodProfiler.b();
         this.methodProfiler.a("snooper");
         if (!this.l.d() && this.ticks > 100) {
@@ -591,6 +660,7 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IMo
 
         this.methodProfiler.b();
         this.methodProfiler.b();
+        this.methodProfiler.endTick(); // CraftBukkit
     }
 
     public void v() {
@@ -599,10 +669,8 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IMo
         // CraftBukkit start
         this.server.getScheduler().mainThreadHeartbeat(this.ticks);
 
-        // Run tasks that are waiting on processing
-        while (!processQueue.isEmpty()) {
-            processQueue.remove().run();
-        }
+        // Run tasks that are waiting on processing, what does not fit in the budget runs next tick
+        processQueue.drain(this.processQueueBudget * 1000000L);
 
         org.bukkit.craftbukkit.chunkio.ChunkIOExecutor.tick();
 
@@ -616,53 +684,36 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IMo
 
         int i;
 
-        for (i = 0; i < this.worlds.size(); ++i) {
-            long j = System.nanoTime();
-
-            // if (i == 0 || this.getAllowNether()) {
-                WorldServer worldserver = this.worlds.get(i);
-
-                this.methodProfiler.a(worldserver.getWorldData().getName());
-                this.methodProfiler.a("pools");
-                this.methodProfiler.b();
-                /* Drop global time updates
-                if (this.ticks % 20 == 0) {
-                    this.methodProfiler.a("timeSync");
-                    this.t.a(new PacketPlayOutUpdateTime(worldserver.getTime(), worldserver.getDayTime(), worldserver.getGameRules().getBoolean("doDaylightCycle")), worldserver.worldProvider.dimension);
-                    this.methodProfiler.b();
-                }
-                // CraftBukkit end */
+        // CraftBukkit start - The worlds tick one after another, only relighting may run on the world tick threads
+        long worldsStart = System.nanoTime();
 
-                this.methodProfiler.a("tick");
+        for (i = 0; i < this.worlds.size(); ++i) {
+            this.worlds.get(i).tickTimes[this.ticks % 100] = 0L;
+        }
 
-                CrashReport crashreport;
+        this.relightWorlds(); // Light updates queued since the last tick, e.g. by players and plugins
 
-                try {
-                    worldserver.doTick();
-                } catch (Throwable throwable) {
-                    crashreport = CrashReport.a(throwable, "Exception ticking world");
-                    worldserver.a(crashreport);
-                    throw new ReportedException(crashreport);
-                }
+        for (i = 0; i < this.worlds.size(); ++i) {
+            this.tickWorld(this.worlds.get(i));
+        }
 
-                try {
-                    worldserver.tickEntities();
-                } catch (Throwable throwable1) {
-                    crashreport = CrashReport.a(throwable1, "Exception ticking world entities");
-                    worldserver.a(crashreport);
-                    throw new ReportedException(crashreport);
-                }
+        this.relightWorlds(); // Before the trackers send the tick's changes
 
-                this.methodProfiler.b();
-                this.methodProfiler.a("tracker");
-                worldserver.getTracker().updatePlayers();
-                this.methodProfiler.b();
-                this.methodProfiler.b();
-            // } // CraftBukkit
+        for (i = 0; i < this.worlds.size(); ++i) {
+            WorldServer worldserver = this.worlds.get(i);
+            long j = System.nanoTime();
 
-            // this.h[i][this.ticks % 100] = System.nanoTime() - j; // CraftBukkit
+            this.methodProfiler.a(worldserver.getWorldData().getName());
+            this.methodProfiler.a("tracker");
+            worldserver.getTracker().updatePlayers();
+            this.methodProfiler.b();
+            this.methodProfiler.b();
+            worldserver.tickTimes[this.ticks % 100] += System.nanoTime() - j;
         }
 
+        this.worldsTickTimes[this.ticks % 100] = System.nanoTime() - worldsStart;
+        // CraftBukkit end
+
         this.methodProfiler.c("connection");
         this.ai().c();
         this.methodProfiler.c("players");
@@ -676,6 +727,115 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IMo
         this.methodProfiler.b();
     }
 
+    // CraftBukkit start - Split out of v(), the tracker and relighting run after every world ticked
+    private void tickWorld(WorldServer worldserver) {
+        long j = System.nanoTime();
+
+        // if (i == 0 || this.getAllowNether()) {
+        this.methodProfiler.a(worldserver.getWorldData().getName());
+        this.methodProfiler.a("pools");
+        this.methodProfiler.b();
+        /* Drop global time updates
+        if (this.ticks % 20 == 0) {
+            this.methodProfiler.a("timeSync");
+            this.t.a(new PacketPlayOutUpdateTime(worldserver.getTime(), worldserver.getDayTime(), worldserver.getGameRules().getBoolean("doDaylightCycle")), worldserver.worldProvider.dimension);
+            this.methodProfiler.b();
+        }
+        // CraftBukkit end */
+
+        this.methodProfiler.a("tick");
+
+        CrashReport crashreport;
+
+        try {
+            worldserver.explosionCache.clear(); // CraftBukkit
+            worldserver.doTick();
+        } catch (Throwable throwable) {
+            crashreport = CrashReport.a(throwable, "Exception ticking world");
+            worldserver.a(crashreport);
+            throw new ReportedException(crashreport);
+        }
+
+        try {
+            worldserver.tickEntities();
+        } catch (Throwable throwable1) {
+            crashreport = CrashReport.a(throwable1, "Exception ticking world entities");
+            worldserver.a(crashreport);
+            throw new ReportedException(crashreport);
+        }
+
+        this.methodProfiler.b();
+        this.methodProfiler.b();
+        // } // CraftBukkit
+
+        // this.h[i][this.ticks % 100] = System.nanoTime() - j; // CraftBukkit
+        worldserver.tickTimes[this.ticks % 100] += System.nanoTime() - j;
+    }
+
+    /**
+     * Runs the queued light updates of every world, on the world tick threads
+     * when there are any. Relighting fires no events and stays inside its
+     * world, so plugins never see it and the worlds do not meet.
+     */
+    private void relightWorlds() {
+        if (this.worldTickExecutor != null && this.worlds.size() > 1) {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(this.worlds.size());
+
+            for (int i = 0; i < this.worlds.size(); ++i) {
+                final WorldServer worldserver = this.worlds.get(i);
+
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        MinecraftServer.this.relightWorld(worldserver);
+                        return null;
+                    }
+                });
+            }
+
+            try {
+                this.worldTickExecutor.tick(tasks);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            for (int i = 0; i < this.worlds.size(); ++i) {
+                this.relightWorld(this.worlds.get(i));
+            }
+        }
+    }
+
+    private void relightWorld(WorldServer worldserver) {
+        long j = System.nanoTime();
+
+        try {
+            worldserver.lightEngine.flush();
+        } catch (Throwable throwable) {
+            CrashReport crashreport = CrashReport.a(throwable, "Exception relighting world");
+            worldserver.a(crashreport);
+            throw new ReportedException(crashreport);
+        }
+
+        worldserver.tickTimes[this.ticks % 100] += System.nanoTime() - j;
+    }
+
+    // Only called between ticks, 0 ticks the worlds on the server thread
+    public void setWorldTickThreads(int threads) {
+        int current = this.worldTickExecutor == null ? 0 : this.worldTickExecutor.getThreads();
+        if (threads == current) {
+            return;
+        }
+
+        if (this.worldTickExecutor != null) {
+            this.worldTickExecutor.shutdown();
+            this.worldTickExecutor = null;
+        }
+
+        if (threads > 0) {
+            this.worldTickExecutor = new org.bukkit.craftbukkit.util.WorldTickExecutor(threads);
+        }
+    }
+    // CraftBukkit end
+
     public boolean getAllowNether() {
         return true;
     }
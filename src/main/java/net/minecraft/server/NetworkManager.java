@@ -188,6 +188,12 @@ public class NetworkManager extends SimpleChannelInboundHandler {
         return this.m != null && this.m.isOpen();
     }
 
+    // CraftBukkit start - Whether the channel can take more data before its outbound buffer passes the high water mark
+    public boolean isWritable() {
+        return this.m != null && this.m.isWritable();
+    }
+    // CraftBukkit end
+
     public PacketListener getPacketListener() {
         return this.o;
     }
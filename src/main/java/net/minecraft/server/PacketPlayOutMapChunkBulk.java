@@ -6,6 +6,9 @@ import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
+import net.minecraft.util.io.netty.buffer.ByteBufOutputStream; // CraftBukkit
+import org.bukkit.craftbukkit.chunkio.ChunkPayloadCache; // CraftBukkit
+
 public class PacketPlayOutMapChunkBulk extends Packet {
 
     private int[] a;
@@ -25,6 +28,10 @@ public class PacketPlayOutMapChunkBulk extends Packet {
             return new Deflater(6);
         }
     };
+    // Cached compressed payload of each chunk, chunks that missed the cache are compressed in compress()
+    private ChunkPayloadCache.Payload[] payloads;
+    private Chunk[] chunks;
+    private int[] versions;
     // CraftBukkit end
 
     public PacketPlayOutMapChunkBulk() {}
@@ -40,6 +47,39 @@ public class PacketPlayOutMapChunkBulk extends Packet {
         this.h = !list.isEmpty() && !((Chunk) list.get(0)).world.worldProvider.g;
         int j = 0;
 
+        // CraftBukkit start - Reuse the payloads already compressed for other players
+        if (ChunkPayloadCache.isEnabled()) {
+            this.payloads = new ChunkPayloadCache.Payload[i];
+            this.chunks = new Chunk[i];
+            this.versions = new int[i];
+
+            for (int k = 0; k < i; ++k) {
+                Chunk chunk = (Chunk) list.get(k);
+                ChunkPayloadCache.Payload payload = chunk.getPayload();
+
+                this.a[k] = chunk.locX;
+                this.b[k] = chunk.locZ;
+                if (payload != null) {
+                    ChunkPayloadCache.recordHit();
+                    this.payloads[k] = payload;
+                    this.c[k] = payload.sectionMask;
+                    this.d[k] = payload.addMask;
+                } else {
+                    ChunkPayloadCache.recordMiss();
+                    ChunkMap chunkmap = PacketPlayOutMapChunk.a(chunk, true, '\uffff');
+
+                    this.chunks[k] = chunk;
+                    this.versions[k] = chunk.getPayloadVersion();
+                    this.c[k] = chunkmap.b;
+                    this.d[k] = chunkmap.c;
+                    this.inflatedBuffers[k] = chunkmap.a;
+                }
+            }
+
+            return;
+        }
+        // CraftBukkit end
+
         for (int k = 0; k < i; ++k) {
             Chunk chunk = (Chunk) list.get(k);
             ChunkMap chunkmap = PacketPlayOutMapChunk.a(chunk, true, '\uffff');
@@ -80,6 +120,21 @@ public class PacketPlayOutMapChunkBulk extends Packet {
             return;
         }
 
+        if (this.payloads != null) {
+            if (this.chunks != null) {
+                for (int i = 0; i < this.payloads.length; ++i) {
+                    if (this.payloads[i] == null) {
+                        this.payloads[i] = ChunkPayloadCache.compress(this.inflatedBuffers[i], this.c[i], this.d[i], this.versions[i]);
+                        this.chunks[i].setPayload(this.payloads[i]);
+                    }
+                }
+
+                this.chunks = null;
+                this.size = ChunkPayloadCache.getSplicedSize(this.payloads);
+            }
+            return;
+        }
+
         Deflater deflater = localDeflater.get();
         deflater.reset();
         deflater.setInput(this.buildBuffer);
@@ -90,6 +145,12 @@ public class PacketPlayOutMapChunkBulk extends Packet {
     }
     // CraftBukkit end
 
+    // CraftBukkit start - Only known once the packet has been written
+    public int getCompressedSize() {
+        return this.size;
+    }
+    // CraftBukkit end
+
     public static int c() {
         return 5;
     }
@@ -156,7 +217,13 @@ public class PacketPlayOutMapChunkBulk extends Packet {
         packetdataserializer.writeShort(this.a.length);
         packetdataserializer.writeInt(this.size);
         packetdataserializer.writeBoolean(this.h);
-        packetdataserializer.writeBytes(this.buffer, 0, this.size);
+        // CraftBukkit start - Cached payloads are written straight into the packet buffer
+        if (this.payloads != null) {
+            ChunkPayloadCache.splice(this.payloads, new ByteBufOutputStream(packetdataserializer));
+        } else {
+            packetdataserializer.writeBytes(this.buffer, 0, this.size);
+        }
+        // CraftBukkit end
 
         for (int i = 0; i < this.a.length; ++i) {
             packetdataserializer.writeInt(this.a[i]);
@@ -178,7 +245,7 @@ public class PacketPlayOutMapChunkBulk extends Packet {
                 stringbuilder.append(", ");
             }
 
-            stringbuilder.append(String.format("{x=%d, z=%d, sections=%d, adds=%d, data=%d}", new Object[] { Integer.valueOf(this.a[i]), Integer.valueOf(this.b[i]), Integer.valueOf(this.c[i]), Integer.valueOf(this.d[i]), Integer.valueOf(this.inflatedBuffers[i].length)}));
+            stringbuilder.append(String.format("{x=%d, z=%d, sections=%d, adds=%d, data=%d}", new Object[] { Integer.valueOf(this.a[i]), Integer.valueOf(this.b[i]), Integer.valueOf(this.c[i]), Integer.valueOf(this.d[i]), Integer.valueOf(this.inflatedBuffers[i] != null ? this.inflatedBuffers[i].length : this.payloads[i].length)})); // CraftBukkit
         }
 
         return String.format("size=%d, chunks=%d[%s]", new Object[] { Integer.valueOf(this.size), Integer.valueOf(this.a.length), stringbuilder});
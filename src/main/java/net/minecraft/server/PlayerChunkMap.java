@@ -6,6 +6,7 @@ import java.util.List;
 
 // CraftBukkit start
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Queue;
 import java.util.LinkedList;
 // CraftBukkit end
@@ -141,7 +142,7 @@ public class PlayerChunkMap {
     }
 
     public void b(EntityPlayer entityplayer) {
-        ArrayList arraylist = new ArrayList(entityplayer.chunkCoordIntPairQueue);
+        HashSet arraylist = new HashSet(entityplayer.chunkCoordIntPairQueue); // CraftBukkit - ArrayList -> HashSet
         int i = 0;
         int j = this.g;
         int k = (int) entityplayer.locX >> 4;
@@ -251,7 +252,10 @@ public class PlayerChunkMap {
                 }
 
                 if (i1 > 1 || i1 < -1 || j1 > 1 || j1 < -1) {
-                    Collections.sort(entityplayer.chunkCoordIntPairQueue, new ChunkCoordComparator(entityplayer));
+                    List queue = new ArrayList(entityplayer.chunkCoordIntPairQueue);
+                    Collections.sort(queue, new ChunkCoordComparator(entityplayer));
+                    entityplayer.chunkCoordIntPairQueue.clear();
+                    entityplayer.chunkCoordIntPairQueue.addAll(queue);
                 }
                 // CraftBukkit end
             }
@@ -4,82 +4,91 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
+// CraftBukkit start - Positional FileChannel I/O, BitSet sector map and striped locks so different chunks can be read concurrently.
+// The on disk format is unchanged. Lock order is always the file (allocation) lock first, then the chunk stripe.
 public class RegionFile {
 
     private static final byte[] a = new byte[4096];
+    private static final int STRIPES = 32;
     private final File b;
     private RandomAccessFile c;
+    private volatile FileChannel channel;
+    private final Object channelLock = new Object(); // Guards reopening, never held while waiting for another lock
+    private boolean closed;
     private final int[] d = new int[1024];
     private final int[] e = new int[1024];
-    private ArrayList f;
+    private final BitSet f = new BitSet(); // Set bits are free sectors
+    private volatile int sectors;
     private int g;
     private long h;
+    private final Object[] stripes = new Object[STRIPES];
 
     public RegionFile(File file1) {
         this.b = file1;
         this.g = 0;
 
+        for (int i = 0; i < STRIPES; ++i) {
+            this.stripes[i] = new Object();
+        }
+
         try {
             if (file1.exists()) {
                 this.h = file1.lastModified();
             }
 
             this.c = new RandomAccessFile(file1, "rw");
+            this.channel = this.c.getChannel();
             int i;
 
-            if (this.c.length() < 4096L) {
-                for (i = 0; i < 1024; ++i) {
-                    this.c.writeInt(0);
-                }
-
-                for (i = 0; i < 1024; ++i) {
-                    this.c.writeInt(0);
-                }
-
+            if (this.channel.size() < 4096L) {
+                this.write(ByteBuffer.wrap(a), 0L);
+                this.write(ByteBuffer.wrap(a), 4096L);
                 this.g += 8192;
             }
 
-            if ((this.c.length() & 4095L) != 0L) {
-                for (i = 0; (long) i < (this.c.length() & 4095L); ++i) {
-                    this.c.write(0);
-                }
+            if ((this.channel.size() & 4095L) != 0L) {
+                // Pad the partial last sector at the end of the file instead of writing over the header
+                long length = this.channel.size();
+                this.write(ByteBuffer.allocate((int) (4096L - (length & 4095L))), length);
             }
 
-            i = (int) this.c.length() / 4096;
-            this.f = new ArrayList(i);
+            i = (int) (this.channel.size() / 4096L);
+            this.sectors = i;
+            this.f.set(0, i);
+            this.f.clear(0);
+            this.f.clear(1);
 
-            int j;
-
-            for (j = 0; j < i; ++j) {
-                this.f.add(Boolean.valueOf(true));
-            }
-
-            this.f.set(0, Boolean.valueOf(false));
-            this.f.set(1, Boolean.valueOf(false));
-            this.c.seek(0L);
+            ByteBuffer header = ByteBuffer.allocate(8192);
+            this.readFully(header, 0L);
+            header.flip();
+            IntBuffer ints = header.asIntBuffer();
 
+            int j;
             int k;
 
             for (j = 0; j < 1024; ++j) {
-                k = this.c.readInt();
+                k = ints.get();
                 this.d[j] = k;
-                if (k != 0 && (k >> 8) + (k & 255) <= this.f.size()) {
-                    for (int l = 0; l < (k & 255); ++l) {
-                        this.f.set((k >> 8) + l, Boolean.valueOf(false));
-                    }
+                if (k != 0 && (k >> 8) + (k & 255) <= this.sectors) {
+                    this.f.clear(k >> 8, (k >> 8) + (k & 255));
                 }
             }
 
             for (j = 0; j < 1024; ++j) {
-                k = this.c.readInt();
+                k = ints.get();
                 this.e[j] = k;
             }
         } catch (IOException ioexception) {
@@ -87,38 +96,123 @@ public class RegionFile {
         }
     }
 
-    // CraftBukkit start - This is a copy (sort of) of the method below it, make sure they stay in sync
-    public synchronized boolean chunkExists(int i, int j) {
-        if (this.d(i, j)) {
-            return false;
-        } else {
-            try {
-                int k = this.e(i, j);
+    private Object stripe(int i, int j) {
+        return this.stripes[(i + j * 32) & (STRIPES - 1)];
+    }
 
-                if (k == 0) {
-                    return false;
-                } else {
-                    int l = k >> 8;
-                    int i1 = k & 255;
+    // The position of each attempt follows the buffer, so a retry after a reopen continues where the closed channel stopped
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        boolean interrupted = false;
 
-                    if (l + i1 > this.f.size()) {
-                        return false;
+        try {
+            while (buffer.hasRemaining()) {
+                FileChannel channel = this.channel;
+
+                try {
+                    if (channel.read(buffer, start + buffer.position()) < 0) {
+                        throw new EOFException();
                     }
+                } catch (ClosedChannelException ex) {
+                    interrupted |= Thread.interrupted();
+                    this.reopen(channel);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        boolean interrupted = false;
+
+        try {
+            while (buffer.hasRemaining()) {
+                FileChannel channel = this.channel;
+
+                try {
+                    channel.write(buffer, start + buffer.position());
+                } catch (ClosedChannelException ex) {
+                    interrupted |= Thread.interrupted();
+                    this.reopen(channel);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * An interrupt during I/O closes the channel for every thread using this
+     * region file, so it is opened again unless c() closed it. The interrupt
+     * is kept for the thread, but cleared until its I/O is done, otherwise
+     * the new channel would be closed right away.
+     */
+    private void reopen(FileChannel failed) throws IOException {
+        synchronized (this.channelLock) {
+            if (this.closed) {
+                throw new ClosedChannelException();
+            }
+
+            if (this.channel == failed) {
+                this.c = new RandomAccessFile(this.b, "rw");
+                this.channel = this.c.getChannel();
+            }
+        }
+    }
+
+    // Reads the length and compression type of the chunk stored at the offset, or null if the entry is not usable
+    private ByteBuffer readChunkHeader(int k) throws IOException {
+        int l = k >> 8;
+        int i1 = k & 255;
+
+        if (l + i1 > this.sectors) {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(5);
+        this.readFully(header, (long) l * 4096L);
+        header.flip();
+
+        int j1 = header.getInt();
+        if (j1 > 4096 * i1 || j1 <= 0) {
+            return null;
+        }
+
+        return header;
+    }
 
-                    this.c.seek((long) (l * 4096));
-                    int j1 = this.c.readInt();
+    // This is a copy (sort of) of the method below it, make sure they stay in sync
+    public boolean chunkExists(int i, int j) {
+        if (this.d(i, j)) {
+            return false;
+        } else {
+            synchronized (this.stripe(i, j)) {
+                try {
+                    int k = this.e(i, j);
 
-                    if (j1 > 4096 * i1 || j1 <= 0) {
+                    if (k == 0) {
                         return false;
-                    }
+                    } else {
+                        ByteBuffer header = this.readChunkHeader(k);
 
-                    byte b0 = this.c.readByte();
-                    if (b0 == 1 || b0 == 2) {
-                        return true;
+                        if (header == null) {
+                            return false;
+                        }
+
+                        byte b0 = header.get(4);
+                        if (b0 == 1 || b0 == 2) {
+                            return true;
+                        }
                     }
+                } catch (IOException ioexception) {
+                    return false;
                 }
-            } catch (IOException ioexception) {
-                return false;
             }
         }
 
@@ -126,46 +220,47 @@ public class RegionFile {
     }
     // CraftBukkit end
 
-    public synchronized DataInputStream a(int i, int j) {
+    public DataInputStream a(int i, int j) { // CraftBukkit - no longer synchronized, see stripe
         if (this.d(i, j)) {
             return null;
         } else {
-            try {
-                int k = this.e(i, j);
+            byte b0;
+            byte[] abyte;
 
-                if (k == 0) {
-                    return null;
-                } else {
-                    int l = k >> 8;
-                    int i1 = k & 255;
+            synchronized (this.stripe(i, j)) { // CraftBukkit
+                try {
+                    int k = this.e(i, j);
 
-                    if (l + i1 > this.f.size()) {
+                    if (k == 0) {
                         return null;
                     } else {
-                        this.c.seek((long) (l * 4096));
-                        int j1 = this.c.readInt();
+                        // CraftBukkit start - positional reads
+                        ByteBuffer header = this.readChunkHeader(k);
 
-                        if (j1 > 4096 * i1) {
+                        if (header == null) {
                             return null;
-                        } else if (j1 <= 0) {
+                        }
+
+                        int j1 = header.getInt(0);
+                        b0 = header.get(4);
+                        if (b0 != 1 && b0 != 2) {
                             return null;
-                        } else {
-                            byte b0 = this.c.readByte();
-                            byte[] abyte;
-
-                            if (b0 == 1) {
-                                abyte = new byte[j1 - 1];
-                                this.c.read(abyte);
-                                return new DataInputStream(new BufferedInputStream(new GZIPInputStream(new ByteArrayInputStream(abyte))));
-                            } else if (b0 == 2) {
-                                abyte = new byte[j1 - 1];
-                                this.c.read(abyte);
-                                return new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(abyte))));
-                            } else {
-                                return null;
-                            }
                         }
+
+                        abyte = new byte[j1 - 1];
+                        this.readFully(ByteBuffer.wrap(abyte), (long) (k >> 8) * 4096L + 5L);
+                        // CraftBukkit end
                     }
+                } catch (IOException ioexception) {
+                    return null;
+                }
+            }
+
+            try {
+                if (b0 == 1) {
+                    return new DataInputStream(new BufferedInputStream(new GZIPInputStream(new ByteArrayInputStream(abyte))));
+                } else {
+                    return new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(abyte))));
                 }
             } catch (IOException ioexception) {
                 return null;
@@ -178,83 +273,74 @@ public class RegionFile {
     }
 
     protected synchronized void a(int i, int j, byte[] abyte, int k) {
-        try {
-            int l = this.e(i, j);
-            int i1 = l >> 8;
-            int j1 = l & 255;
-            int k1 = (k + 5) / 4096 + 1;
+        synchronized (this.stripe(i, j)) { // CraftBukkit - keep readers of this chunk out while its sectors move
+            try {
+                int l = this.e(i, j);
+                int i1 = l >> 8;
+                int j1 = l & 255;
+                int k1 = (k + 5) / 4096 + 1;
 
-            if (k1 >= 256) {
-                return;
-            }
+                if (k1 >= 256) {
+                    return;
+                }
 
-            if (i1 != 0 && j1 == k1) {
-                this.a(i1, abyte, k);
-            } else {
-                int l1;
+                if (i1 != 0 && j1 == k1) {
+                    this.a(i1, abyte, k);
+                } else {
+                    // CraftBukkit start - first fit search on the free sector BitSet
+                    if (j1 > 0) {
+                        this.f.set(i1, i1 + j1);
+                    }
 
-                for (l1 = 0; l1 < j1; ++l1) {
-                    this.f.set(i1 + l1, Boolean.valueOf(true));
-                }
+                    int l1 = this.f.nextSetBit(0);
+                    int i2 = 0;
 
-                l1 = this.f.indexOf(Boolean.valueOf(true));
-                int i2 = 0;
-                int j2;
-
-                if (l1 != -1) {
-                    for (j2 = l1; j2 < this.f.size(); ++j2) {
-                        if (i2 != 0) {
-                            if (((Boolean) this.f.get(j2)).booleanValue()) {
-                                ++i2;
-                            } else {
-                                i2 = 0;
-                            }
-                        } else if (((Boolean) this.f.get(j2)).booleanValue()) {
-                            l1 = j2;
-                            i2 = 1;
-                        }
+                    while (l1 != -1 && l1 < this.sectors) {
+                        int end = Math.min(this.f.nextClearBit(l1), this.sectors);
 
-                        if (i2 >= k1) {
+                        if (end - l1 >= k1) {
+                            i2 = k1;
                             break;
                         }
-                    }
-                }
-
-                if (i2 >= k1) {
-                    i1 = l1;
-                    this.a(i, j, l1 << 8 | k1);
 
-                    for (j2 = 0; j2 < k1; ++j2) {
-                        this.f.set(i1 + j2, Boolean.valueOf(false));
+                        l1 = this.f.nextSetBit(end);
                     }
 
-                    this.a(i1, abyte, k);
-                } else {
-                    this.c.seek(this.c.length());
-                    i1 = this.f.size();
+                    if (i2 >= k1) {
+                        i1 = l1;
+                        this.a(i, j, l1 << 8 | k1);
+                        this.f.clear(i1, i1 + k1);
+                        this.a(i1, abyte, k);
+                    } else {
+                        i1 = this.sectors;
+                        long length = (long) i1 * 4096L;
 
-                    for (j2 = 0; j2 < k1; ++j2) {
-                        this.c.write(a);
-                        this.f.add(Boolean.valueOf(false));
-                    }
+                        for (int j2 = 0; j2 < k1; ++j2) {
+                            this.write(ByteBuffer.wrap(a), length + (long) j2 * 4096L);
+                        }
 
-                    this.g += 4096 * k1;
-                    this.a(i1, abyte, k);
-                    this.a(i, j, i1 << 8 | k1);
+                        this.sectors += k1;
+                        this.g += 4096 * k1;
+                        this.a(i1, abyte, k);
+                        this.a(i, j, i1 << 8 | k1);
+                    }
+                    // CraftBukkit end
                 }
-            }
 
-            this.b(i, j, (int) (MinecraftServer.ar() / 1000L));
-        } catch (IOException ioexception) {
-            ioexception.printStackTrace();
+                this.b(i, j, (int) (MinecraftServer.ar() / 1000L));
+            } catch (IOException ioexception) {
+                ioexception.printStackTrace();
+            }
         }
     }
 
     private void a(int i, byte[] abyte, int j) throws IOException { // CraftBukkit - added throws
-        this.c.seek((long) (i * 4096));
-        this.c.writeInt(j + 1);
-        this.c.writeByte(2);
-        this.c.write(abyte, 0, j);
+        // CraftBukkit start - positional writes
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.putInt(j + 1).put((byte) 2).flip();
+        this.write(header, (long) i * 4096L);
+        this.write(ByteBuffer.wrap(abyte, 0, j), (long) i * 4096L + 5L);
+        // CraftBukkit end
     }
 
     private boolean d(int i, int j) {
@@ -271,19 +357,30 @@ public class RegionFile {
 
     private void a(int i, int j, int k) throws IOException { // CraftBukkit - added throws
         this.d[i + j * 32] = k;
-        this.c.seek((long) ((i + j * 32) * 4));
-        this.c.writeInt(k);
+        this.writeHeaderInt((i + j * 32) * 4, k); // CraftBukkit
     }
 
     private void b(int i, int j, int k) throws IOException { // CraftBukkit - added throws
         this.e[i + j * 32] = k;
-        this.c.seek((long) (4096 + (i + j * 32) * 4));
-        this.c.writeInt(k);
+        this.writeHeaderInt(4096 + (i + j * 32) * 4, k); // CraftBukkit
+    }
+
+    // CraftBukkit start
+    private void writeHeaderInt(int position, int value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(value).flip();
+        this.write(buffer, (long) position);
     }
+    // CraftBukkit end
 
     public void c() throws IOException { // CraftBukkit - added throws
-        if (this.c != null) {
-            this.c.close();
+        // CraftBukkit start - Stop reopen() from opening it again
+        synchronized (this.channelLock) {
+            this.closed = true;
+            if (this.c != null) {
+                this.c.close();
+            }
         }
+        // CraftBukkit end
     }
 }
@@ -4,6 +4,8 @@ import java.util.List;
 
 // CraftBukkit start
 import org.bukkit.craftbukkit.entity.CraftHumanEntity;
+import org.bukkit.craftbukkit.inventory.CraftInventory;
+import org.bukkit.craftbukkit.inventory.CraftInventoryDoubleChest;
 import org.bukkit.craftbukkit.inventory.CraftItemStack;
 import org.bukkit.entity.HumanEntity;
 import org.bukkit.event.inventory.InventoryMoveItemEvent;
@@ -40,6 +42,84 @@ public class TileEntityHopper extends TileEntity implements IHopper {
     public void setMaxStackSize(int size) {
         maxStack = size;
     }
+
+    // The inventories in front of and above the hopper
+    private final InventoryCache targetCache = new InventoryCache();
+    private final InventoryCache sourceCache = new InventoryCache();
+
+    /**
+     * The block inventory at a position, kept until a block or tile entity in
+     * the chunk holding it changes. Chests also depend on the blocks and
+     * ocelots around them, so they are only kept away from chunk edges and
+     * looked up again while an ocelot is nearby.
+     */
+    private static class InventoryCache {
+        private Chunk chunk;
+        private int version;
+        private int x;
+        private int y;
+        private int z;
+        private boolean chest;
+        private IInventory inventory;
+
+        IInventory get(World world, int i, int j, int k) {
+            Chunk chunk = this.chunk;
+
+            if (chunk != null && chunk.d && this.version == chunk.getBlockVersion() && this.x == i && this.y == j && this.z == k) {
+                if (!this.chest || !world.mayHaveEntities(AxisAlignedBB.a((double) (i - 1), (double) (j + 1), (double) (k - 1), (double) (i + 2), (double) (j + 2), (double) (k + 2)), Chunk.OCELOT_ENTITIES)) {
+                    return this.inventory;
+                }
+            }
+
+            this.inventory = getTileInventoryAt(world, i, j, k);
+            this.chunk = null;
+            if (j >= 0 && j < 256) {
+                this.chest = world.getType(i, j, k) instanceof BlockChest;
+                if (!this.chest || (i & 15) != 0 && (i & 15) != 15 && (k & 15) != 0 && (k & 15) != 15) {
+                    this.chunk = world.getChunkAt(i >> 4, k >> 4);
+                    this.version = this.chunk.getBlockVersion();
+                    this.x = i;
+                    this.y = j;
+                    this.z = k;
+                }
+            }
+
+            return this.inventory;
+        }
+    }
+
+    // Bukkit views of this hopper and of the inventories it last moved items between, kept for InventoryMoveItemEvent
+    private Inventory bukkitInventory;
+    private IInventory targetView;
+    private Inventory targetBukkitInventory;
+    private IInventory sourceView;
+    private Inventory sourceBukkitInventory;
+
+    private static boolean hasMoveItemListeners() {
+        return InventoryMoveItemEvent.getHandlerList().getRegisteredListeners().length > 0;
+    }
+
+    private Inventory getBukkitInventory() {
+        if (this.bukkitInventory == null) {
+            this.bukkitInventory = new CraftInventory(this);
+        }
+
+        return this.bukkitInventory;
+    }
+
+    private static Inventory getBukkitInventory(IInventory iinventory) {
+        // A neighbouring hopper already keeps a view of itself
+        if (iinventory instanceof TileEntityHopper) {
+            return ((TileEntityHopper) iinventory).getBukkitInventory();
+        }
+
+        // Have to special case large chests as they work oddly
+        if (iinventory instanceof InventoryLargeChest) {
+            return new CraftInventoryDoubleChest((InventoryLargeChest) iinventory);
+        }
+
+        return iinventory.getOwner().getInventory();
+    }
     // CraftBukkit end
 
     public TileEntityHopper() {}
@@ -239,48 +319,63 @@ public class TileEntityHopper extends TileEntity implements IHopper {
         } else {
             int i = Facing.OPPOSITE_FACING[BlockHopper.b(this.p())];
 
-            if (this.a(iinventory, i)) {
-                return false;
-            } else {
-                for (int j = 0; j < this.getSize(); ++j) {
-                    if (this.getItem(j) != null) {
-                        ItemStack itemstack = this.getItem(j).cloneItemStack();
-                        // CraftBukkit start - Call event when pushing items into other inventories
-                        CraftItemStack oitemstack = CraftItemStack.asCraftMirror(this.splitStack(j, 1));
-
-                        Inventory destinationInventory;
-                        // Have to special case large chests as they work oddly
-                        if (iinventory instanceof InventoryLargeChest) {
-                            destinationInventory = new org.bukkit.craftbukkit.inventory.CraftInventoryDoubleChest((InventoryLargeChest) iinventory);
-                        } else {
-                            destinationInventory = iinventory.getOwner().getInventory();
-                        }
+            return this.pushItem(iinventory, i); // CraftBukkit
+        }
+    }
 
-                        InventoryMoveItemEvent event = new InventoryMoveItemEvent(this.getOwner().getInventory(), oitemstack.clone(), destinationInventory, true);
-                        this.getWorld().getServer().getPluginManager().callEvent(event);
-                        if (event.isCancelled()) {
-                            this.setItem(j, itemstack);
-                            this.c(8); // Delay hopper checks
-                            return false;
-                        }
-                        ItemStack itemstack1 = addItem(iinventory, CraftItemStack.asNMSCopy(event.getItem()), i);
+    // CraftBukkit - Split out of y() so the transfer can run on a given target
+    public boolean pushItem(IInventory iinventory, int i) {
+        if (this.a(iinventory, i)) {
+            return false;
+        } else {
+            for (int j = 0; j < this.getSize(); ++j) {
+                if (this.getItem(j) != null) {
+                    ItemStack itemstack = this.getItem(j).cloneItemStack();
+                    // CraftBukkit start - Move the item directly when no plugin listens for the event
+                    if (!hasMoveItemListeners()) {
+                        ItemStack itemstack1 = addItem(iinventory, this.splitStack(j, 1), i);
 
                         if (itemstack1 == null || itemstack1.count == 0) {
-                            if (event.getItem().equals(oitemstack)) {
-                                iinventory.update();
-                            } else {
-                                this.setItem(j, itemstack);
-                            }
-                            // CraftBukkit end
+                            iinventory.update();
                             return true;
                         }
 
                         this.setItem(j, itemstack);
+                        continue;
                     }
-                }
 
-                return false;
+                    // Call event when pushing items into other inventories
+                    CraftItemStack oitemstack = CraftItemStack.asCraftMirror(this.splitStack(j, 1));
+
+                    if (iinventory != this.targetView) {
+                        this.targetView = iinventory;
+                        this.targetBukkitInventory = getBukkitInventory(iinventory);
+                    }
+
+                    InventoryMoveItemEvent event = new InventoryMoveItemEvent(this.getBukkitInventory(), oitemstack.clone(), this.targetBukkitInventory, true);
+                    this.getWorld().getServer().getPluginManager().callEvent(event);
+                    if (event.isCancelled()) {
+                        this.setItem(j, itemstack);
+                        this.c(8); // Delay hopper checks
+                        return false;
+                    }
+                    ItemStack itemstack1 = addItem(iinventory, CraftItemStack.asNMSCopy(event.getItem()), i);
+
+                    if (itemstack1 == null || itemstack1.count == 0) {
+                        if (event.getItem().equals(oitemstack)) {
+                            iinventory.update();
+                        } else {
+                            this.setItem(j, itemstack);
+                        }
+                        // CraftBukkit end
+                        return true;
+                    }
+
+                    this.setItem(j, itemstack);
+                }
             }
+
+            return false;
         }
     }
 
@@ -338,35 +433,42 @@ public class TileEntityHopper extends TileEntity implements IHopper {
         IInventory iinventory = getSourceInventory(ihopper);
 
         if (iinventory != null) {
-            byte b0 = 0;
+            return suckInItems(ihopper, iinventory); // CraftBukkit
+        } else {
+            EntityItem entityitem = getEntityItemAt(ihopper.getWorld(), ihopper.x(), ihopper.aD() + 1.0D, ihopper.aE());
 
-            if (b(iinventory, b0)) {
-                return false;
+            if (entityitem != null) {
+                return addEntityItem(ihopper, entityitem);
             }
+        }
 
-            if (iinventory instanceof IWorldInventory && b0 > -1) {
-                IWorldInventory iworldinventory = (IWorldInventory) iinventory;
-                int[] aint = iworldinventory.getSlotsForFace(b0);
+        return false;
+    }
 
-                for (int i = 0; i < aint.length; ++i) {
-                    if (tryTakeInItemFromSlot(ihopper, iinventory, aint[i], b0)) {
-                        return true;
-                    }
-                }
-            } else {
-                int j = iinventory.getSize();
+    // CraftBukkit - Split out of suckInItems(IHopper) so the transfer can run on a given source
+    public static boolean suckInItems(IHopper ihopper, IInventory iinventory) {
+        byte b0 = 0;
 
-                for (int k = 0; k < j; ++k) {
-                    if (tryTakeInItemFromSlot(ihopper, iinventory, k, b0)) {
-                        return true;
-                    }
+        if (b(iinventory, b0)) {
+            return false;
+        }
+
+        if (iinventory instanceof IWorldInventory && b0 > -1) {
+            IWorldInventory iworldinventory = (IWorldInventory) iinventory;
+            int[] aint = iworldinventory.getSlotsForFace(b0);
+
+            for (int i = 0; i < aint.length; ++i) {
+                if (tryTakeInItemFromSlot(ihopper, iinventory, aint[i], b0)) {
+                    return true;
                 }
             }
         } else {
-            EntityItem entityitem = getEntityItemAt(ihopper.getWorld(), ihopper.x(), ihopper.aD() + 1.0D, ihopper.aE());
+            int j = iinventory.getSize();
 
-            if (entityitem != null) {
-                return addEntityItem(ihopper, entityitem);
+            for (int k = 0; k < j; ++k) {
+                if (tryTakeInItemFromSlot(ihopper, iinventory, k, b0)) {
+                    return true;
+                }
             }
         }
 
@@ -378,18 +480,40 @@ public class TileEntityHopper extends TileEntity implements IHopper {
 
         if (itemstack != null && canTakeItemFromInventory(iinventory, itemstack, i, j)) {
             ItemStack itemstack1 = itemstack.cloneItemStack();
-            // CraftBukkit start - Call event on collection of items from inventories into the hopper
+            // CraftBukkit start - Move the item directly when no plugin listens for the event
+            if (!hasMoveItemListeners()) {
+                ItemStack itemstack2 = addItem(ihopper, iinventory.splitStack(i, 1), -1);
+
+                if (itemstack2 == null || itemstack2.count == 0) {
+                    iinventory.update();
+                    return true;
+                }
+
+                iinventory.setItem(i, itemstack1);
+                return false;
+            }
+
+            // Call event on collection of items from inventories into the hopper
             CraftItemStack oitemstack = CraftItemStack.asCraftMirror(iinventory.splitStack(i, 1));
 
             Inventory sourceInventory;
-            // Have to special case large chests as they work oddly
-            if (iinventory instanceof InventoryLargeChest) {
-                sourceInventory = new org.bukkit.craftbukkit.inventory.CraftInventoryDoubleChest((InventoryLargeChest) iinventory);
+            Inventory hopperInventory;
+            if (ihopper instanceof TileEntityHopper) {
+                TileEntityHopper hopper = (TileEntityHopper) ihopper;
+
+                if (iinventory != hopper.sourceView) {
+                    hopper.sourceView = iinventory;
+                    hopper.sourceBukkitInventory = getBukkitInventory(iinventory);
+                }
+
+                sourceInventory = hopper.sourceBukkitInventory;
+                hopperInventory = hopper.getBukkitInventory();
             } else {
-                sourceInventory = iinventory.getOwner().getInventory();
+                sourceInventory = getBukkitInventory(iinventory);
+                hopperInventory = ihopper.getOwner().getInventory();
             }
 
-            InventoryMoveItemEvent event = new InventoryMoveItemEvent(sourceInventory, oitemstack.clone(), ihopper.getOwner().getInventory(), false);
+            InventoryMoveItemEvent event = new InventoryMoveItemEvent(sourceInventory, oitemstack.clone(), hopperInventory, false);
 
             ihopper.getWorld().getServer().getPluginManager().callEvent(event);
             if (event.isCancelled()) {
@@ -516,25 +640,52 @@ public class TileEntityHopper extends TileEntity implements IHopper {
     private IInventory z() {
         int i = BlockHopper.b(this.p());
 
-        return getInventoryAt(this.getWorld(), (double) (this.x + Facing.b[i]), (double) (this.y + Facing.c[i]), (double) (this.z + Facing.d[i]));
+        // CraftBukkit start - Cached block inventory
+        int x = this.x + Facing.b[i];
+        int y = this.y + Facing.c[i];
+        int z = this.z + Facing.d[i];
+        IInventory iinventory = this.targetCache.get(this.getWorld(), x, y, z);
+
+        return iinventory != null ? iinventory : getEntityInventoryAt(this.getWorld(), (double) x, (double) y, (double) z);
+        // CraftBukkit end
     }
 
     public static IInventory getSourceInventory(IHopper ihopper) {
+        // CraftBukkit start - Cached block inventory
+        if (ihopper instanceof TileEntityHopper) {
+            TileEntityHopper hopper = (TileEntityHopper) ihopper;
+            IInventory iinventory = hopper.sourceCache.get(hopper.getWorld(), hopper.x, hopper.y + 1, hopper.z);
+
+            return iinventory != null ? iinventory : getEntityInventoryAt(hopper.getWorld(), hopper.x(), hopper.aD() + 1.0D, hopper.aE());
+        }
+        // CraftBukkit end
         return getInventoryAt(ihopper.getWorld(), ihopper.x(), ihopper.aD() + 1.0D, ihopper.aE());
     }
 
     public static EntityItem getEntityItemAt(World world, double d0, double d1, double d2) {
-        List list = world.a(EntityItem.class, AxisAlignedBB.a(d0, d1, d2, d0 + 1.0D, d1 + 1.0D, d2 + 1.0D), IEntitySelector.a);
+        // CraftBukkit start - Hoppers with no item entity near them skip the search
+        AxisAlignedBB axisalignedbb = AxisAlignedBB.a(d0, d1, d2, d0 + 1.0D, d1 + 1.0D, d2 + 1.0D);
+        if (!world.mayHaveEntities(axisalignedbb, Chunk.ITEM_ENTITIES)) {
+            return null;
+        }
+
+        List list = world.a(EntityItem.class, axisalignedbb, IEntitySelector.a);
+        // CraftBukkit end
 
         return list.size() > 0 ? (EntityItem) list.get(0) : null;
     }
 
     public static IInventory getInventoryAt(World world, double d0, double d1, double d2) {
+        // CraftBukkit start - Split into the block and entity lookups
+        IInventory iinventory = getTileInventoryAt(world, MathHelper.floor(d0), MathHelper.floor(d1), MathHelper.floor(d2));
+
+        return iinventory != null ? iinventory : getEntityInventoryAt(world, d0, d1, d2);
+    }
+
+    private static IInventory getTileInventoryAt(World world, int i, int j, int k) {
         IInventory iinventory = null;
-        int i = MathHelper.floor(d0);
-        int j = MathHelper.floor(d1);
-        int k = MathHelper.floor(d2);
         TileEntity tileentity = world.getTileEntity(i, j, k);
+        // CraftBukkit end
 
         if (tileentity != null && tileentity instanceof IInventory) {
             iinventory = (IInventory) tileentity;
@@ -547,8 +698,17 @@ public class TileEntityHopper extends TileEntity implements IHopper {
             }
         }
 
-        if (iinventory == null) {
-            List list = world.getEntities((Entity) null, AxisAlignedBB.a(d0, d1, d2, d0 + 1.0D, d1 + 1.0D, d2 + 1.0D), IEntitySelector.c);
+        // CraftBukkit start
+        return iinventory;
+    }
+
+    private static IInventory getEntityInventoryAt(World world, double d0, double d1, double d2) {
+        IInventory iinventory = null;
+        AxisAlignedBB axisalignedbb = AxisAlignedBB.a(d0, d1, d2, d0 + 1.0D, d1 + 1.0D, d2 + 1.0D);
+
+        if (world.mayHaveEntities(axisalignedbb, Chunk.INVENTORY_ENTITIES)) {
+            List list = world.getEntities((Entity) null, axisalignedbb, IEntitySelector.c);
+            // CraftBukkit end
 
             if (list != null && list.size() > 0) {
                 iinventory = (IInventory) list.get(world.random.nextInt(list.size()));
@@ -14,8 +14,10 @@ import java.util.concurrent.Callable;
 // CraftBukkit start
 import org.bukkit.Bukkit;
 import org.bukkit.block.BlockState;
+import org.bukkit.craftbukkit.util.ChunkTickSet;
 import org.bukkit.craftbukkit.util.CraftMagicNumbers;
-import org.bukkit.craftbukkit.util.LongHashSet;
+import org.bukkit.craftbukkit.util.ExplosionCache;
+import org.bukkit.craftbukkit.util.LightEngine;
 import org.bukkit.generator.ChunkGenerator;
 import org.bukkit.craftbukkit.CraftServer;
 import org.bukkit.craftbukkit.CraftWorld;
@@ -61,8 +63,8 @@ public abstract class World implements IBlockAccess {
     private final Calendar J = Calendar.getInstance();
     public Scoreboard scoreboard = new Scoreboard(); // CraftBukkit - protected -> public
     public boolean isStatic;
-    // CraftBukkit start - public, longhashset
-    protected LongHashSet chunkTickList = new LongHashSet();
+    // CraftBukkit start - public, kept from tick to tick
+    protected ChunkTickSet chunkTickList = new ChunkTickSet();
     private int K;
     public boolean allowMonsters;
     public boolean allowAnimals;
@@ -74,10 +76,12 @@ public abstract class World implements IBlockAccess {
     public long ticksPerMonsterSpawns;
     public boolean populating;
     private int tickPosition;
+    public final LightEngine lightEngine = new LightEngine(this);
+    public final ExplosionCache explosionCache = new ExplosionCache(this);
     // CraftBukkit end
     private ArrayList L;
+    private final ArrayList<List> entityLists = new ArrayList<List>(); // CraftBukkit - see borrowEntityList
     private boolean M;
-    int[] I;
 
     public BiomeBase getBiome(int i, int j) {
         if (this.isLoaded(i, 0, j)) {
@@ -131,7 +135,6 @@ public abstract class World implements IBlockAccess {
         this.allowMonsters = true;
         this.allowAnimals = true;
         this.L = new ArrayList();
-        this.I = new int['\u8000'];
         this.dataManager = idatamanager;
         this.methodProfiler = methodprofiler;
         this.worldMaps = new PersistentCollection(idatamanager);
@@ -170,15 +173,17 @@ public abstract class World implements IBlockAccess {
             this.worldData.d(true);
         }
 
-        PersistentVillage persistentvillage = (PersistentVillage) this.worldMaps.get(PersistentVillage.class, "villages");
+        synchronized (this.worldMaps) { // CraftBukkit - see a(Class, String)
+            PersistentVillage persistentvillage = (PersistentVillage) this.worldMaps.get(PersistentVillage.class, "villages");
 
-        if (persistentvillage == null) {
-            this.villages = new PersistentVillage(this);
-            this.worldMaps.a("villages", this.villages);
-        } else {
-            this.villages = persistentvillage;
-            this.villages.a(this);
-        }
+            if (persistentvillage == null) {
+                this.villages = new PersistentVillage(this);
+                this.worldMaps.a("villages", this.villages);
+            } else {
+                this.villages = persistentvillage;
+                this.villages.a(this);
+            }
+        } // CraftBukkit
 
         this.B();
         this.a();
@@ -329,7 +334,13 @@ public abstract class World implements IBlockAccess {
                 // CraftBukkit end
 
                 this.methodProfiler.a("checkLight");
-                this.t(i, j, k);
+                // CraftBukkit start - relight once at the end of the tick if light updates are queued
+                if (LightEngine.isQueueing()) {
+                    this.lightEngine.queue(i, j, k);
+                } else {
+                    this.t(i, j, k);
+                }
+                // CraftBukkit end
                 this.methodProfiler.b();
                 // CraftBukkit start
                 if (flag && !this.captureBlockStates) { // Don't notify clients or update physics while capturing blockstates
@@ -1096,7 +1107,10 @@ public abstract class World implements IBlockAccess {
         }
 
         double d0 = 0.25D;
-        List list = this.getEntities(entity, axisalignedbb.grow(d0, d0, d0));
+        // CraftBukkit start - Reuse the entity list
+        List list = this.borrowEntityList();
+        this.getEntities(entity, axisalignedbb.grow(d0, d0, d0), (IEntitySelector) null, list);
+        // CraftBukkit end
 
         for (int j2 = 0; j2 < list.size(); ++j2) {
             AxisAlignedBB axisalignedbb1 = ((Entity) list.get(j2)).J();
@@ -1111,6 +1125,7 @@ public abstract class World implements IBlockAccess {
             }
         }
 
+        this.releaseEntityList(list); // CraftBukkit
         return this.L;
     }
 
@@ -1985,18 +2000,16 @@ public abstract class World implements IBlockAccess {
         int k;
         int l;
 
+        // CraftBukkit start - Only move the squares of players that entered another chunk
+        this.chunkTickList.startUpdate(this.p());
         for (i = 0; i < this.players.size(); ++i) {
             entityhuman = (EntityHuman) this.players.get(i);
             j = MathHelper.floor(entityhuman.locX / 16.0D);
             k = MathHelper.floor(entityhuman.locZ / 16.0D);
-            l = this.p();
-
-            for (int i1 = -l; i1 <= l; ++i1) {
-                for (int j1 = -l; j1 <= l; ++j1) {
-                    this.chunkTickList.add(org.bukkit.craftbukkit.util.LongHash.toLong(i1 + j, j1 + k)); // CraftBukkit
-                }
-            }
+            this.chunkTickList.updatePlayer(entityhuman, j, k);
         }
+        this.chunkTickList.finishUpdate();
+        // CraftBukkit end
 
         this.methodProfiler.b();
         if (this.K > 0) {
@@ -2131,47 +2144,6 @@ public abstract class World implements IBlockAccess {
         return flag;
     }
 
-    private int a(int i, int j, int k, EnumSkyBlock enumskyblock) {
-        if (enumskyblock == EnumSkyBlock.SKY && this.i(i, j, k)) {
-            return 15;
-        } else {
-            Block block = this.getType(i, j, k);
-            int l = enumskyblock == EnumSkyBlock.SKY ? 0 : block.m();
-            int i1 = block.k();
-
-            if (i1 >= 15 && block.m() > 0) {
-                i1 = 1;
-            }
-
-            if (i1 < 1) {
-                i1 = 1;
-            }
-
-            if (i1 >= 15) {
-                return 0;
-            } else if (l >= 14) {
-                return l;
-            } else {
-                for (int j1 = 0; j1 < 6; ++j1) {
-                    int k1 = i + Facing.b[j1];
-                    int l1 = j + Facing.c[j1];
-                    int i2 = k + Facing.d[j1];
-                    int j2 = this.b(enumskyblock, k1, l1, i2) - i1;
-
-                    if (j2 > l) {
-                        l = j2;
-                    }
-
-                    if (l >= 14) {
-                        return l;
-                    }
-                }
-
-                return l;
-            }
-        }
-    }
-
     public boolean c(EnumSkyBlock enumskyblock, int i, int j, int k) {
         // CraftBukkit start - Use neighbor cache instead of looking up
         Chunk chunk = this.getChunkIfLoaded(i >> 4, k >> 4);
@@ -2179,107 +2151,8 @@ public abstract class World implements IBlockAccess {
             // CraftBukkit end
             return false;
         } else {
-            int l = 0;
-            int i1 = 0;
-
             this.methodProfiler.a("getBrightness");
-            int j1 = this.b(enumskyblock, i, j, k);
-            int k1 = this.a(i, j, k, enumskyblock);
-            int l1;
-            int i2;
-            int j2;
-            int k2;
-            int l2;
-            int i3;
-            int j3;
-            int k3;
-            int l3;
-
-            if (k1 > j1) {
-                this.I[i1++] = 133152;
-            } else if (k1 < j1) {
-                this.I[i1++] = 133152 | j1 << 18;
-
-                while (l < i1) {
-                    l1 = this.I[l++];
-                    i2 = (l1 & 63) - 32 + i;
-                    j2 = (l1 >> 6 & 63) - 32 + j;
-                    k2 = (l1 >> 12 & 63) - 32 + k;
-                    l2 = l1 >> 18 & 15;
-                    i3 = this.b(enumskyblock, i2, j2, k2);
-                    if (i3 == l2) {
-                        this.b(enumskyblock, i2, j2, k2, 0);
-                        if (l2 > 0) {
-                            j3 = MathHelper.a(i2 - i);
-                            l3 = MathHelper.a(j2 - j);
-                            k3 = MathHelper.a(k2 - k);
-                            if (j3 + l3 + k3 < 17) {
-                                for (int i4 = 0; i4 < 6; ++i4) {
-                                    int j4 = i2 + Facing.b[i4];
-                                    int k4 = j2 + Facing.c[i4];
-                                    int l4 = k2 + Facing.d[i4];
-                                    int i5 = Math.max(1, this.getType(j4, k4, l4).k());
-
-                                    i3 = this.b(enumskyblock, j4, k4, l4);
-                                    if (i3 == l2 - i5 && i1 < this.I.length) {
-                                        this.I[i1++] = j4 - i + 32 | k4 - j + 32 << 6 | l4 - k + 32 << 12 | l2 - i5 << 18;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-
-                l = 0;
-            }
-
-            this.methodProfiler.b();
-            this.methodProfiler.a("checkedPosition < toCheckCount");
-
-            while (l < i1) {
-                l1 = this.I[l++];
-                i2 = (l1 & 63) - 32 + i;
-                j2 = (l1 >> 6 & 63) - 32 + j;
-                k2 = (l1 >> 12 & 63) - 32 + k;
-                l2 = this.b(enumskyblock, i2, j2, k2);
-                i3 = this.a(i2, j2, k2, enumskyblock);
-                if (i3 != l2) {
-                    this.b(enumskyblock, i2, j2, k2, i3);
-                    if (i3 > l2) {
-                        j3 = Math.abs(i2 - i);
-                        l3 = Math.abs(j2 - j);
-                        k3 = Math.abs(k2 - k);
-                        boolean flag = i1 < this.I.length - 6;
-
-                        if (j3 + l3 + k3 < 17 && flag) {
-                            if (this.b(enumskyblock, i2 - 1, j2, k2) < i3) {
-                                this.I[i1++] = i2 - 1 - i + 32 + (j2 - j + 32 << 6) + (k2 - k + 32 << 12);
-                            }
-
-                            if (this.b(enumskyblock, i2 + 1, j2, k2) < i3) {
-                                this.I[i1++] = i2 + 1 - i + 32 + (j2 - j + 32 << 6) + (k2 - k + 32 << 12);
-                            }
-
-                            if (this.b(enumskyblock, i2, j2 - 1, k2) < i3) {
-                                this.I[i1++] = i2 - i + 32 + (j2 - 1 - j + 32 << 6) + (k2 - k + 32 << 12);
-                            }
-
-                            if (this.b(enumskyblock, i2, j2 + 1, k2) < i3) {
-                                this.I[i1++] = i2 - i + 32 + (j2 + 1 - j + 32 << 6) + (k2 - k + 32 << 12);
-                            }
-
-                            if (this.b(enumskyblock, i2, j2, k2 - 1) < i3) {
-                                this.I[i1++] = i2 - i + 32 + (j2 - j + 32 << 6) + (k2 - 1 - k + 32 << 12);
-                            }
-
-                            if (this.b(enumskyblock, i2, j2, k2 + 1) < i3) {
-                                this.I[i1++] = i2 - i + 32 + (j2 - j + 32 << 6) + (k2 + 1 - k + 32 << 12);
-                            }
-                        }
-                    }
-                }
-            }
-
+            this.lightEngine.update(enumskyblock, i, j, k); // CraftBukkit - propagate over cached chunks
             this.methodProfiler.b();
             return true;
         }
@@ -2299,6 +2172,12 @@ public abstract class World implements IBlockAccess {
 
     public List getEntities(Entity entity, AxisAlignedBB axisalignedbb, IEntitySelector ientityselector) {
         ArrayList arraylist = new ArrayList();
+        this.getEntities(entity, axisalignedbb, ientityselector, arraylist); // CraftBukkit
+        return arraylist;
+    }
+
+    // CraftBukkit start - Query variants that add to the caller's list, see borrowEntityList
+    public void getEntities(Entity entity, AxisAlignedBB axisalignedbb, IEntitySelector ientityselector, List list) {
         int i = MathHelper.floor((axisalignedbb.a - 2.0D) / 16.0D);
         int j = MathHelper.floor((axisalignedbb.d + 2.0D) / 16.0D);
         int k = MathHelper.floor((axisalignedbb.c - 2.0D) / 16.0D);
@@ -2306,34 +2185,92 @@ public abstract class World implements IBlockAccess {
 
         for (int i1 = i; i1 <= j; ++i1) {
             for (int j1 = k; j1 <= l; ++j1) {
-                if (this.isChunkLoaded(i1, j1)) {
-                    this.getChunkAt(i1, j1).a(entity, axisalignedbb, arraylist, ientityselector);
+                Chunk chunk = this.getLoadedChunk(i1, j1);
+
+                if (chunk != null) {
+                    chunk.a(entity, axisalignedbb, list, ientityselector);
                 }
             }
         }
-
-        return arraylist;
     }
 
-    public List a(Class oclass, AxisAlignedBB axisalignedbb) {
-        return this.a(oclass, axisalignedbb, (IEntitySelector) null);
+    public void a(Class oclass, AxisAlignedBB axisalignedbb, IEntitySelector ientityselector, List list) {
+        int i = MathHelper.floor((axisalignedbb.a - 2.0D) / 16.0D);
+        int j = MathHelper.floor((axisalignedbb.d + 2.0D) / 16.0D);
+        int k = MathHelper.floor((axisalignedbb.c - 2.0D) / 16.0D);
+        int l = MathHelper.floor((axisalignedbb.f + 2.0D) / 16.0D);
+
+        for (int i1 = i; i1 <= j; ++i1) {
+            for (int j1 = k; j1 <= l; ++j1) {
+                Chunk chunk = this.getLoadedChunk(i1, j1);
+
+                if (chunk != null) {
+                    chunk.a(oclass, axisalignedbb, list, ientityselector);
+                }
+            }
+        }
     }
 
-    public List a(Class oclass, AxisAlignedBB axisalignedbb, IEntitySelector ientityselector) {
+    /**
+     * Returns false when no chunk slice a query over the box would search
+     * holds an entity of the kind, one of the kinds counted by Chunk.
+     */
+    public boolean mayHaveEntities(AxisAlignedBB axisalignedbb, int kind) {
         int i = MathHelper.floor((axisalignedbb.a - 2.0D) / 16.0D);
         int j = MathHelper.floor((axisalignedbb.d + 2.0D) / 16.0D);
         int k = MathHelper.floor((axisalignedbb.c - 2.0D) / 16.0D);
         int l = MathHelper.floor((axisalignedbb.f + 2.0D) / 16.0D);
-        ArrayList arraylist = new ArrayList();
+        int minSlice = MathHelper.floor((axisalignedbb.b - 2.0D) / 16.0D);
+        int maxSlice = MathHelper.floor((axisalignedbb.e + 2.0D) / 16.0D);
 
         for (int i1 = i; i1 <= j; ++i1) {
             for (int j1 = k; j1 <= l; ++j1) {
-                if (this.isChunkLoaded(i1, j1)) {
-                    this.getChunkAt(i1, j1).a(oclass, axisalignedbb, arraylist, ientityselector);
+                Chunk chunk = this.getLoadedChunk(i1, j1);
+
+                if (chunk != null && chunk.hasEntities(kind, minSlice, maxSlice)) {
+                    return true;
                 }
             }
         }
 
+        return false;
+    }
+
+    // One chunk map lookup instead of isChunkLoaded followed by getChunkAt
+    private Chunk getLoadedChunk(int i, int j) {
+        if (this.chunkProvider instanceof ChunkProviderServer) {
+            return ((ChunkProviderServer) this.chunkProvider).getChunkIfLoaded(i, j);
+        }
+
+        return this.isChunkLoaded(i, j) ? this.getChunkAt(i, j) : null;
+    }
+
+    /**
+     * Gets an empty list for one of the query variants above. Give it back
+     * with releaseEntityList once done, nested queries each get their own.
+     * Main thread only.
+     */
+    public List borrowEntityList() {
+        int size = this.entityLists.size();
+        return size == 0 ? new ArrayList() : this.entityLists.remove(size - 1);
+    }
+
+    public void releaseEntityList(List list) {
+        // Do not hold on to lists that grew very large
+        if (list.size() <= 1024 && this.entityLists.size() < 16) {
+            list.clear();
+            this.entityLists.add(list);
+        }
+    }
+    // CraftBukkit end
+
+    public List a(Class oclass, AxisAlignedBB axisalignedbb) {
+        return this.a(oclass, axisalignedbb, (IEntitySelector) null);
+    }
+
+    public List a(Class oclass, AxisAlignedBB axisalignedbb, IEntitySelector ientityselector) {
+        ArrayList arraylist = new ArrayList();
+        this.a(oclass, axisalignedbb, ientityselector, arraylist); // CraftBukkit
         return arraylist;
     }
 
@@ -2725,17 +2662,26 @@ public abstract class World implements IBlockAccess {
         return biomebase.f();
     }
 
+    // CraftBukkit start - Structure data is read and written during asynchronous chunk generation, the collection is shared
+    // by the worlds of the main world's folder
     public void a(String s, PersistentBase persistentbase) {
-        this.worldMaps.a(s, persistentbase);
+        synchronized (this.worldMaps) {
+            this.worldMaps.a(s, persistentbase);
+        }
     }
 
     public PersistentBase a(Class oclass, String s) {
-        return this.worldMaps.get(oclass, s);
+        synchronized (this.worldMaps) {
+            return this.worldMaps.get(oclass, s);
+        }
     }
 
     public int b(String s) {
-        return this.worldMaps.a(s);
+        synchronized (this.worldMaps) {
+            return this.worldMaps.a(s);
+        }
     }
+    // CraftBukkit end
 
     public void b(int i, int j, int k, int l, int i1) {
         for (int j1 = 0; j1 < this.u.size(); ++j1) {
@@ -2,8 +2,10 @@ package net.minecraft.server;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -17,6 +19,7 @@ import org.apache.logging.log4j.Logger;
 import org.bukkit.WeatherType;
 import org.bukkit.block.BlockState;
 import org.bukkit.craftbukkit.util.LongHash;
+import org.bukkit.craftbukkit.util.LongObjectHashMap;
 
 import org.bukkit.event.block.BlockFormEvent;
 import org.bukkit.event.weather.LightningStrikeEvent;
@@ -41,11 +44,14 @@ public class WorldServer extends World {
     private BlockActionDataList[] S = new BlockActionDataList[] { new BlockActionDataList((BananaAPI) null), new BlockActionDataList((BananaAPI) null)};
     private int T;
     private static final StructurePieceTreasure[] U = new StructurePieceTreasure[] { new StructurePieceTreasure(Items.STICK, 0, 1, 3, 10), new StructurePieceTreasure(Item.getItemOf(Blocks.WOOD), 0, 1, 3, 10), new StructurePieceTreasure(Item.getItemOf(Blocks.LOG), 0, 1, 3, 10), new StructurePieceTreasure(Items.STONE_AXE, 0, 1, 1, 3), new StructurePieceTreasure(Items.WOOD_AXE, 0, 1, 1, 5), new StructurePieceTreasure(Items.STONE_PICKAXE, 0, 1, 1, 3), new StructurePieceTreasure(Items.WOOD_PICKAXE, 0, 1, 1, 5), new StructurePieceTreasure(Items.APPLE, 0, 2, 3, 5), new StructurePieceTreasure(Items.BREAD, 0, 2, 3, 3), new StructurePieceTreasure(Item.getItemOf(Blocks.LOG2), 0, 1, 3, 10)};
-    private List V = new ArrayList();
+    private Set V = new LinkedHashSet(); // CraftBukkit - ArrayList -> LinkedHashSet
     private IntHashMap entitiesById;
+    private LongObjectHashMap<Set<NextTickListEntry>> tickEntriesByChunk; // CraftBukkit - pending ticks bucketed by chunk
 
     // CraftBukkit start
     public final int dimension;
+    public final long[] tickTimes = new long[100]; // Like the removed per dimension tick times of MinecraftServer
+    public final long[] randomTicks = new long[4096]; // Random block ticks by block id since the world was loaded
 
     // Add env and gen to constructor
     public WorldServer(MinecraftServer minecraftserver, IDataManager idatamanager, String s, int i, WorldSettings worldsettings, MethodProfiler methodprofiler, org.bukkit.World.Environment env, org.bukkit.generator.ChunkGenerator gen) {
@@ -68,14 +74,24 @@ public class WorldServer extends World {
             this.N = new TreeSet();
         }
 
+        // CraftBukkit start
+        if (this.tickEntriesByChunk == null) {
+            this.tickEntriesByChunk = new LongObjectHashMap<Set<NextTickListEntry>>();
+        }
+        // CraftBukkit end
+
         this.Q = new org.bukkit.craftbukkit.CraftTravelAgent(this); // CraftBukkit
         this.scoreboard = new ScoreboardServer(minecraftserver);
-        PersistentScoreboard persistentscoreboard = (PersistentScoreboard) this.worldMaps.get(PersistentScoreboard.class, "scoreboard");
+        PersistentScoreboard persistentscoreboard;
 
-        if (persistentscoreboard == null) {
-            persistentscoreboard = new PersistentScoreboard();
-            this.worldMaps.a("scoreboard", persistentscoreboard);
-        }
+        synchronized (this.worldMaps) { // CraftBukkit - see World.a(Class, String)
+            persistentscoreboard = (PersistentScoreboard) this.worldMaps.get(PersistentScoreboard.class, "scoreboard");
+
+            if (persistentscoreboard == null) {
+                persistentscoreboard = new PersistentScoreboard();
+                this.worldMaps.a("scoreboard", persistentscoreboard);
+            }
+        } // CraftBukkit
 
         persistentscoreboard.a(this.scoreboard);
         ((ScoreboardServer) this.scoreboard).a(persistentscoreboard);
@@ -307,7 +323,8 @@ public class WorldServer extends World {
         // CraftBukkit start
         // Iterator iterator = this.chunkTickList.iterator();
 
-        for (long chunkCoord : this.chunkTickList.popAll()) {
+        for (int index = 0; index < this.chunkTickList.size(); ++index) {
+            long chunkCoord = this.chunkTickList.get(index); // Only changes in C(), walked without copying
             // ChunkCoordIntPair chunkcoordintpair = (ChunkCoordIntPair) iterator.next();
             int chunkX = LongHash.msw(chunkCoord);
             int chunkZ = LongHash.lsw(chunkCoord);
@@ -397,12 +414,19 @@ public class WorldServer extends World {
                         int i3 = j2 >> 16 & 15;
 
                         ++j;
+                        // CraftBukkit start - Only look up the blocks that take random ticks
+                        if (!chunksection.isTicking(k2, i3, l2)) {
+                            continue;
+                        }
+
                         Block block = chunksection.getTypeId(k2, i3, l2);
 
                         if (block.isTicking()) {
                             ++i;
+                            ++this.randomTicks[Block.getId(block)];
                             block.a(this, k2 + k, i3 + chunksection.getYPosition(), l2 + l, this.random);
                         }
+                        // CraftBukkit end
                     }
                 }
             }
@@ -448,10 +472,7 @@ public class WorldServer extends World {
                 nextticklistentry.a(i1);
             }
 
-            if (!this.M.contains(nextticklistentry)) {
-                this.M.add(nextticklistentry);
-                this.N.add(nextticklistentry);
-            }
+            this.addNextTick(nextticklistentry); // CraftBukkit
         }
     }
 
@@ -463,12 +484,39 @@ public class WorldServer extends World {
             nextticklistentry.a((long) l + this.worldData.getTime());
         }
 
-        if (!this.M.contains(nextticklistentry)) {
-            this.M.add(nextticklistentry);
+        this.addNextTick(nextticklistentry); // CraftBukkit
+    }
+
+    // CraftBukkit start - Keep M, N and the per-chunk index in step
+    private void addNextTick(NextTickListEntry nextticklistentry) {
+        if (this.M.add(nextticklistentry)) {
             this.N.add(nextticklistentry);
+
+            long key = LongHash.toLong(nextticklistentry.a >> 4, nextticklistentry.c >> 4);
+            Set<NextTickListEntry> bucket = this.tickEntriesByChunk.get(key);
+
+            if (bucket == null) {
+                bucket = new HashSet<NextTickListEntry>();
+                this.tickEntriesByChunk.put(key, bucket);
+            }
+
+            bucket.add(nextticklistentry);
         }
     }
 
+    private void removeNextTick(NextTickListEntry nextticklistentry) {
+        this.N.remove(nextticklistentry);
+        this.M.remove(nextticklistentry);
+
+        long key = LongHash.toLong(nextticklistentry.a >> 4, nextticklistentry.c >> 4);
+        Set<NextTickListEntry> bucket = this.tickEntriesByChunk.get(key);
+
+        if (bucket != null && bucket.remove(nextticklistentry) && bucket.isEmpty()) {
+            this.tickEntriesByChunk.remove(key);
+        }
+    }
+    // CraftBukkit end
+
     public void tickEntities() {
         if (false && this.players.isEmpty()) { // CraftBukkit - this prevents entity cleanup, other issues on servers with no players
             if (this.emptyTime++ >= 1200) {
@@ -511,8 +559,7 @@ public class WorldServer extends World {
                     break;
                 }
 
-                this.N.remove(nextticklistentry);
-                this.M.remove(nextticklistentry);
+                this.removeNextTick(nextticklistentry); // CraftBukkit
                 this.V.add(nextticklistentry);
             }
 
@@ -566,35 +613,60 @@ public class WorldServer extends World {
         int k = (chunkcoordintpair.z << 4) - 2;
         int l = k + 16 + 2;
 
-        for (int i1 = 0; i1 < 2; ++i1) {
-            Iterator iterator;
+        // CraftBukkit start - Only look at the buckets of the chunks overlapping the range instead of walking all of N
+        for (int cx = i >> 4; cx <= (j - 1) >> 4; ++cx) {
+            for (int cz = k >> 4; cz <= (l - 1) >> 4; ++cz) {
+                Set<NextTickListEntry> bucket = this.tickEntriesByChunk.get(LongHash.toLong(cx, cz));
 
-            if (i1 == 0) {
-                iterator = this.N.iterator();
-            } else {
-                iterator = this.V.iterator();
-                if (!this.V.isEmpty()) {
-                    a.debug("toBeTicked = " + this.V.size());
+                if (bucket == null) {
+                    continue;
                 }
-            }
 
-            while (iterator.hasNext()) {
-                NextTickListEntry nextticklistentry = (NextTickListEntry) iterator.next();
+                for (NextTickListEntry nextticklistentry : bucket) {
+                    if (nextticklistentry.a >= i && nextticklistentry.a < j && nextticklistentry.c >= k && nextticklistentry.c < l) {
+                        if (arraylist == null) {
+                            arraylist = new ArrayList();
+                        }
 
-                if (nextticklistentry.a >= i && nextticklistentry.a < j && nextticklistentry.c >= k && nextticklistentry.c < l) {
-                    if (flag) {
-                        this.M.remove(nextticklistentry);
-                        iterator.remove();
+                        arraylist.add(nextticklistentry);
                     }
+                }
+            }
+        }
 
-                    if (arraylist == null) {
-                        arraylist = new ArrayList();
-                    }
+        if (arraylist != null) {
+            // Buckets are unordered, restore the order N would have handed them out in
+            Collections.sort(arraylist);
+
+            if (flag) {
+                for (Object object : arraylist) {
+                    this.removeNextTick((NextTickListEntry) object);
+                }
+            }
+        }
 
-                    arraylist.add(nextticklistentry);
+        Iterator iterator = this.V.iterator();
+
+        if (!this.V.isEmpty()) {
+            a.debug("toBeTicked = " + this.V.size());
+        }
+
+        while (iterator.hasNext()) {
+            NextTickListEntry nextticklistentry = (NextTickListEntry) iterator.next();
+
+            if (nextticklistentry.a >= i && nextticklistentry.a < j && nextticklistentry.c >= k && nextticklistentry.c < l) {
+                if (flag) {
+                    iterator.remove();
                 }
+
+                if (arraylist == null) {
+                    arraylist = new ArrayList();
+                }
+
+                arraylist.add(nextticklistentry);
             }
         }
+        // CraftBukkit end
 
         return arraylist;
     }
@@ -619,6 +691,11 @@ public class WorldServer extends World {
         // CraftBukkit start
         org.bukkit.craftbukkit.generator.InternalChunkGenerator gen;
 
+        // Chunks may be generated on the chunk I/O threads while the main thread looks up biomes, in any world
+        if (this.worldProvider.e.getClass() == WorldChunkManager.class) {
+            this.worldProvider.e = new org.bukkit.craftbukkit.generator.SynchronizedWorldChunkManager(this.getSeed(), this.worldData.getType());
+        }
+
         if (this.generator != null) {
             gen = new org.bukkit.craftbukkit.generator.CustomChunkGenerator(this, this.getSeed(), this.generator);
         } else if (this.worldProvider instanceof WorldProviderHell) {
@@ -676,6 +753,12 @@ public class WorldServer extends World {
             this.N = new TreeSet();
         }
 
+        // CraftBukkit start
+        if (this.tickEntriesByChunk == null) {
+            this.tickEntriesByChunk = new LongObjectHashMap<Set<NextTickListEntry>>();
+        }
+        // CraftBukkit end
+
         this.b(worldsettings);
         super.a(worldsettings);
     }
@@ -780,6 +863,24 @@ public class WorldServer extends World {
         }
     }
 
+    // CraftBukkit start - Incremental autosave, the chunks themselves are saved over the period by ChunkProviderServer.saveIncremental
+    public void startIncrementalSave(int period) throws ExceptionWorldConflict {
+        if (this.chunkProvider.canSave()) {
+            this.a();
+            this.chunkProviderServer.startIncrementalSave(period);
+            Iterator iterator = this.chunkProviderServer.a().iterator();
+
+            while (iterator.hasNext()) {
+                Chunk chunk = (Chunk) iterator.next();
+
+                if (chunk != null && !this.manager.a(chunk.locX, chunk.locZ)) {
+                    this.chunkProviderServer.queueUnload(chunk.locX, chunk.locZ);
+                }
+            }
+        }
+    }
+    // CraftBukkit end
+
     public void flushSave() {
         if (this.chunkProvider.canSave()) {
             this.chunkProvider.c();
@@ -791,7 +892,9 @@ public class WorldServer extends World {
         this.dataManager.saveWorldData(this.worldData, this.server.getPlayerList().t());
         // CraftBukkit start - save worldMaps once, rather than once per shared world
         if (!(this instanceof SecondaryWorldServer)) {
-            this.worldMaps.a();
+            synchronized (this.worldMaps) { // See World.a(Class, String)
+                this.worldMaps.a();
+            }
         }
         // CraftBukkit end
     }
@@ -89,7 +89,6 @@ import net.minecraft.server.ServerNBTManager;
 import net.minecraft.server.WorldLoaderServer;
 import net.minecraft.server.WorldManager;
 import net.minecraft.server.WorldMap;
-import net.minecraft.server.PersistentCollection;
 import net.minecraft.server.WorldNBTStorage;
 import net.minecraft.server.WorldServer;
 import net.minecraft.server.WorldSettings;
@@ -122,6 +121,13 @@ import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.configuration.serialization.ConfigurationSerialization;
 import org.bukkit.conversations.Conversable;
+import org.bukkit.craftbukkit.chunkio.ChunkIOExecutor;
+import org.bukkit.craftbukkit.chunkio.ChunkPayloadCache;
+import org.bukkit.craftbukkit.command.AsyncTasksCommand;
+import org.bukkit.craftbukkit.command.ChunkIOCommand;
+import org.bukkit.craftbukkit.command.ProfilerCommand;
+import org.bukkit.craftbukkit.command.TpsCommand;
+import org.bukkit.craftbukkit.command.WorldTicksCommand;
 import org.bukkit.craftbukkit.command.VanillaCommandWrapper;
 import org.bukkit.craftbukkit.entity.CraftPlayer;
 import org.bukkit.craftbukkit.help.SimpleHelpMap;
@@ -141,9 +147,13 @@ import org.bukkit.craftbukkit.scheduler.CraftScheduler;
 import org.bukkit.craftbukkit.scoreboard.CraftScoreboardManager;
 import org.bukkit.craftbukkit.updater.AutoUpdater;
 import org.bukkit.craftbukkit.updater.BukkitDLUpdaterService;
+import org.bukkit.craftbukkit.util.ChunkSendController;
 import org.bukkit.craftbukkit.util.CraftIconCache;
 import org.bukkit.craftbukkit.util.CraftMagicNumbers;
 import org.bukkit.craftbukkit.util.DatFileFilter;
+import org.bukkit.craftbukkit.util.ExplosionCache;
+import org.bukkit.craftbukkit.util.LightEngine;
+import org.bukkit.craftbukkit.util.TickStatistics;
 import org.bukkit.craftbukkit.util.Versioning;
 import org.bukkit.entity.Player;
 import org.bukkit.event.inventory.InventoryType;
@@ -311,9 +321,21 @@ public final class CraftServer implements Server {
         waterAnimalSpawn = configuration.getInt("spawn-limits.water-animals");
         ambientSpawn = configuration.getInt("spawn-limits.ambient");
         console.autosavePeriod = configuration.getInt("ticks-per.autosave");
+        console.incrementalAutosave = configuration.getBoolean("chunk-io.incremental-autosave");
+        console.autosaveTickBudget = configuration.getInt("chunk-io.autosave-tick-budget");
         warningState = WarningState.value(configuration.getString("settings.deprecated-verbose"));
         chunkGCPeriod = configuration.getInt("chunk-gc.period-in-ticks");
         chunkGCLoadThresh = configuration.getInt("chunk-gc.load-threshold");
+        ChunkIOExecutor.configure(configuration.getInt("chunk-io.base-threads"), configuration.getInt("chunk-io.players-per-thread"), configuration.getBoolean("chunk-io.async-generation"), configuration.getBoolean("chunk-io.async-lighting"));
+        ChunkIOExecutor.configureSaves(configuration.getInt("chunk-io.save-threads"), configuration.getInt("chunk-io.save-queue-limit"));
+        ChunkPayloadCache.configure(configuration.getInt("chunk-io.payload-cache-size"));
+        ChunkSendController.configure(configuration.getInt("chunk-send.min-per-tick"), configuration.getInt("chunk-send.max-per-tick"), configuration.getInt("chunk-send.max-pending-kib"), configuration.getInt("chunk-send.chunks-per-packet"));
+        console.setWorldTickThreads(configuration.getBoolean("world-ticking.parallel") ? configuration.getInt("world-ticking.threads") : 0);
+        console.maxCatchUpTicks = Math.max(0, configuration.getInt("tick-loop.max-catch-up-ticks"));
+        console.processQueueBudget = configuration.getInt("tick-loop.process-queue-budget");
+        LightEngine.configure(configuration.getBoolean("lighting.queue-updates"));
+        ExplosionCache.configure(configuration.getBoolean("explosions.merge"));
+        scheduler.getAsyncTaskPool().configure(configuration.getInt("async-tasks.max-threads"), configuration.getInt("async-tasks.queue-limit"), configuration.getInt("async-tasks.stall-warning-seconds"));
         loadIcon();
 
         updater = new AutoUpdater(new BukkitDLUpdaterService(configuration.getString("auto-updater.host")), getLogger(), configuration.getString("auto-updater.preferred-channel"));
@@ -393,6 +415,11 @@ public final class CraftServer implements Server {
         if (type == PluginLoadOrder.POSTWORLD) {
             commandMap.setFallbackCommands();
             setVanillaCommands();
+            commandMap.register("bukkit", new ProfilerCommand("profiler"));
+            commandMap.register("bukkit", new ChunkIOCommand("chunkio"));
+            commandMap.register("bukkit", new WorldTicksCommand("worldticks"));
+            commandMap.register("bukkit", new TpsCommand("tps"));
+            commandMap.register("bukkit", new AsyncTasksCommand("asynctasks"));
             commandMap.registerServerAliases();
             loadCustomPermissions();
             DefaultPermissions.registerCorePermissions();
@@ -774,8 +801,20 @@ public final class CraftServer implements Server {
         warningState = WarningState.value(configuration.getString("settings.deprecated-verbose"));
         printSaveWarning = false;
         console.autosavePeriod = configuration.getInt("ticks-per.autosave");
+        console.incrementalAutosave = configuration.getBoolean("chunk-io.incremental-autosave");
+        console.autosaveTickBudget = configuration.getInt("chunk-io.autosave-tick-budget");
         chunkGCPeriod = configuration.getInt("chunk-gc.period-in-ticks");
         chunkGCLoadThresh = configuration.getInt("chunk-gc.load-threshold");
+        ChunkIOExecutor.configure(configuration.getInt("chunk-io.base-threads"), configuration.getInt("chunk-io.players-per-thread"), configuration.getBoolean("chunk-io.async-generation"), configuration.getBoolean("chunk-io.async-lighting"));
+        ChunkIOExecutor.configureSaves(configuration.getInt("chunk-io.save-threads"), configuration.getInt("chunk-io.save-queue-limit"));
+        ChunkPayloadCache.configure(configuration.getInt("chunk-io.payload-cache-size"));
+        ChunkSendController.configure(configuration.getInt("chunk-send.min-per-tick"), configuration.getInt("chunk-send.max-per-tick"), configuration.getInt("chunk-send.max-pending-kib"), configuration.getInt("chunk-send.chunks-per-packet"));
+        console.setWorldTickThreads(configuration.getBoolean("world-ticking.parallel") ? configuration.getInt("world-ticking.threads") : 0);
+        console.maxCatchUpTicks = Math.max(0, configuration.getInt("tick-loop.max-catch-up-ticks"));
+        console.processQueueBudget = configuration.getInt("tick-loop.process-queue-budget");
+        LightEngine.configure(configuration.getBoolean("lighting.queue-updates"));
+        ExplosionCache.configure(configuration.getBoolean("explosions.merge"));
+        scheduler.getAsyncTaskPool().configure(configuration.getInt("async-tasks.max-threads"), configuration.getInt("async-tasks.queue-limit"), configuration.getInt("async-tasks.stall-warning-seconds"));
         loadIcon();
 
         try {
@@ -1046,6 +1085,7 @@ public final class CraftServer implements Server {
             try {
                 handle.save(true, null);
                 handle.saveLevel();
+                handle.flushSave();
                 WorldSaveEvent event = new WorldSaveEvent(handle.getWorld());
                 getPluginManager().callEvent(event);
             } catch (ExceptionWorldConflict ex) {
@@ -1299,8 +1339,7 @@ public final class CraftServer implements Server {
     @Override
     @Deprecated
     public CraftMapView getMap(short id) {
-        PersistentCollection collection = console.worlds.get(0).worldMaps;
-        WorldMap worldmap = (WorldMap) collection.get(WorldMap.class, "map_" + id);
+        WorldMap worldmap = (WorldMap) console.worlds.get(0).a(WorldMap.class, "map_" + id);
         if (worldmap == null) {
             return null;
         }
@@ -1637,6 +1676,26 @@ public final class CraftServer implements Server {
         return ambientSpawn;
     }
 
+    public TickStatistics getTickStatistics() {
+        return console.tickStatistics;
+    }
+
+    /**
+     * Ticks per second over the last second, minute and five minutes.
+     */
+    public double[] getTPS() {
+        TickStatistics stats = console.tickStatistics;
+        return new double[] { stats.getTps(TickStatistics.SECOND), stats.getTps(TickStatistics.MINUTE), stats.getTps(TickStatistics.FIVE_MINUTES) };
+    }
+
+    /**
+     * Tick duration in milliseconds that the given fraction of the ticks of
+     * the last minute stayed below.
+     */
+    public double getMSPT(double percentile) {
+        return console.tickStatistics.getMspt(percentile, TickStatistics.MINUTE);
+    }
+
     @Override
     public boolean isPrimaryThread() {
         return Thread.currentThread().equals(console.primaryThread);
@@ -204,7 +204,7 @@ public class CraftWorld implements World {
         if (world.chunkProviderServer.chunkProvider == null) {
             chunk = world.chunkProviderServer.emptyChunk;
         } else {
-            chunk = world.chunkProviderServer.chunkProvider.getOrCreateChunk(x, z);
+            chunk = world.chunkProviderServer.generateChunk(x, z); // May wait for the chunk I/O threads to finish a terrain
         }
 
         chunkLoadPostProcess(chunk, x, z);
@@ -562,6 +562,7 @@ public class CraftWorld implements World {
             if (chunk != null) {
                 byte[] biomevals = chunk.m();
                 biomevals[((z & 0xF) << 4) | (x & 0xF)] = (byte)bb.id;
+                chunk.invalidatePayload();
             }
         }
     }
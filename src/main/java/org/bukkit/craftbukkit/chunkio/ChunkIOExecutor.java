@@ -1,23 +1,73 @@
 package org.bukkit.craftbukkit.chunkio;
 
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import net.minecraft.server.Chunk;
 import net.minecraft.server.ChunkProviderServer;
 import net.minecraft.server.ChunkRegionLoader;
+import net.minecraft.server.Entity;
+import net.minecraft.server.IAsyncChunkSaver;
 import net.minecraft.server.World;
 import org.bukkit.craftbukkit.util.AsynchronousExecutor;
 
 public class ChunkIOExecutor {
-    static final int BASE_THREADS = 1;
+    static final int BASE_THREADS = 2;
     static final int PLAYERS_PER_THREAD = 50;
+    static final int SAVE_THREADS = 1;
+    static final int SAVE_QUEUE_LIMIT = 8192;
+
+    private static int baseThreads = BASE_THREADS;
+    private static int playersPerThread = PLAYERS_PER_THREAD;
+    private static int lastPlayers;
+    private static volatile boolean asyncGeneration;
+    private static volatile boolean asyncLighting;
+    private static volatile int saveQueueLimit = SAVE_QUEUE_LIMIT;
+    // Worlds ticking in parallel queue and finish loads at the same time
+    private static final AtomicLong sequence = new AtomicLong();
+    private static final Map<World, ChunkIOStats> stats = new WeakHashMap<World, ChunkIOStats>();
+
+    // Closest to a player first, oldest request first among equals
+    private static final Comparator<QueuedChunk> PRIORITY = new Comparator<QueuedChunk>() {
+        public int compare(QueuedChunk o1, QueuedChunk o2) {
+            if (o1.priority != o2.priority) {
+                return o1.priority < o2.priority ? -1 : 1;
+            }
+            return o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1);
+        }
+    };
+
+    private static final AsynchronousExecutor<QueuedChunk, Chunk, Runnable, RuntimeException> instance = new AsynchronousExecutor<QueuedChunk, Chunk, Runnable, RuntimeException>(new ChunkIOProvider(), BASE_THREADS, PRIORITY);
 
-    private static final AsynchronousExecutor<QueuedChunk, Chunk, Runnable, RuntimeException> instance = new AsynchronousExecutor<QueuedChunk, Chunk, Runnable, RuntimeException>(new ChunkIOProvider(), BASE_THREADS);
+    // Replaces the single vanilla File IO Thread, idle writers exit so they never keep the server alive
+    private static final ThreadPoolExecutor saveExecutor = new ThreadPoolExecutor(SAVE_THREADS, SAVE_THREADS, 10L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Chunk Save Thread-" + threadNumber.getAndIncrement());
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    static {
+        saveExecutor.allowCoreThreadTimeOut(true);
+    }
 
     public static Chunk syncChunkLoad(World world, ChunkRegionLoader loader, ChunkProviderServer provider, int x, int z) {
         return instance.getSkipQueue(new QueuedChunk(x, z, loader, world, provider));
     }
 
     public static void queueChunkLoad(World world, ChunkRegionLoader loader, ChunkProviderServer provider, int x, int z, Runnable runnable) {
-        instance.add(new QueuedChunk(x, z, loader, world, provider), runnable);
+        instance.add(new QueuedChunk(x, z, loader, world, provider, getPriority(world, x, z), sequence.getAndIncrement()), runnable);
     }
 
     // Abuses the fact that hashCode and equals for QueuedChunk only use world and coords
@@ -25,12 +75,106 @@ public class ChunkIOExecutor {
         instance.drop(new QueuedChunk(x, z, null, world, null), runnable);
     }
 
+    public static void configure(int base, int players, boolean generation, boolean lighting) {
+        baseThreads = Math.max(1, base);
+        playersPerThread = Math.max(1, players);
+        asyncGeneration = generation;
+        asyncLighting = lighting;
+        adjustPoolSize(lastPlayers);
+    }
+
+    public static void configureSaves(int threads, int queueLimit) {
+        threads = Math.max(1, threads);
+        if (threads > saveExecutor.getMaximumPoolSize()) {
+            saveExecutor.setMaximumPoolSize(threads);
+            saveExecutor.setCorePoolSize(threads);
+        } else {
+            saveExecutor.setCorePoolSize(threads);
+            saveExecutor.setMaximumPoolSize(threads);
+        }
+        saveQueueLimit = Math.max(1, queueLimit);
+    }
+
+    /**
+     * Starts a writer for the saver. Each writer keeps going until the saver
+     * has no region left that is not already being written.
+     */
+    public static void queueChunkSave(final IAsyncChunkSaver saver) {
+        saveExecutor.execute(new Runnable() {
+            public void run() {
+                while (saver.c()) {
+                    ;
+                }
+            }
+        });
+    }
+
+    public static int getSaveQueueLimit() {
+        return saveQueueLimit;
+    }
+
+    public static int getSaveThreads() {
+        return saveExecutor.getMaximumPoolSize();
+    }
+
+    public static boolean isAsyncGenerationEnabled() {
+        return asyncGeneration;
+    }
+
+    public static boolean isAsyncLightingEnabled() {
+        return asyncLighting;
+    }
+
     public static void adjustPoolSize(int players) {
-        int size = Math.max(BASE_THREADS, (int) Math.ceil(players / PLAYERS_PER_THREAD));
+        lastPlayers = players;
+        int size = Math.max(baseThreads, (int) Math.ceil(players / (double) playersPerThread));
         instance.setActiveThreads(size);
     }
 
     public static void tick() {
         instance.finishActive();
     }
+
+    public static int getActiveThreads() {
+        return instance.getActiveThreads();
+    }
+
+    /**
+     * Counts the chunk loads queued for a world that have not finished yet.
+     */
+    public static int getQueuedChunks(World world) {
+        int count = 0;
+        for (QueuedChunk queuedChunk : instance.getQueued()) {
+            if (queuedChunk.world == world) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static ChunkIOStats getStats(World world) {
+        synchronized (stats) {
+            ChunkIOStats worldStats = stats.get(world);
+            if (worldStats == null) {
+                worldStats = new ChunkIOStats();
+                stats.put(world, worldStats);
+            }
+            return worldStats;
+        }
+    }
+
+    // Squared distance in chunks to the nearest player in the world
+    private static int getPriority(World world, int x, int z) {
+        int priority = Integer.MAX_VALUE;
+        List players = world.players;
+
+        for (int i = 0; i < players.size(); i++) {
+            Entity entity = (Entity) players.get(i);
+            int dx = ((int) Math.floor(entity.locX) >> 4) - x;
+            int dz = ((int) Math.floor(entity.locZ) >> 4) - z;
+            priority = Math.min(priority, dx * dx + dz * dz);
+        }
+
+        return priority;
+    }
 }
@@ -18,12 +18,21 @@ class ChunkIOProvider implements AsynchronousExecutor.CallBackProvider<QueuedChu
         ChunkRegionLoader loader = queuedChunk.loader;
         Object[] data = loader.loadChunk(queuedChunk.world, queuedChunk.x, queuedChunk.z);
 
+        Chunk chunk = null;
         if (data != null) {
             queuedChunk.compound = (NBTTagCompound) data[1];
-            return (Chunk) data[0];
+            chunk = (Chunk) data[0];
+        } else if (queuedChunk.provider.canGenerateAsync()) {
+            // Create the terrain here, structures and population still happen synchronously
+            queuedChunk.generated = true;
+            chunk = queuedChunk.provider.generateTerrain(queuedChunk.x, queuedChunk.z);
         }
 
-        return null;
+        if (chunk != null && ChunkIOExecutor.isAsyncLightingEnabled()) {
+            ChunkLightInitializer.initLighting(chunk);
+        }
+
+        return chunk;
     }
 
     // sync stuff
@@ -34,18 +43,27 @@ class ChunkIOProvider implements AsynchronousExecutor.CallBackProvider<QueuedChu
             return;
         }
 
-        queuedChunk.loader.loadEntities(chunk, queuedChunk.compound.getCompound("Level"), queuedChunk.world);
-        chunk.lastSaved = queuedChunk.provider.world.getTime();
+        if (queuedChunk.provider.isChunkLoaded(queuedChunk.x, queuedChunk.z)) {
+            // Someone went around the queue while this one was being generated, keep theirs
+            return;
+        }
+
+        ChunkIOExecutor.getStats(queuedChunk.world).record(queuedChunk.queued);
+        if (!queuedChunk.generated) {
+            queuedChunk.loader.loadEntities(chunk, queuedChunk.compound.getCompound("Level"), queuedChunk.world);
+            chunk.lastSaved = queuedChunk.provider.world.getTime();
+        }
         queuedChunk.provider.chunks.put(LongHash.toLong(queuedChunk.x, queuedChunk.z), chunk);
         chunk.addEntities();
 
         if (queuedChunk.provider.chunkProvider != null) {
+            // The terrain generator left them out, see NormalChunkGenerator.createTerrainGenerator
             queuedChunk.provider.chunkProvider.recreateStructures(queuedChunk.x, queuedChunk.z);
         }
 
         Server server = queuedChunk.provider.world.getServer();
         if (server != null) {
-            server.getPluginManager().callEvent(new org.bukkit.event.world.ChunkLoadEvent(chunk.bukkitChunk, false));
+            server.getPluginManager().callEvent(new org.bukkit.event.world.ChunkLoadEvent(chunk.bukkitChunk, queuedChunk.generated));
         }
 
         // Update neighbor counts
@@ -0,0 +1,92 @@
+package org.bukkit.craftbukkit.chunkio;
+
+/**
+ * Rolling per world chunk load statistics over the last minute, kept in one
+ * second buckets. Only touched from the thread that ticks the world, which
+ * is the main thread unless worlds tick in parallel.
+ */
+public class ChunkIOStats {
+    private static final int BUCKETS = 60;
+
+    private final long[] seconds = new long[BUCKETS];
+    private final int[] loaded = new int[BUCKETS];
+    private final long[] latency = new long[BUCKETS];
+    private final long[] maxLatency = new long[BUCKETS];
+    private long totalLoaded;
+
+    void record(long queuedNanos) {
+        long now = System.nanoTime();
+        long second = now / 1000000000L;
+        int index = (int) (second % BUCKETS);
+
+        if (seconds[index] != second) {
+            seconds[index] = second;
+            loaded[index] = 0;
+            latency[index] = 0L;
+            maxLatency[index] = 0L;
+        }
+
+        long wait = now - queuedNanos;
+        loaded[index]++;
+        latency[index] += wait;
+        maxLatency[index] = Math.max(maxLatency[index], wait);
+        totalLoaded++;
+    }
+
+    public long getTotalLoaded() {
+        return totalLoaded;
+    }
+
+    /**
+     * @return chunks loaded per second, averaged over the last minute
+     */
+    public double getThroughput() {
+        return getLoaded() / (double) BUCKETS;
+    }
+
+    /**
+     * @return average milliseconds between queueing and finishing a load over the last minute
+     */
+    public double getAverageLatency() {
+        int count = getLoaded();
+        long total = 0L;
+        long oldest = System.nanoTime() / 1000000000L - BUCKETS;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            if (seconds[i] > oldest) {
+                total += latency[i];
+            }
+        }
+
+        return count == 0 ? 0.0D : total / 1.0E6D / count;
+    }
+
+    /**
+     * @return the longest wait in milliseconds over the last minute
+     */
+    public double getMaxLatency() {
+        long max = 0L;
+        long oldest = System.nanoTime() / 1000000000L - BUCKETS;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            if (seconds[i] > oldest) {
+                max = Math.max(max, maxLatency[i]);
+            }
+        }
+
+        return max / 1.0E6D;
+    }
+
+    private int getLoaded() {
+        int count = 0;
+        long oldest = System.nanoTime() / 1000000000L - BUCKETS;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            if (seconds[i] > oldest) {
+                count += loaded[i];
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,72 @@
+package org.bukkit.craftbukkit.chunkio;
+
+import net.minecraft.server.Chunk;
+import net.minecraft.server.EnumSkyBlock;
+
+import org.bukkit.craftbukkit.util.ChunkLighter;
+
+/**
+ * Lights a chunk before it is published, on the thread that loaded or
+ * generated it. Chunk.p() spreads the sky light under overhangs and the
+ * light of emitting blocks once the neighbors are loaded, which used to run
+ * on the main thread for every column. Here every column whose light stays
+ * inside the chunk is lit, and Chunk.p() lights the others. Block changes
+ * that keep the opacity and emission, like most of population, keep them.
+ */
+class ChunkLightInitializer extends ChunkLighter<Chunk> {
+    // The propagator keeps its queue between updates, one per I/O thread
+    private static final ThreadLocal<ChunkLightInitializer> initializers = new ThreadLocal<ChunkLightInitializer>() {
+        @Override
+        protected ChunkLightInitializer initialValue() {
+            return new ChunkLightInitializer();
+        }
+    };
+
+    /**
+     * Lights the chunk if it is not lit yet. The chunk must not be reachable
+     * from the world.
+     */
+    static void initLighting(Chunk chunk) {
+        if (chunk.lit || chunk.world.worldProvider.g) {
+            return;
+        }
+
+        if (chunk.heightMap.length != 256) {
+            // Height map missing from the saved chunk
+            chunk.initLighting();
+        }
+
+        chunk.litColumns = initializers.get().lightColumns(chunk, chunk.locX, chunk.locZ);
+    }
+
+    @Override
+    protected int getTop(Chunk chunk) {
+        return chunk.h();
+    }
+
+    @Override
+    protected int getBlockOpacity(Chunk chunk, int x, int y, int z) {
+        return chunk.b(x & 15, y, z & 15);
+    }
+
+    @Override
+    protected int getBlockEmission(Chunk chunk, int x, int y, int z) {
+        return chunk.getType(x & 15, y, z & 15).m();
+    }
+
+    @Override
+    protected boolean canBlockSeeSky(Chunk chunk, int x, int y, int z) {
+        return chunk.d(x & 15, y, z & 15);
+    }
+
+    @Override
+    protected int getLight(Chunk chunk, boolean sky, int x, int y, int z) {
+        return chunk.getBrightness(sky ? EnumSkyBlock.SKY : EnumSkyBlock.BLOCK, x & 15, y, z & 15);
+    }
+
+    @Override
+    protected void setBlockLight(Chunk chunk, boolean sky, int x, int y, int z, int level) {
+        // Nobody watches the chunk yet, so there is no block update to send
+        chunk.a(sky ? EnumSkyBlock.SKY : EnumSkyBlock.BLOCK, x & 15, y, z & 15, level);
+    }
+}
@@ -0,0 +1,229 @@
+package org.bukkit.craftbukkit.chunkio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * Keeps the compressed map chunk payload of each chunk so chunks sent to
+ * several players are only compressed once.
+ * <p>
+ * Every payload is a raw deflate segment ended with a sync flush, which
+ * leaves the output byte aligned without marking the end of the stream.
+ * Any number of segments can then be placed between a zlib header and a
+ * final empty block to form the single zlib stream the bulk packet carries,
+ * with the Adler-32 checksums of the segments combined for the trailer.
+ */
+public class ChunkPayloadCache {
+    static final int CACHE_SIZE = 64;
+
+    private static final int ADLER_BASE = 65521;
+    private static final byte[] HEADER = { 0x78, (byte) 0x9C };
+    private static final byte[] FINAL_BLOCK = { 0x03, 0x00 };
+
+    private static final boolean supported = checkSupported();
+    private static volatile long limit = CACHE_SIZE * 1024L * 1024L;
+
+    private static final AtomicLong memory = new AtomicLong();
+    private static final AtomicLong entries = new AtomicLong();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static final ThreadLocal<Deflater> localDeflater = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            // Same level as the uncached path, without the zlib wrapper
+            return new Deflater(6, true);
+        }
+    };
+
+    private static final ThreadLocal<byte[]> localBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[65536];
+        }
+    };
+
+    public static class Payload {
+        public final int version;
+        public final int sectionMask;
+        public final int addMask;
+        public final int length;
+        public final int adler;
+        public final byte[] data;
+
+        Payload(int version, int sectionMask, int addMask, int length, int adler, byte[] data) {
+            this.version = version;
+            this.sectionMask = sectionMask;
+            this.addMask = addMask;
+            this.length = length;
+            this.adler = adler;
+            this.data = data;
+        }
+    }
+
+    // Sync flush deflate needs Java 7, without it bulk packets are compressed as a whole like before
+    private static boolean checkSupported() {
+        Deflater deflater = new Deflater(6, true);
+        try {
+            deflater.setInput(new byte[1]);
+            deflater.deflate(new byte[16], 0, 16, Deflater.SYNC_FLUSH);
+            return true;
+        } catch (NoSuchMethodError ex) {
+            return false;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static void configure(int megabytes) {
+        limit = Math.max(0, megabytes) * 1024L * 1024L;
+    }
+
+    public static boolean isEnabled() {
+        return supported && limit > 0;
+    }
+
+    /**
+     * Compresses the uncompressed payload of one chunk into a segment that
+     * can be spliced with others.
+     */
+    public static Payload compress(byte[] data, int sectionMask, int addMask, int version) {
+        Deflater deflater = localDeflater.get();
+        byte[] buffer = localBuffer.get();
+        int length = 0;
+
+        deflater.reset();
+        deflater.setInput(data);
+
+        while (true) {
+            length += deflater.deflate(buffer, length, buffer.length - length, Deflater.SYNC_FLUSH);
+            if (length < buffer.length) {
+                break;
+            }
+
+            byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+            localBuffer.set(buffer);
+        }
+
+        Adler32 adler32 = new Adler32();
+        adler32.update(data);
+
+        byte[] segment = new byte[length];
+        System.arraycopy(buffer, 0, segment, 0, length);
+        return new Payload(version, sectionMask, addMask, data.length, (int) adler32.getValue(), segment);
+    }
+
+    /**
+     * Combines the checksum of some data with the checksum of the data
+     * following it, which is length bytes long. The checksum of no data is 1.
+     */
+    public static int combine(int adler1, int adler2, int length) {
+        long rem = (length & 0xFFFFFFFFL) % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFFL;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+
+        sum1 += (adler2 & 0xFFFFL) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFFL) + ((adler2 >>> 16) & 0xFFFFL) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= ADLER_BASE << 1) {
+            sum2 -= ADLER_BASE << 1;
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+
+        return (int) (sum1 | (sum2 << 16));
+    }
+
+    /**
+     * Size of the zlib stream made of the payloads.
+     */
+    public static int getSplicedSize(Payload[] payloads) {
+        int size = HEADER.length + FINAL_BLOCK.length + 4;
+        for (Payload payload : payloads) {
+            size += payload.data.length;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the zlib stream made of the payloads.
+     */
+    public static void splice(Payload[] payloads, OutputStream out) throws IOException {
+        int adler = 1;
+
+        out.write(HEADER);
+        for (Payload payload : payloads) {
+            out.write(payload.data);
+            adler = combine(adler, payload.adler, payload.length);
+        }
+
+        out.write(FINAL_BLOCK);
+        out.write(adler >>> 24);
+        out.write(adler >>> 16);
+        out.write(adler >>> 8);
+        out.write(adler);
+    }
+
+    /**
+     * Returns whether there is room to keep another payload of this size.
+     */
+    public static boolean reserve(Payload payload) {
+        if (memory.get() + payload.data.length > limit) {
+            return false;
+        }
+
+        memory.addAndGet(payload.data.length);
+        entries.incrementAndGet();
+        return true;
+    }
+
+    public static void release(Payload payload) {
+        memory.addAndGet(-payload.data.length);
+        entries.decrementAndGet();
+    }
+
+    public static void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    public static void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static double getHitRate() {
+        long hit = hits.get();
+        long total = hit + misses.get();
+        return total == 0 ? 0.0D : hit / (double) total;
+    }
+
+    public static long getMemoryUsage() {
+        return memory.get();
+    }
+
+    public static long getEntries() {
+        return entries.get();
+    }
+
+    public static long getLimit() {
+        return limit;
+    }
+}
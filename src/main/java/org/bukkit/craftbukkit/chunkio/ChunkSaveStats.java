@@ -0,0 +1,65 @@
+package org.bukkit.craftbukkit.chunkio;
+
+/**
+ * Rolling per world chunk save statistics over the last minute, kept in one
+ * second buckets. Written to by the save threads.
+ */
+public class ChunkSaveStats {
+    private static final int BUCKETS = 60;
+
+    private final long[] seconds = new long[BUCKETS];
+    private final int[] saved = new int[BUCKETS];
+    private final long[] bytes = new long[BUCKETS];
+    private long totalSaved;
+
+    public synchronized void record(int size) {
+        long second = System.nanoTime() / 1000000000L;
+        int index = (int) (second % BUCKETS);
+
+        if (seconds[index] != second) {
+            seconds[index] = second;
+            saved[index] = 0;
+            bytes[index] = 0L;
+        }
+
+        saved[index]++;
+        bytes[index] += size;
+        totalSaved++;
+    }
+
+    public synchronized long getTotalSaved() {
+        return totalSaved;
+    }
+
+    /**
+     * @return chunks saved per second, averaged over the last minute
+     */
+    public synchronized double getThroughput() {
+        int count = 0;
+        long oldest = System.nanoTime() / 1000000000L - BUCKETS;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            if (seconds[i] > oldest) {
+                count += saved[i];
+            }
+        }
+
+        return count / (double) BUCKETS;
+    }
+
+    /**
+     * @return uncompressed chunk data written per second, averaged over the last minute
+     */
+    public synchronized double getBytesPerSecond() {
+        long total = 0L;
+        long oldest = System.nanoTime() / 1000000000L - BUCKETS;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            if (seconds[i] > oldest) {
+                total += bytes[i];
+            }
+        }
+
+        return total / (double) BUCKETS;
+    }
+}
@@ -11,14 +11,24 @@ class QueuedChunk {
     final ChunkRegionLoader loader;
     final World world;
     final ChunkProviderServer provider;
+    final int priority;
+    final long sequence;
+    final long queued = System.nanoTime();
     NBTTagCompound compound;
+    boolean generated;
 
     public QueuedChunk(int x, int z, ChunkRegionLoader loader, World world, ChunkProviderServer provider) {
+        this(x, z, loader, world, provider, 0, 0L);
+    }
+
+    public QueuedChunk(int x, int z, ChunkRegionLoader loader, World world, ChunkProviderServer provider, int priority, long sequence) {
         this.x = x;
         this.z = z;
         this.loader = loader;
         this.world = world;
         this.provider = provider;
+        this.priority = priority;
+        this.sequence = sequence;
     }
 
     @Override
@@ -0,0 +1,65 @@
+package org.bukkit.craftbukkit.command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.defaults.BukkitCommand;
+import org.bukkit.craftbukkit.scheduler.AsyncTaskPool;
+import org.bukkit.craftbukkit.scheduler.AsyncTaskStats;
+import org.bukkit.craftbukkit.scheduler.CraftScheduler;
+
+import com.google.common.collect.ImmutableList;
+
+public class AsyncTasksCommand extends BukkitCommand {
+
+    // Busiest plugins first
+    private static final Comparator<Map.Entry<String, AsyncTaskStats>> LOAD = new Comparator<Map.Entry<String, AsyncTaskStats>>() {
+        public int compare(Map.Entry<String, AsyncTaskStats> o1, Map.Entry<String, AsyncTaskStats> o2) {
+            int load1 = o1.getValue().getActive() + o1.getValue().getQueued();
+            int load2 = o2.getValue().getActive() + o2.getValue().getQueued();
+            if (load1 != load2) {
+                return load1 > load2 ? -1 : 1;
+            }
+            return o1.getKey().compareTo(o2.getKey());
+        }
+    };
+
+    public AsyncTasksCommand(String name) {
+        super(name);
+        this.description = "Shows async scheduler threads and per plugin async task statistics";
+        this.usageMessage = "/asynctasks";
+        this.setPermission("bukkit.command.asynctasks");
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String currentAlias, String[] args) {
+        if (!testPermission(sender)) return true;
+
+        AsyncTaskPool pool = ((CraftScheduler) Bukkit.getScheduler()).getAsyncTaskPool();
+        sender.sendMessage(ChatColor.GOLD + String.format("Async task threads: %d of %d busy, %d of %d queued", pool.getActiveThreads(), pool.getThreads(), pool.getQueued(), pool.getQueueLimit()));
+
+        List<Map.Entry<String, AsyncTaskStats>> plugins = new ArrayList<Map.Entry<String, AsyncTaskStats>>(pool.getStats().entrySet());
+        Collections.sort(plugins, LOAD);
+        for (Map.Entry<String, AsyncTaskStats> entry : plugins) {
+            AsyncTaskStats stats = entry.getValue();
+            sender.sendMessage(String.format("%s: %d active, %d queued, %d rejected, %d run, %.2f ms avg, %.2f ms p95, %.2f ms max", entry.getKey(), stats.getActive(), stats.getQueued(), stats.getRejected(), stats.getCompleted(), stats.getAverageTime(), stats.getTime(0.95D), stats.getMaxTime()));
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, String alias, String[] args) {
+        Validate.notNull(sender, "Sender cannot be null");
+        Validate.notNull(args, "Arguments cannot be null");
+        Validate.notNull(alias, "Alias cannot be null");
+
+        return ImmutableList.of();
+    }
+}
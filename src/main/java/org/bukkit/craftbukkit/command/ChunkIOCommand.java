@@ -0,0 +1,93 @@
+package org.bukkit.craftbukkit.command;
+
+import java.util.Collection;
+import java.util.List;
+
+import net.minecraft.server.ChunkRegionLoader;
+import net.minecraft.server.EntityPlayer;
+import net.minecraft.server.IChunkLoader;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.WorldServer;
+
+import org.apache.commons.lang.Validate;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.defaults.BukkitCommand;
+import org.bukkit.craftbukkit.CraftWorld;
+import org.bukkit.craftbukkit.chunkio.ChunkIOExecutor;
+import org.bukkit.craftbukkit.chunkio.ChunkIOStats;
+import org.bukkit.craftbukkit.chunkio.ChunkPayloadCache;
+import org.bukkit.craftbukkit.chunkio.ChunkSaveStats;
+import org.bukkit.craftbukkit.entity.CraftPlayer;
+import org.bukkit.craftbukkit.util.ChunkSendController;
+import org.bukkit.entity.Player;
+
+import com.google.common.collect.ImmutableList;
+
+public class ChunkIOCommand extends BukkitCommand {
+
+    public ChunkIOCommand(String name) {
+        super(name);
+        this.description = "Shows chunk load, save and send statistics";
+        this.usageMessage = "/chunkio";
+        this.setPermission("bukkit.command.chunkio");
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String currentAlias, String[] args) {
+        if (!testPermission(sender)) return true;
+
+        sender.sendMessage(ChatColor.GOLD + "Chunk I/O threads: " + ChunkIOExecutor.getActiveThreads() + ", save threads: " + ChunkIOExecutor.getSaveThreads());
+        if (ChunkPayloadCache.isEnabled()) {
+            sender.sendMessage(String.format("Chunk payload cache: %d chunks, %.1f of %d MiB, %.1f%% hit rate (%d hits, %d misses)", ChunkPayloadCache.getEntries(), ChunkPayloadCache.getMemoryUsage() / 1048576.0D, ChunkPayloadCache.getLimit() / 1048576L, ChunkPayloadCache.getHitRate() * 100.0D, ChunkPayloadCache.getHits(), ChunkPayloadCache.getMisses()));
+        }
+
+        int queued = 0;
+        int rate = 0;
+        long pending = 0;
+        Collection<? extends Player> players = Bukkit.getOnlinePlayers();
+        for (Player player : players) {
+            EntityPlayer handle = ((CraftPlayer) player).getHandle();
+            ChunkSendController controller = handle.chunkSendController;
+
+            queued += handle.chunkCoordIntPairQueue.size();
+            rate += controller.getRate();
+            pending += controller.getPendingBytes();
+        }
+        if (!players.isEmpty()) {
+            sender.sendMessage(String.format("Chunk sending: %d queued, %.1f chunks/tick average rate, %.1f KiB waiting in network buffers", queued, rate / (double) players.size(), pending / 1024.0D));
+        }
+
+        for (World world : Bukkit.getWorlds()) {
+            WorldServer handle = ((CraftWorld) world).getHandle();
+            ChunkIOStats stats = ChunkIOExecutor.getStats(handle);
+
+            sender.sendMessage(String.format("%s: %d queued, %.1f loads/s, %.1f ms average wait, %.1f ms max wait", world.getName(), ChunkIOExecutor.getQueuedChunks(handle), stats.getThroughput(), stats.getAverageLatency(), stats.getMaxLatency()));
+
+            IChunkLoader loader = handle.chunkProviderServer.getChunkLoader();
+            if (loader instanceof ChunkRegionLoader) {
+                ChunkRegionLoader regionLoader = (ChunkRegionLoader) loader;
+                ChunkSaveStats saveStats = regionLoader.getSaveStats();
+
+                sender.sendMessage(String.format("  saves: %d pending, oldest %d ms, %.1f chunks/s, %.1f KiB/s", regionLoader.getPendingSaves(), regionLoader.getOldestPendingAge(), saveStats.getThroughput(), saveStats.getBytesPerSecond() / 1024.0D));
+            }
+
+            if (MinecraftServer.getServer().incrementalAutosave) {
+                sender.sendMessage(String.format("  autosave: %d queued, %d behind schedule", handle.chunkProviderServer.getAutosaveQueued(), handle.chunkProviderServer.getAutosaveBacklog()));
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, String alias, String[] args) {
+        Validate.notNull(sender, "Sender cannot be null");
+        Validate.notNull(args, "Arguments cannot be null");
+        Validate.notNull(alias, "Alias cannot be null");
+
+        return ImmutableList.of();
+    }
+}
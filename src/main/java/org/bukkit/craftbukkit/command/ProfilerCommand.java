@@ -0,0 +1,160 @@
+package org.bukkit.craftbukkit.command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.minecraft.server.MethodProfiler;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.WorldServer;
+
+import org.apache.commons.lang.Validate;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.defaults.BukkitCommand;
+import org.bukkit.util.StringUtil;
+
+import com.google.common.collect.ImmutableList;
+
+public class ProfilerCommand extends BukkitCommand {
+    private static final List<String> SUBCOMMANDS = ImmutableList.of("on", "off", "top", "randomticks");
+
+    public ProfilerCommand(String name) {
+        super(name);
+        this.description = "Records per section tick timings and shows the slowest sections";
+        this.usageMessage = "/profiler <on|off|top|randomticks> [ticks] [count]";
+        this.setPermission("bukkit.command.profiler");
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String currentAlias, String[] args) {
+        if (!testPermission(sender)) return true;
+        if (args.length < 1) {
+            sender.sendMessage(ChatColor.RED + "Usage: " + usageMessage);
+            return false;
+        }
+
+        MethodProfiler profiler = MinecraftServer.getServer().methodProfiler;
+
+        if ("on".equalsIgnoreCase(args[0])) {
+            profiler.setEnabled(true);
+            sender.sendMessage("Tick profiler enabled, recording starts with the next tick");
+        } else if ("off".equalsIgnoreCase(args[0])) {
+            profiler.setEnabled(false);
+            sender.sendMessage("Tick profiler disabled");
+        } else if ("top".equalsIgnoreCase(args[0])) {
+            int ticks = args.length > 1 ? parseInt(sender, args[1], 100) : 100;
+            int count = args.length > 2 ? parseInt(sender, args[2], 10) : 10;
+            if (ticks <= 0 || count <= 0) {
+                sender.sendMessage(ChatColor.RED + "Ticks and count must be positive");
+                return true;
+            }
+
+            showTop(sender, profiler, ticks, count);
+        } else if ("randomticks".equalsIgnoreCase(args[0])) {
+            int count = args.length > 1 ? parseInt(sender, args[1], 10) : 10;
+            if (count <= 0) {
+                sender.sendMessage(ChatColor.RED + "Count must be positive");
+                return true;
+            }
+
+            showRandomTicks(sender, count);
+        } else {
+            sender.sendMessage(ChatColor.RED + "Usage: " + usageMessage);
+            return false;
+        }
+
+        return true;
+    }
+
+    private void showTop(CommandSender sender, MethodProfiler profiler, int ticks, int count) {
+        ticks = Math.min(ticks, profiler.getRecordedTicks());
+        if (ticks == 0) {
+            sender.sendMessage(ChatColor.RED + "No ticks have been recorded, use /" + getName() + " on first");
+            return;
+        }
+
+        final long[] totals = profiler.getTotals(ticks);
+        List<Integer> sections = new ArrayList<Integer>();
+        for (int i = 1; i < profiler.getSectionCount(); i++) {
+            if (totals[i] > 0) {
+                sections.add(i);
+            }
+        }
+
+        Collections.sort(sections, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                long diff = totals[o2] - totals[o1];
+                return diff > 0 ? 1 : (diff < 0 ? -1 : 0);
+            }
+        });
+
+        double tickAverage = totals[0] / 1.0E6D / ticks;
+        sender.sendMessage(ChatColor.GOLD + String.format("Last %d ticks: %.2f ms/tick average, %.2f ms slowest", ticks, tickAverage, profiler.getMaxTickTime(ticks) / 1.0E6D));
+        for (int i = 0; i < Math.min(count, sections.size()); i++) {
+            int section = sections.get(i);
+            double average = totals[section] / 1.0E6D / ticks;
+            sender.sendMessage(String.format("%5.2f ms %5.1f%% %s", average, average * 100.0D / tickAverage, profiler.getSectionPath(section)));
+        }
+    }
+
+    private void showRandomTicks(CommandSender sender, int count) {
+        final long[] totals = new long[4096];
+        long total = 0L;
+        for (WorldServer world : MinecraftServer.getServer().worlds) {
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] += world.randomTicks[i];
+                total += world.randomTicks[i];
+            }
+        }
+
+        if (total == 0L) {
+            sender.sendMessage(ChatColor.RED + "No random block ticks have happened yet");
+            return;
+        }
+
+        List<Integer> types = new ArrayList<Integer>();
+        for (int i = 0; i < totals.length; i++) {
+            if (totals[i] > 0) {
+                types.add(i);
+            }
+        }
+
+        Collections.sort(types, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                long diff = totals[o2] - totals[o1];
+                return diff > 0 ? 1 : (diff < 0 ? -1 : 0);
+            }
+        });
+
+        sender.sendMessage(ChatColor.GOLD + String.format("%d random block ticks since the worlds were loaded", total));
+        for (int i = 0; i < Math.min(count, types.size()); i++) {
+            int id = types.get(i);
+            Material material = Material.getMaterial(id);
+            sender.sendMessage(String.format("%12d %5.1f%% %s", totals[id], totals[id] * 100.0D / total, material == null ? "#" + id : material.name()));
+        }
+    }
+
+    private int parseInt(CommandSender sender, String value, int def) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            sender.sendMessage(ChatColor.RED + "'" + value + "' is not a number, using " + def);
+            return def;
+        }
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, String alias, String[] args) {
+        Validate.notNull(sender, "Sender cannot be null");
+        Validate.notNull(args, "Arguments cannot be null");
+        Validate.notNull(alias, "Alias cannot be null");
+
+        if (args.length == 1) {
+            return StringUtil.copyPartialMatches(args[0], SUBCOMMANDS, new ArrayList<String>(SUBCOMMANDS.size()));
+        }
+        return ImmutableList.of();
+    }
+}
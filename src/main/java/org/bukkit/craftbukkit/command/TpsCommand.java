@@ -0,0 +1,65 @@
+package org.bukkit.craftbukkit.command;
+
+import java.util.List;
+
+import net.minecraft.server.MinecraftServer;
+
+import org.apache.commons.lang.Validate;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.defaults.BukkitCommand;
+import org.bukkit.craftbukkit.CraftServer;
+import org.bukkit.craftbukkit.util.ProcessQueue;
+import org.bukkit.craftbukkit.util.TickStatistics;
+
+import com.google.common.collect.ImmutableList;
+
+public class TpsCommand extends BukkitCommand {
+
+    public TpsCommand(String name) {
+        super(name);
+        this.description = "Shows ticks per second, tick durations, garbage collection time and the process queue";
+        this.usageMessage = "/tps";
+        this.setPermission("bukkit.command.tps");
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String currentAlias, String[] args) {
+        if (!testPermission(sender)) return true;
+
+        TickStatistics stats = ((CraftServer) Bukkit.getServer()).getTickStatistics();
+        double[] tps = ((CraftServer) Bukkit.getServer()).getTPS();
+
+        sender.sendMessage(ChatColor.GOLD + "TPS from last 1s, 1m, 5m: " + format(tps[0]) + ChatColor.GOLD + ", " + format(tps[1]) + ChatColor.GOLD + ", " + format(tps[2]));
+        showMspt(sender, "1m", stats, TickStatistics.MINUTE);
+        showMspt(sender, "5m", stats, TickStatistics.FIVE_MINUTES);
+
+        // Slow ticks with little collection time point at the server, not the collector
+        long minute = stats.getGcTime(TickStatistics.MINUTE);
+        long five = stats.getGcTime(TickStatistics.FIVE_MINUTES);
+        sender.sendMessage(String.format("GC time in last 1m: %d ms (%.1f%%), 5m: %d ms (%.1f%%)", minute, minute / 600.0D, five, five / 3000.0D));
+
+        ProcessQueue queue = MinecraftServer.getServer().processQueue;
+        sender.sendMessage(String.format("Process queue: %d waitables and %d other tasks queued, %.2f ms average wait, %.2f ms max wait, %d ticks over budget", queue.getSize(ProcessQueue.Priority.HIGH), queue.getSize(ProcessQueue.Priority.NORMAL), queue.getAverageWait(), queue.getMaxWait(), queue.getOverBudgetTicks()));
+        return true;
+    }
+
+    private void showMspt(CommandSender sender, String label, TickStatistics stats, long window) {
+        sender.sendMessage(String.format("MSPT %s: %.2f avg, %.2f median, %.2f p95, %.2f p99, %.2f max", label, stats.getAverageMspt(window), stats.getMspt(0.5D, window), stats.getMspt(0.95D, window), stats.getMspt(0.99D, window), stats.getMspt(1.0D, window)));
+    }
+
+    private static String format(double tps) {
+        ChatColor color = tps > 18.0D ? ChatColor.GREEN : (tps > 16.0D ? ChatColor.YELLOW : ChatColor.RED);
+        return color + String.format("%.2f", tps);
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, String alias, String[] args) {
+        Validate.notNull(sender, "Sender cannot be null");
+        Validate.notNull(args, "Arguments cannot be null");
+        Validate.notNull(alias, "Alias cannot be null");
+
+        return ImmutableList.of();
+    }
+}
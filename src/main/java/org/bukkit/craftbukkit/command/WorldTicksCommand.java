@@ -0,0 +1,64 @@
+package org.bukkit.craftbukkit.command;
+
+import java.util.List;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.WorldServer;
+
+import org.apache.commons.lang.Validate;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.defaults.BukkitCommand;
+
+import com.google.common.collect.ImmutableList;
+
+public class WorldTicksCommand extends BukkitCommand {
+
+    public WorldTicksCommand(String name) {
+        super(name);
+        this.description = "Shows how long each world took to tick over the last 100 ticks";
+        this.usageMessage = "/worldticks";
+        this.setPermission("bukkit.command.worldticks");
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String currentAlias, String[] args) {
+        if (!testPermission(sender)) return true;
+
+        MinecraftServer server = MinecraftServer.getServer();
+        double total = 0.0D;
+
+        for (WorldServer world : server.worlds) {
+            double average = average(world.tickTimes);
+            total += average;
+            sender.sendMessage(String.format("%s: %.2f ms/tick", world.getWorldData().getName(), average));
+        }
+
+        double wall = average(server.worldsTickTimes);
+        int threads = server.worldTickExecutor == null ? 0 : server.worldTickExecutor.getThreads();
+        String mode = threads == 0 ? "one after another" : "with relighting in parallel on " + threads + " threads";
+
+        sender.sendMessage(ChatColor.GOLD + String.format("Worlds ticked %s: %.2f ms/tick, %.2f ms/tick summed over worlds", mode, wall, total));
+        if (threads > 0 && wall > 0.0D) {
+            sender.sendMessage(ChatColor.GOLD + String.format("Parallel speedup: %.2fx", total / wall));
+        }
+        return true;
+    }
+
+    private static double average(long[] times) {
+        long sum = 0;
+        for (long time : times) {
+            sum += time;
+        }
+        return sum / 1.0E6D / times.length;
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, String alias, String[] args) {
+        Validate.notNull(sender, "Sender cannot be null");
+        Validate.notNull(args, "Arguments cannot be null");
+        Validate.notNull(alias, "Alias cannot be null");
+
+        return ImmutableList.of();
+    }
+}
@@ -6,6 +6,9 @@ import java.util.Random;
 
 import net.minecraft.server.Chunk;
 import net.minecraft.server.ChunkPosition;
+import net.minecraft.server.ChunkProviderFlat;
+import net.minecraft.server.ChunkProviderGenerate;
+import net.minecraft.server.ChunkProviderTheEnd;
 import net.minecraft.server.EnumCreatureType;
 import net.minecraft.server.IChunkProvider;
 import net.minecraft.server.IProgressUpdate;
@@ -15,12 +18,35 @@ import org.bukkit.craftbukkit.CraftWorld;
 import org.bukkit.generator.BlockPopulator;
 
 public class NormalChunkGenerator extends InternalChunkGenerator {
+    private final World world;
     private final IChunkProvider provider;
 
     public NormalChunkGenerator(World world, long seed) {
+        this.world = world;
         provider = world.worldProvider.getChunkProvider();
     }
 
+    // The nether places its fortresses while it creates the terrain
+    public boolean canCreateTerrainGenerator() {
+        return provider instanceof ChunkProviderGenerate || provider instanceof ChunkProviderFlat || provider instanceof ChunkProviderTheEnd;
+    }
+
+    /**
+     * Creates a second generator that makes the same terrain as this one but
+     * leaves out the structures, whose data is shared with the rest of the
+     * world. They are recreated by this generator when the chunk is added.
+     */
+    public IChunkProvider createTerrainGenerator() {
+        if (provider instanceof ChunkProviderGenerate) {
+            return new ChunkProviderGenerate(world, world.getSeed(), false);
+        } else if (provider instanceof ChunkProviderFlat) {
+            return new ChunkProviderFlat(world, world.getSeed(), false, world.getWorldData().getGeneratorOptions());
+        } else if (provider instanceof ChunkProviderTheEnd) {
+            return new ChunkProviderTheEnd(world, world.getSeed());
+        }
+        throw new UnsupportedOperationException("No terrain generator for " + provider.getName());
+    }
+
     public byte[] generate(org.bukkit.World world, Random random, int x, int z) {
         throw new UnsupportedOperationException("Not supported.");
     }
@@ -0,0 +1,106 @@
+package org.bukkit.craftbukkit.generator;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.minecraft.server.BiomeBase;
+import net.minecraft.server.ChunkPosition;
+import net.minecraft.server.WorldChunkManager;
+import net.minecraft.server.WorldType;
+
+/**
+ * The vanilla biome manager for worlds whose terrain may be generated on the
+ * chunk I/O threads. Every call that runs the biome layers or uses the biome
+ * cache holds the lock for that call only. The layers keep their scratch
+ * arrays in IntCache, which is static, so the lock is shared by all worlds.
+ */
+public class SynchronizedWorldChunkManager extends WorldChunkManager {
+    private static final ReentrantLock lock = new ReentrantLock();
+
+    public SynchronizedWorldChunkManager(long seed, WorldType worldtype) {
+        super(seed, worldtype);
+    }
+
+    @Override
+    public BiomeBase getBiome(int i, int j) {
+        lock.lock();
+        try {
+            return super.getBiome(i, j);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public float[] getWetness(float[] afloat, int i, int j, int k, int l) {
+        lock.lock();
+        try {
+            return super.getWetness(afloat, i, j, k, l);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public BiomeBase[] getBiomes(BiomeBase[] abiomebase, int i, int j, int k, int l) {
+        lock.lock();
+        try {
+            return super.getBiomes(abiomebase, i, j, k, l);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public BiomeBase[] getBiomeBlock(BiomeBase[] abiomebase, int i, int j, int k, int l) {
+        lock.lock();
+        try {
+            return super.getBiomeBlock(abiomebase, i, j, k, l);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public BiomeBase[] a(BiomeBase[] abiomebase, int i, int j, int k, int l, boolean flag) {
+        lock.lock();
+        try {
+            return super.a(abiomebase, i, j, k, l, flag);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean a(int i, int j, int k, List list) {
+        lock.lock();
+        try {
+            return super.a(i, j, k, list);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ChunkPosition a(int i, int j, int k, List list, Random random) {
+        lock.lock();
+        try {
+            return super.a(i, j, k, list, random);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Cleans up the biome cache, unless another thread is using it. The main thread tries again next tick
+    @Override
+    public void b() {
+        if (lock.tryLock()) {
+            try {
+                super.b();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
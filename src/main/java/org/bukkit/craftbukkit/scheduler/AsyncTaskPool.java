@@ -0,0 +1,169 @@
+package org.bukkit.craftbukkit.scheduler;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs async scheduler tasks on a bounded number of threads. Tasks beyond
+ * the threads wait in a queue, and once the queue holds its limit further
+ * tasks are rejected; the scheduler then tries them again the next tick.
+ * Active, queued and rejected tasks and execution times are counted per
+ * plugin. Since the queue only grows while every thread is busy, the pool
+ * warns when a task has waited, or all threads have been busy, longer than
+ * the configured time.
+ */
+public class AsyncTaskPool {
+    static final int THREADS = 32;
+    static final int QUEUE_LIMIT = 8192;
+    static final int STALL_WARNING = 10;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ConcurrentHashMap<String, AsyncTaskStats> stats = new ConcurrentHashMap<String, AsyncTaskStats>();
+    private volatile int queueLimit = QUEUE_LIMIT;
+    private volatile long stallWarning = TimeUnit.SECONDS.toNanos(STALL_WARNING);
+    // Only touched by checkStalled()
+    private long busySince = -1L;
+    private long lastWarning;
+
+    AsyncTaskPool() {
+        // Idle threads exit after a minute like the cached pool this replaces
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "Craft Scheduler Thread - " + threadNumber.getAndIncrement());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void configure(int threads, int queueLimit, int stallWarningSeconds) {
+        threads = Math.max(1, threads);
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+        this.queueLimit = Math.max(1, queueLimit);
+        this.stallWarning = TimeUnit.SECONDS.toNanos(Math.max(0, stallWarningSeconds));
+    }
+
+    /**
+     * Hands the task to a thread, or queues it when all threads are busy.
+     *
+     * @param owner name of the plugin the task belongs to
+     * @return false if the queue is full and the task was not accepted
+     */
+    boolean execute(String owner, final Runnable task) {
+        final AsyncTaskStats stats = getStats(owner);
+        // Counts tasks until a thread picks them up, so a burst larger than the limit is rejected even with idle threads
+        if (queued.get() >= queueLimit) {
+            stats.rejected();
+            return false;
+        }
+
+        queued.incrementAndGet();
+        stats.queued();
+        executor.execute(new QueuedTask(owner) {
+            public void run() {
+                queued.decrementAndGet();
+                stats.started();
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    stats.finished(System.nanoTime() - start);
+                }
+            }
+        });
+        return true;
+    }
+
+    private static abstract class QueuedTask implements Runnable {
+        final String owner;
+        final long queuedAt = System.nanoTime();
+
+        QueuedTask(String owner) {
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Looks at the oldest queued task and how long every thread has been busy.
+     * Called regularly from the main thread.
+     *
+     * @param now the current System.nanoTime()
+     * @return a warning when the pool has fallen behind for longer than the
+     *     configured time, at most once per that time, otherwise null
+     */
+    String checkStalled(long now) {
+        long limit = stallWarning;
+        if (limit <= 0L) {
+            return null;
+        }
+
+        int threads = executor.getMaximumPoolSize();
+        if (executor.getActiveCount() < threads) {
+            busySince = -1L;
+        } else if (busySince == -1L) {
+            busySince = now;
+        }
+
+        QueuedTask oldest = (QueuedTask) executor.getQueue().peek();
+        long waited = oldest == null ? 0L : now - oldest.queuedAt;
+        long busy = busySince == -1L ? 0L : now - busySince;
+        if (waited <= limit && busy <= limit || lastWarning != 0L && now - lastWarning < limit) {
+            return null;
+        }
+
+        lastWarning = now;
+        if (oldest == null) {
+            return String.format("All %d async task threads have been busy for %d ms", threads, TimeUnit.NANOSECONDS.toMillis(busy));
+        }
+        return String.format("An async task of %s has waited %d ms for a thread, %d tasks are queued and all %d threads have been busy for %d ms", oldest.owner, TimeUnit.NANOSECONDS.toMillis(waited), queued.get(), threads, TimeUnit.NANOSECONDS.toMillis(busy));
+    }
+
+    AsyncTaskStats getStats(String owner) {
+        AsyncTaskStats stats = this.stats.get(owner);
+        if (stats == null) {
+            stats = new AsyncTaskStats();
+            AsyncTaskStats previous = this.stats.putIfAbsent(owner, stats);
+            if (previous != null) {
+                stats = previous;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Counters by plugin name, for every plugin that ever ran an async task.
+     */
+    public Map<String, AsyncTaskStats> getStats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+}
@@ -0,0 +1,109 @@
+package org.bukkit.craftbukkit.scheduler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Async task counters of one plugin. Execution times go into a histogram of
+ * power of two microsecond buckets, so percentiles are upper bounds that are
+ * at most twice the real value.
+ */
+public class AsyncTaskStats {
+    private static final int BUCKETS = 32;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private volatile long maxTime;
+
+    void queued() {
+        queued.incrementAndGet();
+    }
+
+    void started() {
+        queued.decrementAndGet();
+        active.incrementAndGet();
+    }
+
+    void finished(long nanos) {
+        active.decrementAndGet();
+        completed.incrementAndGet();
+        totalTime.addAndGet(nanos);
+        histogram.incrementAndGet(bucket(nanos / 1000L));
+        if (nanos > maxTime) {
+            maxTime = nanos;
+        }
+    }
+
+    long rejected() {
+        return rejected.incrementAndGet();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Average execution time in milliseconds.
+     */
+    public double getAverageTime() {
+        long count = completed.get();
+        return count == 0 ? 0.0D : totalTime.get() / 1.0E6D / count;
+    }
+
+    /**
+     * Longest execution time in milliseconds.
+     */
+    public double getMaxTime() {
+        return maxTime / 1.0E6D;
+    }
+
+    /**
+     * Execution time in milliseconds that the given fraction of the tasks
+     * stayed under, rounded up to the histogram bucket.
+     *
+     * @param percentile between 0 and 1
+     */
+    public double getTime(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0.0D;
+        }
+
+        long target = Math.max(1L, (long) Math.ceil(total * percentile));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return (1L << i) / 1000.0D;
+            }
+        }
+        return (1L << (BUCKETS - 1)) / 1000.0D;
+    }
+
+    // Bucket i holds times below 2^i microseconds
+    static int bucket(long micros) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+}
@@ -1,20 +1,17 @@
 package org.bukkit.craftbukkit.scheduler;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
 import org.apache.commons.lang.Validate;
+import org.bukkit.Bukkit;
 import org.bukkit.plugin.IllegalPluginAccessException;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitScheduler;
@@ -24,8 +21,8 @@ import org.bukkit.scheduler.BukkitWorker;
 /**
  * The fundamental concepts for this implementation:
  * <li>Main thread owns {@link #head} and {@link #currentTick}, but it may be read from any thread</li>
- * <li>Main thread exclusively controls {@link #temp} and {@link #pending}.
- *     They are never to be accessed outside of the main thread; alternatives exist to prevent locking.</li>
+ * <li>Main thread exclusively controls {@link #pending}.
+ *     It is never to be accessed outside of the main thread; alternatives exist to prevent locking.</li>
  * <li>{@link #head} to {@link #tail} act as a linked list/queue, with 1 consumer and infinite producers.
  *     Adding to the tail is atomic and very efficient; utility method is {@link #handle(CraftTask, long)} or {@link #addTask(CraftTask)}. </li>
  * <li>Changing the period on a task is delicate.
@@ -35,7 +32,7 @@ import org.bukkit.scheduler.BukkitWorker;
  * <li>{@link #runners} provides a moderately up-to-date view of active tasks.
  *     If the linked head to tail set is read, all remaining tasks that were active at the time execution started will be located in runners.</li>
  * <li>Async tasks are responsible for removing themselves from runners</li>
- * <li>Sync tasks are only to be removed from runners on the main thread when coupled with a removal from pending and temp.</li>
+ * <li>Sync tasks are only to be removed from runners on the main thread when coupled with a removal from pending.</li>
  * <li>Most of the design in this scheduler relies on queuing special tasks to perform any data changes on the main thread.
  *     When executed from inside a synchronous method, the scheduler will be updated before next execution by virtue of the frequent {@link #parsePending()} calls.</li>
  */
@@ -56,22 +53,13 @@ public class CraftScheduler implements BukkitScheduler {
     /**
      * Main thread logic only
      */
-    private final PriorityQueue<CraftTask> pending = new PriorityQueue<CraftTask>(10,
-            new Comparator<CraftTask>() {
-                public int compare(final CraftTask o1, final CraftTask o2) {
-                    return (int) (o1.getNextRun() - o2.getNextRun());
-                }
-            });
-    /**
-     * Main thread logic only
-     */
-    private final List<CraftTask> temp = new ArrayList<CraftTask>();
+    private final TaskWheel pending = new TaskWheel(-1);
     /**
      * These are tasks that are currently active. It's provided for 'viewing' the current state.
      */
     private final ConcurrentHashMap<Integer, CraftTask> runners = new ConcurrentHashMap<Integer, CraftTask>();
     private volatile int currentTick = -1;
-    private final Executor executor = Executors.newCachedThreadPool();
+    private final AsyncTaskPool executor = new AsyncTaskPool();
     private CraftAsyncDebugger debugHead = new CraftAsyncDebugger(-1, null, null) {@Override StringBuilder debugTo(StringBuilder string) {return string;}};
     private CraftAsyncDebugger debugTail = debugHead;
     private static final int RECENT_TICKS;
@@ -157,31 +145,22 @@ public class CraftScheduler implements BukkitScheduler {
         if (taskId <= 0) {
             return;
         }
-        CraftTask task = runners.get(taskId);
-        if (task != null) {
-            task.cancel0();
+        final CraftTask runner = runners.get(taskId);
+        if (runner != null) {
+            runner.cancel0();
         }
-        task = new CraftTask(
+        CraftTask task = new CraftTask(
                 new Runnable() {
                     public void run() {
-                        if (!check(CraftScheduler.this.temp)) {
-                            check(CraftScheduler.this.pending);
-                        }
-                    }
-                    private boolean check(final Iterable<CraftTask> collection) {
-                        final Iterator<CraftTask> tasks = collection.iterator();
-                        while (tasks.hasNext()) {
-                            final CraftTask task = tasks.next();
-                            if (task.getTaskId() == taskId) {
-                                task.cancel0();
-                                tasks.remove();
-                                if (task.isSync()) {
-                                    runners.remove(taskId);
-                                }
-                                return true;
+                        // Cancelled async tasks leave runners, but may still be pending
+                        final CraftTask task = runner != null ? runner : runners.get(taskId);
+                        if (task != null) {
+                            task.cancel0();
+                            CraftScheduler.this.pending.remove(task);
+                            if (task.isSync()) {
+                                runners.remove(taskId);
                             }
                         }
-                        return false;
                     }});
         handle(task, 0l);
         for (CraftTask taskPending = head.getNext(); taskPending != null; taskPending = taskPending.getNext()) {
@@ -200,7 +179,6 @@ public class CraftScheduler implements BukkitScheduler {
                 new Runnable() {
                     public void run() {
                         check(CraftScheduler.this.pending);
-                        check(CraftScheduler.this.temp);
                     }
                     void check(final Iterable<CraftTask> collection) {
                         final Iterator<CraftTask> tasks = collection.iterator();
@@ -245,7 +223,6 @@ public class CraftScheduler implements BukkitScheduler {
                             }
                         }
                         CraftScheduler.this.pending.clear();
-                        CraftScheduler.this.temp.clear();
                     }
                 });
         handle(task, 0l);
@@ -284,6 +261,13 @@ public class CraftScheduler implements BukkitScheduler {
         return task != null && task.getPeriod() >= -1l;
     }
 
+    /**
+     * Pool the async tasks run on, with per plugin counters.
+     */
+    public AsyncTaskPool getAsyncTaskPool() {
+        return executor;
+    }
+
     public List<BukkitWorker> getActiveWorkers() {
         final ArrayList<BukkitWorker> workers = new ArrayList<BukkitWorker>();
         for (final CraftTask taskObj : runners.values()) {
@@ -329,10 +313,10 @@ public class CraftScheduler implements BukkitScheduler {
      */
     public void mainThreadHeartbeat(final int currentTick) {
         this.currentTick = currentTick;
-        final List<CraftTask> temp = this.temp;
+        pending.advance(currentTick);
         parsePending();
-        while (isReady(currentTick)) {
-            final CraftTask task = pending.remove();
+        CraftTask task;
+        while ((task = pending.poll()) != null) {
             if (task.getPeriod() < -1l) {
                 if (task.isSync()) {
                     runners.remove(task.getTaskId(), task);
@@ -354,22 +338,35 @@ public class CraftScheduler implements BukkitScheduler {
                 }
                 parsePending();
             } else {
+                if (!executor.execute(task.getOwner().getName(), task)) {
+                    if (executor.getStats(task.getOwner().getName()).getRejected() == 1) {
+                        task.getOwner().getLogger().warning(String.format("Task #%s was rejected because %d async tasks are already waiting, it will be retried every tick", task.getTaskId(), executor.getQueueLimit()));
+                    }
+                    // Try again next tick, the period is applied once it actually runs
+                    task.setNextRun(currentTick + 1);
+                    pending.add(task);
+                    continue;
+                }
                 debugTail = debugTail.setNext(new CraftAsyncDebugger(currentTick + RECENT_TICKS, task.getOwner(), task.getTaskClass()));
-                executor.execute(task);
                 // We don't need to parse pending
                 // (async tasks must live with race-conditions if they attempt to cancel between these few lines of code)
             }
             final long period = task.getPeriod(); // State consistency
             if (period > 0) {
+                // Lands in a later tick, so it is not picked up again by this loop
                 task.setNextRun(currentTick + period);
-                temp.add(task);
+                pending.add(task);
             } else if (task.isSync()) {
                 runners.remove(task.getTaskId());
             }
         }
-        pending.addAll(temp);
-        temp.clear();
         debugHead = debugHead.getNextHead(currentTick);
+        if (currentTick % 20 == 0) {
+            final String warning = executor.checkStalled(System.nanoTime());
+            if (warning != null) {
+                Bukkit.getLogger().warning(warning);
+            }
+        }
     }
 
     private void addTask(final CraftTask task) {
@@ -420,10 +417,6 @@ public class CraftScheduler implements BukkitScheduler {
         this.head = lastTask;
     }
 
-    private boolean isReady(final int currentTick) {
-        return !pending.isEmpty() && pending.peek().getNextRun() <= currentTick;
-    }
-
     @Override
     public String toString() {
         int debugTick = currentTick;
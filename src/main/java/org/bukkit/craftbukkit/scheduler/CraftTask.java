@@ -8,6 +8,11 @@ import org.bukkit.scheduler.BukkitTask;
 class CraftTask implements BukkitTask, Runnable {
 
     private volatile CraftTask next = null;
+    /**
+     * Links of the {@link TaskWheel} slot this task is pending in, null when it is not pending. Main thread only.
+     */
+    CraftTask wheelNext;
+    CraftTask wheelPrev;
     /**
      * -1 means no repeating <br>
      * -2 means cancel <br>
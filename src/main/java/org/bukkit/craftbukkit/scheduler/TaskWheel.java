@@ -0,0 +1,236 @@
+package org.bukkit.craftbukkit.scheduler;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Pending tasks ordered by the tick they run next, kept in a hierarchical
+ * timing wheel. Each level has 256 slots and a slot covers 256 times the
+ * ticks of a slot on the level below. Adding and removing a task takes
+ * constant time, and a task moves down one level each time the wheel
+ * reaches the range its slot covers. Tasks are linked into the slots
+ * through fields of {@link CraftTask}, so nothing is allocated.
+ * <p>
+ * Main thread logic only.
+ */
+class TaskWheel implements Iterable<CraftTask> {
+    private static final int BITS = 8;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    // Index 0 holds the tasks that are due, the last one the tasks beyond the top level
+    private final CraftTask[] buckets = new CraftTask[LEVELS * SLOTS + 2];
+    private final CraftTask ready;
+    private final CraftTask overflow;
+    private long time;
+    private int size;
+    private long links;
+
+    TaskWheel(long time) {
+        this.time = time;
+        for (int i = 0; i < buckets.length; i++) {
+            CraftTask sentinel = new CraftTask();
+            sentinel.wheelNext = sentinel;
+            sentinel.wheelPrev = sentinel;
+            buckets[i] = sentinel;
+        }
+        ready = buckets[0];
+        overflow = buckets[buckets.length - 1];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Number of times a task was put into a slot since the wheel was created,
+     * when it was added and each time it moved down a level.
+     */
+    long getLinks() {
+        return links;
+    }
+
+    /**
+     * Adds a task to run at its {@link CraftTask#getNextRun() next run}.
+     * Tasks that are already due are handed out by the next {@link #poll()}.
+     */
+    void add(final CraftTask task) {
+        remove(task);
+        link(bucketFor(task.getNextRun()), task);
+        links++;
+        size++;
+    }
+
+    boolean remove(final CraftTask task) {
+        if (task.wheelNext == null) {
+            return false;
+        }
+        unlink(task);
+        size--;
+        return true;
+    }
+
+    void clear() {
+        for (CraftTask sentinel : buckets) {
+            CraftTask task = sentinel.wheelNext;
+            while (task != sentinel) {
+                CraftTask next = task.wheelNext;
+                task.wheelNext = null;
+                task.wheelPrev = null;
+                task = next;
+            }
+            sentinel.wheelNext = sentinel;
+            sentinel.wheelPrev = sentinel;
+        }
+        size = 0;
+    }
+
+    /**
+     * Moves the wheel to the tick, making every task due at or before it
+     * available to {@link #poll()}.
+     */
+    void advance(final long tick) {
+        if (size == 0) {
+            // Nothing to move, skip the empty ticks
+            time = Math.max(time, tick);
+            return;
+        }
+
+        while (time < tick) {
+            time++;
+            if ((time & MASK) == 0) {
+                cascade();
+            }
+            splice(buckets[1 + (int) (time & MASK)], ready);
+        }
+    }
+
+    /**
+     * Returns the next due task, or null when no task is due.
+     */
+    CraftTask poll() {
+        CraftTask task = ready.wheelNext;
+        if (task == ready) {
+            return null;
+        }
+        unlink(task);
+        size--;
+        return task;
+    }
+
+    public Iterator<CraftTask> iterator() {
+        return new Iterator<CraftTask>() {
+            private int bucket = 0;
+            private CraftTask next = findNext(buckets[0].wheelNext);
+            private CraftTask last;
+
+            private CraftTask findNext(CraftTask task) {
+                while (task == buckets[bucket]) {
+                    if (++bucket == buckets.length) {
+                        return null;
+                    }
+                    task = buckets[bucket].wheelNext;
+                }
+                return task;
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public CraftTask next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = findNext(next.wheelNext);
+                return last;
+            }
+
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                TaskWheel.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    private CraftTask bucketFor(final long run) {
+        if (run <= time) {
+            return ready;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = (level + 1) * BITS;
+            if ((run >> shift) == (time >> shift)) {
+                return buckets[1 + level * SLOTS + (int) ((run >> (level * BITS)) & MASK)];
+            }
+        }
+        return overflow;
+    }
+
+    // Called when the wheel enters a new range of level 1 slots, brings the tasks of that range down a level
+    private void cascade() {
+        int top = 1;
+        while (top < LEVELS && (time & ((1L << ((top + 1) * BITS)) - 1)) == 0) {
+            top++;
+        }
+        if (top == LEVELS) {
+            redistribute(overflow);
+            top = LEVELS - 1;
+        }
+        for (int level = top; level >= 1; level--) {
+            redistribute(buckets[1 + level * SLOTS + (int) ((time >> (level * BITS)) & MASK)]);
+        }
+    }
+
+    private void redistribute(final CraftTask sentinel) {
+        CraftTask task = sentinel.wheelNext;
+        sentinel.wheelNext = sentinel;
+        sentinel.wheelPrev = sentinel;
+        while (task != sentinel) {
+            CraftTask next = task.wheelNext;
+            link(bucketFor(task.getNextRun()), task);
+            links++;
+            task = next;
+        }
+    }
+
+    private static void splice(final CraftTask from, final CraftTask to) {
+        if (from.wheelNext == from) {
+            return;
+        }
+        CraftTask first = from.wheelNext;
+        CraftTask last = from.wheelPrev;
+        CraftTask tail = to.wheelPrev;
+
+        tail.wheelNext = first;
+        first.wheelPrev = tail;
+        last.wheelNext = to;
+        to.wheelPrev = last;
+
+        from.wheelNext = from;
+        from.wheelPrev = from;
+    }
+
+    private static void link(final CraftTask sentinel, final CraftTask task) {
+        CraftTask tail = sentinel.wheelPrev;
+        task.wheelPrev = tail;
+        task.wheelNext = sentinel;
+        tail.wheelNext = task;
+        sentinel.wheelPrev = task;
+    }
+
+    private static void unlink(final CraftTask task) {
+        task.wheelPrev.wheelNext = task.wheelNext;
+        task.wheelNext.wheelPrev = task.wheelPrev;
+        task.wheelNext = null;
+        task.wheelPrev = null;
+    }
+}
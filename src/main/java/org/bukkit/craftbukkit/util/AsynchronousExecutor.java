@@ -1,12 +1,16 @@
 package org.bukkit.craftbukkit.util;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -206,6 +210,7 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
             if (set(this, PENDING, FINISHED)) {
                 // If we succeed that variable switch, good as forgotten
                 tasks.remove(parameter);
+                pool.remove(this); // Don't leave a dead task in the queue
                 return true;
             } else {
                 // We need the async thread to finish normally to properly dispose of the task
@@ -215,8 +220,9 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
     }
 
     final CallBackProvider<P, T, C, E> provider;
+    final Comparator<? super P> comparator;
     final Queue<Task> finished = new ConcurrentLinkedQueue<Task>();
-    final Map<P, Task> tasks = new HashMap<P, Task>();
+    final Map<P, Task> tasks = new ConcurrentHashMap<P, Task>(); // Worlds ticking in parallel load chunks at the same time
     final ThreadPoolExecutor pool;
 
     /**
@@ -224,25 +230,57 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
      * @see AsynchronousExecutor
      */
     public AsynchronousExecutor(final CallBackProvider<P, T, C, E> provider, final int coreSize) {
+        this(provider, coreSize, null);
+    }
+
+    /**
+     * Uses a thread pool to pass executions to the provider, serving queued parameters in the order given by the comparator.
+     * @param comparator the order to serve queued parameters in, or null to serve them in the order they were added
+     * @see AsynchronousExecutor
+     */
+    public AsynchronousExecutor(final CallBackProvider<P, T, C, E> provider, final int coreSize, final Comparator<? super P> comparator) {
         Validate.notNull(provider, "Provider cannot be null");
         this.provider = provider;
+        this.comparator = comparator;
 
         // We have an unbound queue size so do not need a max thread size
-        pool = new ThreadPoolExecutor(coreSize, Integer.MAX_VALUE, 60l, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), provider);
+        if (comparator == null) {
+            pool = new ThreadPoolExecutor(coreSize, Integer.MAX_VALUE, 60l, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), provider);
+        } else {
+            // Only tasks are ever submitted to the pool
+            pool = new ThreadPoolExecutor(coreSize, Integer.MAX_VALUE, 60l, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(11, new Comparator<Runnable>() {
+                @SuppressWarnings("unchecked")
+                public int compare(Runnable o1, Runnable o2) {
+                    return comparator.compare(((Task) o1).parameter, ((Task) o2).parameter);
+                }
+            }), provider);
+        }
     }
 
     /**
      * Adds a callback to the parameter provided, adding parameter to the queue if needed.
      * <p>
+     * If the parameter is already queued but has not started yet and the comparator orders the new parameter first, it is moved up the queue.
+     * <p>
      * This should always be synchronous.
+     * @return true if the parameter was not queued before
      */
-    public void add(P parameter, C callback) {
+    public boolean add(P parameter, C callback) {
         Task task = tasks.get(parameter);
-        if (task == null) {
+        boolean added = task == null;
+        if (added) {
             tasks.put(parameter, task = new Task(parameter));
             pool.execute(task);
+        } else if (comparator != null && comparator.compare(parameter, task.parameter) < 0 && set(task, Task.PENDING, Task.FINISHED)) {
+            // The async thread can no longer pick up the old task, hand its callbacks to a replacement
+            pool.remove(task);
+            Task replacement = new Task(parameter);
+            replacement.callbacks.addAll(task.callbacks);
+            tasks.put(parameter, task = replacement);
+            pool.execute(task);
         }
         task.callbacks.add(callback);
+        return added;
     }
 
     /**
@@ -348,7 +386,20 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
         }
     }
 
+    /**
+     * Gets the parameters that have been added and are not finished yet.
+     * <p>
+     * This should always be synchronous.
+     */
+    public Collection<P> getQueued() {
+        return Collections.unmodifiableSet(tasks.keySet());
+    }
+
     public void setActiveThreads(final int coreSize) {
         pool.setCorePoolSize(coreSize);
     }
+
+    public int getActiveThreads() {
+        return pool.getCorePoolSize();
+    }
 }
@@ -0,0 +1,109 @@
+package org.bukkit.craftbukkit.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Buckets values by chunk column so lookups around a position only touch the
+ * nearby cells instead of every value. The caller remembers which cell each
+ * value was added to. Not thread safe.
+ */
+public class ChunkGrid<T> {
+    private final LongObjectHashMap<Cell<T>> cells = new LongObjectHashMap<Cell<T>>();
+    private int size;
+
+    private static class Cell<T> extends ArrayList<T> {
+        final int x;
+        final int z;
+
+        Cell(int x, int z) {
+            super(4);
+            this.x = x;
+            this.z = z;
+        }
+    }
+
+    public void add(int x, int z, T value) {
+        long key = LongHash.toLong(x, z);
+        Cell<T> cell = cells.get(key);
+        if (cell == null) {
+            cell = new Cell<T>(x, z);
+            cells.put(key, cell);
+        }
+
+        cell.add(value);
+        size++;
+    }
+
+    public boolean remove(int x, int z, T value) {
+        long key = LongHash.toLong(x, z);
+        Cell<T> cell = cells.get(key);
+        if (cell == null || !cell.remove(value)) {
+            return false;
+        }
+
+        if (cell.isEmpty()) {
+            cells.remove(key);
+        }
+        size--;
+        return true;
+    }
+
+    public void move(int fromX, int fromZ, int toX, int toZ, T value) {
+        if (fromX != toX || fromZ != toZ) {
+            remove(fromX, fromZ, value);
+            add(toX, toZ, value);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        cells.clear();
+        size = 0;
+    }
+
+    /**
+     * Adds every value in the cells from (minX, minZ) to (maxX, maxZ)
+     * inclusive to the collection.
+     */
+    public void collect(int minX, int minZ, int maxX, int maxZ, Collection<? super T> out) {
+        collect(minX, minZ, maxX, maxZ, out, 1, 0, 0, 0);
+    }
+
+    /**
+     * Adds every value in the cells from (minX, minZ) to (maxX, maxZ)
+     * inclusive that are not also inside the excluded area to the collection.
+     * An empty excluded area has exMinX > exMaxX.
+     */
+    public void collect(int minX, int minZ, int maxX, int maxZ, Collection<? super T> out, int exMinX, int exMinZ, int exMaxX, int exMaxZ) {
+        // When the area covers more cells than exist it is cheaper to walk the existing ones
+        if ((long) (maxX - minX + 1) * (maxZ - minZ + 1) > cells.size()) {
+            for (Cell<T> cell : cells.values()) {
+                if (cell.x >= minX && cell.x <= maxX && cell.z >= minZ && cell.z <= maxZ && !inside(cell.x, cell.z, exMinX, exMinZ, exMaxX, exMaxZ)) {
+                    out.addAll(cell);
+                }
+            }
+            return;
+        }
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                if (inside(x, z, exMinX, exMinZ, exMaxX, exMaxZ)) {
+                    continue;
+                }
+
+                Cell<T> cell = cells.get(LongHash.toLong(x, z));
+                if (cell != null) {
+                    out.addAll(cell);
+                }
+            }
+        }
+    }
+
+    private static boolean inside(int x, int z, int minX, int minZ, int maxX, int maxZ) {
+        return x >= minX && x <= maxX && z >= minZ && z <= maxZ;
+    }
+}
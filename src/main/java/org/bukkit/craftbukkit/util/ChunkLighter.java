@@ -0,0 +1,166 @@
+package org.bukkit.craftbukkit.util;
+
+import java.util.BitSet;
+
+/**
+ * The column pass of Chunk.p(), which lights the blocks under overhangs and
+ * around emitting blocks, run on one chunk without its neighbors. The columns
+ * are lit in the order Chunk.p() lights them. A column whose light update
+ * looks past the edge of the chunk would have read or lit the neighbors, so
+ * its changes are undone and it is left to Chunk.p(). The light only ever
+ * rises towards the same light the whole pass gives, so Chunk.p() lighting
+ * the columns left over afterwards ends where it would have.
+ *
+ * @param <C> the chunk type
+ */
+public abstract class ChunkLighter<C> extends LightPropagator<C> {
+    private C chunk;
+    private int minX;
+    private int minZ;
+    private boolean crossed;
+    // The light the updates of the current column overwrote, x | z << 4 | y << 8 | sky << 16 | level << 17
+    private int[] undo = new int[1024];
+    private int undoSize;
+
+    /**
+     * The y of the highest section with blocks, Chunk.h().
+     */
+    protected abstract int getTop(C chunk);
+
+    protected abstract int getBlockOpacity(C chunk, int x, int y, int z);
+
+    protected abstract int getBlockEmission(C chunk, int x, int y, int z);
+
+    protected abstract boolean canBlockSeeSky(C chunk, int x, int y, int z);
+
+    protected abstract void setBlockLight(C chunk, boolean sky, int x, int y, int z, int level);
+
+    /**
+     * Whether a block change can change the light of the columns, which only
+     * depends on the opacity and emission of the blocks.
+     */
+    public static boolean changesLight(int oldOpacity, int oldEmission, int opacity, int emission) {
+        return oldOpacity != opacity || oldEmission != emission;
+    }
+
+    /**
+     * Lights the columns of the chunk. Returns the columns that were lit,
+     * column i, j of Chunk.p() is bit i * 16 + j.
+     */
+    public BitSet lightColumns(C chunk, int chunkX, int chunkZ) {
+        BitSet lit = new BitSet(256);
+        this.chunk = chunk;
+        this.minX = chunkX << 4;
+        this.minZ = chunkZ << 4;
+        try {
+            for (int i = 0; i < 16; ++i) {
+                for (int j = 0; j < 16; ++j) {
+                    this.crossed = false;
+                    this.undoSize = 0;
+                    this.lightColumn(i, j);
+                    if (this.crossed) {
+                        this.undoColumn();
+                    } else {
+                        lit.set(i << 4 | j);
+                    }
+                }
+            }
+            return lit;
+        } finally {
+            this.chunk = null;
+        }
+    }
+
+    // Chunk.f(int, int) without the world
+    private void lightColumn(int i, int j) {
+        C chunk = this.chunk;
+        int x = this.minX + i;
+        int z = this.minZ + j;
+        int k = this.getTop(chunk);
+        boolean flag = false;
+        boolean flag1 = false;
+
+        int l;
+
+        for (l = k + 16 - 1; l > 63 || l > 0 && !flag1; --l) {
+            int i1 = this.getBlockOpacity(chunk, x, l, z);
+
+            if (i1 == 255 && l < 63) {
+                flag1 = true;
+            }
+
+            if (!flag && i1 > 0) {
+                flag = true;
+            } else if (flag && i1 == 0) {
+                this.propagate(true, x, l, z);
+                this.propagate(false, x, l, z);
+            }
+        }
+
+        for (; l > 0; --l) {
+            if (this.getBlockEmission(chunk, x, l, z) > 0) {
+                this.propagate(true, x, l, z);
+                this.propagate(false, x, l, z);
+            }
+        }
+    }
+
+    private void undoColumn() {
+        for (int n = this.undoSize - 1; n >= 0; --n) {
+            int entry = this.undo[n];
+            this.setBlockLight(this.chunk, (entry >> 16 & 1) != 0, this.minX + (entry & 15), entry >> 8 & 255, this.minZ + (entry >> 4 & 15), entry >> 17);
+        }
+        this.undoSize = 0;
+    }
+
+    @Override
+    protected C getChunk(int chunkX, int chunkZ) {
+        return chunkX << 4 == this.minX && chunkZ << 4 == this.minZ ? this.chunk : null;
+    }
+
+    @Override
+    protected void setLight(C chunk, boolean sky, int x, int y, int z, int level) {
+        if (this.undoSize == this.undo.length) {
+            int[] undo = new int[this.undo.length * 2];
+            System.arraycopy(this.undo, 0, undo, 0, this.undoSize);
+            this.undo = undo;
+        }
+        this.undo[this.undoSize++] = (x & 15) | (z & 15) << 4 | y << 8 | (sky ? 1 << 16 : 0) | this.getLight(chunk, sky, x, y, z) << 17;
+        this.setBlockLight(chunk, sky, x, y, z, level);
+    }
+
+    // Anything outside of the chunk belongs to the neighbors
+
+    @Override
+    protected int getUnloadedLight(boolean sky) {
+        this.crossed = true;
+        return 0;
+    }
+
+    @Override
+    protected int getOpacity(C chunk, int x, int y, int z) {
+        if (chunk == null) {
+            this.crossed = true;
+            return 255;
+        }
+        return y < 0 || y >= 256 ? 0 : this.getBlockOpacity(chunk, x, y, z);
+    }
+
+    @Override
+    protected int getEmission(C chunk, int x, int y, int z) {
+        if (chunk == null) {
+            this.crossed = true;
+            return 0;
+        }
+        return y < 0 || y >= 256 ? 0 : this.getBlockEmission(chunk, x, y, z);
+    }
+
+    @Override
+    protected boolean canSeeSky(C chunk, int x, int y, int z) {
+        if (chunk == null) {
+            this.crossed = true;
+            return false;
+        }
+        return this.canBlockSeeSky(chunk, x, y, z);
+    }
+}
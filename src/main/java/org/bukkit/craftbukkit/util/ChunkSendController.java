@@ -0,0 +1,87 @@
+package org.bukkit.craftbukkit.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides how many queued chunks a player is sent each tick. The rate grows
+ * by one chunk a tick while everything sent before has been written out and
+ * halves when chunks pile up in the network buffers. Chunks are counted when
+ * they are sent and when their packet has been written to the socket, which
+ * happens on the network thread.
+ */
+public class ChunkSendController {
+    static final int MIN_PER_TICK = 1;
+    static final int MAX_PER_TICK = 10;
+    static final int MAX_PENDING_KIB = 1024;
+    static final int CHUNKS_PER_PACKET = 5;
+    // Until the first write completes assume a typical compressed chunk
+    private static final int DEFAULT_CHUNK_BYTES = 8192;
+
+    private static volatile int minPerTick = MIN_PER_TICK;
+    private static volatile int maxPerTick = MAX_PER_TICK;
+    private static volatile long maxPendingBytes = MAX_PENDING_KIB * 1024L;
+    private static volatile int chunksPerPacket = CHUNKS_PER_PACKET;
+
+    private final AtomicInteger pendingChunks = new AtomicInteger();
+    private volatile int averageChunkBytes = DEFAULT_CHUNK_BYTES;
+    private double rate = CHUNKS_PER_PACKET;
+
+    public static void configure(int min, int max, int pendingKib, int perPacket) {
+        minPerTick = Math.max(1, min);
+        maxPerTick = Math.max(minPerTick, max);
+        maxPendingBytes = Math.max(0, pendingKib) * 1024L;
+        chunksPerPacket = Math.max(1, perPacket);
+    }
+
+    public static int getChunksPerPacket() {
+        return chunksPerPacket;
+    }
+
+    /**
+     * Returns how many chunks can be sent this tick.
+     *
+     * @param writable whether the channel accepts more data without buffering
+     * @param tickTimeLeft nanoseconds left in the current server tick
+     */
+    public int getChunksToSend(boolean writable, long tickTimeLeft) {
+        int min = minPerTick;
+        int max = maxPerTick;
+        int pending = this.pendingChunks.get();
+
+        if (!writable || (long) pending * this.averageChunkBytes > maxPendingBytes) {
+            this.rate = Math.max(min, Math.min(max, this.rate / 2.0D));
+            return 0;
+        }
+
+        if (pending == 0) {
+            this.rate = Math.min(max, this.rate + 1.0D);
+        }
+        this.rate = Math.max(min, Math.min(max, this.rate));
+
+        // An overrunning tick only sends the minimum so players near spawn do not make it worse
+        return tickTimeLeft > 0L ? (int) this.rate : min;
+    }
+
+    public void sent(int chunks) {
+        this.pendingChunks.addAndGet(chunks);
+    }
+
+    public void written(int chunks, int bytes) {
+        this.pendingChunks.addAndGet(-chunks);
+        if (chunks > 0 && bytes > 0) {
+            this.averageChunkBytes = (this.averageChunkBytes * 7 + bytes / chunks) / 8;
+        }
+    }
+
+    public int getRate() {
+        return (int) this.rate;
+    }
+
+    public int getPendingChunks() {
+        return this.pendingChunks.get();
+    }
+
+    public long getPendingBytes() {
+        return (long) this.pendingChunks.get() * this.averageChunkBytes;
+    }
+}
@@ -0,0 +1,279 @@
+package org.bukkit.craftbukkit.util;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The chunks within the tick radius of a player. World.C() used to add the
+ * square around every player to the set each tick, which the random block
+ * ticks then emptied into a new array. Here every chunk counts the players
+ * around it and a player's square is only moved when the player enters
+ * another chunk. The chunks are kept in an array that is walked by index,
+ * see {@link #size()} and {@link #get(int)}. Not thread safe.
+ */
+public class ChunkTickSet {
+    private static final int INITIAL_SIZE = 64;
+
+    // Linear probing table of chunk keys, each slot holding the index of the chunk plus one, 0 when free
+    private long[] keys = new long[INITIAL_SIZE * 2];
+    private int[] slots = new int[INITIAL_SIZE * 2];
+    private long[] chunks = new long[INITIAL_SIZE];
+    private int[] counts = new int[INITIAL_SIZE];
+    private int size;
+
+    private final Map<Object, Square> squares = new IdentityHashMap<Object, Square>();
+    private final ArrayList<Square> squareList = new ArrayList<Square>();
+    private int radius = -1;
+    private int stamp;
+
+    private static class Square {
+        final Object player;
+        int x;
+        int z;
+        int stamp;
+
+        Square(Object player, int x, int z) {
+            this.player = player;
+            this.x = x;
+            this.z = z;
+        }
+    }
+
+    /**
+     * Starts going through the players of the world. A change of the radius
+     * resizes every square.
+     */
+    public void startUpdate(int radius) {
+        if (radius != this.radius) {
+            this.clear();
+            this.radius = radius;
+        }
+        ++this.stamp;
+    }
+
+    /**
+     * Places the square of the player around the chunk the player is in.
+     */
+    public void updatePlayer(Object player, int chunkX, int chunkZ) {
+        Square square = this.squares.get(player);
+
+        if (square == null) {
+            square = new Square(player, chunkX, chunkZ);
+            this.squares.put(player, square);
+            this.squareList.add(square);
+            this.addSquare(chunkX, chunkZ);
+        } else if (square.x != chunkX || square.z != chunkZ) {
+            this.moveSquare(square.x, square.z, chunkX, chunkZ);
+            square.x = chunkX;
+            square.z = chunkZ;
+        }
+        square.stamp = this.stamp;
+    }
+
+    /**
+     * Removes the squares of the players that were not updated since
+     * {@link #startUpdate(int)}.
+     */
+    public void finishUpdate() {
+        for (int i = this.squareList.size() - 1; i >= 0; --i) {
+            Square square = this.squareList.get(i);
+            if (square.stamp == this.stamp) {
+                continue;
+            }
+
+            this.removeSquare(square.x, square.z);
+            this.squares.remove(square.player);
+            Square last = this.squareList.remove(this.squareList.size() - 1);
+            if (last != square) {
+                this.squareList.set(i, last);
+            }
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * The {@link LongHash} key of a chunk, for indexes from 0 to
+     * {@link #size()}. Removing a chunk moves the last chunk into its index.
+     */
+    public long get(int index) {
+        return this.chunks[index];
+    }
+
+    public boolean contains(int chunkX, int chunkZ) {
+        return this.find(LongHash.toLong(chunkX, chunkZ)) >= 0;
+    }
+
+    /**
+     * Number of players the chunk is around.
+     */
+    public int getCount(int chunkX, int chunkZ) {
+        int pos = this.find(LongHash.toLong(chunkX, chunkZ));
+        return pos < 0 ? 0 : this.counts[this.slots[pos] - 1];
+    }
+
+    public void clear() {
+        for (int i = 0; i < this.slots.length; ++i) {
+            this.slots[i] = 0;
+        }
+        this.size = 0;
+        this.squares.clear();
+        this.squareList.clear();
+    }
+
+    private void addSquare(int x, int z) {
+        int r = this.radius;
+
+        for (int i = x - r; i <= x + r; ++i) {
+            for (int j = z - r; j <= z + r; ++j) {
+                this.increment(LongHash.toLong(i, j));
+            }
+        }
+    }
+
+    private void removeSquare(int x, int z) {
+        int r = this.radius;
+
+        for (int i = x - r; i <= x + r; ++i) {
+            for (int j = z - r; j <= z + r; ++j) {
+                this.decrement(LongHash.toLong(i, j));
+            }
+        }
+    }
+
+    // Only the chunks that are in one square and not in the other change
+    private void moveSquare(int oldX, int oldZ, int x, int z) {
+        int r = this.radius;
+
+        for (int i = x - r; i <= x + r; ++i) {
+            for (int j = z - r; j <= z + r; ++j) {
+                if (Math.abs(i - oldX) > r || Math.abs(j - oldZ) > r) {
+                    this.increment(LongHash.toLong(i, j));
+                }
+            }
+        }
+
+        for (int i = oldX - r; i <= oldX + r; ++i) {
+            for (int j = oldZ - r; j <= oldZ + r; ++j) {
+                if (Math.abs(i - x) > r || Math.abs(j - z) > r) {
+                    this.decrement(LongHash.toLong(i, j));
+                }
+            }
+        }
+    }
+
+    private void increment(long key) {
+        int pos = this.find(key);
+        if (pos >= 0) {
+            ++this.counts[this.slots[pos] - 1];
+            return;
+        }
+
+        if ((this.size + 1) * 2 > this.keys.length) {
+            this.grow();
+            pos = this.find(key);
+        }
+
+        if (this.size == this.chunks.length) {
+            this.chunks = Java15Compat.Arrays_copyOf(this.chunks, this.size * 2);
+            int[] counts = new int[this.size * 2];
+            System.arraycopy(this.counts, 0, counts, 0, this.size);
+            this.counts = counts;
+        }
+
+        pos = -pos - 1;
+        this.keys[pos] = key;
+        this.slots[pos] = this.size + 1;
+        this.chunks[this.size] = key;
+        this.counts[this.size] = 1;
+        ++this.size;
+    }
+
+    private void decrement(long key) {
+        int pos = this.find(key);
+        if (pos < 0) {
+            return;
+        }
+
+        int index = this.slots[pos] - 1;
+        if (--this.counts[index] > 0) {
+            return;
+        }
+
+        this.removeSlot(pos);
+        int last = --this.size;
+        if (index != last) {
+            long moved = this.chunks[last];
+            this.chunks[index] = moved;
+            this.counts[index] = this.counts[last];
+            this.slots[this.find(moved)] = index + 1;
+        }
+    }
+
+    // The slot holding the key, or -(free slot) - 1 where it would go
+    private int find(long key) {
+        int mask = this.keys.length - 1;
+        int pos = hash(key) & mask;
+
+        while (this.slots[pos] != 0) {
+            if (this.keys[pos] == key) {
+                return pos;
+            }
+            pos = pos + 1 & mask;
+        }
+        return -pos - 1;
+    }
+
+    // Shifts back the keys that probed past the freed slot
+    private void removeSlot(int pos) {
+        int mask = this.keys.length - 1;
+        int free = pos;
+        int next = pos;
+
+        this.slots[free] = 0;
+        while (true) {
+            next = next + 1 & mask;
+            if (this.slots[next] == 0) {
+                return;
+            }
+
+            int home = hash(this.keys[next]) & mask;
+            if (free <= next ? free < home && home <= next : free < home || home <= next) {
+                continue;
+            }
+
+            this.keys[free] = this.keys[next];
+            this.slots[free] = this.slots[next];
+            this.slots[next] = 0;
+            free = next;
+        }
+    }
+
+    private void grow() {
+        long[] keys = this.keys;
+        int[] slots = this.slots;
+
+        this.keys = new long[keys.length * 2];
+        this.slots = new int[slots.length * 2];
+        for (int i = 0; i < keys.length; ++i) {
+            if (slots[i] != 0) {
+                int pos = -this.find(keys[i]) - 1;
+                this.keys[pos] = keys[i];
+                this.slots[pos] = slots[i];
+            }
+        }
+    }
+
+    // Murmur3 finalizer, LongHash keys of nearby chunks only differ in their low bits
+    private static int hash(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+}
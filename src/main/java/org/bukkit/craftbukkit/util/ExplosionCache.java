@@ -0,0 +1,236 @@
+package org.bukkit.craftbukkit.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import net.minecraft.server.AxisAlignedBB;
+import net.minecraft.server.Block;
+import net.minecraft.server.Chunk;
+import net.minecraft.server.Entity;
+import net.minecraft.server.Explosion;
+import net.minecraft.server.Material;
+import net.minecraft.server.MathHelper;
+import net.minecraft.server.Vec3D;
+import net.minecraft.server.World;
+
+/**
+ * What the explosions of a world found during a tick, for the explosions
+ * that follow at the same position, as with a cannon firing a stack of TNT.
+ * The exposure of an entity only depends on the blocks between it and the
+ * center, so it is kept per position and entity box for as long as no block
+ * changes in the chunks around the position. With merging enabled the
+ * blocks an explosion reaches are kept the same way and reused by the next
+ * explosion of the same size and source type, which then draws no random
+ * numbers for its rays. Everything is dropped at the start of each tick.
+ */
+public class ExplosionCache {
+    // Entity boxes reach past the area searched for entities, and blocks like fences look at their neighbors
+    private static final int MARGIN = 4;
+    // Larger explosions span too many chunks to check for changes
+    private static final int MAX_REACH = 64;
+    private static volatile boolean mergeExplosions;
+
+    private final World world;
+    private final Map<Key, Area> areas = new HashMap<Key, Area>();
+    // Null while rays are cast, an explosion caused by a chunk loaded for the rays gets its own
+    private Caster caster = new Caster();
+
+    public ExplosionCache(World world) {
+        this.world = world;
+    }
+
+    public static void configure(boolean merge) {
+        mergeExplosions = merge;
+    }
+
+    public static boolean isMerging() {
+        return mergeExplosions;
+    }
+
+    /**
+     * Casts the rays of the explosion and returns the positions they reached
+     * in the order they were first reached, packed with
+     * {@link ExplosionRayCaster#pack(int, int, int)}. The array may be shared
+     * and must not be changed.
+     */
+    public long[] castRays(Explosion explosion) {
+        // The entities are searched for in twice the size
+        Area area = mergeExplosions ? this.getArea(explosion, explosion.size * 2.0F) : null;
+        Class<?> sourceType = explosion.source == null ? null : explosion.source.getClass();
+
+        if (area != null && area.blocks != null && area.size == explosion.size && area.sourceType == sourceType) {
+            return area.blocks;
+        }
+
+        Caster caster = this.caster;
+        if (caster == null) {
+            caster = new Caster();
+        }
+        this.caster = null;
+        caster.explosion = explosion;
+
+        long[] blocks;
+        try {
+            blocks = caster.cast(explosion.posX, explosion.posY, explosion.posZ, explosion.size, this.getRandom());
+        } finally {
+            caster.explosion = null;
+            this.caster = caster;
+        }
+
+        if (area != null) {
+            area.blocks = blocks;
+            area.size = explosion.size;
+            area.sourceType = sourceType;
+        }
+        return blocks;
+    }
+
+    /**
+     * Returns {@link World#a(Vec3D, AxisAlignedBB)} for an entity hit by
+     * the explosion. Called while Explosion.a() has the size doubled.
+     */
+    public float getExposure(Explosion explosion, Vec3D vec3d, AxisAlignedBB axisalignedbb) {
+        Area area = this.getArea(explosion, explosion.size);
+        if (area == null) {
+            return this.world.a(vec3d, axisalignedbb);
+        }
+
+        Key key = new Key(axisalignedbb.a, axisalignedbb.b, axisalignedbb.c, axisalignedbb.d, axisalignedbb.e, axisalignedbb.f);
+        Float exposure = area.exposures.get(key);
+        if (exposure == null) {
+            exposure = this.world.a(vec3d, axisalignedbb);
+            area.exposures.put(key, exposure);
+        }
+        return exposure;
+    }
+
+    public void clear() {
+        this.areas.clear();
+    }
+
+    protected Chunk getChunk(int chunkX, int chunkZ) {
+        return this.world.getChunkIfLoaded(chunkX, chunkZ);
+    }
+
+    protected Block getType(int x, int y, int z) {
+        return this.world.getType(x, y, z);
+    }
+
+    protected Random getRandom() {
+        return this.world.random;
+    }
+
+    // The area around the explosion's position, null if a chunk in it is not loaded
+    private Area getArea(Explosion explosion, float radius) {
+        int reach = (int) Math.ceil(radius) + MARGIN;
+        if (reach > MAX_REACH) {
+            return null;
+        }
+
+        Key key = new Key(explosion.posX, explosion.posY, explosion.posZ);
+        Area area = this.areas.get(key);
+
+        if (area != null && area.reach >= reach && area.isUnchanged()) {
+            return area;
+        }
+
+        area = new Area(reach, MathHelper.floor(explosion.posX - reach) >> 4, MathHelper.floor(explosion.posZ - reach) >> 4, MathHelper.floor(explosion.posX + reach) >> 4, MathHelper.floor(explosion.posZ + reach) >> 4);
+        int n = 0;
+        for (int chunkX = area.minChunkX; chunkX <= area.maxChunkX; ++chunkX) {
+            for (int chunkZ = area.minChunkZ; chunkZ <= area.maxChunkZ; ++chunkZ) {
+                Chunk chunk = this.getChunk(chunkX, chunkZ);
+                if (chunk == null) {
+                    this.areas.remove(key);
+                    return null;
+                }
+
+                area.chunks[n] = chunk;
+                area.versions[n++] = chunk.getBlockVersion();
+            }
+        }
+
+        this.areas.put(key, area);
+        return area;
+    }
+
+    private static final class Area {
+        private final int reach;
+        private final int minChunkX;
+        private final int minChunkZ;
+        private final int maxChunkX;
+        private final int maxChunkZ;
+        private final Chunk[] chunks;
+        private final int[] versions;
+        private final Map<Key, Float> exposures = new HashMap<Key, Float>();
+        // The last rays cast from here, when merging
+        private long[] blocks;
+        private float size;
+        private Class<?> sourceType;
+
+        Area(int reach, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+            this.reach = reach;
+            this.minChunkX = minChunkX;
+            this.minChunkZ = minChunkZ;
+            this.maxChunkX = maxChunkX;
+            this.maxChunkZ = maxChunkZ;
+            this.chunks = new Chunk[(maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1)];
+            this.versions = new int[this.chunks.length];
+        }
+
+        // Unloaded chunks stop being marked as loaded, a chunk loaded again is a new chunk
+        boolean isUnchanged() {
+            for (int n = 0; n < this.chunks.length; ++n) {
+                if (!this.chunks[n].d || this.chunks[n].getBlockVersion() != this.versions[n]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Key {
+        private final double[] values;
+
+        Key(double... values) {
+            this.values = values;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.values);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(this.values, ((Key) obj).values);
+        }
+    }
+
+    private final class Caster extends ExplosionRayCaster<Block> {
+        private Explosion explosion;
+
+        @Override
+        protected Block getType(int x, int y, int z) {
+            return ExplosionCache.this.getType(x, y, z);
+        }
+
+        @Override
+        protected boolean isAir(Block type) {
+            return type.getMaterial() == Material.AIR;
+        }
+
+        @Override
+        protected float getResistance(Block type, int x, int y, int z) {
+            Entity source = this.explosion.source;
+            return source != null ? source.a(this.explosion, ExplosionCache.this.world, x, y, z, type) : type.a(source);
+        }
+
+        @Override
+        protected boolean canDestroy(Block type, int x, int y, int z, float power) {
+            Entity source = this.explosion.source;
+            return source == null || source.a(this.explosion, ExplosionCache.this.world, x, y, z, type, power);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.bukkit.craftbukkit.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.minecraft.server.MathHelper;
+
+/**
+ * The vanilla explosion rays, cast from the center toward each of the 1352
+ * points on the surface of a 16x16x16 cube. Every step used to look the
+ * block up through the chunk map and add a new ChunkPosition to a HashSet.
+ * Here the ray directions are computed once, the type and resistance of each
+ * block are looked up once per explosion and kept in a cube around the
+ * center, and the positions reached go into a {@link LongHashSet}. The
+ * random numbers drawn, the positions found and the order they are first
+ * reached in are the same as before.
+ *
+ * @param <B> the block type
+ */
+public abstract class ExplosionRayCaster<B> {
+    private static final int RAYS_PER_SIDE = 16;
+    private static final float STEP = 0.3F;
+    // Blocks are cached for explosions whose rays stay within a 31x31x31 cube, larger ones look every block up
+    private static final int MAX_SIDE = 31;
+    // x, y, z of the unit vector of each ray
+    private static final double[] RAYS;
+
+    static {
+        // The points on the surface of the cube
+        int inner = RAYS_PER_SIDE - 2;
+        double[] rays = new double[(RAYS_PER_SIDE * RAYS_PER_SIDE * RAYS_PER_SIDE - inner * inner * inner) * 3];
+        int n = 0;
+
+        for (int i = 0; i < RAYS_PER_SIDE; ++i) {
+            for (int j = 0; j < RAYS_PER_SIDE; ++j) {
+                for (int k = 0; k < RAYS_PER_SIDE; ++k) {
+                    if (i == 0 || i == RAYS_PER_SIDE - 1 || j == 0 || j == RAYS_PER_SIDE - 1 || k == 0 || k == RAYS_PER_SIDE - 1) {
+                        double d3 = (double) ((float) i / ((float) RAYS_PER_SIDE - 1.0F) * 2.0F - 1.0F);
+                        double d4 = (double) ((float) j / ((float) RAYS_PER_SIDE - 1.0F) * 2.0F - 1.0F);
+                        double d5 = (double) ((float) k / ((float) RAYS_PER_SIDE - 1.0F) * 2.0F - 1.0F);
+                        double d6 = Math.sqrt(d3 * d3 + d4 * d4 + d5 * d5);
+
+                        rays[n++] = d3 / d6;
+                        rays[n++] = d4 / d6;
+                        rays[n++] = d5 / d6;
+                    }
+                }
+            }
+        }
+
+        RAYS = rays;
+    }
+
+    private final LongHashSet positions = new LongHashSet();
+    // The positions in the order they were first reached, the order vanilla added them to its HashSet in
+    private long[] reached = new long[1024];
+    private int reachedCount;
+    private final Object[] types = new Object[MAX_SIDE * MAX_SIDE * MAX_SIDE];
+    private final float[] resistances = new float[MAX_SIDE * MAX_SIDE * MAX_SIDE];
+    // A cached block is only valid if its stamp matches the current explosion, the same goes for added positions
+    private final int[] stamps = new int[MAX_SIDE * MAX_SIDE * MAX_SIDE];
+    private final int[] added = new int[MAX_SIDE * MAX_SIDE * MAX_SIDE];
+    private int stamp;
+    private int minX;
+    private int minY;
+    private int minZ;
+    private int side;
+    private long lookups;
+
+    protected abstract B getType(int x, int y, int z);
+
+    protected abstract boolean isAir(B type);
+
+    /**
+     * The resistance of a block that is not air. It must only depend on the
+     * block, it is asked for once per block and explosion.
+     */
+    protected abstract float getResistance(B type, int x, int y, int z);
+
+    /**
+     * Whether the block may be destroyed by a ray with the power left.
+     */
+    protected abstract boolean canDestroy(B type, int x, int y, int z, float power);
+
+    /**
+     * Casts the rays of an explosion and returns the positions they reached
+     * in the order they were first reached, packed with
+     * {@link #pack(int, int, int)}. The caster may not be used again while
+     * the rays are cast.
+     */
+    public long[] cast(double x, double y, double z, float size, Random random) {
+        // The power left drops by at least 0.225 per step of 0.3
+        int radius = (int) Math.ceil(size * 1.3F / 0.225F * STEP) + 2;
+        this.side = radius * 2 + 1;
+        this.minX = MathHelper.floor(x) - radius;
+        this.minY = MathHelper.floor(y) - radius;
+        this.minZ = MathHelper.floor(z) - radius;
+        if (++this.stamp == 0) {
+            Arrays.fill(this.stamps, 0);
+            Arrays.fill(this.added, 0);
+            this.stamp = 1;
+        }
+
+        try {
+            for (int ray = 0; ray < RAYS.length; ray += 3) {
+                this.castRay(x, y, z, RAYS[ray], RAYS[ray + 1], RAYS[ray + 2], size * (0.7F + random.nextFloat() * 0.6F));
+            }
+
+            return Arrays.copyOf(this.reached, this.reachedCount);
+        } finally {
+            this.positions.clear();
+            this.reachedCount = 0;
+        }
+    }
+
+    private void castRay(double d0, double d1, double d2, double d3, double d4, double d5, float f1) {
+        for (float f2 = STEP; f1 > 0.0F; f1 -= f2 * 0.75F) {
+            int l = MathHelper.floor(d0);
+            int i1 = MathHelper.floor(d1);
+            int j1 = MathHelper.floor(d2);
+            int index = this.index(l, i1, j1);
+            B block;
+            float f3;
+
+            if (index >= 0 && this.stamps[index] == this.stamp) {
+                block = this.cachedType(index);
+                f3 = this.resistances[index];
+            } else {
+                ++this.lookups;
+                block = this.getType(l, i1, j1);
+                f3 = this.isAir(block) ? 0.0F : this.getResistance(block, l, i1, j1);
+                if (index >= 0) {
+                    this.types[index] = block;
+                    this.resistances[index] = f3;
+                    this.stamps[index] = this.stamp;
+                }
+            }
+
+            if (!this.isAir(block)) {
+                f1 -= (f3 + 0.3F) * f2;
+            }
+
+            if (f1 > 0.0F && i1 < 256 && i1 >= 0 && l >= -30000000 && j1 >= -30000000 && l < 30000000 && j1 < 30000000 && this.canDestroy(block, l, i1, j1, f1)) {
+                // Most rays pass the blocks near the center, only go to the set the first time
+                if (index < 0) {
+                    this.reach(pack(l, i1, j1));
+                } else if (this.added[index] != this.stamp) {
+                    this.added[index] = this.stamp;
+                    this.reach(pack(l, i1, j1));
+                }
+            }
+
+            d0 += d3 * (double) f2;
+            d1 += d4 * (double) f2;
+            d2 += d5 * (double) f2;
+        }
+    }
+
+    private void reach(long position) {
+        if (this.positions.add(position)) {
+            if (this.reachedCount == this.reached.length) {
+                this.reached = Arrays.copyOf(this.reached, this.reachedCount * 2);
+            }
+            this.reached[this.reachedCount++] = position;
+        }
+    }
+
+    private int index(int x, int y, int z) {
+        int dx = x - this.minX;
+        int dy = y - this.minY;
+        int dz = z - this.minZ;
+        int side = this.side;
+
+        if (side > MAX_SIDE || dx < 0 || dy < 0 || dz < 0 || dx >= side || dy >= side || dz >= side) {
+            return -1;
+        }
+        return (dx * side + dy) * side + dz;
+    }
+
+    @SuppressWarnings("unchecked")
+    private B cachedType(int index) {
+        return (B) this.types[index];
+    }
+
+    /**
+     * Number of blocks looked up since the caster was created.
+     */
+    public long getLookups() {
+        return this.lookups;
+    }
+
+    /**
+     * Packs a block position, y must be within 0 and 255 and x and z within
+     * the world border. Never 0, which {@link LongHashSet} uses for free
+     * slots.
+     */
+    public static long pack(int x, int y, int z) {
+        return (long) (x + 30000001) << 34 | (long) (z + 30000001) << 8 | y;
+    }
+
+    public static int unpackX(long key) {
+        return (int) (key >>> 34) - 30000001;
+    }
+
+    public static int unpackY(long key) {
+        return (int) key & 255;
+    }
+
+    public static int unpackZ(long key) {
+        return (int) (key >>> 8 & 0x3FFFFFF) - 30000001;
+    }
+}
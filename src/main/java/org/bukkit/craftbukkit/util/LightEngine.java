@@ -0,0 +1,132 @@
+package org.bukkit.craftbukkit.util;
+
+import java.util.Arrays;
+
+import net.minecraft.server.Block;
+import net.minecraft.server.Chunk;
+import net.minecraft.server.EnumSkyBlock;
+import net.minecraft.server.World;
+
+/**
+ * Light updates of a world. Updates run through a {@link LightPropagator}
+ * over the world's chunks. When queueing is enabled the updates for changed
+ * blocks are collected instead and run once per tick, so a block that changes
+ * several times in a tick, as with explosions, pistons and mass edits, is
+ * relit once. Light read between the change and the end of the tick is
+ * stale, which is why queueing is off by default.
+ */
+public class LightEngine extends LightPropagator<Chunk> {
+    private static volatile boolean queueUpdates;
+
+    private final World world;
+    private final LongHashSet queued = new LongHashSet();
+    // x, y, z of the queued blocks in the order they were queued
+    private int[] positions = new int[3 * 64];
+    private int size;
+    private long deduplicated;
+
+    public LightEngine(World world) {
+        this.world = world;
+    }
+
+    public static void configure(boolean queue) {
+        queueUpdates = queue;
+    }
+
+    public static boolean isQueueing() {
+        return queueUpdates;
+    }
+
+    public void update(EnumSkyBlock enumskyblock, int i, int j, int k) {
+        this.propagate(enumskyblock == EnumSkyBlock.SKY, i, j, k);
+    }
+
+    /**
+     * Queues the light update for a changed block until the next
+     * {@link #flush()}. A block that is already queued is not queued again.
+     */
+    public void queue(int i, int j, int k) {
+        if (!this.queued.add(key(i, j, k))) {
+            ++this.deduplicated;
+            return;
+        }
+
+        if (this.size + 3 > this.positions.length) {
+            this.positions = Arrays.copyOf(this.positions, this.positions.length * 2);
+        }
+        this.positions[this.size++] = i;
+        this.positions[this.size++] = j;
+        this.positions[this.size++] = k;
+    }
+
+    /**
+     * Runs the queued updates.
+     */
+    public void flush() {
+        if (this.size == 0) {
+            return;
+        }
+
+        // Relighting never changes blocks, so nothing is queued while this runs
+        for (int index = 0; index < this.size; index += 3) {
+            this.world.t(this.positions[index], this.positions[index + 1], this.positions[index + 2]);
+        }
+        this.size = 0;
+        this.queued.clear();
+    }
+
+    public int getQueued() {
+        return this.size / 3;
+    }
+
+    /**
+     * Number of updates skipped because the block was already queued.
+     */
+    public long getDeduplicated() {
+        return this.deduplicated;
+    }
+
+    @Override
+    protected Chunk getChunk(int chunkX, int chunkZ) {
+        return this.world.getChunkIfLoaded(chunkX, chunkZ);
+    }
+
+    @Override
+    protected int getLight(Chunk chunk, boolean sky, int x, int y, int z) {
+        return chunk.getBrightness(sky ? EnumSkyBlock.SKY : EnumSkyBlock.BLOCK, x & 15, y, z & 15);
+    }
+
+    @Override
+    protected void setLight(Chunk chunk, boolean sky, int x, int y, int z, int level) {
+        chunk.a(sky ? EnumSkyBlock.SKY : EnumSkyBlock.BLOCK, x & 15, y, z & 15, level);
+        this.world.m(x, y, z);
+    }
+
+    @Override
+    protected int getOpacity(Chunk chunk, int x, int y, int z) {
+        return this.getType(chunk, x, y, z).k();
+    }
+
+    @Override
+    protected int getEmission(Chunk chunk, int x, int y, int z) {
+        return this.getType(chunk, x, y, z).m();
+    }
+
+    @Override
+    protected boolean canSeeSky(Chunk chunk, int x, int y, int z) {
+        return chunk == null ? this.world.i(x, y, z) : chunk.d(x & 15, y, z & 15);
+    }
+
+    private Block getType(Chunk chunk, int x, int y, int z) {
+        // The world loads missing chunks and knows about blocks captured from tree generation
+        if (chunk == null || y < 0 || y >= 256 || this.world.captureTreeGeneration) {
+            return this.world.getType(x, y, z);
+        }
+        return chunk.getType(x & 15, y, z & 15);
+    }
+
+    private static long key(int i, int j, int k) {
+        // Offset so the key is never 0, which the set uses for free slots
+        return (long) (i + 30000001) << 34 | (long) (k + 30000001) << 8 | j;
+    }
+}
@@ -0,0 +1,238 @@
+package org.bukkit.craftbukkit.util;
+
+import java.util.Arrays;
+
+/**
+ * The vanilla light update, which darkens and then relights the blocks up to
+ * 17 blocks around a changed block. Every light, block and sky lookup used to
+ * go through the world's chunk map; here the chunks around the update are
+ * looked up once and kept in a 5x5 window, which covers every block the
+ * update can reach. The order blocks are visited in and the light levels
+ * written are the same as before.
+ *
+ * @param <C> the chunk type
+ */
+public abstract class LightPropagator<C> {
+    // Updates reach 17 blocks away and read one block past that, at most two chunks from the origin
+    private static final int RADIUS = 2;
+    private static final int WIDTH = RADIUS * 2 + 1;
+    private static final int SKY_DEFAULT = 15;
+    private static final int BLOCK_DEFAULT = 0;
+    private static final int[] OFFSET_X = { 0, 0, 0, 0, -1, 1 };
+    private static final int[] OFFSET_Y = { -1, 1, 0, 0, 0, 0 };
+    private static final int[] OFFSET_Z = { 0, 0, -1, 1, 0, 0 };
+
+    private final int[] queue = new int[32768];
+    private final Object[] chunks = new Object[WIDTH * WIDTH];
+    private int originX;
+    private int originZ;
+
+    /**
+     * Returns the chunk if it is loaded, without loading it.
+     */
+    protected abstract C getChunk(int chunkX, int chunkZ);
+
+    protected abstract int getLight(C chunk, boolean sky, int x, int y, int z);
+
+    protected abstract void setLight(C chunk, boolean sky, int x, int y, int z, int level);
+
+    /**
+     * The following take the chunk if it is loaded, or null when the lookup
+     * has to go through the world.
+     */
+    protected abstract int getOpacity(C chunk, int x, int y, int z);
+
+    protected abstract int getEmission(C chunk, int x, int y, int z);
+
+    protected abstract boolean canSeeSky(C chunk, int x, int y, int z);
+
+    /**
+     * The light of blocks in chunks that are not loaded.
+     */
+    protected int getUnloadedLight(boolean sky) {
+        return sky ? SKY_DEFAULT : BLOCK_DEFAULT;
+    }
+
+    /**
+     * Updates the sky or block light around the block. The caller checks that
+     * the chunks next to the block are loaded.
+     */
+    public void propagate(boolean sky, int i, int j, int k) {
+        this.originX = (i >> 4) - RADIUS;
+        this.originZ = (k >> 4) - RADIUS;
+        try {
+            this.update(sky, i, j, k);
+        } finally {
+            // Don't keep unloaded chunks alive
+            Arrays.fill(this.chunks, null);
+        }
+    }
+
+    private void update(boolean sky, int i, int j, int k) {
+        int[] queue = this.queue;
+        int l = 0;
+        int i1 = 0;
+        int j1 = this.getLight(sky, i, j, k);
+        int k1 = this.computeLight(sky, i, j, k);
+        int l1;
+        int i2;
+        int j2;
+        int k2;
+        int l2;
+        int i3;
+
+        if (k1 > j1) {
+            queue[i1++] = 133152;
+        } else if (k1 < j1) {
+            queue[i1++] = 133152 | j1 << 18;
+
+            while (l < i1) {
+                l1 = queue[l++];
+                i2 = (l1 & 63) - 32 + i;
+                j2 = (l1 >> 6 & 63) - 32 + j;
+                k2 = (l1 >> 12 & 63) - 32 + k;
+                l2 = l1 >> 18 & 15;
+                i3 = this.getLight(sky, i2, j2, k2);
+                if (i3 == l2) {
+                    this.setLight(sky, i2, j2, k2, 0);
+                    if (l2 > 0 && Math.abs(i2 - i) + Math.abs(j2 - j) + Math.abs(k2 - k) < 17) {
+                        for (int face = 0; face < 6; ++face) {
+                            int j4 = i2 + OFFSET_X[face];
+                            int k4 = j2 + OFFSET_Y[face];
+                            int l4 = k2 + OFFSET_Z[face];
+                            int i5 = Math.max(1, this.getOpacity(this.chunk(j4, l4), j4, k4, l4));
+
+                            i3 = this.getLight(sky, j4, k4, l4);
+                            if (i3 == l2 - i5 && i1 < queue.length) {
+                                queue[i1++] = j4 - i + 32 | k4 - j + 32 << 6 | l4 - k + 32 << 12 | l2 - i5 << 18;
+                            }
+                        }
+                    }
+                }
+            }
+
+            l = 0;
+        }
+
+        while (l < i1) {
+            l1 = queue[l++];
+            i2 = (l1 & 63) - 32 + i;
+            j2 = (l1 >> 6 & 63) - 32 + j;
+            k2 = (l1 >> 12 & 63) - 32 + k;
+            l2 = this.getLight(sky, i2, j2, k2);
+            i3 = this.computeLight(sky, i2, j2, k2);
+            if (i3 != l2) {
+                this.setLight(sky, i2, j2, k2, i3);
+                if (i3 > l2 && Math.abs(i2 - i) + Math.abs(j2 - j) + Math.abs(k2 - k) < 17 && i1 < queue.length - 6) {
+                    if (this.getLight(sky, i2 - 1, j2, k2) < i3) {
+                        queue[i1++] = i2 - 1 - i + 32 + (j2 - j + 32 << 6) + (k2 - k + 32 << 12);
+                    }
+
+                    if (this.getLight(sky, i2 + 1, j2, k2) < i3) {
+                        queue[i1++] = i2 + 1 - i + 32 + (j2 - j + 32 << 6) + (k2 - k + 32 << 12);
+                    }
+
+                    if (this.getLight(sky, i2, j2 - 1, k2) < i3) {
+                        queue[i1++] = i2 - i + 32 + (j2 - 1 - j + 32 << 6) + (k2 - k + 32 << 12);
+                    }
+
+                    if (this.getLight(sky, i2, j2 + 1, k2) < i3) {
+                        queue[i1++] = i2 - i + 32 + (j2 + 1 - j + 32 << 6) + (k2 - k + 32 << 12);
+                    }
+
+                    if (this.getLight(sky, i2, j2, k2 - 1) < i3) {
+                        queue[i1++] = i2 - i + 32 + (j2 - j + 32 << 6) + (k2 - 1 - k + 32 << 12);
+                    }
+
+                    if (this.getLight(sky, i2, j2, k2 + 1) < i3) {
+                        queue[i1++] = i2 - i + 32 + (j2 - j + 32 << 6) + (k2 + 1 - k + 32 << 12);
+                    }
+                }
+            }
+        }
+    }
+
+    // The light the block should have from its own emission and its neighbours
+    private int computeLight(boolean sky, int i, int j, int k) {
+        C chunk = this.chunk(i, k);
+        if (sky && this.canSeeSky(chunk, i, j, k)) {
+            return 15;
+        }
+
+        int emission = this.getEmission(chunk, i, j, k);
+        int l = sky ? 0 : emission;
+        int i1 = this.getOpacity(chunk, i, j, k);
+
+        if (i1 >= 15 && emission > 0) {
+            i1 = 1;
+        }
+
+        if (i1 < 1) {
+            i1 = 1;
+        }
+
+        if (i1 >= 15) {
+            return 0;
+        } else if (l >= 14) {
+            return l;
+        } else {
+            for (int face = 0; face < 6; ++face) {
+                int j2 = this.getLight(sky, i + OFFSET_X[face], j + OFFSET_Y[face], k + OFFSET_Z[face]) - i1;
+
+                if (j2 > l) {
+                    l = j2;
+                }
+
+                if (l >= 14) {
+                    return l;
+                }
+            }
+
+            return l;
+        }
+    }
+
+    private int getLight(boolean sky, int i, int j, int k) {
+        if (j < 0) {
+            j = 0;
+        }
+
+        if (j >= 256) {
+            j = 255;
+        }
+
+        if (i >= -30000000 && k >= -30000000 && i < 30000000 && k < 30000000) {
+            C chunk = this.chunk(i, k);
+            if (chunk != null) {
+                return this.getLight(chunk, sky, i, j, k);
+            }
+        }
+        return this.getUnloadedLight(sky);
+    }
+
+    private void setLight(boolean sky, int i, int j, int k, int level) {
+        if (i >= -30000000 && k >= -30000000 && i < 30000000 && k < 30000000 && j >= 0 && j < 256) {
+            C chunk = this.chunk(i, k);
+            if (chunk != null) {
+                this.setLight(chunk, sky, i, j, k, level);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private C chunk(int i, int k) {
+        int x = (i >> 4) - this.originX;
+        int z = (k >> 4) - this.originZ;
+        if (x < 0 || x >= WIDTH || z < 0 || z >= WIDTH) {
+            return this.getChunk(i >> 4, k >> 4);
+        }
+
+        // Unloaded chunks are not remembered, a lookup through the world may load them
+        int index = x * WIDTH + z;
+        Object chunk = this.chunks[index];
+        if (chunk == null) {
+            chunk = this.chunks[index] = this.getChunk(i >> 4, k >> 4);
+        }
+        return (C) chunk;
+    }
+}
@@ -31,6 +31,8 @@ public class LongHashSet {
     private int elements;
     private long[] values;
     private int modCount;
+    // CraftBukkit - Every cell before this one is free or removed, so draining with popFirst() does not rescan them
+    private int firstIndex;
 
     public LongHashSet() {
         this(INITIAL_SIZE);
@@ -113,6 +115,9 @@ public class LongHashSet {
             modCount++;
             elements++;
             values[index] = value;
+            if (index < firstIndex) {
+                firstIndex = index; // CraftBukkit
+            }
 
             if (1 - (freeEntries / (double) values.length) > LOAD_FACTOR) {
                 rehash();
@@ -161,6 +166,7 @@ public class LongHashSet {
 
         freeEntries = values.length;
         modCount++;
+        firstIndex = 0; // CraftBukkit
     }
 
     public long[] toArray() {
@@ -178,12 +184,17 @@ public class LongHashSet {
     }
 
     public long popFirst() {
-        for (long value : values) {
+        // CraftBukkit start - Continue after the cells emptied by earlier calls
+        for (; firstIndex < values.length; firstIndex++) {
+            long value = values[firstIndex];
             if (value != FREE && value != REMOVED) {
-                remove(value);
+                values[firstIndex++] = REMOVED;
+                modCount++;
+                elements--;
                 return value;
             }
         }
+        // CraftBukkit end
 
         return 0;
     }
@@ -240,6 +251,7 @@ public class LongHashSet {
 
         values = newValues;
         freeEntries = values.length - elements;
+        firstIndex = 0; // CraftBukkit
     }
 
     private class Itr implements Iterator {
@@ -0,0 +1,174 @@
+package org.bukkit.craftbukkit.util;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+
+/**
+ * Work handed to the server thread by other threads, drained once a tick
+ * against a time budget. Waitables have a thread blocked on them, usually a
+ * player's chat, login or an rcon command, so they go into a lane that is
+ * drained before other work. Whatever does not fit in the budget waits for
+ * the next tick.
+ */
+public class ProcessQueue extends AbstractQueue<Runnable> {
+    public enum Priority {
+        /**
+         * Work another thread is waiting for.
+         */
+        HIGH,
+        /**
+         * Everything else.
+         */
+        NORMAL
+    }
+
+    private static class Entry {
+        final Runnable task;
+        final long queued;
+
+        Entry(Runnable task) {
+            this.task = task;
+            this.queued = System.nanoTime();
+        }
+    }
+
+    private static final Function<Entry, Runnable> UNWRAP = new Function<Entry, Runnable>() {
+        public Runnable apply(Entry entry) {
+            return entry.task;
+        }
+    };
+
+    private final Queue<Entry> high = new ConcurrentLinkedQueue<Entry>();
+    private final Queue<Entry> normal = new ConcurrentLinkedQueue<Entry>();
+    private final AtomicInteger highSize = new AtomicInteger();
+    private final AtomicInteger normalSize = new AtomicInteger();
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong totalWait = new AtomicLong();
+    private volatile long maxWait;
+    private volatile long overBudgetTicks;
+
+    public boolean offer(Runnable task) {
+        return this.offer(task, task instanceof Waitable ? Priority.HIGH : Priority.NORMAL);
+    }
+
+    public boolean offer(Runnable task, Priority priority) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+
+        if (priority == Priority.HIGH) {
+            this.highSize.incrementAndGet();
+            this.high.add(new Entry(task));
+        } else {
+            this.normalSize.incrementAndGet();
+            this.normal.add(new Entry(task));
+        }
+        return true;
+    }
+
+    public Runnable poll() {
+        Entry entry = this.high.poll();
+        if (entry != null) {
+            this.highSize.decrementAndGet();
+        } else if ((entry = this.normal.poll()) != null) {
+            this.normalSize.decrementAndGet();
+        } else {
+            return null;
+        }
+
+        long wait = System.nanoTime() - entry.queued;
+        this.processed.incrementAndGet();
+        this.totalWait.addAndGet(wait);
+        if (wait > this.maxWait) {
+            this.maxWait = wait;
+        }
+        return entry.task;
+    }
+
+    public Runnable peek() {
+        Entry entry = this.high.peek();
+        if (entry == null) {
+            entry = this.normal.peek();
+        }
+        return entry == null ? null : entry.task;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.high.isEmpty() && this.normal.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return this.highSize.get() + this.normalSize.get();
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+        return Iterators.unmodifiableIterator(Iterators.transform(Iterators.concat(this.high.iterator(), this.normal.iterator()), UNWRAP));
+    }
+
+    /**
+     * Runs queued work until the queue is empty or the budget is used up. At
+     * least one task runs every call so the queue always moves.
+     *
+     * @param budget nanoseconds to spend, 0 or less to run everything
+     * @return the number of tasks that ran
+     */
+    public int drain(long budget) {
+        long start = System.nanoTime();
+        int count = 0;
+        Runnable task;
+
+        while ((task = this.poll()) != null) {
+            task.run();
+            ++count;
+
+            if (budget > 0L && System.nanoTime() - start >= budget) {
+                if (!this.isEmpty()) {
+                    ++this.overBudgetTicks;
+                }
+                break;
+            }
+        }
+        return count;
+    }
+
+    public int getSize(Priority priority) {
+        return priority == Priority.HIGH ? this.highSize.get() : this.normalSize.get();
+    }
+
+    public long getProcessed() {
+        return this.processed.get();
+    }
+
+    /**
+     * Average time in milliseconds tasks spent in the queue.
+     */
+    public double getAverageWait() {
+        long count = this.processed.get();
+        return count == 0 ? 0.0D : this.totalWait.get() / 1.0E6D / count;
+    }
+
+    /**
+     * Longest time in milliseconds a task spent in the queue.
+     */
+    public double getMaxWait() {
+        return this.maxWait / 1.0E6D;
+    }
+
+    /**
+     * Number of ticks that left work for the next tick.
+     */
+    public long getOverBudgetTicks() {
+        return this.overBudgetTicks;
+    }
+}
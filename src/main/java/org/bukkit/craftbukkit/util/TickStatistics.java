@@ -0,0 +1,165 @@
+package org.bukkit.craftbukkit.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Remembers when each of the recent server ticks started and how long it
+ * took, enough to cover the last five minutes at full speed. Once a second
+ * the total garbage collection time is sampled as well, so slow ticks caused
+ * by collector pauses can be told apart from an overloaded server. Ticks are
+ * recorded on the server thread and the statistics may be read from any
+ * thread.
+ */
+public class TickStatistics {
+    public static final long SECOND = 1000000000L;
+    public static final long MINUTE = 60L * SECOND;
+    public static final long FIVE_MINUTES = 5L * MINUTE;
+
+    // Five minutes of ticks at 20 per second with room for catching up
+    private static final int CAPACITY = 8192;
+    private static final int GC_SAMPLES = 301;
+
+    private final long[] starts = new long[CAPACITY];
+    private final long[] durations = new long[CAPACITY];
+    private long recorded;
+    private long firstStart;
+
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final long[] gcSampleTimes = new long[GC_SAMPLES];
+    private final long[] gcTotals = new long[GC_SAMPLES];
+    private int gcSamples;
+    private long nextGcSample;
+
+    /**
+     * Records a finished tick.
+     *
+     * @param start {@link System#nanoTime()} when the tick started
+     * @param duration nanoseconds the tick took
+     */
+    public synchronized void record(long start, long duration) {
+        if (this.recorded == 0) {
+            this.firstStart = start;
+        }
+
+        int index = (int) (this.recorded & (CAPACITY - 1));
+        this.starts[index] = start;
+        this.durations[index] = duration;
+        ++this.recorded;
+
+        if (this.gcSamples == 0 || start - this.nextGcSample >= 0L) {
+            this.nextGcSample = start + SECOND;
+            this.sampleGc(start);
+        }
+    }
+
+    private void sampleGc(long now) {
+        long total = 0L;
+        for (GarbageCollectorMXBean collector : this.collectors) {
+            total += Math.max(0L, collector.getCollectionTime());
+        }
+
+        int index = this.gcSamples % GC_SAMPLES;
+        this.gcSampleTimes[index] = now;
+        this.gcTotals[index] = total;
+        ++this.gcSamples;
+    }
+
+    /**
+     * Milliseconds spent collecting garbage within roughly the window, to
+     * the second.
+     */
+    public synchronized long getGcTime(long window) {
+        if (this.gcSamples == 0) {
+            return 0L;
+        }
+
+        int newest = (this.gcSamples - 1) % GC_SAMPLES;
+        int oldest = newest;
+        for (int i = 1; i < Math.min(this.gcSamples, GC_SAMPLES); i++) {
+            int index = (this.gcSamples - 1 - i) % GC_SAMPLES;
+            if (this.gcSampleTimes[newest] - this.gcSampleTimes[index] > window) {
+                break;
+            }
+            oldest = index;
+        }
+
+        return this.gcTotals[newest] - this.gcTotals[oldest];
+    }
+
+    public synchronized long getRecordedTicks() {
+        return this.recorded;
+    }
+
+    /**
+     * Ticks per second over the window ending now, or over the time since
+     * the first tick when that is shorter.
+     */
+    public double getTps(long window) {
+        return this.getTps(window, System.nanoTime());
+    }
+
+    synchronized double getTps(long window, long now) {
+        int count = this.count(window, now);
+        if (count == 0) {
+            return 0.0D;
+        }
+
+        long span = Math.min(window, now - this.firstStart);
+        return span <= 0L ? 0.0D : count * (double) SECOND / span;
+    }
+
+    /**
+     * Tick duration in milliseconds that the given fraction of the ticks in
+     * the window stayed below, 0.5 for the median and 1.0 for the slowest.
+     */
+    public double getMspt(double percentile, long window) {
+        return this.getMspt(percentile, window, System.nanoTime());
+    }
+
+    synchronized double getMspt(double percentile, long window, long now) {
+        int count = this.count(window, now);
+        if (count == 0) {
+            return 0.0D;
+        }
+
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = this.durations[(int) ((this.recorded - 1 - i) & (CAPACITY - 1))];
+        }
+        Arrays.sort(sorted);
+
+        int index = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))] / 1.0E6D;
+    }
+
+    /**
+     * Average tick duration in milliseconds over the window.
+     */
+    public synchronized double getAverageMspt(long window) {
+        long now = System.nanoTime();
+        int count = this.count(window, now);
+        if (count == 0) {
+            return 0.0D;
+        }
+
+        long sum = 0L;
+        for (int i = 0; i < count; i++) {
+            sum += this.durations[(int) ((this.recorded - 1 - i) & (CAPACITY - 1))];
+        }
+        return sum / 1.0E6D / count;
+    }
+
+    // Ticks that started within the window, newest first
+    private int count(long window, long now) {
+        int available = (int) Math.min(this.recorded, CAPACITY);
+        int count = 0;
+
+        while (count < available && now - this.starts[(int) ((this.recorded - 1 - count) & (CAPACITY - 1))] <= window) {
+            ++count;
+        }
+        return count;
+    }
+}
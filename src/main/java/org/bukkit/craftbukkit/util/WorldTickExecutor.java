@@ -0,0 +1,101 @@
+package org.bukkit.craftbukkit.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a part of the tick for each world on a pool of threads while the
+ * server thread waits for all of them. Only work that stays inside its own
+ * world and fires no plugin events may run here, such as relighting. Plugins
+ * see every event on the server thread with no world ticking in the
+ * background, as they would without this pool.
+ */
+public class WorldTickExecutor {
+    private final ExecutorService pool;
+    private final int threads;
+    private final Set<Thread> workers = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    private volatile boolean ticking;
+
+    public WorldTickExecutor(int threads) {
+        this.threads = threads;
+        this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        workers.add(Thread.currentThread());
+                        try {
+                            runnable.run();
+                        } finally {
+                            workers.remove(Thread.currentThread());
+                        }
+                    }
+                }, "World Tick Thread - " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Returns whether the current thread is ticking a world for this executor.
+     */
+    public boolean isWorkerThread() {
+        return this.ticking && this.workers.contains(Thread.currentThread());
+    }
+
+    /**
+     * Runs the tasks in parallel and waits for all of them. The first failure
+     * is rethrown after every task has finished.
+     */
+    public void tick(List<Callable<Void>> tasks) throws InterruptedException {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks.size());
+        Throwable failure = null;
+
+        this.ticking = true;
+        try {
+            for (Callable<Void> task : tasks) {
+                futures.add(this.pool.submit(task));
+            }
+
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    }
+                }
+            }
+        } finally {
+            this.ticking = false;
+        }
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+}
@@ -0,0 +1,86 @@
+package org.bukkit.craftbukkit.chunkio;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Adler32;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+public class ChunkPayloadCacheTest {
+
+    @Test
+    public void testCombine() {
+        Random random = new Random(1L);
+        byte[] first = randomPayload(random, 1000);
+        byte[] second = randomPayload(random, 70000);
+
+        Adler32 whole = new Adler32();
+        whole.update(first);
+        whole.update(second);
+
+        assertThat(ChunkPayloadCache.combine(adler(first), adler(second), second.length), is((int) whole.getValue()));
+        assertThat(ChunkPayloadCache.combine(1, adler(first), first.length), is(adler(first)));
+    }
+
+    @Test
+    public void testSplicedStreamInflates() throws Exception {
+        assumeTrue(ChunkPayloadCache.isEnabled());
+        Random random = new Random(2L);
+        ChunkPayloadCache.Payload[] payloads = new ChunkPayloadCache.Payload[5];
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+
+        for (int i = 0; i < payloads.length; i++) {
+            // Big enough for the first payload to outgrow the shared output buffer
+            byte[] data = i == 0 ? randomPayload(random, 200000) : randomPayload(random, 10000 + random.nextInt(30000));
+            payloads[i] = ChunkPayloadCache.compress(data, i, 0, 0);
+            expected.write(data);
+        }
+
+        ByteArrayOutputStream spliced = new ByteArrayOutputStream();
+        ChunkPayloadCache.splice(payloads, spliced);
+        assertThat(spliced.size(), is(ChunkPayloadCache.getSplicedSize(payloads)));
+
+        byte[] inflated = new byte[expected.size() + 16];
+        Inflater inflater = new Inflater();
+        inflater.setInput(spliced.toByteArray());
+        int length = inflater.inflate(inflated);
+
+        assertTrue(inflater.finished());
+        inflater.end();
+        assertThat(length, is(expected.size()));
+        assertTrue(Arrays.equals(Arrays.copyOf(inflated, length), expected.toByteArray()));
+    }
+
+    @Test
+    public void testEmptySplice() throws Exception {
+        ByteArrayOutputStream spliced = new ByteArrayOutputStream();
+        ChunkPayloadCache.splice(new ChunkPayloadCache.Payload[0], spliced);
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(spliced.toByteArray());
+        assertThat(inflater.inflate(new byte[16]), is(0));
+        assertTrue(inflater.finished());
+        inflater.end();
+    }
+
+    private static int adler(byte[] data) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(data);
+        return (int) adler32.getValue();
+    }
+
+    // Mostly repetitive like real block data, with some noise so it does not all compress away
+    private static byte[] randomPayload(Random random, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (random.nextInt(8) == 0 ? random.nextInt(256) : i >> 9);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,107 @@
+package org.bukkit.craftbukkit.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.server.BiomeBase;
+import net.minecraft.server.WorldChunkManager;
+import net.minecraft.server.WorldType;
+
+import org.bukkit.support.AbstractTestingBase;
+import org.junit.Test;
+
+/**
+ * Creates the biomes of new chunks on several threads, the way the terrain
+ * generator asks for them on the chunk I/O threads, while the main thread
+ * looks up biomes through the cache the way population and mob spawning do.
+ * Everything must match the same lookups made before on one thread.
+ */
+public class SynchronizedWorldChunkManagerTest extends AbstractTestingBase {
+    private static final long SEED = 4L;
+    private static final int CHUNKS = 24;
+    private static final int THREADS = 3;
+    private static final int STEP = 7;
+
+    @Test
+    public void testGenerateWhileMainThreadPopulates() throws Exception {
+        // The layers of every biome manager share IntCache, so the expected biomes come first
+        WorldChunkManager reference = new WorldChunkManager(SEED, WorldType.NORMAL);
+        final BiomeBase[][] expectedTerrain = new BiomeBase[CHUNKS * CHUNKS][];
+        final BiomeBase[][] expectedBlocks = new BiomeBase[CHUNKS * CHUNKS][];
+        for (int x = 0; x < CHUNKS; x++) {
+            for (int z = 0; z < CHUNKS; z++) {
+                expectedTerrain[x * CHUNKS + z] = getTerrainBiomes(reference, x, z);
+                expectedBlocks[x * CHUNKS + z] = getBlockBiomes(reference, x, z);
+            }
+        }
+        BiomeBase[][] expectedLookups = new BiomeBase[CHUNKS * 16][CHUNKS * 16];
+        for (int x = 0; x < CHUNKS * 16; x += STEP) {
+            for (int z = 0; z < CHUNKS * 16; z += STEP) {
+                expectedLookups[x][z] = reference.getBiome(x, z);
+            }
+        }
+
+        final WorldChunkManager shared = new SynchronizedWorldChunkManager(SEED, WorldType.NORMAL);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> generated = new ArrayList<Future<Void>>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                final int first = thread;
+                generated.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        for (int x = first; x < CHUNKS; x += THREADS) {
+                            for (int z = 0; z < CHUNKS; z++) {
+                                assertArrayEquals("Terrain biomes of chunk " + x + "," + z, expectedTerrain[x * CHUNKS + z], getTerrainBiomes(shared, x, z));
+                                assertArrayEquals("Block biomes of chunk " + x + "," + z, expectedBlocks[x * CHUNKS + z], getBlockBiomes(shared, x, z));
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            // Population and spawning look single blocks up, the cache is cleaned up every tick
+            int rounds = 0;
+            while (!isDone(generated) || rounds == 0) {
+                for (int x = 0; x < CHUNKS * 16; x += STEP) {
+                    for (int z = 0; z < CHUNKS * 16; z += STEP) {
+                        assertSame("Biome at " + x + "," + z, expectedLookups[x][z], shared.getBiome(x, z));
+                    }
+                    shared.b();
+                }
+                rounds++;
+            }
+
+            for (Future<Void> future : generated) {
+                future.get(60L, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // The 10x10 grid ChunkProviderGenerate shapes the terrain with
+    private static BiomeBase[] getTerrainBiomes(WorldChunkManager worldchunkmanager, int x, int z) {
+        return worldchunkmanager.getBiomes(null, x * 4 - 2, z * 4 - 2, 10, 10);
+    }
+
+    private static BiomeBase[] getBlockBiomes(WorldChunkManager worldchunkmanager, int x, int z) {
+        return worldchunkmanager.getBiomeBlock(null, x * 16, z * 16, 16, 16);
+    }
+
+    private static boolean isDone(List<Future<Void>> futures) {
+        for (Future<Void> future : futures) {
+            if (!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
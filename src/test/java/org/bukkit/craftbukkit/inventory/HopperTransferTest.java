@@ -0,0 +1,293 @@
+package org.bukkit.craftbukkit.inventory;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import net.minecraft.server.Block;
+import net.minecraft.server.Blocks;
+import net.minecraft.server.Entity;
+import net.minecraft.server.IChunkProvider;
+import net.minecraft.server.Item;
+import net.minecraft.server.ItemStack;
+import net.minecraft.server.Items;
+import net.minecraft.server.TileEntity;
+import net.minecraft.server.TileEntityHopper;
+import net.minecraft.server.World;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.craftbukkit.CraftServer;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryMoveItemEvent;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
+import org.bukkit.support.AbstractTestingBase;
+import org.junit.After;
+import org.junit.Test;
+
+import sun.misc.Unsafe;
+
+/**
+ * Moves items down a chain of hoppers with TileEntityHopper's own push and
+ * pull, with and without a plugin listening for InventoryMoveItemEvent.
+ */
+public class HopperTransferTest extends AbstractTestingBase {
+    private static final int CHAIN_LENGTH = 8;
+    private static final World WORLD = createWorld();
+
+    private final Listener listener = new Listener() {};
+    private int events;
+    private boolean cancel;
+    private org.bukkit.inventory.ItemStack replacement;
+
+    @After
+    public void unregister() {
+        InventoryMoveItemEvent.getHandlerList().unregister(listener);
+    }
+
+    @Test
+    public void testPushWithoutListeners() {
+        TileEntityHopper[] chain = createChain();
+        fill(chain[0], Items.IRON_INGOT);
+
+        int moved = push(chain);
+
+        assertThat(moved, is(64 * chain[0].getSize() * (CHAIN_LENGTH - 1)));
+        assertThat(count(chain[0]), is(0));
+        assertThat(count(chain[CHAIN_LENGTH - 1]), is(64 * chain[0].getSize()));
+    }
+
+    @Test
+    public void testPushWithListener() {
+        register();
+        TileEntityHopper[] chain = createChain();
+        fill(chain[0], Items.IRON_INGOT);
+
+        int moved = push(chain);
+
+        assertThat(moved, is(64 * chain[0].getSize() * (CHAIN_LENGTH - 1)));
+        assertThat(events, is(moved));
+        assertThat(count(chain[0]), is(0));
+        assertThat(count(chain[CHAIN_LENGTH - 1]), is(64 * chain[0].getSize()));
+    }
+
+    @Test
+    public void testPullWithoutListeners() {
+        TileEntityHopper[] chain = createChain();
+        fill(chain[0], Items.IRON_INGOT);
+
+        int moved = pull(chain);
+
+        assertThat(moved, is(64 * chain[0].getSize() * (CHAIN_LENGTH - 1)));
+        assertThat(count(chain[0]), is(0));
+        assertThat(count(chain[CHAIN_LENGTH - 1]), is(64 * chain[0].getSize()));
+    }
+
+    @Test
+    public void testPullWithListener() {
+        register();
+        TileEntityHopper[] chain = createChain();
+        fill(chain[0], Items.IRON_INGOT);
+
+        int moved = pull(chain);
+
+        assertThat(moved, is(64 * chain[0].getSize() * (CHAIN_LENGTH - 1)));
+        assertThat(events, is(moved));
+        assertThat(count(chain[0]), is(0));
+        assertThat(count(chain[CHAIN_LENGTH - 1]), is(64 * chain[0].getSize()));
+    }
+
+    @Test
+    public void testCancelledTransfer() {
+        register();
+        cancel = true;
+        TileEntityHopper source = createHopper();
+        TileEntityHopper destination = createHopper();
+        fill(source, Items.IRON_INGOT);
+
+        assertFalse(source.pushItem(destination, 1));
+        assertFalse(TileEntityHopper.suckInItems(destination, source));
+
+        // A cancelled push stops at the first slot, a pull goes on to try every slot
+        assertThat(events, is(1 + source.getSize()));
+        assertThat(count(source), is(64 * source.getSize()));
+        assertThat(count(destination), is(0));
+    }
+
+    @Test
+    public void testReplacedItem() {
+        register();
+        replacement = new org.bukkit.inventory.ItemStack(Material.GOLD_INGOT);
+        TileEntityHopper source = createHopper();
+        TileEntityHopper destination = createHopper();
+        fill(source, Items.IRON_INGOT);
+
+        assertTrue(source.pushItem(destination, 1));
+        assertTrue(TileEntityHopper.suckInItems(destination, source));
+
+        // The source keeps its item when a plugin moves something else instead
+        assertThat(count(source), is(64 * source.getSize()));
+        assertThat(count(destination), is(2));
+        assertThat(destination.getItem(0).getItem(), is(Items.GOLD_INGOT));
+    }
+
+    private void register() {
+        Plugin plugin = (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[] { Plugin.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("isEnabled")) {
+                    return true;
+                }
+                throw new UnsupportedOperationException(String.valueOf(method));
+            }
+        });
+        EventExecutor executor = new EventExecutor() {
+            public void execute(Listener listener, Event event) {
+                InventoryMoveItemEvent moveEvent = (InventoryMoveItemEvent) event;
+                events++;
+                moveEvent.setCancelled(cancel);
+                if (replacement != null) {
+                    moveEvent.setItem(replacement);
+                }
+            }
+        };
+        InventoryMoveItemEvent.getHandlerList().register(new RegisteredListener(listener, executor, EventPriority.NORMAL, plugin, false));
+    }
+
+    private static TileEntityHopper createHopper() {
+        TileEntityHopper hopper = new TileEntityHopper();
+        hopper.a(WORLD);
+        return hopper;
+    }
+
+    /**
+     * A world whose server only has the test plugin manager. The hoppers fire
+     * their events through it and update through the world after a transfer.
+     * Neither is constructed, both would start far more than the transfer
+     * needs.
+     */
+    private static World createWorld() {
+        try {
+            Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Unsafe unsafe = (Unsafe) theUnsafe.get(null);
+
+            CraftServer server = (CraftServer) unsafe.allocateInstance(CraftServer.class);
+            Field pluginManager = CraftServer.class.getDeclaredField("pluginManager");
+            pluginManager.setAccessible(true);
+            pluginManager.set(server, Bukkit.getPluginManager());
+
+            TestWorld world = (TestWorld) unsafe.allocateInstance(TestWorld.class);
+            world.server = server;
+            return world;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static TileEntityHopper[] createChain() {
+        TileEntityHopper[] chain = new TileEntityHopper[CHAIN_LENGTH];
+        for (int i = 0; i < chain.length; i++) {
+            chain[i] = createHopper();
+        }
+        return chain;
+    }
+
+    private static void fill(TileEntityHopper hopper, Item item) {
+        for (int i = 0; i < hopper.getSize(); i++) {
+            hopper.setItem(i, new ItemStack(item, 64));
+        }
+    }
+
+    private static int count(TileEntityHopper hopper) {
+        int count = 0;
+        for (int i = 0; i < hopper.getSize(); i++) {
+            ItemStack itemstack = hopper.getItem(i);
+            if (itemstack != null) {
+                count += itemstack.count;
+            }
+        }
+        return count;
+    }
+
+    private static class TestWorld extends World {
+        private CraftServer server;
+
+        private TestWorld() {
+            super(null, null, null, null, null, null, null);
+        }
+
+        @Override
+        public CraftServer getServer() {
+            return this.server;
+        }
+
+        // The hoppers are not placed, updating them after a transfer finds nothing to notify
+        @Override
+        public Block getType(int i, int j, int k) {
+            return Blocks.AIR;
+        }
+
+        @Override
+        public int getData(int i, int j, int k) {
+            return 0;
+        }
+
+        @Override
+        public void b(int i, int j, int k, TileEntity tileentity) {}
+
+        @Override
+        protected IChunkProvider j() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected int p() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Entity getEntity(int i) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // Each hopper pushes into the top of the next until everything reached the end of the chain
+    private static int push(TileEntityHopper[] chain) {
+        int moved = 0;
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (int i = CHAIN_LENGTH - 2; i >= 0; i--) {
+                if (chain[i].pushItem(chain[i + 1], 1)) {
+                    moved++;
+                    progress = true;
+                }
+            }
+        }
+        return moved;
+    }
+
+    // Each hopper pulls from the one before it until everything reached the end of the chain
+    private static int pull(TileEntityHopper[] chain) {
+        int moved = 0;
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (int i = CHAIN_LENGTH - 1; i > 0; i--) {
+                if (TileEntityHopper.suckInItems(chain[i], chain[i - 1])) {
+                    moved++;
+                    progress = true;
+                }
+            }
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,137 @@
+package org.bukkit.craftbukkit.scheduler;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AsyncTaskPoolTest {
+
+    @Test
+    public void testQueueLimit() throws InterruptedException {
+        AsyncTaskPool pool = new AsyncTaskPool();
+        pool.configure(1, 2, 10);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(3);
+        Runnable task = new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        };
+
+        assertTrue(pool.execute("slow", new Runnable() {
+            public void run() {
+                started.countDown();
+                await(release);
+                done.countDown();
+            }
+        }));
+        assertTrue(started.await(5L, TimeUnit.SECONDS));
+
+        // The only thread is busy, two tasks fit in the queue
+        assertTrue(pool.execute("fast", task));
+        assertTrue(pool.execute("fast", task));
+        assertFalse(pool.execute("fast", task));
+
+        AsyncTaskStats slow = pool.getStats("slow");
+        AsyncTaskStats fast = pool.getStats("fast");
+        assertThat(slow.getActive(), is(1));
+        assertThat(fast.getQueued(), is(2));
+        assertThat(fast.getRejected(), is(1L));
+        assertThat(pool.getQueued(), is(2));
+
+        release.countDown();
+        assertTrue(done.await(5L, TimeUnit.SECONDS));
+        // The counters are updated after the task returns
+        while (fast.getCompleted() < 2 || slow.getCompleted() < 1) {
+            Thread.sleep(1L);
+        }
+        assertThat(fast.getQueued(), is(0));
+        assertThat(slow.getActive(), is(0));
+        assertTrue(pool.execute("fast", task));
+    }
+
+    @Test
+    public void testTimes() {
+        AsyncTaskStats stats = new AsyncTaskStats();
+        assertThat(stats.getTime(0.5D), is(0.0D));
+
+        for (int i = 0; i < 99; i++) {
+            stats.queued();
+            stats.started();
+            stats.finished(100000L); // 0.1 ms
+        }
+        stats.queued();
+        stats.started();
+        stats.finished(20000000L); // 20 ms
+
+        assertThat(stats.getCompleted(), is(100L));
+        assertThat(stats.getTime(0.5D), is(0.128D));
+        assertThat(stats.getTime(0.99D), is(0.128D));
+        assertThat(stats.getTime(1.0D), is(32.768D));
+        assertThat(stats.getMaxTime(), is(20.0D));
+        assertThat(stats.getAverageTime(), is(closeTo(0.299D, 0.0001D)));
+    }
+
+    @Test
+    public void testStallWarning() throws InterruptedException {
+        AsyncTaskPool pool = new AsyncTaskPool();
+        pool.configure(1, 2, 1);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        assertTrue(pool.execute("slow", new Runnable() {
+            public void run() {
+                started.countDown();
+                await(release);
+                done.countDown();
+            }
+        }));
+        assertTrue(started.await(5L, TimeUnit.SECONDS));
+        assertTrue(pool.execute("waiting", new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        }));
+
+        long now = System.nanoTime();
+        long second = TimeUnit.SECONDS.toNanos(1L);
+        assertThat(pool.checkStalled(now), is(nullValue()));
+        String warning = pool.checkStalled(now + 2 * second);
+        assertThat(warning, containsString("waiting"));
+        assertThat(warning, containsString("1 tasks are queued"));
+        // At most one warning per configured time
+        assertThat(pool.checkStalled(now + 2 * second + second / 2), is(nullValue()));
+        assertThat(pool.checkStalled(now + 3 * second + second / 2), is(notNullValue()));
+
+        release.countDown();
+        assertTrue(done.await(5L, TimeUnit.SECONDS));
+        while (pool.getActiveThreads() > 0) {
+            Thread.sleep(1L);
+        }
+        assertThat(pool.checkStalled(now + 10 * second), is(nullValue()));
+    }
+
+    @Test
+    public void testBuckets() {
+        assertThat(AsyncTaskStats.bucket(0L), is(0));
+        assertThat(AsyncTaskStats.bucket(1L), is(1));
+        assertThat(AsyncTaskStats.bucket(3L), is(2));
+        assertThat(AsyncTaskStats.bucket(4L), is(3));
+        assertThat(AsyncTaskStats.bucket(Long.MAX_VALUE), is(31));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.bukkit.craftbukkit.scheduler;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TaskWheelTest {
+    private static final Runnable NOOP = new Runnable() {
+        public void run() {
+        }
+    };
+
+    @Test
+    public void testTasksComeDueOnTheirTick() {
+        Random random = new Random(1L);
+        TaskWheel wheel = new TaskWheel(-1);
+        Set<CraftTask> pending = new HashSet<CraftTask>();
+        long tick = 0;
+        wheel.advance(tick);
+
+        for (int round = 0; round < 100000; round++) {
+            int action = random.nextInt(10);
+            if (action < 4) {
+                CraftTask task = task(round);
+                task.setNextRun(tick + delay(random));
+                wheel.add(task);
+                pending.add(task);
+            } else if (action < 5 && !pending.isEmpty()) {
+                CraftTask task = pending.iterator().next();
+                assertTrue(wheel.remove(task));
+                assertFalse(wheel.remove(task));
+                pending.remove(task);
+            } else {
+                // Mostly single ticks with the occasional jump like a lagging server
+                tick += random.nextInt(50) == 0 ? random.nextInt(2000) : 1;
+                wheel.advance(tick);
+
+                CraftTask task;
+                while ((task = wheel.poll()) != null) {
+                    assertThat(task.getNextRun(), is(lessThanOrEqualTo(tick)));
+                    assertTrue(pending.remove(task));
+                }
+                if (round % 1000 == 0) {
+                    for (CraftTask left : pending) {
+                        assertThat(left.getNextRun(), is(greaterThan(tick)));
+                    }
+                }
+            }
+            assertThat(wheel.size(), is(pending.size()));
+        }
+    }
+
+    @Test
+    public void testLevelBoundaries() {
+        assertComesDue(0, 255, 256, 65535, 65536, 65537, 1L << 20);
+        // Starts just before the top level wraps so the overflow gets cascaded too
+        long base = (1L << 32) - 300;
+        assertComesDue(base, base + 1, (1L << 32) - 1, 1L << 32, (1L << 32) + 300, (1L << 32) + 70000);
+    }
+
+    private static void assertComesDue(long start, long... runs) {
+        TaskWheel wheel = new TaskWheel(start);
+        for (long run : runs) {
+            CraftTask task = task((int) run);
+            task.setNextRun(run);
+            wheel.add(task);
+        }
+
+        for (long run : runs) {
+            wheel.advance(run - 1);
+            assertThat(wheel.poll(), is(nullValue()));
+            wheel.advance(run);
+            assertThat(wheel.poll().getNextRun(), is(run));
+        }
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        TaskWheel wheel = new TaskWheel(-1);
+        wheel.advance(0);
+        for (int i = 0; i < 1000; i++) {
+            CraftTask task = task(i);
+            task.setNextRun(i * 97L);
+            wheel.add(task);
+        }
+
+        int count = 0;
+        for (java.util.Iterator<CraftTask> it = wheel.iterator(); it.hasNext();) {
+            CraftTask task = it.next();
+            ++count;
+            if (task.getTaskId() % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertThat(count, is(1000));
+        assertThat(wheel.size(), is(500));
+
+        wheel.clear();
+        assertTrue(wheel.isEmpty());
+        assertThat(wheel.iterator().hasNext(), is(false));
+    }
+
+    @Test
+    public void testRunsLikePriorityQueue() {
+        int tasks = 3000;
+        int ticks = 1000;
+
+        Random random = new Random(2L);
+        TaskWheel wheel = new TaskWheel(-1);
+        wheel.advance(0);
+        PriorityQueue<CraftTask> queue = new PriorityQueue<CraftTask>(10, new Comparator<CraftTask>() {
+            public int compare(final CraftTask o1, final CraftTask o2) {
+                return (int) (o1.getNextRun() - o2.getNextRun());
+            }
+        });
+        for (int i = 0; i < tasks; i++) {
+            long period = 1 + random.nextInt(200);
+            CraftTask wheelTask = new CraftTask(null, NOOP, i, period);
+            CraftTask queueTask = new CraftTask(null, NOOP, i, period);
+            wheelTask.setNextRun(period);
+            queueTask.setNextRun(period);
+            wheel.add(wheelTask);
+            queue.add(queueTask);
+        }
+
+        List<CraftTask> temp = new ArrayList<CraftTask>();
+        Set<Integer> queueRuns = new HashSet<Integer>();
+        Set<Integer> wheelRuns = new HashSet<Integer>();
+        for (int tick = 1; tick <= ticks; tick++) {
+            while (!queue.isEmpty() && queue.peek().getNextRun() <= tick) {
+                CraftTask task = queue.remove();
+                task.setNextRun(tick + task.getPeriod());
+                temp.add(task);
+                queueRuns.add(task.getTaskId());
+            }
+            queue.addAll(temp);
+            temp.clear();
+
+            wheel.advance(tick);
+            CraftTask task;
+            while ((task = wheel.poll()) != null) {
+                task.setNextRun(tick + task.getPeriod());
+                temp.add(task);
+                wheelRuns.add(task.getTaskId());
+            }
+            for (CraftTask t : temp) {
+                wheel.add(t);
+            }
+            temp.clear();
+
+            assertThat("tick " + tick, wheelRuns, is(queueRuns));
+            queueRuns.clear();
+            wheelRuns.clear();
+        }
+    }
+
+    @Test
+    public void testTouchesFewerTasksThanPriorityQueue() {
+        // The heartbeat of a server with many repeating plugin tasks
+        int tasks = 3000;
+        int ticks = 5000;
+
+        Random random = new Random(3L);
+        TaskWheel wheel = new TaskWheel(-1);
+        wheel.advance(0);
+        final long[] compared = new long[1];
+        PriorityQueue<CraftTask> queue = new PriorityQueue<CraftTask>(10, new Comparator<CraftTask>() {
+            public int compare(final CraftTask o1, final CraftTask o2) {
+                compared[0]++;
+                return (int) (o1.getNextRun() - o2.getNextRun());
+            }
+        });
+        for (int i = 0; i < tasks; i++) {
+            long period = 1 + random.nextInt(1200);
+            CraftTask wheelTask = new CraftTask(null, NOOP, i, period);
+            CraftTask queueTask = new CraftTask(null, NOOP, i, period);
+            wheelTask.setNextRun(period);
+            queueTask.setNextRun(period);
+            wheel.add(wheelTask);
+            queue.add(queueTask);
+        }
+        long wheelStart = wheel.getLinks();
+        long queueStart = compared[0];
+
+        long runs = 0;
+        List<CraftTask> temp = new ArrayList<CraftTask>();
+        for (int tick = 1; tick <= ticks; tick++) {
+            while (!queue.isEmpty() && queue.peek().getNextRun() <= tick) {
+                CraftTask task = queue.remove();
+                task.setNextRun(tick + task.getPeriod());
+                temp.add(task);
+            }
+            queue.addAll(temp);
+            temp.clear();
+
+            wheel.advance(tick);
+            CraftTask task;
+            while ((task = wheel.poll()) != null) {
+                task.setNextRun(tick + task.getPeriod());
+                wheel.add(task);
+                runs++;
+            }
+        }
+
+        // A comparison looks at two tasks, a slot takes one
+        long queueTouched = 2 * (compared[0] - queueStart);
+        long wheelTouched = wheel.getLinks() - wheelStart;
+        assertThat(wheelTouched, is(lessThan(3 * runs)));
+        assertThat(wheelTouched, is(lessThan(queueTouched / 10)));
+    }
+
+    private static CraftTask task(int id) {
+        return new CraftTask(null, NOOP, id, -1);
+    }
+
+    private static long delay(Random random) {
+        switch (random.nextInt(4)) {
+        case 0:
+            return random.nextInt(3);
+        case 1:
+            return random.nextInt(300);
+        case 2:
+            return random.nextInt(100000);
+        default:
+            return random.nextInt(Integer.MAX_VALUE) * 8L;
+        }
+    }
+}
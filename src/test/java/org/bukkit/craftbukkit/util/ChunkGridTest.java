@@ -0,0 +1,120 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ChunkGridTest {
+    private static final int SPREAD = 4000;
+
+    private static class Point {
+        int x;
+        int z;
+
+        Point(int x, int z) {
+            this.x = x;
+            this.z = z;
+        }
+    }
+
+    @Test
+    public void testMatchesLinearScan() {
+        Random random = new Random(1L);
+        ChunkGrid<Point> grid = new ChunkGrid<Point>();
+        List<Point> points = createPoints(random, grid, 5000);
+
+        for (int i = 0; i < 2000; i++) {
+            Point point = points.get(random.nextInt(points.size()));
+            int x = random.nextInt(SPREAD) - SPREAD / 2;
+            int z = random.nextInt(SPREAD) - SPREAD / 2;
+            grid.move(point.x >> 4, point.z >> 4, x >> 4, z >> 4, point);
+            point.x = x;
+            point.z = z;
+        }
+        assertThat(grid.size(), is(points.size()));
+
+        for (int i = 0; i < 500; i++) {
+            int x = (random.nextInt(SPREAD) - SPREAD / 2) >> 4;
+            int z = (random.nextInt(SPREAD) - SPREAD / 2) >> 4;
+            int radius = random.nextInt(12);
+            int offset = random.nextInt(6) - 3;
+
+            Set<Point> expected = linearScan(points, x - radius, z - radius, x + radius, z + radius, x + offset - radius, z - radius, x + offset + radius, z + radius);
+            Set<Point> actual = new HashSet<Point>();
+            grid.collect(x - radius, z - radius, x + radius, z + radius, actual, x + offset - radius, z - radius, x + offset + radius, z + radius);
+            assertThat(actual, is(expected));
+        }
+    }
+
+    @Test
+    public void testExaminesFewerThanLinearScan() {
+        // Like a player looking for the tracker entries within the tracking range of its chunk
+        Random random = new Random(2L);
+        ChunkGrid<Point> grid = new ChunkGrid<Point>();
+        List<Point> points = createPoints(random, grid, 5000);
+        int radius = 7;
+        long examined = 0;
+        long scanned = 0;
+
+        for (int i = 0; i < 500; i++) {
+            int x = (random.nextInt(SPREAD) - SPREAD / 2) >> 4;
+            int z = (random.nextInt(SPREAD) - SPREAD / 2) >> 4;
+
+            List<Point> candidates = new ArrayList<Point>();
+            grid.collect(x - radius, z - radius, x + radius, z + radius, candidates);
+            assertThat(new HashSet<Point>(candidates), is(linearScan(points, x - radius, z - radius, x + radius, z + radius, 1, 0, 0, 0)));
+
+            // At most one lookup per cell, then every candidate found, against every value for a scan
+            examined += (2 * radius + 1) * (2 * radius + 1) + candidates.size();
+            scanned += points.size();
+        }
+
+        assertThat(examined, is(lessThan(scanned / 10)));
+    }
+
+    @Test
+    public void testRemove() {
+        ChunkGrid<Point> grid = new ChunkGrid<Point>();
+        Point point = new Point(40, -40);
+        grid.add(2, -3, point);
+
+        assertFalse(grid.remove(0, 0, point));
+        assertTrue(grid.remove(2, -3, point));
+        assertThat(grid.size(), is(0));
+
+        List<Point> out = new ArrayList<Point>();
+        grid.collect(-10, -10, 10, 10, out);
+        assertThat(out, is(empty()));
+    }
+
+    private static List<Point> createPoints(Random random, ChunkGrid<Point> grid, int count) {
+        List<Point> points = new ArrayList<Point>(count);
+        for (int i = 0; i < count; i++) {
+            Point point = new Point(random.nextInt(SPREAD) - SPREAD / 2, random.nextInt(SPREAD) - SPREAD / 2);
+            points.add(point);
+            grid.add(point.x >> 4, point.z >> 4, point);
+        }
+        return points;
+    }
+
+    private static Set<Point> linearScan(List<Point> points, int minX, int minZ, int maxX, int maxZ, int exMinX, int exMinZ, int exMaxX, int exMaxZ) {
+        Set<Point> result = new HashSet<Point>();
+        for (Point point : points) {
+            int x = point.x >> 4;
+            int z = point.z >> 4;
+            boolean inside = x >= minX && x <= maxX && z >= minZ && z <= maxZ;
+            boolean excluded = x >= exMinX && x <= exMaxX && z >= exMinZ && z <= exMaxZ;
+            if (inside && !excluded) {
+                result.add(point);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,607 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Loads a chunk next to other chunks and lights it the way Chunk.p() did,
+ * column by column through the world, and through {@link ChunkLighter} on
+ * the chunk alone followed by Chunk.p() for the columns it left, and
+ * compares the light of every block of the world.
+ */
+public class ChunkLighterTest {
+    private static final int CHUNKS = 5;
+    private static final int CENTER = CHUNKS / 2;
+    private static final int GROUND = 64;
+    private static final int TOP = 240;
+    // Opacity and emission of stone, leaves, water, glowstone and a torch
+    private static final int[] STONE = { 255, 0 };
+    private static final int[] AIR = { 0, 0 };
+    private static final int[] LEAVES = { 1, 0 };
+    private static final int[] WATER = { 3, 0 };
+    private static final int[] GLOWSTONE = { 255, 15 };
+    private static final int[] TORCH = { 0, 14 };
+    private static final int[] ORE = { 255, 0 };
+    private static final int[] FLOWER = { 0, 0 };
+
+    @Test
+    public void testSameLightAsChunkP() {
+        int litColumns = 0;
+        for (long seed = 1; seed <= 12; seed++) {
+            TestWorld vanilla = TestWorld.generate(seed, false);
+            TestWorld lit = TestWorld.generate(seed, false);
+
+            new VanillaLight(vanilla).p(CENTER, CENTER, new BitSet());
+
+            BitSet columns = new TestLighter().lightColumns(lit.getChunk(CENTER, CENTER), CENTER, CENTER);
+            new VanillaLight(lit).p(CENTER, CENTER, columns);
+            litColumns += columns.cardinality();
+
+            vanilla.assertSameLight(lit, "seed " + seed);
+        }
+        assertTrue("Only " + litColumns + " columns were lit ahead", litColumns > 12 * 256 / 2);
+    }
+
+    @Test
+    public void testSameLightAwayFromTheEdges() {
+        // Nothing crosses the edges of the center, so all of it is lit ahead
+        for (long seed = 1; seed <= 4; seed++) {
+            TestWorld vanilla = TestWorld.generate(seed, true);
+            TestWorld lit = TestWorld.generate(seed, true);
+
+            new VanillaLight(vanilla).p(CENTER, CENTER, new BitSet());
+
+            BitSet columns = new TestLighter().lightColumns(lit.getChunk(CENTER, CENTER), CENTER, CENTER);
+            assertEquals(256, columns.cardinality());
+            new VanillaLight(lit).p(CENTER, CENTER, columns);
+
+            vanilla.assertSameLight(lit, "seed " + seed);
+        }
+    }
+
+    @Test
+    public void testPopulationKeepsTheLitColumns() {
+        for (long seed = 1; seed <= 4; seed++) {
+            TestWorld vanilla = TestWorld.generate(seed, false);
+            TestWorld lit = TestWorld.generate(seed, false);
+            TestChunk chunk = lit.getChunk(CENTER, CENTER);
+            chunk.litColumns = new TestLighter().lightColumns(chunk, CENTER, CENTER);
+            int columns = chunk.litColumns.cardinality();
+
+            // Ores and flowers from the chunk's own population and its neighbors' do not change the light
+            vanilla.populate(new Random(seed));
+            lit.populate(new Random(seed));
+            assertEquals("Seed " + seed, columns, chunk.litColumns.cardinality());
+            assertTrue("Seed " + seed + ", only " + columns + " columns were lit ahead", columns >= 128);
+
+            new VanillaLight(vanilla).p(CENTER, CENTER, new BitSet());
+            new VanillaLight(lit).p(CENTER, CENTER, chunk.litColumns);
+            vanilla.assertSameLight(lit, "seed " + seed);
+        }
+
+        // A tree does, so every column is lit again
+        TestWorld vanilla = TestWorld.generate(1, false);
+        TestWorld lit = TestWorld.generate(1, false);
+        TestChunk chunk = lit.getChunk(CENTER, CENTER);
+        chunk.litColumns = new TestLighter().lightColumns(chunk, CENTER, CENTER);
+        int x = CENTER * 16 + 7;
+        int z = CENTER * 16 + 7;
+        vanilla.setBlock(x, GROUND + 6, z, LEAVES);
+        lit.setBlock(x, GROUND + 6, z, LEAVES);
+        assertTrue(chunk.litColumns.isEmpty());
+
+        new VanillaLight(vanilla).p(CENTER, CENTER, new BitSet());
+        new VanillaLight(lit).p(CENTER, CENTER, chunk.litColumns);
+        vanilla.assertSameLight(lit, "tree");
+    }
+
+    @Test
+    public void testLightCrossingTheEdgeIsUndone() {
+        TestChunk chunk = new TestChunk();
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                for (int y = 0; y < GROUND; y++) {
+                    chunk.set(x, y, z, STONE);
+                }
+            }
+        }
+        // A torch in a closed room, then one in a tunnel that runs to the edge
+        chunk.set(3, 40, 3, AIR);
+        chunk.set(3, 41, 3, TORCH);
+        for (int x = 8; x < 16; x++) {
+            chunk.set(x, 30, 8, AIR);
+        }
+        chunk.set(9, 30, 8, TORCH);
+        chunk.initLighting();
+
+        BitSet columns = new TestLighter().lightColumns(chunk, CENTER, CENTER);
+        assertEquals(255, columns.cardinality());
+        assertFalse(columns.get(9 << 4 | 8));
+        assertEquals(13, chunk.block[TestChunk.index(3, 40, 3)]);
+        assertEquals(14, chunk.block[TestChunk.index(3, 41, 3)]);
+        assertEquals(0, chunk.block[TestChunk.index(9, 30, 8)]);
+        assertEquals(0, chunk.block[TestChunk.index(15, 30, 8)]);
+    }
+
+    private static class TestChunk {
+        final byte[] opacity = new byte[16 * 16 * 256];
+        final byte[] emission = new byte[16 * 16 * 256];
+        final byte[] sky = new byte[16 * 16 * 256];
+        final byte[] block = new byte[16 * 16 * 256];
+        final int[] height = new int[16 * 16];
+        BitSet litColumns = new BitSet();
+
+        static int index(int x, int y, int z) {
+            return y << 8 | z << 4 | x;
+        }
+
+        void set(int x, int y, int z, int[] type) {
+            this.opacity[index(x, y, z)] = (byte) type[0];
+            this.emission[index(x, y, z)] = (byte) type[1];
+        }
+
+        // A block change through Chunk.a(int, int, int, Block, int) once the chunk is lit
+        void setBlock(int x, int y, int z, int[] type) {
+            if (ChunkLighter.changesLight(this.getOpacity(x, y, z), this.emission[index(x, y, z)], type[0], type[1])) {
+                this.litColumns.clear();
+            }
+            this.set(x, y, z, type);
+        }
+
+        int getOpacity(int x, int y, int z) {
+            return this.opacity[index(x, y, z)] & 255;
+        }
+
+        // Chunk.initLighting(), the height map and the sky light straight down
+        void initLighting() {
+            Arrays.fill(this.sky, (byte) 0);
+            Arrays.fill(this.block, (byte) 0);
+            for (int j = 0; j < 16; ++j) {
+                for (int k = 0; k < 16; ++k) {
+                    int l = TOP + 16 - 1;
+
+                    while (l > 0 && this.getOpacity(j, l - 1, k) == 0) {
+                        --l;
+                    }
+                    this.height[k << 4 | j] = l;
+
+                    l = 15;
+                    int i1 = TOP + 16 - 1;
+
+                    do {
+                        int j1 = this.getOpacity(j, i1, k);
+
+                        if (j1 == 0 && l != 15) {
+                            j1 = 1;
+                        }
+
+                        l -= j1;
+                        if (l > 0) {
+                            this.sky[index(j, i1, k)] = (byte) l;
+                        }
+
+                        --i1;
+                    } while (i1 > 0 && l > 0);
+                }
+            }
+        }
+    }
+
+    private static class TestWorld {
+        private final Map<Long, TestChunk> chunks = new HashMap<Long, TestChunk>();
+
+        /**
+         * Caves, overhangs, trees, pools and lights that cross the chunk
+         * borders, or that stay away from the edges of the center chunk. All
+         * chunks have the sky light straight down, Chunk.p() needs the
+         * neighbors loaded so none of them went through it yet.
+         */
+        static TestWorld generate(long seed, boolean awayFromEdges) {
+            TestWorld world = new TestWorld();
+            Random random = new Random(seed);
+            int size = CHUNKS * 16;
+
+            for (int x = 0; x < CHUNKS; x++) {
+                for (int z = 0; z < CHUNKS; z++) {
+                    world.chunks.put(LongHash.toLong(x, z), new TestChunk());
+                }
+            }
+
+            world.fill(0, 1, 0, size - 1, GROUND - 1, size - 1, STONE);
+            for (int n = 0; n < 40; n++) {
+                int r = 2 + random.nextInt(3);
+                world.sphere(16 + random.nextInt(size - 32), GROUND - 20 + random.nextInt(18), 16 + random.nextInt(size - 32), r, AIR);
+            }
+            for (int n = 0; n < 12; n++) {
+                int x = 16 + random.nextInt(size - 40);
+                int z = 16 + random.nextInt(size - 40);
+                int y = GROUND + 3 + random.nextInt(8);
+                world.fill(x, y, z, x + 3 + random.nextInt(10), y + random.nextInt(2), z + 3 + random.nextInt(10), STONE);
+            }
+            for (int n = 0; n < 8; n++) {
+                world.sphere(16 + random.nextInt(size - 32), GROUND + 4 + random.nextInt(4), 16 + random.nextInt(size - 32), 2, LEAVES);
+            }
+            for (int n = 0; n < 6; n++) {
+                int x = 16 + random.nextInt(size - 36);
+                int z = 16 + random.nextInt(size - 36);
+                world.fill(x, GROUND - 2, z, x + 2 + random.nextInt(4), GROUND - 1, z + 2 + random.nextInt(4), WATER);
+            }
+            for (int n = 0; n < 60; n++) {
+                int x = 16 + random.nextInt(size - 32);
+                int y = GROUND - 24 + random.nextInt(32);
+                int z = 16 + random.nextInt(size - 32);
+                if (world.getOpacity(x, y, z) == 0) {
+                    world.fill(x, y, z, x, y, z, random.nextBoolean() ? GLOWSTONE : TORCH);
+                }
+            }
+
+            if (awayFromEdges) {
+                // Rooms, overhangs, trees and pools at least two blocks from the edges
+                int min = CENTER * 16;
+                world.fill(min, 1, min, min + 15, GROUND + 15, min + 15, AIR);
+                world.fill(min, 1, min, min + 15, GROUND - 1, min + 15, STONE);
+                for (int n = 0; n < 6; n++) {
+                    int x = min + 3 + random.nextInt(6);
+                    int y = GROUND - 20 + random.nextInt(12);
+                    int z = min + 3 + random.nextInt(6);
+                    world.fill(x, y, z, x + random.nextInt(5), y + random.nextInt(4), z + random.nextInt(5), AIR);
+                    world.fill(x, y, z, x, y, z, random.nextBoolean() ? GLOWSTONE : TORCH);
+                }
+                for (int n = 0; n < 2; n++) {
+                    int x = min + 3 + random.nextInt(4);
+                    int y = GROUND + 3 + random.nextInt(6);
+                    int z = min + 3 + random.nextInt(4);
+                    world.fill(x, y, z, x + random.nextInt(6), y, z + random.nextInt(6), STONE);
+                }
+                world.sphere(min + 5 + random.nextInt(6), GROUND + 4 + random.nextInt(4), min + 5 + random.nextInt(6), 2, LEAVES);
+                int x = min + 3 + random.nextInt(5);
+                int z = min + 3 + random.nextInt(5);
+                world.fill(x, GROUND - 2, z, x + random.nextInt(5), GROUND - 1, z + random.nextInt(5), WATER);
+            }
+
+            for (TestChunk chunk : world.chunks.values()) {
+                chunk.initLighting();
+            }
+
+            return world;
+        }
+
+        // Ore veins in the stone and flowers on the ground, across the center and its neighbors
+        void populate(Random random) {
+            int min = (CENTER - 1) * 16 + 8;
+            for (int n = 0; n < 120; n++) {
+                int x = min + random.nextInt(32);
+                int y = 1 + random.nextInt(GROUND - 1);
+                int z = min + random.nextInt(32);
+                for (int vein = 0; vein < 8; vein++) {
+                    if (this.getOpacity(x, y, z) == 255 && this.getEmission(x, y, z) == 0) {
+                        this.setBlock(x, y, z, ORE);
+                    }
+                    x += random.nextInt(3) - 1;
+                    y = Math.max(1, Math.min(GROUND - 1, y + random.nextInt(3) - 1));
+                    z += random.nextInt(3) - 1;
+                }
+            }
+            for (int n = 0; n < 64; n++) {
+                int x = min + random.nextInt(32);
+                int z = min + random.nextInt(32);
+                if (this.getOpacity(x, GROUND, z) == 0 && this.getOpacity(x, GROUND - 1, z) == 255) {
+                    this.setBlock(x, GROUND, z, FLOWER);
+                }
+            }
+        }
+
+        void setBlock(int x, int y, int z, int[] type) {
+            this.getChunk(x >> 4, z >> 4).setBlock(x & 15, y, z & 15, type);
+        }
+
+        TestChunk getChunk(int chunkX, int chunkZ) {
+            return this.chunks.get(LongHash.toLong(chunkX, chunkZ));
+        }
+
+        void fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int[] type) {
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        this.getChunk(x >> 4, z >> 4).set(x & 15, y, z & 15, type);
+                    }
+                }
+            }
+        }
+
+        void sphere(int cx, int cy, int cz, int r, int[] type) {
+            for (int x = cx - r; x <= cx + r; x++) {
+                for (int y = cy - r; y <= cy + r; y++) {
+                    for (int z = cz - r; z <= cz + r; z++) {
+                        if ((x - cx) * (x - cx) + (y - cy) * (y - cy) + (z - cz) * (z - cz) <= r * r) {
+                            this.getChunk(x >> 4, z >> 4).set(x & 15, y, z & 15, type);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Missing chunks are empty, the way World.getType sees them
+        int getOpacity(int x, int y, int z) {
+            TestChunk chunk = this.getChunk(x >> 4, z >> 4);
+            return chunk == null || y < 0 || y >= 256 ? 0 : chunk.getOpacity(x & 15, y, z & 15);
+        }
+
+        int getEmission(int x, int y, int z) {
+            TestChunk chunk = this.getChunk(x >> 4, z >> 4);
+            return chunk == null || y < 0 || y >= 256 ? 0 : chunk.emission[TestChunk.index(x & 15, y, z & 15)];
+        }
+
+        boolean canSeeSky(int x, int y, int z) {
+            TestChunk chunk = this.getChunk(x >> 4, z >> 4);
+            return chunk == null || y >= chunk.height[(z & 15) << 4 | (x & 15)];
+        }
+
+        void assertSameLight(TestWorld other, String message) {
+            for (Map.Entry<Long, TestChunk> entry : this.chunks.entrySet()) {
+                TestChunk otherChunk = other.chunks.get(entry.getKey());
+                String chunk = message + ", chunk " + LongHash.msw(entry.getKey()) + "," + LongHash.lsw(entry.getKey());
+                assertTrue("Sky light differs, " + chunk, Arrays.equals(entry.getValue().sky, otherChunk.sky));
+                assertTrue("Block light differs, " + chunk, Arrays.equals(entry.getValue().block, otherChunk.block));
+            }
+        }
+    }
+
+    private static class TestLighter extends ChunkLighter<TestChunk> {
+        @Override
+        protected int getTop(TestChunk chunk) {
+            return TOP;
+        }
+
+        @Override
+        protected int getBlockOpacity(TestChunk chunk, int x, int y, int z) {
+            return chunk.getOpacity(x & 15, y, z & 15);
+        }
+
+        @Override
+        protected int getBlockEmission(TestChunk chunk, int x, int y, int z) {
+            return chunk.emission[TestChunk.index(x & 15, y, z & 15)];
+        }
+
+        @Override
+        protected boolean canBlockSeeSky(TestChunk chunk, int x, int y, int z) {
+            return y >= chunk.height[(z & 15) << 4 | (x & 15)];
+        }
+
+        @Override
+        protected int getLight(TestChunk chunk, boolean sky, int x, int y, int z) {
+            return (sky ? chunk.sky : chunk.block)[TestChunk.index(x & 15, y, z & 15)];
+        }
+
+        @Override
+        protected void setBlockLight(TestChunk chunk, boolean sky, int x, int y, int z, int level) {
+            (sky ? chunk.sky : chunk.block)[TestChunk.index(x & 15, y, z & 15)] = (byte) level;
+        }
+    }
+
+    /**
+     * Chunk.p() and Chunk.f() with World.t() as it was before the light
+     * engine, looking every block up through the chunk map.
+     */
+    private static class VanillaLight {
+        private static final int[] FACING_X = { 0, 0, 0, 0, -1, 1 };
+        private static final int[] FACING_Y = { -1, 1, 0, 0, 0, 0 };
+        private static final int[] FACING_Z = { 0, 0, -1, 1, 0, 0 };
+
+        private final TestWorld world;
+        private final int[] I = new int[32768];
+
+        VanillaLight(TestWorld world) {
+            this.world = world;
+        }
+
+        // Chunk.p() for the columns not lit yet, then the relighting of the neighbors' border columns
+        void p(int chunkX, int chunkZ, BitSet litColumns) {
+            for (int i = 0; i < 16; ++i) {
+                for (int j = 0; j < 16; ++j) {
+                    if (!litColumns.get(i << 4 | j)) {
+                        this.f(chunkX, chunkZ, i, j);
+                    }
+                }
+            }
+
+            for (int j = 0; j < 16; ++j) {
+                this.f(chunkX - 1, chunkZ, 15, j);
+                this.f(chunkX + 1, chunkZ, 0, j);
+                this.f(chunkX, chunkZ - 1, j, 15);
+                this.f(chunkX, chunkZ + 1, j, 0);
+            }
+        }
+
+        private void f(int chunkX, int chunkZ, int i, int j) {
+            TestChunk chunk = this.world.getChunk(chunkX, chunkZ);
+            if (chunk == null) {
+                return;
+            }
+
+            int x = chunkX * 16 + i;
+            int z = chunkZ * 16 + j;
+            boolean flag = false;
+            boolean flag1 = false;
+
+            int l;
+
+            for (l = TOP + 16 - 1; l > 63 || l > 0 && !flag1; --l) {
+                int i1 = chunk.getOpacity(i, l, j);
+
+                if (i1 == 255 && l < 63) {
+                    flag1 = true;
+                }
+
+                if (!flag && i1 > 0) {
+                    flag = true;
+                } else if (flag && i1 == 0) {
+                    this.t(x, l, z);
+                }
+            }
+
+            for (; l > 0; --l) {
+                if (chunk.emission[TestChunk.index(i, l, j)] > 0) {
+                    this.t(x, l, z);
+                }
+            }
+        }
+
+        private void t(int i, int j, int k) {
+            this.c(true, i, j, k);
+            this.c(false, i, j, k);
+        }
+
+        private int b(boolean sky, int i, int j, int k) {
+            if (j < 0) {
+                j = 0;
+            }
+
+            if (j >= 256) {
+                j = 255;
+            }
+
+            TestChunk chunk = this.world.getChunk(i >> 4, k >> 4);
+            if (chunk == null) {
+                return sky ? 15 : 0;
+            }
+            return (sky ? chunk.sky : chunk.block)[TestChunk.index(i & 15, j, k & 15)];
+        }
+
+        private void b(boolean sky, int i, int j, int k, int l) {
+            if (j >= 0 && j < 256) {
+                TestChunk chunk = this.world.getChunk(i >> 4, k >> 4);
+                if (chunk != null) {
+                    (sky ? chunk.sky : chunk.block)[TestChunk.index(i & 15, j, k & 15)] = (byte) l;
+                }
+            }
+        }
+
+        private int a(int i, int j, int k, boolean sky) {
+            if (sky && this.world.canSeeSky(i, j, k)) {
+                return 15;
+            } else {
+                int l = sky ? 0 : this.world.getEmission(i, j, k);
+                int i1 = this.world.getOpacity(i, j, k);
+
+                if (i1 >= 15 && this.world.getEmission(i, j, k) > 0) {
+                    i1 = 1;
+                }
+
+                if (i1 < 1) {
+                    i1 = 1;
+                }
+
+                if (i1 >= 15) {
+                    return 0;
+                } else if (l >= 14) {
+                    return l;
+                } else {
+                    for (int j1 = 0; j1 < 6; ++j1) {
+                        int j2 = this.b(sky, i + FACING_X[j1], j + FACING_Y[j1], k + FACING_Z[j1]) - i1;
+
+                        if (j2 > l) {
+                            l = j2;
+                        }
+
+                        if (l >= 14) {
+                            return l;
+                        }
+                    }
+
+                    return l;
+                }
+            }
+        }
+
+        private void c(boolean sky, int i, int j, int k) {
+            int l = 0;
+            int i1 = 0;
+            int j1 = this.b(sky, i, j, k);
+            int k1 = this.a(i, j, k, sky);
+            int l1;
+            int i2;
+            int j2;
+            int k2;
+            int l2;
+            int i3;
+
+            if (k1 > j1) {
+                this.I[i1++] = 133152;
+            } else if (k1 < j1) {
+                this.I[i1++] = 133152 | j1 << 18;
+
+                while (l < i1) {
+                    l1 = this.I[l++];
+                    i2 = (l1 & 63) - 32 + i;
+                    j2 = (l1 >> 6 & 63) - 32 + j;
+                    k2 = (l1 >> 12 & 63) - 32 + k;
+                    l2 = l1 >> 18 & 15;
+                    i3 = this.b(sky, i2, j2, k2);
+                    if (i3 == l2) {
+                        this.b(sky, i2, j2, k2, 0);
+                        if (l2 > 0 && Math.abs(i2 - i) + Math.abs(j2 - j) + Math.abs(k2 - k) < 17) {
+                            for (int i4 = 0; i4 < 6; ++i4) {
+                                int j4 = i2 + FACING_X[i4];
+                                int k4 = j2 + FACING_Y[i4];
+                                int l4 = k2 + FACING_Z[i4];
+                                int i5 = Math.max(1, this.world.getOpacity(j4, k4, l4));
+
+                                i3 = this.b(sky, j4, k4, l4);
+                                if (i3 == l2 - i5 && i1 < this.I.length) {
+                                    this.I[i1++] = j4 - i + 32 | k4 - j + 32 << 6 | l4 - k + 32 << 12 | l2 - i5 << 18;
+                                }
+                            }
+                        }
+                    }
+                }
+
+                l = 0;
+            }
+
+            while (l < i1) {
+                l1 = this.I[l++];
+                i2 = (l1 & 63) - 32 + i;
+                j2 = (l1 >> 6 & 63) - 32 + j;
+                k2 = (l1 >> 12 & 63) - 32 + k;
+                l2 = this.b(sky, i2, j2, k2);
+                i3 = this.a(i2, j2, k2, sky);
+                if (i3 != l2) {
+                    this.b(sky, i2, j2, k2, i3);
+                    if (i3 > l2 && Math.abs(i2 - i) + Math.abs(j2 - j) + Math.abs(k2 - k) < 17 && i1 < this.I.length - 6) {
+                        if (this.b(sky, i2 - 1, j2, k2) < i3) {
+                            this.I[i1++] = i2 - 1 - i + 32 + (j2 - j + 32 << 6) + (k2 - k + 32 << 12);
+                        }
+
+                        if (this.b(sky, i2 + 1, j2, k2) < i3) {
+                            this.I[i1++] = i2 + 1 - i + 32 + (j2 - j + 32 << 6) + (k2 - k + 32 << 12);
+                        }
+
+                        if (this.b(sky, i2, j2 - 1, k2) < i3) {
+                            this.I[i1++] = i2 - i + 32 + (j2 - 1 - j + 32 << 6) + (k2 - k + 32 << 12);
+                        }
+
+                        if (this.b(sky, i2, j2 + 1, k2) < i3) {
+                            this.I[i1++] = i2 - i + 32 + (j2 + 1 - j + 32 << 6) + (k2 - k + 32 << 12);
+                        }
+
+                        if (this.b(sky, i2, j2, k2 - 1) < i3) {
+                            this.I[i1++] = i2 - i + 32 + (j2 - j + 32 << 6) + (k2 - 1 - k + 32 << 12);
+                        }
+
+                        if (this.b(sky, i2, j2, k2 + 1) < i3) {
+                            this.I[i1++] = i2 - i + 32 + (j2 - j + 32 << 6) + (k2 + 1 - k + 32 << 12);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
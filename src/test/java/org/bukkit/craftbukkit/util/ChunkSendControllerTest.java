@@ -0,0 +1,53 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ChunkSendControllerTest {
+    private static final long TIME_LEFT = 20000000L;
+
+    @After
+    public void resetConfiguration() {
+        ChunkSendController.configure(ChunkSendController.MIN_PER_TICK, ChunkSendController.MAX_PER_TICK, ChunkSendController.MAX_PENDING_KIB, ChunkSendController.CHUNKS_PER_PACKET);
+    }
+
+    @Test
+    public void testRateGrowsWhileConnectionKeepsUp() {
+        ChunkSendController controller = new ChunkSendController();
+
+        for (int i = 0; i < 20; i++) {
+            int chunks = controller.getChunksToSend(true, TIME_LEFT);
+            controller.sent(chunks);
+            controller.written(chunks, chunks * 8192);
+        }
+
+        assertThat(controller.getChunksToSend(true, TIME_LEFT), is(ChunkSendController.MAX_PER_TICK));
+        assertThat(controller.getPendingChunks(), is(0));
+    }
+
+    @Test
+    public void testBackloggedConnectionHolds() {
+        ChunkSendController.configure(1, 10, 64, 5);
+        ChunkSendController controller = new ChunkSendController();
+
+        controller.sent(20);
+        assertThat(controller.getChunksToSend(true, TIME_LEFT), is(0));
+        assertThat(controller.getChunksToSend(false, TIME_LEFT), is(0));
+        assertThat(controller.getRate(), is(1));
+
+        controller.written(20, 20 * 8192);
+        assertThat(controller.getChunksToSend(true, TIME_LEFT), is(2));
+    }
+
+    @Test
+    public void testOverrunningTickSendsMinimum() {
+        ChunkSendController.configure(2, 10, 1024, 5);
+        ChunkSendController controller = new ChunkSendController();
+
+        assertThat(controller.getChunksToSend(true, -1L), is(2));
+        assertThat(controller.getChunksToSend(true, TIME_LEFT), is(7));
+    }
+}
@@ -0,0 +1,128 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ChunkTickSetTest {
+    private static final int RADIUS = 3;
+
+    @Test
+    public void testSquare() {
+        ChunkTickSet set = new ChunkTickSet();
+        Object player = new Object();
+
+        set.startUpdate(RADIUS);
+        set.updatePlayer(player, 0, 0);
+        set.finishUpdate();
+
+        assertThat(set.size(), is((RADIUS * 2 + 1) * (RADIUS * 2 + 1)));
+        assertTrue(set.contains(-RADIUS, RADIUS));
+        assertFalse(set.contains(RADIUS + 1, 0));
+    }
+
+    @Test
+    public void testOverlappingPlayers() {
+        ChunkTickSet set = new ChunkTickSet();
+        Object first = new Object();
+        Object second = new Object();
+
+        set.startUpdate(RADIUS);
+        set.updatePlayer(first, 0, 0);
+        set.updatePlayer(second, 1, 0);
+        set.finishUpdate();
+
+        assertThat(set.getCount(0, 0), is(2));
+        assertThat(set.getCount(-RADIUS, 0), is(1));
+        assertThat(set.size(), is((RADIUS * 2 + 2) * (RADIUS * 2 + 1)));
+
+        // The second player left the world
+        set.startUpdate(RADIUS);
+        set.updatePlayer(first, 0, 0);
+        set.finishUpdate();
+
+        assertThat(set.getCount(0, 0), is(1));
+        assertFalse(set.contains(RADIUS + 1, 0));
+        assertThat(set.size(), is((RADIUS * 2 + 1) * (RADIUS * 2 + 1)));
+    }
+
+    @Test
+    public void testRadiusChange() {
+        ChunkTickSet set = new ChunkTickSet();
+        Object player = new Object();
+
+        set.startUpdate(RADIUS);
+        set.updatePlayer(player, 5, 5);
+        set.finishUpdate();
+        set.startUpdate(1);
+        set.updatePlayer(player, 5, 5);
+        set.finishUpdate();
+
+        assertThat(set.size(), is(9));
+        assertThat(set.getCount(5, 5), is(1));
+    }
+
+    @Test
+    public void testSameChunksAsRebuilding() {
+        ChunkTickSet set = new ChunkTickSet();
+        Random random = new Random(1L);
+        Object[] players = new Object[40];
+        int[][] positions = new int[players.length][];
+
+        for (int tick = 0; tick < 500; tick++) {
+            set.startUpdate(RADIUS);
+            for (int n = 0; n < players.length; n++) {
+                if (players[n] == null) {
+                    if (random.nextInt(10) != 0) {
+                        continue;
+                    }
+                    players[n] = new Object();
+                    positions[n] = new int[] { random.nextInt(40) - 20, random.nextInt(40) - 20 };
+                } else if (random.nextInt(50) == 0) {
+                    // Left the world
+                    players[n] = null;
+                    continue;
+                } else if (random.nextInt(20) == 0) {
+                    // Teleported
+                    positions[n][0] = random.nextInt(40) - 20;
+                    positions[n][1] = random.nextInt(40) - 20;
+                } else if (random.nextInt(4) == 0) {
+                    positions[n][random.nextInt(2)] += random.nextInt(5) - 2;
+                }
+
+                set.updatePlayer(players[n], positions[n][0], positions[n][1]);
+            }
+            set.finishUpdate();
+
+            // What World.C() used to build every tick
+            Map<Long, Integer> expected = new HashMap<Long, Integer>();
+            for (int n = 0; n < players.length; n++) {
+                if (players[n] == null) {
+                    continue;
+                }
+                for (int i = -RADIUS; i <= RADIUS; i++) {
+                    for (int j = -RADIUS; j <= RADIUS; j++) {
+                        long key = LongHash.toLong(positions[n][0] + i, positions[n][1] + j);
+                        Integer count = expected.get(key);
+                        expected.put(key, count == null ? 1 : count + 1);
+                    }
+                }
+            }
+
+            Set<Long> actual = new HashSet<Long>();
+            for (int index = 0; index < set.size(); index++) {
+                long key = set.get(index);
+                assertTrue(actual.add(key));
+                assertThat(set.getCount(LongHash.msw(key), LongHash.lsw(key)), is(expected.get(key)));
+            }
+            assertThat(actual, is(expected.keySet()));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import net.minecraft.server.Block;
+import net.minecraft.server.Blocks;
+import net.minecraft.server.Chunk;
+import net.minecraft.server.Explosion;
+
+import org.bukkit.support.AbstractTestingBase;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Sets TNT off at the same position on flat stone, with merging enabled,
+ * and changes blocks in between the way a cannon changes what the next TNT
+ * hits.
+ */
+public class ExplosionCacheTest extends AbstractTestingBase {
+    private static final int CHUNKS = 4;
+    private static final int GROUND = 64;
+    private static final float TNT = 4.0F;
+
+    @After
+    public void stopMerging() {
+        ExplosionCache.configure(false);
+    }
+
+    @Test
+    public void testChangedBlockCastsRaysAgain() {
+        ExplosionCache.configure(true);
+        TestCache cache = new TestCache();
+        long below = ExplosionRayCaster.pack(32, GROUND - 1, 32);
+
+        long[] first = cache.castRays(tnt());
+        assertTrue(contains(first, below));
+        // The next TNT at the same position reuses the blocks reached
+        assertThat(cache.castRays(tnt()), is(sameInstance(first)));
+
+        // A block changed in a chunk out of reach keeps them
+        cache.setType(0, GROUND, 0, Blocks.OBSIDIAN);
+        assertThat(cache.castRays(tnt()), is(sameInstance(first)));
+
+        // Bedrock under the TNT stops the rays going down
+        cache.setType(32, GROUND - 1, 32, Blocks.BEDROCK);
+        long[] second = cache.castRays(tnt());
+        assertThat(second, is(not(sameInstance(first))));
+        assertFalse(contains(second, below));
+        assertThat(cache.castRays(tnt()), is(sameInstance(second)));
+    }
+
+    @Test
+    public void testWithoutMerging() {
+        TestCache cache = new TestCache();
+        long[] first = cache.castRays(tnt());
+
+        assertThat(cache.castRays(tnt()), is(not(sameInstance(first))));
+    }
+
+    private static Explosion tnt() {
+        return new Explosion(null, null, 32.5D, GROUND + 0.5D, 32.5D, TNT);
+    }
+
+    private static boolean contains(long[] positions, long position) {
+        for (long value : positions) {
+            if (value == position) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class TestChunk extends Chunk {
+        int version;
+
+        TestChunk(int chunkX, int chunkZ) {
+            super(null, chunkX, chunkZ);
+            this.d = true;
+        }
+
+        @Override
+        public int getBlockVersion() {
+            return this.version;
+        }
+    }
+
+    // Stone up to the ground, air above, except for the blocks set
+    private static class TestCache extends ExplosionCache {
+        private final Map<Long, TestChunk> chunks = new HashMap<Long, TestChunk>();
+        private final Map<Long, Block> blocks = new HashMap<Long, Block>();
+        private final Random random = new Random(5L);
+
+        TestCache() {
+            super(null);
+            for (int x = 0; x < CHUNKS; x++) {
+                for (int z = 0; z < CHUNKS; z++) {
+                    this.chunks.put(LongHash.toLong(x, z), new TestChunk(x, z));
+                }
+            }
+        }
+
+        void setType(int x, int y, int z, Block block) {
+            this.blocks.put(ExplosionRayCaster.pack(x, y, z), block);
+            this.chunks.get(LongHash.toLong(x >> 4, z >> 4)).version++;
+        }
+
+        @Override
+        protected Chunk getChunk(int chunkX, int chunkZ) {
+            return this.chunks.get(LongHash.toLong(chunkX, chunkZ));
+        }
+
+        @Override
+        protected Block getType(int x, int y, int z) {
+            Block block = this.blocks.get(ExplosionRayCaster.pack(x, y, z));
+            if (block != null) {
+                return block;
+            }
+            return y < GROUND ? Blocks.STONE : Blocks.AIR;
+        }
+
+        @Override
+        protected Random getRandom() {
+            return this.random;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.minecraft.server.ChunkPosition;
+import net.minecraft.server.MathHelper;
+
+import org.junit.Test;
+
+/**
+ * Casts the rays of the same explosions the way Explosion.a() did, looking
+ * every block up through the chunk map, and through
+ * {@link ExplosionRayCaster}, and compares the positions found, the order
+ * the blocks are destroyed in and the random numbers drawn.
+ */
+public class ExplosionRayCasterTest {
+    private static final int CHUNKS = 4;
+    private static final int GROUND = 64;
+    private static final byte AIR = 0;
+    private static final byte STONE = 1;
+    private static final byte OBSIDIAN = 2;
+    private static final byte WATER = 3;
+    private static final byte SAND = 4;
+    // Resistance of each block type against TNT, durability / 5
+    private static final float[] RESISTANCE = { 0.0F, 6.0F, 1200.0F, 100.0F, 0.5F };
+    private static final float TNT = 4.0F;
+    private static final int CANNON_TNT = 200;
+
+    @Test
+    public void testSameBlocksAsVanilla() {
+        for (Scenario scenario : Scenario.values()) {
+            TestWorld world = scenario.build();
+            Random vanillaRandom = new Random(5L);
+            Random cachedRandom = new Random(5L);
+            TestCaster caster = new TestCaster(world);
+
+            for (int n = 0; n < 20; n++) {
+                double x = scenario.x + n * 0.01D;
+                VanillaRays vanilla = new VanillaRays(world);
+                vanilla.cast(x, scenario.y, scenario.z, TNT, vanillaRandom);
+                long[] cached = caster.cast(x, scenario.y, scenario.z, TNT, cachedRandom);
+
+                List<ChunkPosition> reached = new ArrayList<ChunkPosition>();
+                for (long position : cached) {
+                    reached.add(new ChunkPosition(ExplosionRayCaster.unpackX(position), ExplosionRayCaster.unpackY(position), ExplosionRayCaster.unpackZ(position)));
+                }
+                assertThat(scenario.name(), reached, is((List<ChunkPosition>) new ArrayList<ChunkPosition>(vanilla.reached)));
+
+                // Explosion.a() hands the blocks on in the order of a HashSet filled like vanilla's
+                HashSet<ChunkPosition> hashset = new HashSet<ChunkPosition>();
+                for (ChunkPosition position : reached) {
+                    hashset.add(position);
+                }
+                assertThat(scenario.name(), new ArrayList<ChunkPosition>(hashset), is((List<ChunkPosition>) new ArrayList<ChunkPosition>(vanilla.blocks)));
+            }
+            assertThat(scenario.name(), cachedRandom.nextLong(), is(vanillaRandom.nextLong()));
+        }
+    }
+
+    @Test
+    public void testWaterAbsorbsCannon() {
+        TestWorld world = Scenario.WATER_CANNON.build();
+        long[] cached = new TestCaster(world).cast(Scenario.WATER_CANNON.x, Scenario.WATER_CANNON.y, Scenario.WATER_CANNON.z, TNT, new Random(6L));
+
+        assertThat(cached.length, is(0));
+    }
+
+    @Test
+    public void testPacking() {
+        int[][] positions = { { 0, 0, 0 }, { -1, 255, -1 }, { 29999999, 17, -30000000 }, { -30000000, 128, 29999999 }, { 123456, 64, -654321 } };
+
+        for (int[] position : positions) {
+            long key = ExplosionRayCaster.pack(position[0], position[1], position[2]);
+
+            assertThat(key, is(not(0L)));
+            assertThat(ExplosionRayCaster.unpackX(key), is(position[0]));
+            assertThat(ExplosionRayCaster.unpackY(key), is(position[1]));
+            assertThat(ExplosionRayCaster.unpackZ(key), is(position[2]));
+        }
+    }
+
+    @Test
+    public void testFewerLookupsThanVanilla() {
+        for (Scenario scenario : Scenario.values()) {
+            TestWorld world = scenario.build();
+            VanillaRays vanilla = new VanillaRays(world);
+            TestCaster caster = new TestCaster(world);
+
+            Random random = new Random(7L);
+            for (int n = 0; n < CANNON_TNT; n++) {
+                vanilla.cast(scenario.x, scenario.y, scenario.z, TNT, random);
+            }
+
+            random = new Random(7L);
+            for (int n = 0; n < CANNON_TNT; n++) {
+                caster.cast(scenario.x, scenario.y, scenario.z, TNT, random);
+            }
+
+            assertThat(scenario.name(), caster.getLookups(), is(lessThan(vanilla.lookups / 4)));
+        }
+    }
+
+    private enum Scenario {
+        // TNT going off on flat stone
+        CRATER(32.5D, GROUND + 0.5D, 32.5D) {
+            @Override
+            void place(TestWorld world) {}
+        },
+        // TNT in a water filled barrel inside obsidian, nothing breaks
+        WATER_CANNON(32.5D, GROUND + 1.5D, 32.5D) {
+            @Override
+            void place(TestWorld world) {
+                world.fill(28, GROUND, 28, 37, GROUND + 4, 37, OBSIDIAN);
+                world.fill(31, GROUND + 1, 31, 34, GROUND + 3, 34, WATER);
+            }
+        },
+        // TNT next to a sand wall in front of an obsidian wall
+        WALL(32.5D, GROUND + 1.5D, 32.5D) {
+            @Override
+            void place(TestWorld world) {
+                world.fill(34, GROUND, 20, 35, GROUND + 8, 44, SAND);
+                world.fill(36, GROUND, 20, 36, GROUND + 8, 44, OBSIDIAN);
+            }
+        };
+
+        final double x;
+        final double y;
+        final double z;
+
+        Scenario(double x, double y, double z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        abstract void place(TestWorld world);
+
+        TestWorld build() {
+            TestWorld world = new TestWorld();
+            this.place(world);
+            return world;
+        }
+    }
+
+    private static class TestWorld {
+        private final Map<Long, byte[]> chunks = new HashMap<Long, byte[]>();
+
+        TestWorld() {
+            for (int x = 0; x < CHUNKS; x++) {
+                for (int z = 0; z < CHUNKS; z++) {
+                    byte[] blocks = new byte[16 * 16 * 256];
+                    for (int i = 0; i < GROUND * 256; i++) {
+                        blocks[i] = STONE;
+                    }
+                    this.chunks.put(LongHash.toLong(x, z), blocks);
+                }
+            }
+        }
+
+        void fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, byte type) {
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        this.chunks.get(LongHash.toLong(x >> 4, z >> 4))[y << 8 | (z & 15) << 4 | x & 15] = type;
+                    }
+                }
+            }
+        }
+
+        // Like World.getType, a lookup through the chunk map
+        byte getType(int x, int y, int z) {
+            if (y < 0 || y >= 256) {
+                return AIR;
+            }
+
+            byte[] blocks = this.chunks.get(LongHash.toLong(x >> 4, z >> 4));
+            return blocks == null ? AIR : blocks[y << 8 | (z & 15) << 4 | x & 15];
+        }
+    }
+
+    private static class TestCaster extends ExplosionRayCaster<Byte> {
+        private final TestWorld world;
+
+        TestCaster(TestWorld world) {
+            this.world = world;
+        }
+
+        @Override
+        protected Byte getType(int x, int y, int z) {
+            return this.world.getType(x, y, z);
+        }
+
+        @Override
+        protected boolean isAir(Byte type) {
+            return type == AIR;
+        }
+
+        @Override
+        protected float getResistance(Byte type, int x, int y, int z) {
+            return RESISTANCE[type];
+        }
+
+        @Override
+        protected boolean canDestroy(Byte type, int x, int y, int z, float power) {
+            return true;
+        }
+    }
+
+    // The rays of Explosion.a() as they were
+    private static class VanillaRays {
+        private final TestWorld world;
+        private final int i = 16;
+        long lookups;
+        // What Explosion.a() added to its blocks, and the same positions in the order they were added to the HashSet
+        final List<ChunkPosition> blocks = new ArrayList<ChunkPosition>();
+        final LinkedHashSet<ChunkPosition> reached = new LinkedHashSet<ChunkPosition>();
+
+        VanillaRays(TestWorld world) {
+            this.world = world;
+        }
+
+        void cast(double posX, double posY, double posZ, float size, Random random) {
+            HashSet<ChunkPosition> hashset = new HashSet<ChunkPosition>();
+            this.blocks.clear();
+            this.reached.clear();
+
+            int i;
+            int j;
+            int k;
+            double d0;
+            double d1;
+            double d2;
+
+            for (i = 0; i < this.i; ++i) {
+                for (j = 0; j < this.i; ++j) {
+                    for (k = 0; k < this.i; ++k) {
+                        if (i == 0 || i == this.i - 1 || j == 0 || j == this.i - 1 || k == 0 || k == this.i - 1) {
+                            double d3 = (double) ((float) i / ((float) this.i - 1.0F) * 2.0F - 1.0F);
+                            double d4 = (double) ((float) j / ((float) this.i - 1.0F) * 2.0F - 1.0F);
+                            double d5 = (double) ((float) k / ((float) this.i - 1.0F) * 2.0F - 1.0F);
+                            double d6 = Math.sqrt(d3 * d3 + d4 * d4 + d5 * d5);
+
+                            d3 /= d6;
+                            d4 /= d6;
+                            d5 /= d6;
+                            float f1 = size * (0.7F + random.nextFloat() * 0.6F);
+
+                            d0 = posX;
+                            d1 = posY;
+                            d2 = posZ;
+
+                            for (float f2 = 0.3F; f1 > 0.0F; f1 -= f2 * 0.75F) {
+                                int l = MathHelper.floor(d0);
+                                int i1 = MathHelper.floor(d1);
+                                int j1 = MathHelper.floor(d2);
+                                ++this.lookups;
+                                byte block = this.world.getType(l, i1, j1);
+
+                                if (block != AIR) {
+                                    float f3 = RESISTANCE[block];
+
+                                    f1 -= (f3 + 0.3F) * f2;
+                                }
+
+                                if (f1 > 0.0F && i1 < 256 && i1 >= 0) {
+                                    hashset.add(new ChunkPosition(l, i1, j1));
+                                    this.reached.add(new ChunkPosition(l, i1, j1));
+                                }
+
+                                d0 += d3 * (double) f2;
+                                d1 += d4 * (double) f2;
+                                d2 += d5 * (double) f2;
+                            }
+                        }
+                    }
+                }
+            }
+
+            this.blocks.addAll(hashset);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Runs the same random block changes through the light update as it was in
+ * World, looking every block up through the chunk map, and through
+ * {@link LightPropagator}, and compares the light of every block.
+ */
+public class LightPropagatorTest {
+    private static final int CHUNKS = 6;
+    private static final int GROUND = 64;
+    // Opacity and emission of stone, air, leaves, water, glass, glowstone and a torch
+    private static final int[][] BLOCKS = { { 255, 0 }, { 0, 0 }, { 1, 0 }, { 3, 0 }, { 0, 0 }, { 255, 15 }, { 0, 14 } };
+
+    @Test
+    public void testSameLightAsVanilla() {
+        TestWorld vanilla = new TestWorld();
+        TestWorld cached = new TestWorld();
+        VanillaLight vanillaLight = new VanillaLight(vanilla);
+        TestPropagator propagator = new TestPropagator(cached);
+
+        Random random = new Random(3L);
+        for (int change = 1; change <= 4000; change++) {
+            int x = 16 + random.nextInt(16 * (CHUNKS - 2));
+            int y = GROUND - 12 + random.nextInt(24);
+            int z = 16 + random.nextInt(16 * (CHUNKS - 2));
+            int[] block = BLOCKS[random.nextInt(BLOCKS.length)];
+
+            vanilla.setBlock(x, y, z, block[0], block[1]);
+            cached.setBlock(x, y, z, block[0], block[1]);
+            vanillaLight.c(true, x, y, z);
+            vanillaLight.c(false, x, y, z);
+            propagator.propagate(true, x, y, z);
+            propagator.propagate(false, x, y, z);
+
+            if (change % 500 == 0) {
+                vanilla.assertSameLight(cached);
+            }
+        }
+        assertThat(propagator.lookups, is(lessThan(vanillaLight.lookups / 10)));
+    }
+
+    @Test
+    public void testUnloadedChunks() {
+        TestWorld vanilla = new TestWorld();
+        TestWorld cached = new TestWorld();
+
+        // Light next to the edge of the loaded area reads the defaults of the missing chunks
+        for (int y = GROUND - 8; y < GROUND; y++) {
+            vanilla.setBlock(1, y, 40, 0, 0);
+            cached.setBlock(1, y, 40, 0, 0);
+            new VanillaLight(vanilla).c(true, 1, y, 40);
+            new TestPropagator(cached).propagate(true, 1, y, 40);
+        }
+        vanilla.setBlock(2, GROUND - 4, 40, 0, 15);
+        cached.setBlock(2, GROUND - 4, 40, 0, 15);
+        new VanillaLight(vanilla).c(false, 2, GROUND - 4, 40);
+        new TestPropagator(cached).propagate(false, 2, GROUND - 4, 40);
+
+        vanilla.assertSameLight(cached);
+        assertThat(cached.getChunk(0, 2).block[TestChunk.index(2, GROUND - 4, 8)], is((byte) 15));
+    }
+
+    private static class TestChunk {
+        final byte[] opacity = new byte[16 * 16 * 256];
+        final byte[] emission = new byte[16 * 16 * 256];
+        final byte[] sky = new byte[16 * 16 * 256];
+        final byte[] block = new byte[16 * 16 * 256];
+        final int[] height = new int[16 * 16];
+
+        TestChunk() {
+            Arrays.fill(this.opacity, 0, GROUND * 256, (byte) 255);
+            Arrays.fill(this.sky, GROUND * 256, this.sky.length, (byte) 15);
+            Arrays.fill(this.height, GROUND);
+        }
+
+        static int index(int x, int y, int z) {
+            return y << 8 | z << 4 | x;
+        }
+    }
+
+    private static class TestWorld {
+        private final Map<Long, TestChunk> chunks = new HashMap<Long, TestChunk>();
+
+        TestWorld() {
+            for (int x = 0; x < CHUNKS; x++) {
+                for (int z = 0; z < CHUNKS; z++) {
+                    this.chunks.put(LongHash.toLong(x, z), new TestChunk());
+                }
+            }
+        }
+
+        TestChunk getChunk(int chunkX, int chunkZ) {
+            return this.chunks.get(LongHash.toLong(chunkX, chunkZ));
+        }
+
+        void setBlock(int x, int y, int z, int opacity, int emission) {
+            TestChunk chunk = this.getChunk(x >> 4, z >> 4);
+            chunk.opacity[TestChunk.index(x & 15, y, z & 15)] = (byte) opacity;
+            chunk.emission[TestChunk.index(x & 15, y, z & 15)] = (byte) emission;
+
+            int top = 255;
+            while (top > 0 && chunk.opacity[TestChunk.index(x & 15, top - 1, z & 15)] == 0) {
+                top--;
+            }
+            chunk.height[(z & 15) << 4 | (x & 15)] = top;
+        }
+
+        // Missing chunks are empty, the way World.getType sees them
+        int getOpacity(int x, int y, int z) {
+            TestChunk chunk = this.getChunk(x >> 4, z >> 4);
+            return chunk == null || y < 0 || y >= 256 ? 0 : chunk.opacity[TestChunk.index(x & 15, y, z & 15)] & 255;
+        }
+
+        int getEmission(int x, int y, int z) {
+            TestChunk chunk = this.getChunk(x >> 4, z >> 4);
+            return chunk == null || y < 0 || y >= 256 ? 0 : chunk.emission[TestChunk.index(x & 15, y, z & 15)];
+        }
+
+        boolean canSeeSky(int x, int y, int z) {
+            TestChunk chunk = this.getChunk(x >> 4, z >> 4);
+            return chunk == null || y >= chunk.height[(z & 15) << 4 | (x & 15)];
+        }
+
+        void assertSameLight(TestWorld other) {
+            for (Map.Entry<Long, TestChunk> entry : this.chunks.entrySet()) {
+                TestChunk otherChunk = other.chunks.get(entry.getKey());
+                assertTrue("Sky light differs", Arrays.equals(entry.getValue().sky, otherChunk.sky));
+                assertTrue("Block light differs", Arrays.equals(entry.getValue().block, otherChunk.block));
+            }
+        }
+    }
+
+    private static class TestPropagator extends LightPropagator<TestChunk> {
+        private final TestWorld world;
+        int lookups;
+
+        TestPropagator(TestWorld world) {
+            this.world = world;
+        }
+
+        @Override
+        protected TestChunk getChunk(int chunkX, int chunkZ) {
+            ++this.lookups;
+            return this.world.getChunk(chunkX, chunkZ);
+        }
+
+        @Override
+        protected int getLight(TestChunk chunk, boolean sky, int x, int y, int z) {
+            return (sky ? chunk.sky : chunk.block)[TestChunk.index(x & 15, y, z & 15)];
+        }
+
+        @Override
+        protected void setLight(TestChunk chunk, boolean sky, int x, int y, int z, int level) {
+            (sky ? chunk.sky : chunk.block)[TestChunk.index(x & 15, y, z & 15)] = (byte) level;
+        }
+
+        @Override
+        protected int getOpacity(TestChunk chunk, int x, int y, int z) {
+            return chunk == null || y < 0 || y >= 256 ? this.world.getOpacity(x, y, z) : chunk.opacity[TestChunk.index(x & 15, y, z & 15)] & 255;
+        }
+
+        @Override
+        protected int getEmission(TestChunk chunk, int x, int y, int z) {
+            return chunk == null || y < 0 || y >= 256 ? this.world.getEmission(x, y, z) : chunk.emission[TestChunk.index(x & 15, y, z & 15)];
+        }
+
+        @Override
+        protected boolean canSeeSky(TestChunk chunk, int x, int y, int z) {
+            return chunk == null ? this.world.canSeeSky(x, y, z) : y >= chunk.height[(z & 15) << 4 | (x & 15)];
+        }
+    }
+
+    /**
+     * World.c, World.a and World.b as they were before the light engine,
+     * with a chunk map lookup for every block.
+     */
+    private static class VanillaLight {
+        private static final int[] FACING_X = { 0, 0, 0, 0, -1, 1 };
+        private static final int[] FACING_Y = { -1, 1, 0, 0, 0, 0 };
+        private static final int[] FACING_Z = { 0, 0, -1, 1, 0, 0 };
+
+        private final TestWorld world;
+        private final int[] I = new int[32768];
+        int lookups;
+
+        VanillaLight(TestWorld world) {
+            this.world = world;
+        }
+
+        private TestChunk getChunk(int x, int z) {
+            ++this.lookups;
+            return this.world.getChunk(x >> 4, z >> 4);
+        }
+
+        private int b(boolean sky, int i, int j, int k) {
+            if (j < 0) {
+                j = 0;
+            }
+
+            if (j >= 256) {
+                j = 255;
+            }
+
+            TestChunk chunk = this.getChunk(i, k);
+            if (chunk == null) {
+                return sky ? 15 : 0;
+            }
+            return (sky ? chunk.sky : chunk.block)[TestChunk.index(i & 15, j, k & 15)];
+        }
+
+        private void b(boolean sky, int i, int j, int k, int l) {
+            if (j >= 0 && j < 256) {
+                TestChunk chunk = this.getChunk(i, k);
+                if (chunk != null) {
+                    (sky ? chunk.sky : chunk.block)[TestChunk.index(i & 15, j, k & 15)] = (byte) l;
+                }
+            }
+        }
+
+        private int opacity(int i, int j, int k) {
+            ++this.lookups;
+            return this.world.getOpacity(i, j, k);
+        }
+
+        private int emission(int i, int j, int k) {
+            ++this.lookups;
+            return this.world.getEmission(i, j, k);
+        }
+
+        private int a(int i, int j, int k, boolean sky) {
+            ++this.lookups;
+            if (sky && this.world.canSeeSky(i, j, k)) {
+                return 15;
+            } else {
+                int l = sky ? 0 : this.emission(i, j, k);
+                int i1 = this.opacity(i, j, k);
+
+                if (i1 >= 15 && this.emission(i, j, k) > 0) {
+                    i1 = 1;
+                }
+
+                if (i1 < 1) {
+                    i1 = 1;
+                }
+
+                if (i1 >= 15) {
+                    return 0;
+                } else if (l >= 14) {
+                    return l;
+                } else {
+                    for (int j1 = 0; j1 < 6; ++j1) {
+                        int k1 = i + FACING_X[j1];
+                        int l1 = j + FACING_Y[j1];
+                        int i2 = k + FACING_Z[j1];
+                        int j2 = this.b(sky, k1, l1, i2) - i1;
+
+                        if (j2 > l) {
+                            l = j2;
+                        }
+
+                        if (l >= 14) {
+                            return l;
+                        }
+                    }
+
+                    return l;
+                }
+            }
+        }
+
+        void c(boolean sky, int i, int j, int k) {
+            int l = 0;
+            int i1 = 0;
+            int j1 = this.b(sky, i, j, k);
+            int k1 = this.a(i, j, k, sky);
+            int l1;
+            int i2;
+            int j2;
+            int k2;
+            int l2;
+            int i3;
+            int j3;
+            int k3;
+            int l3;
+
+            if (k1 > j1) {
+                this.I[i1++] = 133152;
+            } else if (k1 < j1) {
+                this.I[i1++] = 133152 | j1 << 18;
+
+                while (l < i1) {
+                    l1 = this.I[l++];
+                    i2 = (l1 & 63) - 32 + i;
+                    j2 = (l1 >> 6 & 63) - 32 + j;
+                    k2 = (l1 >> 12 & 63) - 32 + k;
+                    l2 = l1 >> 18 & 15;
+                    i3 = this.b(sky, i2, j2, k2);
+                    if (i3 == l2) {
+                        this.b(sky, i2, j2, k2, 0);
+                        if (l2 > 0) {
+                            j3 = Math.abs(i2 - i);
+                            l3 = Math.abs(j2 - j);
+                            k3 = Math.abs(k2 - k);
+                            if (j3 + l3 + k3 < 17) {
+                                for (int i4 = 0; i4 < 6; ++i4) {
+                                    int j4 = i2 + FACING_X[i4];
+                                    int k4 = j2 + FACING_Y[i4];
+                                    int l4 = k2 + FACING_Z[i4];
+                                    int i5 = Math.max(1, this.opacity(j4, k4, l4));
+
+                                    i3 = this.b(sky, j4, k4, l4);
+                                    if (i3 == l2 - i5 && i1 < this.I.length) {
+                                        this.I[i1++] = j4 - i + 32 | k4 - j + 32 << 6 | l4 - k + 32 << 12 | l2 - i5 << 18;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+
+                l = 0;
+            }
+
+            while (l < i1) {
+                l1 = this.I[l++];
+                i2 = (l1 & 63) - 32 + i;
+                j2 = (l1 >> 6 & 63) - 32 + j;
+                k2 = (l1 >> 12 & 63) - 32 + k;
+                l2 = this.b(sky, i2, j2, k2);
+                i3 = this.a(i2, j2, k2, sky);
+                if (i3 != l2) {
+                    this.b(sky, i2, j2, k2, i3);
+                    if (i3 > l2) {
+                        j3 = Math.abs(i2 - i);
+                        l3 = Math.abs(j2 - j);
+                        k3 = Math.abs(k2 - k);
+                        boolean flag = i1 < this.I.length - 6;
+
+                        if (j3 + l3 + k3 < 17 && flag) {
+                            if (this.b(sky, i2 - 1, j2, k2) < i3) {
+                                this.I[i1++] = i2 - 1 - i + 32 + (j2 - j + 32 << 6) + (k2 - k + 32 << 12);
+                            }
+
+                            if (this.b(sky, i2 + 1, j2, k2) < i3) {
+                                this.I[i1++] = i2 + 1 - i + 32 + (j2 - j + 32 << 6) + (k2 - k + 32 << 12);
+                            }
+
+                            if (this.b(sky, i2, j2 - 1, k2) < i3) {
+                                this.I[i1++] = i2 - i + 32 + (j2 - 1 - j + 32 << 6) + (k2 - k + 32 << 12);
+                            }
+
+                            if (this.b(sky, i2, j2 + 1, k2) < i3) {
+                                this.I[i1++] = i2 - i + 32 + (j2 + 1 - j + 32 << 6) + (k2 - k + 32 << 12);
+                            }
+
+                            if (this.b(sky, i2, j2, k2 - 1) < i3) {
+                                this.I[i1++] = i2 - i + 32 + (j2 - j + 32 << 6) + (k2 - 1 - k + 32 << 12);
+                            }
+
+                            if (this.b(sky, i2, j2, k2 + 1) < i3) {
+                                this.I[i1++] = i2 - i + 32 + (j2 - j + 32 << 6) + (k2 + 1 - k + 32 << 12);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
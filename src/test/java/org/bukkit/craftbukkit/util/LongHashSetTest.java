@@ -0,0 +1,55 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongHashSetTest {
+
+    @Test
+    public void testPopFirstInTableOrder() {
+        Random random = new Random(1L);
+        LongHashSet set = new LongHashSet();
+        for (int i = 0; i < 5000; i++) {
+            set.add(LongHash.toLong(random.nextInt(2000) - 1000, random.nextInt(2000) - 1000));
+        }
+
+        long[] expected = set.toArray();
+        for (long value : expected) {
+            assertThat(set.popFirst(), is(value));
+        }
+        assertTrue(set.isEmpty());
+        assertThat(set.popFirst(), is(0L));
+    }
+
+    @Test
+    public void testAddWhileDraining() {
+        // Like the unload queue, chunks are queued again while it is drained
+        Random random = new Random(2L);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<Long>();
+        for (int i = 0; i < 2000; i++) {
+            long value = LongHash.toLong(random.nextInt(200), random.nextInt(200));
+            set.add(value);
+            expected.add(value);
+        }
+
+        while (!expected.isEmpty()) {
+            if (random.nextInt(3) == 0) {
+                long value = LongHash.toLong(random.nextInt(200), random.nextInt(200));
+                assertThat(set.add(value), is(expected.add(value)));
+            } else {
+                long value = set.popFirst();
+                assertTrue(expected.remove(value));
+                assertFalse(set.contains(value));
+            }
+            assertThat(set.size(), is(expected.size()));
+        }
+        assertThat(set.popFirst(), is(0L));
+    }
+}
@@ -0,0 +1,97 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ProcessQueueTest {
+
+    @Test
+    public void testWaitablesRunFirst() {
+        final List<String> order = new ArrayList<String>();
+        ProcessQueue queue = new ProcessQueue();
+
+        queue.add(task(order, "bulk 1"));
+        queue.add(task(order, "bulk 2"));
+        queue.add(new Waitable<Object>() {
+            @Override
+            protected Object evaluate() {
+                order.add("chat");
+                return null;
+            }
+        });
+        queue.offer(task(order, "rcon"), ProcessQueue.Priority.HIGH);
+
+        assertThat(queue.size(), is(4));
+        assertThat(queue.getSize(ProcessQueue.Priority.HIGH), is(2));
+        assertThat(queue.drain(0L), is(4));
+        assertThat(order, is(Arrays.asList("chat", "rcon", "bulk 1", "bulk 2")));
+        assertTrue(queue.isEmpty());
+        assertThat(queue.getProcessed(), is(4L));
+    }
+
+    @Test
+    public void testOverflowCarriesOver() {
+        final List<String> order = new ArrayList<String>();
+        ProcessQueue queue = new ProcessQueue();
+
+        for (int i = 0; i < 5; i++) {
+            final int index = i;
+            queue.add(new Runnable() {
+                public void run() {
+                    order.add("slow " + index);
+                    sleep(5L);
+                }
+            });
+        }
+
+        // A 1 ms budget is used up by the first task, the rest waits for the next ticks
+        assertThat(queue.drain(1000000L), is(1));
+        assertThat(queue.size(), is(4));
+        assertThat(queue.getOverBudgetTicks(), is(1L));
+
+        assertThat(queue.drain(1000000L), is(1));
+        assertThat(queue.drain(0L), is(3));
+        assertThat(order, is(Arrays.asList("slow 0", "slow 1", "slow 2", "slow 3", "slow 4")));
+        assertThat(queue.getMaxWait(), is(greaterThanOrEqualTo(10.0D)));
+    }
+
+    @Test
+    public void testIterator() {
+        List<String> order = new ArrayList<String>();
+        ProcessQueue queue = new ProcessQueue();
+        Runnable bulk = task(order, "bulk");
+        Runnable high = task(order, "high");
+
+        queue.add(bulk);
+        queue.offer(high, ProcessQueue.Priority.HIGH);
+
+        List<Runnable> tasks = new ArrayList<Runnable>(queue);
+        assertThat(tasks, is(Arrays.asList(high, bulk)));
+        assertThat(queue.peek(), is(high));
+        assertThat(queue.poll(), is(high));
+        assertThat(queue.poll(), is(bulk));
+        assertThat(queue.poll(), is(nullValue()));
+    }
+
+    private static Runnable task(final List<String> order, final String name) {
+        return new Runnable() {
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+
+public class TickStatisticsTest {
+    private static final long TICK = 50000000L;
+
+    @Test
+    public void testFullSpeed() {
+        TickStatistics stats = new TickStatistics();
+        long start = 1000L * TICK;
+        for (int i = 0; i < 6000; i++) {
+            stats.record(start + i * TICK, 10000000L);
+        }
+
+        long now = start + 6000 * TICK;
+        assertThat(stats.getTps(TickStatistics.SECOND, now), is(20.0D));
+        assertThat(stats.getTps(TickStatistics.MINUTE, now), is(20.0D));
+        assertThat(stats.getTps(TickStatistics.FIVE_MINUTES, now), is(20.0D));
+        assertThat(stats.getMspt(0.5D, TickStatistics.MINUTE, now), is(10.0D));
+    }
+
+    @Test
+    public void testShortUptime() {
+        TickStatistics stats = new TickStatistics();
+        for (int i = 0; i < 40; i++) {
+            stats.record(i * TICK, 1000000L);
+        }
+
+        // Only two seconds have passed, the five minute figure must not be diluted
+        assertThat(stats.getTps(TickStatistics.FIVE_MINUTES, 40 * TICK), is(20.0D));
+    }
+
+    @Test
+    public void testSlowTicks() {
+        TickStatistics stats = new TickStatistics();
+        long time = 0L;
+        for (int i = 0; i < 100; i++) {
+            // Every tenth tick takes 100 ms, the server only manages one tick per duration
+            long duration = i % 10 == 9 ? 100000000L : 20000000L;
+            stats.record(time, duration);
+            time += Math.max(TICK, duration);
+        }
+
+        assertThat(stats.getMspt(0.5D, TickStatistics.MINUTE, time), is(20.0D));
+        assertThat(stats.getMspt(0.95D, TickStatistics.MINUTE, time), is(100.0D));
+        assertThat(stats.getMspt(1.0D, TickStatistics.MINUTE, time), is(100.0D));
+        assertThat(stats.getTps(TickStatistics.MINUTE, time), is(100 * 1.0E9D / time));
+    }
+
+    @Test
+    public void testNoTicks() {
+        TickStatistics stats = new TickStatistics();
+        assertThat(stats.getTps(TickStatistics.MINUTE), is(0.0D));
+        assertThat(stats.getMspt(0.5D, TickStatistics.MINUTE), is(0.0D));
+        assertThat(stats.getGcTime(TickStatistics.MINUTE), is(0L));
+    }
+}
@@ -0,0 +1,77 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class WorldTickExecutorTest {
+    private final WorldTickExecutor executor = new WorldTickExecutor(3);
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testTasksRunTogether() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        final AtomicInteger met = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            tasks.add(new Callable<Void>() {
+                public Void call() throws Exception {
+                    assertTrue(executor.isWorkerThread());
+                    latch.countDown();
+                    // Only returns true when every task is running at the same time
+                    if (latch.await(5, TimeUnit.SECONDS)) {
+                        met.incrementAndGet();
+                    }
+                    return null;
+                }
+            });
+        }
+
+        executor.tick(tasks);
+        assertThat(met.get(), is(3));
+        assertFalse(executor.isWorkerThread());
+    }
+
+    @Test
+    public void testFailureRethrownAfterAllTasks() throws Exception {
+        final AtomicInteger finished = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+        tasks.add(new Callable<Void>() {
+            public Void call() {
+                throw new IllegalStateException("world");
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            tasks.add(new Callable<Void>() {
+                public Void call() throws Exception {
+                    Thread.sleep(20L);
+                    finished.incrementAndGet();
+                    return null;
+                }
+            });
+        }
+
+        try {
+            executor.tick(tasks);
+            fail("Failure was not rethrown");
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage(), is("world"));
+        }
+        assertThat(finished.get(), is(3));
+    }
+}
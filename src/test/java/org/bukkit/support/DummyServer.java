@@ -8,8 +8,11 @@ import java.util.logging.Logger;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Server;
+import org.bukkit.command.SimpleCommandMap;
 import org.bukkit.craftbukkit.inventory.CraftItemFactory;
 import org.bukkit.craftbukkit.util.Versioning;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.SimplePluginManager;
 
 public class DummyServer implements InvocationHandler {
     private static interface MethodHandler {
@@ -59,7 +62,18 @@ public class DummyServer implements InvocationHandler {
                         }
                     }
                 );
-            Bukkit.setServer(Proxy.getProxyClass(Server.class.getClassLoader(), Server.class).asSubclass(Server.class).getConstructor(InvocationHandler.class).newInstance(new DummyServer()));
+            methods.put(
+                    Server.class.getMethod("getPluginManager"),
+                    new MethodHandler() {
+                        public Object handle(DummyServer server, Object[] args) {
+                            return server.pluginManager;
+                        }
+                    }
+                );
+            DummyServer handler = new DummyServer();
+            Server server = Proxy.getProxyClass(Server.class.getClassLoader(), Server.class).asSubclass(Server.class).getConstructor(InvocationHandler.class).newInstance(handler);
+            handler.pluginManager = new SimplePluginManager(server, new SimpleCommandMap(server));
+            Bukkit.setServer(server);
         } catch (Throwable t) {
             throw new Error(t);
         }
@@ -67,6 +81,8 @@ public class DummyServer implements InvocationHandler {
 
     public static void setup() {}
 
+    private PluginManager pluginManager;
+
     private DummyServer() {};
 
     public Object invoke(Object proxy, Method method, Object[] args) {